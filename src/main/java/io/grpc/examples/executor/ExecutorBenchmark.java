@@ -0,0 +1,222 @@
+package io.grpc.examples.executor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.examples.helloworld.CheckBalanceReply;
+import io.grpc.examples.helloworld.CheckBalanceRequest;
+import io.grpc.examples.helloworld.GreeterGrpc;
+import io.grpc.examples.helloworld.HelloReply;
+import io.grpc.examples.helloworld.HelloRequest;
+import io.grpc.examples.helloworld.LatencyHistogram;
+import io.grpc.stub.StreamObserver;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the server executor modes under a mix of cheap and blocking calls at high concurrency.
+ *
+ * <p>A Greeter whose {@code SayHello} replies at once and whose {@code CheckBalance} sleeps for the
+ * latency of an ICON call is served over a local socket with each mode in turn. One closed loop
+ * keeps a few cheap calls outstanding while another keeps many blocking ones outstanding, and the
+ * throughput and latency of both are reported with the peak number of live threads. Calls completed
+ * during the warm-up are not recorded.
+ *
+ * <p>Usage: {@code executor-benchmark [--cheap-concurrency=N] [--blocking-concurrency=N]
+ * [--latency-ms=N] [--duration-s=N] [--warmup-s=N]}.
+ */
+public class ExecutorBenchmark {
+  private static final String SAY_HELLO = GreeterGrpc.getSayHelloMethod().getFullMethodName();
+  private static final String CHECK_BALANCE = GreeterGrpc.getCheckBalanceMethod().getFullMethodName();
+
+  /** The executor modes compared, as {@link ExecutorRouter#parse} arguments; null is gRPC's own. */
+  private enum Mode {
+    DEFAULT(null),
+    FORK_JOIN("fork-join"),
+    VIRTUAL("virtual"),
+    ROUTED("fork-join", SAY_HELLO + "=direct", CHECK_BALANCE + "=virtual"),
+    ROUTED_FORK_JOIN("virtual", SAY_HELLO + "=fork-join");
+
+    final String defaultMode;
+    final List<String> routes;
+
+    Mode(String defaultMode, String... routes) {
+      this.defaultMode = defaultMode;
+      this.routes = Arrays.asList(routes);
+    }
+
+    ExecutorRouter router() {
+      return defaultMode != null ? ExecutorRouter.parse(defaultMode, routes) : null;
+    }
+  }
+
+  /**
+   * Main method.
+   */
+  public static void main(String[] args) throws Exception {
+    int cheapConcurrency = 16;
+    int blockingConcurrency = 2000;
+    long latencyMillis = 20;
+    long durationSeconds = 10;
+    long warmupSeconds = 3;
+    for (String arg : args) {
+      String value = arg.substring(arg.indexOf('=') + 1);
+      if (arg.startsWith("--cheap-concurrency=")) {
+        cheapConcurrency = Integer.parseInt(value);
+      } else if (arg.startsWith("--blocking-concurrency=")) {
+        blockingConcurrency = Integer.parseInt(value);
+      } else if (arg.startsWith("--latency-ms=")) {
+        latencyMillis = Long.parseLong(value);
+      } else if (arg.startsWith("--duration-s=")) {
+        durationSeconds = Long.parseLong(value);
+      } else if (arg.startsWith("--warmup-s=")) {
+        warmupSeconds = Long.parseLong(value);
+      } else {
+        System.err.println("Unknown argument: " + arg);
+        System.exit(1);
+      }
+    }
+
+    System.out.printf("cheap concurrency=%d blocking concurrency=%d latency=%dms duration=%ds cores=%d%n",
+        cheapConcurrency, blockingConcurrency, latencyMillis, durationSeconds,
+        Runtime.getRuntime().availableProcessors());
+    System.out.printf("%-18s %12s %10s %10s %12s %10s %8s%n", "mode", "cheap/s", "cheap p50", "cheap p99",
+        "blocking/s", "block p99", "threads");
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    for (Mode mode : Mode.values()) {
+      ExecutorRouter router = mode.router();
+      ServerBuilder<?> builder = ServerBuilder.forPort(0);
+      SlowGreeter greeter = new SlowGreeter(latencyMillis);
+      if (router != null) {
+        builder.directExecutor().addService(ServerInterceptors.intercept(greeter, router));
+      } else {
+        builder.addService(greeter);
+      }
+      Server server = builder.build().start();
+      ManagedChannel channel = ManagedChannelBuilder.forAddress("127.0.0.1", server.getPort())
+          .usePlaintext().directExecutor().build();
+      try {
+        GreeterGrpc.GreeterFutureStub stub = GreeterGrpc.newFutureStub(channel);
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+        long warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long endNanos = warmupNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+        Loop cheap = new Loop(stub, false, cheapConcurrency, start, warmupNanos, endNanos);
+        Loop blocking = new Loop(stub, true, blockingConcurrency, start, warmupNanos, endNanos);
+        cheap.begin();
+        blocking.begin();
+        cheap.await();
+        blocking.await();
+        System.out.printf("%-18s %12.0f %10.2f %10.2f %12.0f %10.2f %8d%n",
+            mode.name().toLowerCase().replace('_', '-'),
+            cheap.histogram.getCount() / (double) durationSeconds, cheap.histogram.getValueAtPercentile(50),
+            cheap.histogram.getValueAtPercentile(99), blocking.histogram.getCount() / (double) durationSeconds,
+            blocking.histogram.getValueAtPercentile(99), threads.getPeakThreadCount());
+      } finally {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        if (router != null) {
+          router.shutdown();
+        }
+      }
+    }
+  }
+
+  /** Answers {@code SayHello} at once and {@code CheckBalance} after a blocking sleep. */
+  private static final class SlowGreeter extends GreeterGrpc.GreeterImplBase {
+    private final long latencyMillis;
+
+    SlowGreeter(long latencyMillis) {
+      this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public void sayHello(HelloRequest req, StreamObserver<HelloReply> responseObserver) {
+      responseObserver.onNext(HelloReply.newBuilder().setMessage("Hello " + req.getName()).build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void checkBalance(CheckBalanceRequest req, StreamObserver<CheckBalanceReply> responseObserver) {
+      try {
+        Thread.sleep(latencyMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      responseObserver.onNext(CheckBalanceReply.newBuilder().setBalance("0").build());
+      responseObserver.onCompleted();
+    }
+  }
+
+  /** One closed loop with a fixed number of outstanding calls of one method. */
+  private static final class Loop {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    private final GreeterGrpc.GreeterFutureStub stub;
+    private final boolean blocking;
+    private final int concurrency;
+    private final long start;
+    private final long warmupNanos;
+    private final long endNanos;
+    private final CountDownLatch done;
+
+    Loop(GreeterGrpc.GreeterFutureStub stub, boolean blocking, int concurrency, long start, long warmupNanos,
+        long endNanos) {
+      this.stub = stub;
+      this.blocking = blocking;
+      this.concurrency = concurrency;
+      this.start = start;
+      this.warmupNanos = warmupNanos;
+      this.endNanos = endNanos;
+      this.done = new CountDownLatch(concurrency);
+    }
+
+    void begin() {
+      for (int i = 0; i < concurrency; i++) {
+        next();
+      }
+    }
+
+    void await() throws InterruptedException {
+      done.await();
+    }
+
+    private void next() {
+      final long begin = System.nanoTime();
+      if (begin - start >= endNanos) {
+        done.countDown();
+        return;
+      }
+      ListenableFuture<?> reply = blocking
+          ? stub.checkBalance(CheckBalanceRequest.getDefaultInstance())
+          : stub.sayHello(HelloRequest.getDefaultInstance());
+      Futures.addCallback(reply, new FutureCallback<Object>() {
+        @Override
+        public void onSuccess(Object result) {
+          record(begin);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          record(begin);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+
+    private void record(long begin) {
+      if (begin - start >= warmupNanos) {
+        histogram.record(System.nanoTime() - begin);
+      }
+      next();
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package io.grpc.examples.executor;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Context;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs each call on the executor chosen for its method, so that cheap methods do not queue behind
+ * handlers that block on ICON calls or burn CPU on key derivation.
+ *
+ * <p>A route names a full method, such as {@code helloworld.Greeter/SayHello}, or a whole service,
+ * such as {@code helloworld.Greeter}; the method route wins, and calls matching neither run on the
+ * default executor. The server should be built with {@code directExecutor()}, so that the router
+ * is the only hop off the transport thread. The events of a call run one at a time, in order, with
+ * the call's {@link Context}, as gRPC runs them on its own executor.
+ */
+public final class ExecutorRouter implements ServerInterceptor {
+  private static final Logger logger = Logger.getLogger(ExecutorRouter.class.getName());
+
+  private final Executor defaultExecutor;
+  private final Map<String, Executor> routes;
+
+  private ExecutorRouter(Builder builder) {
+    this.defaultExecutor = builder.defaultExecutor;
+    this.routes = new HashMap<String, Executor>(builder.routes);
+  }
+
+  public static Builder newBuilder(Executor defaultExecutor) {
+    return new Builder(defaultExecutor);
+  }
+
+  /**
+   * Creates a router from names of {@link ServerExecutors}: {@code defaultMode} for unrouted calls,
+   * and {@code routes} of the form {@code NAME=MODE}. Routes with the same mode share one executor.
+   */
+  public static ExecutorRouter parse(String defaultMode, List<String> routes) {
+    Map<String, Executor> executors = new HashMap<String, Executor>();
+    Builder builder = new Builder(executor(executors, defaultMode));
+    for (String route : routes) {
+      int separator = route.lastIndexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("Not a route of the form NAME=MODE: " + route);
+      }
+      String name = route.substring(0, separator);
+      String mode = route.substring(separator + 1);
+      builder.route(name, executor(executors, mode));
+    }
+    return builder.build();
+  }
+
+  private static Executor executor(Map<String, Executor> executors, String mode) {
+    String key = mode.trim().toLowerCase();
+    Executor executor = executors.get(key);
+    if (executor == null) {
+      executor = ServerExecutors.create(key);
+      executors.put(key, executor);
+    }
+    return executor;
+  }
+
+  /** The executor that calls of {@code fullMethodName} run on. */
+  public Executor executorFor(String fullMethodName) {
+    Executor executor = routes.get(fullMethodName);
+    if (executor == null) {
+      executor = routes.get(MethodDescriptor.extractFullServiceName(fullMethodName));
+    }
+    return executor != null ? executor : defaultExecutor;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+      Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    Executor executor = executorFor(call.getMethodDescriptor().getFullMethodName());
+    if (executor == MoreExecutors.directExecutor()) {
+      return next.startCall(call, headers);
+    }
+    RoutedListener<ReqT, RespT> listener =
+        new RoutedListener<ReqT, RespT>(call, MoreExecutors.newSequentialExecutor(executor));
+    listener.start(headers, next);
+    return listener;
+  }
+
+  /** Shuts down every executor of the router that can be shut down. */
+  public void shutdown() {
+    Map<Executor, Boolean> executors = new IdentityHashMap<Executor, Boolean>();
+    executors.put(defaultExecutor, true);
+    for (Executor executor : routes.values()) {
+      executors.put(executor, true);
+    }
+    for (Executor executor : executors.keySet()) {
+      if (executor instanceof ExecutorService) {
+        ((ExecutorService) executor).shutdown();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "routes=" + new TreeSet<String>(routes.keySet());
+  }
+
+  public static final class Builder {
+    private final Executor defaultExecutor;
+    private final Map<String, Executor> routes = new HashMap<String, Executor>();
+
+    private Builder(Executor defaultExecutor) {
+      if (defaultExecutor == null) {
+        throw new NullPointerException("defaultExecutor");
+      }
+      this.defaultExecutor = defaultExecutor;
+    }
+
+    /** Runs calls of the full method or service {@code name} on {@code executor}. */
+    public Builder route(String name, Executor executor) {
+      if (name.isEmpty() || executor == null) {
+        throw new IllegalArgumentException("A route needs a name and an executor");
+      }
+      routes.put(name, executor);
+      return this;
+    }
+
+    public ExecutorRouter build() {
+      return new ExecutorRouter(this);
+    }
+  }
+
+  /**
+   * Passes the events of one call to its handler on a sequential executor, starting with the
+   * call itself. A handler that throws closes the call with {@code UNKNOWN}, and a call whose
+   * events the executor refuses is closed with {@code RESOURCE_EXHAUSTED}.
+   */
+  private static final class RoutedListener<ReqT, RespT> extends ServerCall.Listener<ReqT> {
+    private final ServerCall<ReqT, RespT> call;
+    private final Executor executor;
+    private final Context context = Context.current();
+    // Only used from tasks on the sequential executor, which see each other's writes.
+    private ServerCall.Listener<ReqT> delegate;
+    private volatile boolean closed;
+
+    RoutedListener(ServerCall<ReqT, RespT> call, Executor executor) {
+      this.call = call;
+      this.executor = executor;
+    }
+
+    void start(final Metadata headers, final ServerCallHandler<ReqT, RespT> next) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate = next.startCall(call, headers);
+        }
+      });
+    }
+
+    @Override
+    public void onMessage(final ReqT message) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.onMessage(message);
+        }
+      });
+    }
+
+    @Override
+    public void onHalfClose() {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.onHalfClose();
+        }
+      });
+    }
+
+    @Override
+    public void onCancel() {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.onCancel();
+        }
+      });
+    }
+
+    @Override
+    public void onComplete() {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.onComplete();
+        }
+      });
+    }
+
+    @Override
+    public void onReady() {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.onReady();
+        }
+      });
+    }
+
+    private void execute(final Runnable event) {
+      Runnable task = context.wrap(new Runnable() {
+        @Override
+        public void run() {
+          if (closed) {
+            return;
+          }
+          try {
+            event.run();
+          } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Call of " + call.getMethodDescriptor().getFullMethodName() + " failed", e);
+            close(Status.UNKNOWN.withCause(e));
+          } catch (Error e) {
+            close(Status.UNKNOWN.withCause(e));
+            throw e;
+          }
+        }
+      });
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        // Nothing of this call is running: the sequential executor only hands off when idle.
+        close(Status.RESOURCE_EXHAUSTED.withDescription("Server executor refused the call").withCause(e));
+      }
+    }
+
+    private void close(Status status) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        call.close(status, new Metadata());
+      } catch (IllegalStateException e) {
+        // Already closed by the handler.
+      }
+    }
+  }
+}
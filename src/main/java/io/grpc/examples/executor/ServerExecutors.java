@@ -0,0 +1,84 @@
+package io.grpc.examples.executor;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The executors a server can run its calls on, by name:
+ *
+ * <ul>
+ *   <li>{@code cached}: a growing pool of daemon threads, as gRPC uses when none is given.
+ *   <li>{@code virtual}: a new virtual thread for every task, on JVMs that have them; a cached
+ *       pool on older ones. Suits handlers that block on I/O, however many are waiting.
+ *   <li>{@code fork-join} or {@code fork-join:N}: a first-in first-out fork-join pool of N
+ *       workers, the number of cores by default. Suits handlers that only compute; a blocked
+ *       handler holds one of the N workers.
+ *   <li>{@code direct}: the transport thread that read the message. Only for handlers that never
+ *       block, such as those that reply from a callback.
+ * </ul>
+ */
+public final class ServerExecutors {
+  private static final Logger logger = Logger.getLogger(ServerExecutors.class.getName());
+
+  private ServerExecutors() {
+  }
+
+  /** Creates the executor named {@code mode}. */
+  public static Executor create(String mode) {
+    String name = mode.trim().toLowerCase();
+    if ("direct".equals(name)) {
+      return MoreExecutors.directExecutor();
+    } else if ("cached".equals(name)) {
+      return cached();
+    } else if ("virtual".equals(name)) {
+      return perCall();
+    } else if ("fork-join".equals(name)) {
+      return forkJoin(Runtime.getRuntime().availableProcessors());
+    } else if (name.startsWith("fork-join:")) {
+      int parallelism;
+      try {
+        parallelism = Integer.parseInt(name.substring("fork-join:".length()));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Not a fork-join pool size: " + mode);
+      }
+      return forkJoin(parallelism);
+    }
+    throw new IllegalArgumentException("Unknown executor: " + mode);
+  }
+
+  public static ExecutorService cached() {
+    return Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("grpc-cached-%d").build());
+  }
+
+  /**
+   * Runs every task on a new virtual thread when the JVM has {@code
+   * Executors.newVirtualThreadPerTaskExecutor()}, and on a cached pool otherwise.
+   */
+  public static ExecutorService perCall() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      logger.info("No virtual threads in this JVM; using a cached pool");
+    } catch (ReflectiveOperationException e) {
+      logger.log(Level.WARNING, "Virtual threads unavailable; using a cached pool", e);
+    }
+    return cached();
+  }
+
+  /** A fork-join pool of {@code parallelism} workers that runs submitted tasks in order. */
+  public static ExecutorService forkJoin(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+  }
+}
@@ -0,0 +1,255 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.transport.jsonrpc.Request;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Context;
+
+/**
+ * Coalesces {@code icx_getBalance} lookups in front of the {@link IconClient}.
+ *
+ * <p>Concurrent lookups of the same address share one upstream call. Distinct addresses requested
+ * within {@code window} of each other are sent together as one JSON-RPC batch of at most
+ * {@code maxBatchSize} requests; a full batch is sent without waiting for the window to close. A
+ * zero window disables batching but keeps coalescing. Once a new block is observed, lookups that
+ * were already sent are no longer shared, as they may answer with the balance before the block.
+ *
+ * <p>A lookup serves every caller that joins it, so it is sent outside the gRPC {@link Context}
+ * of the caller that happened to send it: cancelling that caller must not fail the others.
+ */
+public class BalanceBatcher {
+	private static final Function<RpcItem, BigInteger> AS_INTEGER = new Function<RpcItem, BigInteger>() {
+		@Override
+		public BigInteger apply(RpcItem item) {
+			return item.asInteger();
+		}
+	};
+
+	private final IconClient iconClient;
+	private final long windowNanos;
+	private final int maxBatchSize;
+
+	private final Object lock = new Object();
+	/** Lookups that are queued or on the wire, by address. Guarded by {@code lock}. */
+	private final Map<Address, SettableFuture<BigInteger>> inFlight =
+			new HashMap<Address, SettableFuture<BigInteger>>();
+	/** Lookups waiting for the window to close, in request order. Guarded by {@code lock}. */
+	private Map<Address, SettableFuture<BigInteger>> pending = new LinkedHashMap<Address, SettableFuture<BigInteger>>();
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong upstreamCalls = new AtomicLong();
+
+	private ScheduledExecutorService scheduler;
+
+	public BalanceBatcher(IconClient iconClient, long window, TimeUnit unit, int maxBatchSize) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize < 1: " + maxBatchSize);
+		}
+		this.iconClient = iconClient;
+		this.windowNanos = unit.toNanos(window);
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public synchronized void start() {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("balance-batcher").build());
+	}
+
+	public synchronized void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	/** Returns the balance of {@code address}, sharing any lookup of it that is already running. */
+	public ListenableFuture<BigInteger> getBalance(Address address) {
+		lookups.incrementAndGet();
+		SettableFuture<BigInteger> future;
+		Map<Address, SettableFuture<BigInteger>> batch = null;
+		boolean schedule = false;
+		synchronized (lock) {
+			future = inFlight.get(address);
+			if (future != null) {
+				coalesced.incrementAndGet();
+				return future;
+			}
+			future = SettableFuture.create();
+			inFlight.put(address, future);
+			pending.put(address, future);
+			if (windowNanos == 0 || pending.size() >= maxBatchSize) {
+				batch = takePending();
+			} else {
+				schedule = pending.size() == 1;
+			}
+		}
+		if (batch != null) {
+			send(batch);
+		} else if (schedule) {
+			scheduleFlush();
+		}
+		return future;
+	}
+
+	/** Returns the balances of {@code addresses} in order, looked up through the same engine. */
+	public ListenableFuture<List<BigInteger>> getBalances(List<Address> addresses) {
+		List<ListenableFuture<BigInteger>> futures = new ArrayList<ListenableFuture<BigInteger>>(addresses.size());
+		for (Address address : addresses) {
+			futures.add(getBalance(address));
+		}
+		return Futures.allAsList(futures);
+	}
+
+	/**
+	 * Stops sharing the lookups already sent, which may not see the state after a new block; later
+	 * lookups of their addresses are sent again. Lookups still waiting for the window stay shared.
+	 */
+	public void onNewBlock() {
+		synchronized (lock) {
+			Iterator<Address> addresses = inFlight.keySet().iterator();
+			while (addresses.hasNext()) {
+				if (!pending.containsKey(addresses.next())) {
+					addresses.remove();
+				}
+			}
+		}
+	}
+
+	/** Number of lookups requested. */
+	public long getLookupCount() {
+		return lookups.get();
+	}
+
+	/** Number of lookups that joined one already in flight. */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/** Number of HTTP requests sent to the node, single or batched. */
+	public long getUpstreamCallCount() {
+		return upstreamCalls.get();
+	}
+
+	private void scheduleFlush() {
+		ScheduledExecutorService executor;
+		synchronized (this) {
+			executor = scheduler;
+		}
+		Runnable flush = new Runnable() {
+			@Override
+			public void run() {
+				Map<Address, SettableFuture<BigInteger>> batch;
+				synchronized (lock) {
+					batch = takePending();
+				}
+				if (!batch.isEmpty()) {
+					send(batch);
+				}
+			}
+		};
+		if (executor == null) {
+			// Not started, or already shut down: nothing would close the window, so flush now.
+			flush.run();
+			return;
+		}
+		try {
+			executor.schedule(flush, windowNanos, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			flush.run();
+		}
+	}
+
+	private Map<Address, SettableFuture<BigInteger>> takePending() {
+		Map<Address, SettableFuture<BigInteger>> batch = pending;
+		pending = new LinkedHashMap<Address, SettableFuture<BigInteger>>();
+		return batch;
+	}
+
+	private void send(Map<Address, SettableFuture<BigInteger>> batch) {
+		upstreamCalls.incrementAndGet();
+		// A full batch or a zero window sends on the caller's thread; detach its context.
+		Context previous = Context.ROOT.attach();
+		try {
+			sendUpstream(batch);
+		} catch (RuntimeException e) {
+			for (Map.Entry<Address, SettableFuture<BigInteger>> lookup : batch.entrySet()) {
+				complete(lookup.getKey(), lookup.getValue(), Futures.<BigInteger>immediateFailedFuture(e));
+			}
+		} finally {
+			Context.ROOT.detach(previous);
+		}
+	}
+
+	private void sendUpstream(Map<Address, SettableFuture<BigInteger>> batch) {
+		if (batch.size() == 1) {
+			Map.Entry<Address, SettableFuture<BigInteger>> lookup = batch.entrySet().iterator().next();
+			complete(lookup.getKey(), lookup.getValue(),
+					iconClient.executeAsync(iconClient.getIconService().getBalance(lookup.getKey())));
+			return;
+		}
+		List<Request> requests = new ArrayList<Request>(batch.size());
+		for (Address address : batch.keySet()) {
+			RpcObject params = new RpcObject.Builder().put("address", new RpcValue(address)).build();
+			requests.add(iconClient.newRequest("icx_getBalance", params));
+		}
+		List<ListenableFuture<RpcItem>> results = iconClient.executeBatchAsync(requests);
+		int i = 0;
+		for (Map.Entry<Address, SettableFuture<BigInteger>> lookup : batch.entrySet()) {
+			complete(lookup.getKey(), lookup.getValue(),
+					Futures.transform(results.get(i++), AS_INTEGER, MoreExecutors.directExecutor()));
+		}
+	}
+
+	private void complete(final Address address, final SettableFuture<BigInteger> future,
+			ListenableFuture<BigInteger> result) {
+		Futures.addCallback(result, new FutureCallback<BigInteger>() {
+			@Override
+			public void onSuccess(BigInteger balance) {
+				remove(address, future);
+				future.set(balance);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				remove(address, future);
+				future.setException(t);
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	/** Forgets the lookup unless a new block already did, and a newer lookup took its place. */
+	private void remove(Address address, SettableFuture<BigInteger> future) {
+		synchronized (lock) {
+			if (inFlight.get(address) == future) {
+				inFlight.remove(address);
+			}
+		}
+	}
+}
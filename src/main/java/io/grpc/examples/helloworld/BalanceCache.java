@@ -0,0 +1,149 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+
+/**
+ * In-process cache of ICX balances keyed by {@link Address}.
+ *
+ * <p>A balance can only change when a block is produced, so every entry is dropped as soon as the
+ * {@link BlockPoller} reports a new height, and entries also expire after one block interval in
+ * case the poller falls behind. Lookups the {@link BalanceBatcher} sent before the block are no
+ * longer shared with later callers. The number of entries is bounded; the least recently used
+ * ones are evicted first.
+ */
+public class BalanceCache implements BlockPoller.Listener {
+	private static final Logger logger = Logger.getLogger(BalanceCache.class.getName());
+
+	private final BalanceBatcher loader;
+	private final Cache<Address, BigInteger> cache;
+	/**
+	 * Held while a load is stored and while a new block clears the cache, so that no load started
+	 * before the block is stored after it.
+	 */
+	private final Object lock = new Object();
+	/** Bumped on every new block so that loads started before it are not cached. */
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong blockInvalidations = new AtomicLong();
+	// Written with lock held.
+	private volatile long height = -1;
+
+	/**
+	 * @param maximumSize maximum number of cached addresses; 0 disables caching
+	 * @param ttl how long an entry may be served without a new block being observed, normally the
+	 *     block interval
+	 */
+	public BalanceCache(BalanceBatcher loader, long maximumSize, long ttl, TimeUnit unit) {
+		this.loader = loader;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttl, unit)
+				.recordStats()
+				.build();
+	}
+
+	/** Returns the cached balance or waits on the calling thread for it to be loaded. */
+	public BigInteger getBalance(Address address) throws IOException {
+		try {
+			return getBalanceAsync(address).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwables.propagateIfPossible(e.getCause(), IOException.class);
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/** Returns the cached balance or loads it through the {@link BalanceBatcher}. */
+	public ListenableFuture<BigInteger> getBalanceAsync(final Address address) {
+		BigInteger balance = cache.getIfPresent(address);
+		if (balance != null) {
+			return Futures.immediateFuture(balance);
+		}
+		final long loadGeneration = generation.get();
+		return Futures.transform(loader.getBalance(address),
+				new Function<BigInteger, BigInteger>() {
+					@Override
+					public BigInteger apply(BigInteger loaded) {
+						store(address, loaded, loadGeneration);
+						return loaded;
+					}
+				}, MoreExecutors.directExecutor());
+	}
+
+	/** Returns the balances of {@code addresses} in order; misses are loaded as one batch. */
+	public ListenableFuture<List<BigInteger>> getBalancesAsync(List<Address> addresses) {
+		List<ListenableFuture<BigInteger>> futures = new ArrayList<ListenableFuture<BigInteger>>(addresses.size());
+		for (Address address : addresses) {
+			futures.add(getBalanceAsync(address));
+		}
+		return Futures.allAsList(futures);
+	}
+
+	private void store(Address address, BigInteger balance, long loadGeneration) {
+		synchronized (lock) {
+			if (generation.get() == loadGeneration) {
+				cache.put(address, balance);
+			}
+		}
+	}
+
+	@Override
+	public void onNewBlock(Block block) {
+		long newHeight = block.getHeight().longValue();
+		synchronized (lock) {
+			if (newHeight <= height) {
+				return;
+			}
+			height = newHeight;
+			generation.incrementAndGet();
+			cache.invalidateAll();
+			// Lookups sent before the block must not serve the callers that come after it either.
+			loader.onNewBlock();
+		}
+		blockInvalidations.incrementAndGet();
+		if (logger.isLoggable(Level.FINE)) {
+			logger.fine("Balance cache cleared at height " + newHeight + ": " + stats());
+		}
+	}
+
+	/** Hit, miss and eviction counts; size and expiry evictions are both counted. */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/** Number of times the whole cache was cleared because a new block was observed. */
+	public long blockInvalidationCount() {
+		return blockInvalidations.get();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	/** Last block height that cleared the cache, or -1. */
+	public long getHeight() {
+		return height;
+	}
+}
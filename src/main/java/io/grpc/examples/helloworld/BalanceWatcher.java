@@ -0,0 +1,291 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.ConfirmedTransaction;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * Pushes balance changes of watched addresses to {@code WatchBalances} streams.
+ *
+ * <p>The watcher is a single {@link BlockPoller.Listener}, so every block is read once no matter
+ * how many streams are open. An address is looked up again when a transaction in the block names
+ * it as sender or recipient, and every watched address is looked up every
+ * {@link #FULL_REFRESH_BLOCKS} blocks to pick up transfers made by SCOREs. Lookups go through the
+ * {@link BalanceCache}, which is cleared by the same block, so they are batched and shared with
+ * {@code CheckBalance}.
+ *
+ * <p>Each stream keeps at most one pending update per address, newer balances replacing older
+ * ones, and is only written to while {@link ServerCallStreamObserver#isReady()}; a slow client
+ * therefore skips intermediate balances instead of buffering them.
+ */
+public class BalanceWatcher implements BlockPoller.Listener {
+	private static final Logger logger = Logger.getLogger(BalanceWatcher.class.getName());
+
+	/** Largest number of addresses a single stream may watch. */
+	public static final int MAX_ADDRESSES_PER_STREAM = 1000;
+
+	/** About one minute of blocks. */
+	static final int FULL_REFRESH_BLOCKS = 30;
+
+	private final BalanceCache balanceCache;
+	private final Object lock = new Object();
+	// Guarded by lock.
+	private final Map<Address, Watched> watched = new HashMap<Address, Watched>();
+	// Guarded by lock; addresses whose last lookup failed, retried with the next block.
+	private final Set<Address> stale = new HashSet<Address>();
+	private volatile long height = -1;
+	private long blocksSinceFullRefresh;
+
+	public BalanceWatcher(BalanceCache balanceCache) {
+		this.balanceCache = balanceCache;
+	}
+
+	/**
+	 * Starts streaming {@code addresses} to {@code observer}: first their current balances, then
+	 * every change. Must be called from the RPC method so that the stream's handlers can still be
+	 * set.
+	 */
+	public void subscribe(List<Address> addresses, ServerCallStreamObserver<BalanceUpdate> observer) {
+		final Subscription subscription = new Subscription(observer);
+		observer.setOnCancelHandler(new Runnable() {
+			@Override
+			public void run() {
+				unsubscribe(subscription);
+			}
+		});
+		observer.setOnReadyHandler(new Runnable() {
+			@Override
+			public void run() {
+				subscription.drain();
+			}
+		});
+		final List<Address> distinct = new ArrayList<Address>(new LinkedHashSet<Address>(addresses));
+		synchronized (lock) {
+			for (Address address : distinct) {
+				Watched entry = watched.get(address);
+				if (entry == null) {
+					entry = new Watched();
+					watched.put(address, entry);
+				}
+				entry.subscriptions.add(subscription);
+			}
+			subscription.addresses = distinct;
+		}
+		refresh(distinct, height, subscription);
+	}
+
+	private void unsubscribe(Subscription subscription) {
+		synchronized (lock) {
+			for (Address address : subscription.addresses) {
+				Watched entry = watched.get(address);
+				if (entry != null && entry.subscriptions.remove(subscription) && entry.subscriptions.isEmpty()) {
+					watched.remove(address);
+					stale.remove(address);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void onNewBlock(Block block) {
+		long newHeight = block.getHeight().longValue();
+		if (newHeight <= height) {
+			return;
+		}
+		height = newHeight;
+		List<Address> addresses;
+		synchronized (lock) {
+			if (watched.isEmpty()) {
+				return;
+			}
+			if (++blocksSinceFullRefresh >= FULL_REFRESH_BLOCKS) {
+				blocksSinceFullRefresh = 0;
+				addresses = new ArrayList<Address>(watched.keySet());
+			} else {
+				Set<Address> touched = new LinkedHashSet<Address>(stale);
+				for (ConfirmedTransaction tx : block.getTransactions()) {
+					addIfWatched(touched, tx.getFrom());
+					addIfWatched(touched, tx.getTo());
+				}
+				addresses = new ArrayList<Address>(touched);
+			}
+			stale.clear();
+		}
+		if (!addresses.isEmpty()) {
+			refresh(addresses, newHeight, null);
+		}
+	}
+
+	private void addIfWatched(Set<Address> touched, Address address) {
+		if (address != null && watched.containsKey(address)) {
+			touched.add(address);
+		}
+	}
+
+	/**
+	 * Looks up {@code addresses} and publishes the balances that changed; when {@code initial} is
+	 * set it receives every balance whether or not it changed.
+	 */
+	private void refresh(final List<Address> addresses, final long refreshHeight, final Subscription initial) {
+		Futures.addCallback(balanceCache.getBalancesAsync(addresses), new FutureCallback<List<BigInteger>>() {
+			@Override
+			public void onSuccess(List<BigInteger> balances) {
+				for (int i = 0; i < addresses.size(); i++) {
+					publish(addresses.get(i), balances.get(i), refreshHeight, initial);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				logger.log(Level.FINE, "Failed to refresh " + addresses.size() + " watched balances", t);
+				if (initial != null) {
+					// Without its first balances the stream is useless; let the client retry.
+					unsubscribe(initial);
+					initial.fail(t);
+					return;
+				}
+				synchronized (lock) {
+					for (Address address : addresses) {
+						if (watched.containsKey(address)) {
+							stale.add(address);
+						}
+					}
+				}
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private void publish(Address address, BigInteger balance, long refreshHeight, Subscription initial) {
+		List<Subscription> targets;
+		BalanceUpdate update;
+		synchronized (lock) {
+			Watched entry = watched.get(address);
+			if (entry == null) {
+				return;
+			}
+			boolean changed = false;
+			// Lookups may complete out of order; never replace a balance with an older one.
+			if (refreshHeight >= entry.height) {
+				// The first balance of an address is not a change: each stream still waits for its own.
+				changed = entry.balance != null && !balance.equals(entry.balance);
+				entry.balance = balance;
+				entry.height = refreshHeight;
+			}
+			targets = changed ? new ArrayList<Subscription>(entry.subscriptions) : new ArrayList<Subscription>(1);
+			if (initial != null && !targets.contains(initial) && entry.subscriptions.contains(initial)) {
+				targets.add(initial);
+			}
+			update = BalanceUpdate.newBuilder()
+					.setAddress(address.toString())
+					.setBalance(entry.balance.toString())
+					.setHeight(entry.height)
+					.build();
+		}
+		for (Subscription subscription : targets) {
+			subscription.offer(address, update);
+		}
+	}
+
+	/** Ends every open stream. */
+	public void shutdown() {
+		Set<Subscription> subscriptions = new HashSet<Subscription>();
+		synchronized (lock) {
+			for (Watched entry : watched.values()) {
+				subscriptions.addAll(entry.subscriptions);
+			}
+			watched.clear();
+			stale.clear();
+		}
+		for (Subscription subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+
+	/** Number of distinct addresses watched by at least one stream. */
+	public int watchedAddressCount() {
+		synchronized (lock) {
+			return watched.size();
+		}
+	}
+
+	private static final class Watched {
+		final Set<Subscription> subscriptions = new HashSet<Subscription>();
+		BigInteger balance;
+		long height = -1;
+	}
+
+	/** One {@code WatchBalances} stream and its pending updates, at most one per address. */
+	private static final class Subscription {
+		private final ServerCallStreamObserver<BalanceUpdate> observer;
+		// Guarded by this.
+		private final LinkedHashMap<Address, BalanceUpdate> pending = new LinkedHashMap<Address, BalanceUpdate>();
+		private boolean closed;
+		// Written once under BalanceWatcher.lock before any callback can read it.
+		List<Address> addresses = new ArrayList<Address>();
+
+		Subscription(ServerCallStreamObserver<BalanceUpdate> observer) {
+			this.observer = observer;
+		}
+
+		void offer(Address address, BalanceUpdate update) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				pending.put(address, update);
+			}
+			drain();
+		}
+
+		synchronized void drain() {
+			if (closed || observer.isCancelled()) {
+				return;
+			}
+			Iterator<BalanceUpdate> it = pending.values().iterator();
+			while (it.hasNext() && observer.isReady()) {
+				BalanceUpdate update = it.next();
+				it.remove();
+				observer.onNext(update);
+			}
+		}
+
+		synchronized void fail(Throwable t) {
+			if (closed || observer.isCancelled()) {
+				return;
+			}
+			closed = true;
+			pending.clear();
+			Status status = t instanceof RejectedExecutionException ? Status.RESOURCE_EXHAUSTED : Status.UNAVAILABLE;
+			observer.onError(status.withDescription("Failed to read balances").withCause(t).asRuntimeException());
+		}
+
+		synchronized void complete() {
+			if (closed || observer.isCancelled()) {
+				return;
+			}
+			closed = true;
+			pending.clear();
+			observer.onCompleted();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The binary forms of ICON values shared by {@code GreeterV2} and the local stores.
+ *
+ * <p>An address is 21 bytes: a prefix of 0 for {@code hx} or 1 for {@code cx}, then its 20 bytes.
+ * Hashes and keys are unsigned big-endian values right-aligned in a fixed width. A balance is its
+ * unsigned big-endian value in as few bytes as hold it, at most 32 and one for zero: balances are
+ * rarely above 2^96, so this beats both a fixed width and decimal text.
+ */
+final class BinaryCodec {
+	static final int ADDRESS_BYTES = 21;
+	static final int HASH_BYTES = 32;
+	static final int BALANCE_BYTES = 32;
+	static final int PRIVATE_KEY_BYTES = 32;
+	/** A secp256k1 public key as ICON writes it, without the uncompressed prefix {@code 0x04}. */
+	static final int PUBLIC_KEY_BYTES = 64;
+
+	private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+	private static final byte EOA_PREFIX = 0;
+	private static final byte CONTRACT_PREFIX = 1;
+
+	private BinaryCodec() {
+	}
+
+	/** Encodes an {@code hx...} or {@code cx...} address. */
+	static byte[] address(String address) {
+		String normalized = address.trim().toLowerCase();
+		if (normalized.length() != 2 + 2 * (ADDRESS_BYTES - 1)
+				|| !(normalized.startsWith("hx") || normalized.startsWith("cx"))) {
+			throw new IllegalArgumentException("Not an ICON address: " + address);
+		}
+		byte[] encoded = new byte[ADDRESS_BYTES];
+		encoded[0] = normalized.startsWith("cx") ? CONTRACT_PREFIX : EOA_PREFIX;
+		// Throws IllegalArgumentException for characters that are not hex.
+		System.arraycopy(HEX.decode(normalized.substring(2)), 0, encoded, 1, ADDRESS_BYTES - 1);
+		return encoded;
+	}
+
+	/** Decodes the address in the 21 bytes of {@code encoded} at {@code offset}. */
+	static String address(byte[] encoded, int offset) {
+		if (encoded.length - offset < ADDRESS_BYTES
+				|| (encoded[offset] != EOA_PREFIX && encoded[offset] != CONTRACT_PREFIX)) {
+			throw new IllegalArgumentException("Not an encoded ICON address");
+		}
+		return (encoded[offset] == CONTRACT_PREFIX ? "cx" : "hx") + HEX.encode(encoded, offset + 1, ADDRESS_BYTES - 1);
+	}
+
+	static String address(byte[] encoded) {
+		if (encoded.length != ADDRESS_BYTES) {
+			throw new IllegalArgumentException("Addresses are " + ADDRESS_BYTES + " bytes, not " + encoded.length);
+		}
+		return address(encoded, 0);
+	}
+
+	/**
+	 * Writes the unsigned big-endian {@code value} right-aligned in {@code width} bytes, dropping
+	 * leading bytes that do not fit, such as the sign byte of {@link BigInteger#toByteArray()}.
+	 */
+	static byte[] fixed(byte[] value, int width) {
+		byte[] fixed = new byte[width];
+		if (value != null) {
+			int skip = Math.max(0, value.length - width);
+			System.arraycopy(value, skip, fixed, width - (value.length - skip), value.length - skip);
+		}
+		return fixed;
+	}
+
+	/** Encodes a balance, which must be a non-negative value that fits in {@link #BALANCE_BYTES}. */
+	static byte[] balance(BigInteger balance) {
+		if (balance.signum() < 0 || balance.bitLength() > 8 * BALANCE_BYTES) {
+			throw new IllegalArgumentException("Not a balance: " + balance);
+		}
+		return fixed(balance.toByteArray(), Math.max(1, (balance.bitLength() + 7) / 8));
+	}
+
+	static BigInteger balance(byte[] encoded) {
+		if (encoded.length < 1 || encoded.length > BALANCE_BYTES) {
+			throw new IllegalArgumentException("Balances are 1 to " + BALANCE_BYTES + " bytes, not " + encoded.length);
+		}
+		return new BigInteger(1, encoded);
+	}
+
+	/** Decodes hex with or without {@code 0x}. */
+	static byte[] hex(String hex) {
+		String normalized = hex.trim().toLowerCase();
+		return HEX.decode(normalized.startsWith("0x") ? normalized.substring(2) : normalized);
+	}
+
+	/** Encodes {@code bytes} as lowercase hex without {@code 0x}, as ICON writes keys. */
+	static String hex(byte[] bytes) {
+		return HEX.encode(bytes);
+	}
+
+	/** Checks that {@code value} is {@code width} bytes long. */
+	static byte[] checkLength(byte[] value, int width, String name) {
+		if (value.length != width) {
+			throw new IllegalArgumentException(name + " must be " + width + " bytes, not " + value.length);
+		}
+		return value;
+	}
+}
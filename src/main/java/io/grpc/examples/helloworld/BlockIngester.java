@@ -0,0 +1,190 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.Request;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+
+/**
+ * Keeps a {@link TransactionStore} up to date with the chain. Told of new blocks by the
+ * {@link BlockPoller}, it appends every block from the last one stored up to the head, in order,
+ * on its own thread.
+ *
+ * <p>The block the poller reports is appended as is when it is the next one, so that a server
+ * keeping up costs no upstream call beyond the poll. Unlike the poller, which skips blocks when far
+ * behind, the ingester catches up on every block it missed, during an outage or while the server
+ * was down, fetching up to {@link #MAX_BATCH_SIZE} blocks per JSON-RPC batch. An empty store starts
+ * at the first block the poller reports unless a start height is given.
+ */
+public class BlockIngester implements BlockPoller.Listener {
+	private static final Logger logger = Logger.getLogger(BlockIngester.class.getName());
+
+	/** Blocks fetched per upstream call while catching up. */
+	static final int MAX_BATCH_SIZE = 20;
+
+	private final IconClient iconClient;
+	private final TransactionStore store;
+	private final long startHeight;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicLong ingested = new AtomicLong();
+	private final AtomicLong upstreamCalls = new AtomicLong();
+
+	private volatile Block head;
+	private volatile boolean full;
+	private ExecutorService executor;
+
+	/** Ingests blocks into {@code store}, starting at the head when it is empty. */
+	public BlockIngester(IconClient iconClient, TransactionStore store) {
+		this(iconClient, store, -1);
+	}
+
+	/** Ingests blocks into {@code store}, starting at {@code startHeight} when it is empty. */
+	BlockIngester(IconClient iconClient, TransactionStore store, long startHeight) {
+		this.iconClient = iconClient;
+		this.store = store;
+		this.startHeight = startHeight;
+	}
+
+	public synchronized BlockIngester start() {
+		if (executor != null) {
+			throw new IllegalStateException("Already started");
+		}
+		executor = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("block-ingester").build());
+		return this;
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	@Override
+	public void onNewBlock(Block block) {
+		head = block;
+		schedule();
+	}
+
+	private void schedule() {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		if (executor == null || full || !scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					boolean caughtUp = catchUp();
+					scheduled.set(false);
+					// A block reported while this run was finishing would otherwise wait for the next one.
+					if (caughtUp && isBehind()) {
+						schedule();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			scheduled.set(false);
+		}
+	}
+
+	/**
+	 * Appends blocks until the store holds the last reported one. Returns false when it stopped
+	 * early; the next reported block tries again.
+	 */
+	boolean catchUp() {
+		try {
+			while (isBehind()) {
+				Block last = head;
+				long next = nextHeight();
+				List<Block> blocks;
+				if (last.getHeight().longValue() == next) {
+					blocks = new ArrayList<Block>(1);
+					blocks.add(last);
+				} else {
+					blocks = fetch(next, (int) Math.min(MAX_BATCH_SIZE, last.getHeight().longValue() - next));
+				}
+				for (Block block : blocks) {
+					if (!store.append(block)) {
+						full = true;
+						logger.warning("Transaction store full at block " + block.getHeight() + ": " + store);
+						return false;
+					}
+					ingested.incrementAndGet();
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException | RuntimeException e) {
+			logger.log(Level.FINE, "Failed to ingest blocks after height " + store.getHeight(), e);
+			return false;
+		}
+	}
+
+	private boolean isBehind() {
+		Block last = head;
+		return !full && last != null && nextHeight() <= last.getHeight().longValue();
+	}
+
+	private long nextHeight() {
+		long height = store.getHeight();
+		if (height >= 0) {
+			return height + 1;
+		}
+		return startHeight >= 0 ? startHeight : head.getHeight().longValue();
+	}
+
+	private List<Block> fetch(long from, int count) throws ExecutionException, InterruptedException {
+		List<Request> requests = new ArrayList<Request>(count);
+		for (long height = from; height < from + count; height++) {
+			RpcObject params = new RpcObject.Builder().put("height", new RpcValue(BigInteger.valueOf(height))).build();
+			requests.add(iconClient.newRequest("icx_getBlockByHeight", params));
+		}
+		upstreamCalls.incrementAndGet();
+		List<RpcItem> items = Futures.allAsList(iconClient.executeBatchAsync(requests)).get();
+		List<Block> blocks = new ArrayList<Block>(count);
+		for (RpcItem item : items) {
+			blocks.add(Converters.BLOCK.convertTo(item));
+		}
+		return blocks;
+	}
+
+	/** Number of blocks appended to the store. */
+	public long getIngestedCount() {
+		return ingested.get();
+	}
+
+	/** Number of JSON-RPC batches sent to fetch missed blocks. */
+	public long getUpstreamCallCount() {
+		return upstreamCalls.get();
+	}
+
+	/** Height of the last reported block minus that of the last stored one. */
+	public long getLag() {
+		Block last = head;
+		return last == null ? 0 : Math.max(0, last.getHeight().longValue() - store.getHeight());
+	}
+}
@@ -0,0 +1,120 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.data.Block;
+
+/**
+ * Polls the ICON node for its last block on a fixed schedule and tells registered listeners
+ * whenever the chain height advances.
+ *
+ * <p>One poller is shared by the whole server so that every component interested in new blocks
+ * costs a single {@code icx_getLastBlock} per interval. Blocks produced between two polls are
+ * fetched by height so that listeners see every block once and in order, up to
+ * {@link #MAX_CATCH_UP_BLOCKS} behind the head. Listeners run on the poller thread and must not
+ * block.
+ */
+public class BlockPoller {
+	private static final Logger logger = Logger.getLogger(BlockPoller.class.getName());
+
+	/** ICON produces a block roughly every two seconds. */
+	public static final long DEFAULT_BLOCK_INTERVAL_MILLIS = 2000;
+
+	/** When further behind than this, older blocks are skipped. */
+	static final int MAX_CATCH_UP_BLOCKS = 16;
+
+	/** Receives every block that raises the observed chain height. */
+	public interface Listener {
+		void onNewBlock(Block block);
+	}
+
+	private final IconClient iconClient;
+	private final long intervalMillis;
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	private ScheduledExecutorService scheduler;
+	private volatile long height = -1;
+
+	public BlockPoller(IconClient iconClient, long interval, TimeUnit unit) {
+		this.iconClient = iconClient;
+		this.intervalMillis = unit.toMillis(interval);
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	public synchronized void start() {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("block-poller").build());
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				poll();
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void shutdown() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/** Last observed block height, or -1 before the first successful poll. */
+	public long getHeight() {
+		return height;
+	}
+
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	void poll() {
+		try {
+			Block last = iconClient.getIconService().getLastBlock().execute();
+			long lastHeight = last.getHeight().longValue();
+			if (lastHeight <= height) {
+				return;
+			}
+			if (height >= 0) {
+				for (long h = Math.max(height + 1, lastHeight - MAX_CATCH_UP_BLOCKS); h < lastHeight; h++) {
+					deliver(iconClient.getIconService().getBlock(BigInteger.valueOf(h)).execute());
+				}
+			}
+			deliver(last);
+		} catch (IOException | RuntimeException e) {
+			// Blocks that were not delivered are fetched again on the next poll.
+			logger.log(Level.FINE, "Failed to poll blocks after height " + height, e);
+		}
+	}
+
+	private void deliver(Block block) {
+		long newHeight = block.getHeight().longValue();
+		height = newHeight;
+		for (Listener listener : listeners) {
+			try {
+				listener.onNewBlock(block);
+			} catch (RuntimeException e) {
+				logger.log(Level.WARNING, "Block listener failed at height " + newHeight, e);
+			}
+		}
+	}
+}
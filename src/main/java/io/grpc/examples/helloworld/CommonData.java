@@ -22,4 +22,14 @@ public class CommonData {
 
     public static final String ADDRESS_1 = "hxc5bdfc07a86869e345c9eec73283654df6a0559b";
 
+    // Network id of the testnet.
+    public static final String TESTNET_NID = "3";
+
+    // DID SCORE on the testnet.
+    public static final String DID_SCORE_ADDRESS = "cxd6bdebfbba1b35141fdade2a5f806d618c713369";
+
+    // Default wallet signing DID transactions.
+    public static final String DID_SIGNER_PRIVATE_KEY =
+            "1915704752ee6e926e15e938d2d8153957fb8d43724a5f61a129ddd1fbb9884d";
+
 }
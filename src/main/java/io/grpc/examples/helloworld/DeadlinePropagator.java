@@ -0,0 +1,171 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Ties every upstream HTTP call to the gRPC {@link Context} that was current when the call was
+ * created, normally that of the {@code Greeter} call it serves.
+ *
+ * <p>A call created under a cancelled context is cancelled before it is sent, a call in flight is
+ * cancelled as soon as its context is, and a context deadline becomes the call's OkHttp timeout.
+ * Calls created without a gRPC call, such as block polls, are left alone. Work shared by several
+ * callers, such as the lookups of a {@link BalanceBatcher}, must be created under
+ * {@link Context#ROOT} even when one of the callers sends it, so that it is left alone too.
+ *
+ * <p>OkHttp runs asynchronous calls on its dispatcher threads, where the context is not current.
+ * The {@link #newInterceptor interceptor} attaches it again while the call runs, so that calls made
+ * on its behalf, like the attempts of an {@link UpstreamRouter}, are bound to it too. Only the calls
+ * made by the client itself are counted.
+ */
+final class DeadlinePropagator extends EventListener implements EventListener.Factory {
+	/** True on a thread running a bound call, whose nested calls are not counted. */
+	private static final ThreadLocal<Boolean> NESTED = new ThreadLocal<Boolean>();
+
+	private final ConcurrentMap<Call, Binding> bindings = new ConcurrentHashMap<Call, Binding>();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong aborted = new AtomicLong();
+	private final AtomicLong deadlineBounded = new AtomicLong();
+
+	@Override
+	public EventListener create(Call call) {
+		Context context = Context.current();
+		if (context == Context.ROOT) {
+			return EventListener.NONE;
+		}
+		boolean counted = NESTED.get() == null;
+		if (context.isCancelled()) {
+			call.cancel();
+			if (counted) {
+				skipped.incrementAndGet();
+			}
+			return EventListener.NONE;
+		}
+		Deadline deadline = context.getDeadline();
+		if (deadline != null) {
+			long remainingNanos = Math.max(1, deadline.timeRemaining(TimeUnit.NANOSECONDS));
+			if (call.timeout().timeoutNanos() == 0 || remainingNanos < call.timeout().timeoutNanos()) {
+				call.timeout().timeout(remainingNanos, TimeUnit.NANOSECONDS);
+				if (counted) {
+					deadlineBounded.incrementAndGet();
+				}
+			}
+		}
+		Binding binding = new Binding(call, context, counted);
+		bindings.put(call, binding);
+		context.addListener(binding, MoreExecutors.directExecutor());
+		return this;
+	}
+
+	@Override
+	public void callEnd(Call call) {
+		finish(call, false);
+	}
+
+	@Override
+	public void callFailed(Call call, IOException ioe) {
+		finish(call, true);
+	}
+
+	/** Returns the interceptor that runs each bound call under its context. */
+	Interceptor newInterceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Binding binding = bindings.get(chain.call());
+				if (binding == null) {
+					return chain.proceed(chain.request());
+				}
+				Context previous = binding.context.attach();
+				Boolean nested = NESTED.get();
+				NESTED.set(Boolean.TRUE);
+				boolean failed = true;
+				try {
+					Response response = chain.proceed(chain.request());
+					failed = false;
+					return response;
+				} finally {
+					NESTED.set(nested);
+					binding.context.detach(previous);
+					// Calls answered before reaching the network never report their end.
+					finish(chain.call(), failed);
+				}
+			}
+		};
+	}
+
+	private void finish(Call call, boolean failed) {
+		Binding binding = bindings.remove(call);
+		if (binding != null) {
+			binding.finish(failed);
+		}
+	}
+
+	/** Calls never sent because their gRPC call was already cancelled. */
+	long getSkippedCount() {
+		return skipped.get();
+	}
+
+	/** Calls cancelled in flight because their gRPC call was cancelled or ran out of time. */
+	long getAbortedCount() {
+		return aborted.get();
+	}
+
+	/** Calls whose timeout was shortened to the deadline of their gRPC call. */
+	long getDeadlineBoundedCount() {
+		return deadlineBounded.get();
+	}
+
+	@Override
+	public String toString() {
+		return "skipped=" + skipped.get() + ", aborted=" + aborted.get() + ", deadline-bounded="
+				+ deadlineBounded.get();
+	}
+
+	private final class Binding implements Context.CancellationListener {
+		final Call call;
+		final Context context;
+		final boolean counted;
+		final AtomicBoolean done = new AtomicBoolean();
+
+		Binding(Call call, Context context, boolean counted) {
+			this.call = call;
+			this.context = context;
+			this.counted = counted;
+		}
+
+		@Override
+		public void cancelled(Context context) {
+			if (done.compareAndSet(false, true)) {
+				call.cancel();
+				if (counted) {
+					aborted.incrementAndGet();
+				}
+			}
+		}
+
+		void finish(boolean failed) {
+			if (done.compareAndSet(false, true)) {
+				context.removeListener(this);
+				// The OkHttp timeout may fire before the context notices its deadline.
+				Deadline deadline = context.getDeadline();
+				if (failed && counted && deadline != null && deadline.isExpired()) {
+					aborted.incrementAndGet();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package io.grpc.examples.helloworld;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Remembers the DID, address and creation transaction of every public key the server created a
+ * wallet or a DID for, in a {@link MappedResultStore} so that entries live off the heap and survive
+ * restarts.
+ *
+ * <p>Entries are keyed by the SHA-256 of the normalized public key. Addresses and transaction hashes
+ * are stored as raw bytes, and a DID equal to its public key is stored as a flag, so a typical entry
+ * takes about 60 bytes of data plus its 40-byte slot. Recording a public key again merges the new
+ * fields into the entry; the replaced bytes are not reclaimed, so each entry should change only a
+ * few times.
+ */
+public class DidIndex {
+	private static final Logger logger = Logger.getLogger(DidIndex.class.getName());
+	private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+	private static final int HAS_ADDRESS = 1;
+	private static final int HAS_TXHASH = 2;
+	private static final int HAS_DID = 4;
+	/** The DID is the public key itself, as for DIDs created by this server. */
+	private static final int DID_IS_PUBLIC_KEY = 8;
+	private static final int ADDRESS_BYTES = 20;
+	private static final int TXHASH_BYTES = 32;
+
+	private final MappedResultStore store;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private DidIndex(MappedResultStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Opens the index in {@code file}, creating it with room for {@code maxEntries} entries and
+	 * {@code dataBytes} of entry data when it does not exist.
+	 */
+	public static DidIndex open(File file, int maxEntries, int dataBytes) throws IOException {
+		return new DidIndex(MappedResultStore.open(file, maxEntries, dataBytes));
+	}
+
+	/**
+	 * Records what is known about {@code publicKey}; empty fields keep their recorded value. Returns
+	 * false if the index is full.
+	 */
+	public synchronized boolean record(String publicKey, String did, String address, String txhash) {
+		String normalized = normalize(publicKey);
+		if (normalized.isEmpty()) {
+			return false;
+		}
+		byte[] key = key(normalized);
+		LookupDIDReply previous = decode(normalized, store.get(key));
+		LookupDIDReply.Builder entry = previous != null ? previous.toBuilder()
+				: LookupDIDReply.newBuilder().setPublickey(normalized);
+		if (!did.isEmpty()) {
+			entry.setDid(did);
+		}
+		if (!address.isEmpty()) {
+			entry.setAddress(address);
+		}
+		if (!txhash.isEmpty()) {
+			entry.setTxhash(txhash);
+		}
+		LookupDIDReply updated = entry.build();
+		if (updated.equals(previous)) {
+			return true;
+		}
+		if (!store.replace(key, encode(updated))) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/** Returns what is recorded for {@code publicKey}, or null. */
+	public LookupDIDReply lookup(String publicKey) {
+		String normalized = normalize(publicKey);
+		LookupDIDReply entry = normalized.isEmpty() ? null : decode(normalized, store.get(key(normalized)));
+		(entry != null ? hits : misses).incrementAndGet();
+		return entry;
+	}
+
+	/** Number of public keys recorded. */
+	public int size() {
+		return store.size();
+	}
+
+	/** Writes outstanding entries to disk and releases the file. */
+	public void close() {
+		store.close();
+	}
+
+	@Override
+	public String toString() {
+		return "entries=" + store.size() + ", hits=" + hits.get() + ", misses=" + misses.get() + ", dropped="
+				+ dropped.get();
+	}
+
+	private static String normalize(String publicKey) {
+		String hex = publicKey.trim().toLowerCase();
+		return hex.startsWith("0x") ? hex.substring(2) : hex;
+	}
+
+	private static byte[] key(String normalizedPublicKey) {
+		return Hashing.sha256().hashString(normalizedPublicKey, StandardCharsets.UTF_8).asBytes();
+	}
+
+	private static byte[] encode(LookupDIDReply entry) {
+		byte[] address = rawHex(entry.getAddress(), 2, ADDRESS_BYTES);
+		byte[] txhash = rawHex(entry.getTxhash(), 2, TXHASH_BYTES);
+		int flags = 0;
+		if (!entry.getAddress().isEmpty()) {
+			flags |= HAS_ADDRESS;
+		}
+		if (!entry.getTxhash().isEmpty()) {
+			flags |= HAS_TXHASH;
+		}
+		if (!entry.getDid().isEmpty()) {
+			flags |= entry.getDid().equals(entry.getPublickey()) ? DID_IS_PUBLIC_KEY : HAS_DID;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(flags);
+			if ((flags & HAS_ADDRESS) != 0) {
+				writeHexOrText(out, entry.getAddress(), address);
+			}
+			if ((flags & HAS_TXHASH) != 0) {
+				writeHexOrText(out, entry.getTxhash(), txhash);
+			}
+			if ((flags & HAS_DID) != 0) {
+				out.writeUTF(entry.getDid());
+			}
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static LookupDIDReply decode(String normalizedPublicKey, byte[] value) {
+		if (value == null) {
+			return null;
+		}
+		LookupDIDReply.Builder entry = LookupDIDReply.newBuilder().setPublickey(normalizedPublicKey);
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+			int flags = in.readUnsignedByte();
+			if ((flags & HAS_ADDRESS) != 0) {
+				entry.setAddress(readHexOrText(in, ADDRESS_BYTES));
+			}
+			if ((flags & HAS_TXHASH) != 0) {
+				entry.setTxhash(readHexOrText(in, TXHASH_BYTES));
+			}
+			if ((flags & HAS_DID) != 0) {
+				entry.setDid(in.readUTF());
+			} else if ((flags & DID_IS_PUBLIC_KEY) != 0) {
+				entry.setDid(normalizedPublicKey);
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Unreadable DID index entry for " + normalizedPublicKey, e);
+			return null;
+		}
+		return entry.build();
+	}
+
+	/**
+	 * Raw bytes of {@code value} after its ASCII prefix, or null unless they are {@code length} bytes
+	 * of lowercase hex.
+	 */
+	private static byte[] rawHex(String value, int prefixLength, int length) {
+		if (value.length() != prefixLength + 2 * length) {
+			return null;
+		}
+		for (int i = 0; i < prefixLength; i++) {
+			if (value.charAt(i) == 0 || value.charAt(i) > 0x7f) {
+				return null;
+			}
+		}
+		String hex = value.substring(prefixLength);
+		if (!HEX.canDecode(hex)) {
+			return null;
+		}
+		return HEX.decode(hex);
+	}
+
+	/**
+	 * Writes the prefix and raw bytes of a hex value, or a zero marker and the text of anything
+	 * else.
+	 */
+	private static void writeHexOrText(DataOutputStream out, String value, byte[] raw) throws IOException {
+		if (raw != null) {
+			out.writeByte(value.charAt(0));
+			out.writeByte(value.charAt(1));
+			out.write(raw);
+		} else {
+			out.writeByte(0);
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readHexOrText(DataInputStream in, int length) throws IOException {
+		int first = in.readUnsignedByte();
+		if (first == 0) {
+			return in.readUTF();
+		}
+		char second = (char) in.readUnsignedByte();
+		byte[] raw = new byte[length];
+		in.readFully(raw);
+		return "" + (char) first + second + HEX.encode(raw);
+	}
+}
@@ -0,0 +1,430 @@
+package io.grpc.examples.helloworld;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.data.Bytes;
+
+/**
+ * Accepts DID creations as jobs that are answered as soon as they are recorded in a
+ * {@link DidJournal}, and feeds them to a {@link DidPipeline} in the background.
+ *
+ * <p>A job submitted again with the same idempotency key returns the job created the first time
+ * instead of a new one, for as long as that job is remembered: up to {@code maxCompleted} finished
+ * jobs are kept, and older ones are forgotten.
+ *
+ * <p>Every job is journaled when submitted and again when it finishes. On {@link #start}, the
+ * journal is replayed, jobs that never finished are queued again, and the journal is rewritten
+ * with only the jobs still remembered. A job whose transaction was sent but whose completion did
+ * not reach the journal before a crash is sent again, so delivery is at least once.
+ */
+public class DidJobQueue {
+	private static final Logger logger = Logger.getLogger(DidJobQueue.class.getName());
+
+	private static final byte SUBMIT = 1;
+	private static final byte DONE = 2;
+	private static final byte FAILED = 3;
+	/** How long a job refused by a full pipeline waits before it is offered again. */
+	private static final long RETRY_DELAY_MILLIS = 100;
+	private static final Comparator<Job> ID_ORDER = new Comparator<Job>() {
+		@Override
+		public int compare(Job a, Job b) {
+			return Long.compare(a.id, b.id);
+		}
+	};
+
+	private final DidPipeline didPipeline;
+	private final File journalFile;
+	private final int journalBytes;
+	private final int maxCompleted;
+	private final Semaphore inFlight;
+	private final LinkedBlockingQueue<Job> queued = new LinkedBlockingQueue<Job>();
+
+	// Guarded by this.
+	private final Map<Long, Job> jobs = new HashMap<Long, Job>();
+	private final Map<String, Job> byKey = new HashMap<String, Job>();
+	private final Deque<Job> completed = new ArrayDeque<Job>();
+	private long nextId = 1;
+	private DidJournal journal;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong deduplicated = new AtomicLong();
+	private final AtomicLong replayed = new AtomicLong();
+	private final AtomicLong done = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+
+	private ExecutorService worker;
+	private ScheduledExecutorService retries;
+	private volatile boolean running;
+
+	/**
+	 * @param journalBytes size of a new journal file
+	 * @param maxInFlight jobs handed to the pipeline and not answered yet
+	 * @param maxCompleted finished jobs remembered for {@link #get} and deduplication
+	 */
+	public DidJobQueue(DidPipeline didPipeline, File journalFile, int journalBytes, int maxInFlight,
+			int maxCompleted) {
+		this.didPipeline = didPipeline;
+		this.journalFile = journalFile;
+		this.journalBytes = journalBytes;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.maxCompleted = maxCompleted;
+	}
+
+	/** Replays the journal and starts sending the jobs it left unfinished. */
+	public synchronized DidJobQueue start() throws IOException {
+		if (worker != null) {
+			throw new IllegalStateException("Already started");
+		}
+		journal = DidJournal.open(journalFile, journalBytes, new DidJournal.Visitor() {
+			@Override
+			public void visit(byte[] record) {
+				replay(record);
+			}
+		});
+		List<Job> unfinished = new ArrayList<Job>();
+		for (Job job : jobs.values()) {
+			if (job.state == DIDJob.State.QUEUED) {
+				unfinished.add(job);
+			}
+		}
+		Collections.sort(unfinished, ID_ORDER);
+		queued.addAll(unfinished);
+		replayed.addAndGet(unfinished.size());
+		compact();
+		if (!unfinished.isEmpty()) {
+			logger.info("Replaying " + unfinished.size() + " unfinished DID jobs from " + journalFile);
+		}
+
+		worker = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("did-job-worker").build());
+		retries = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("did-job-retry").build());
+		running = true;
+		worker.execute(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Stops sending jobs and closes the journal. Jobs not finished yet stay in the journal and are
+	 * sent again by the next {@link #start}.
+	 */
+	public synchronized void shutdown() {
+		if (worker == null) {
+			return;
+		}
+		running = false;
+		worker.shutdownNow();
+		retries.shutdownNow();
+		worker = null;
+		journal.close();
+	}
+
+	/**
+	 * Creates a job for {@code publicKey}, or returns the job already created for
+	 * {@code idempotencyKey} unless that is empty. The future completes once the job is durable; it
+	 * fails with {@link RejectedExecutionException} if the queue is stopped or its journal is full.
+	 */
+	public synchronized ListenableFuture<DIDJob> submit(String idempotencyKey, String publicKey) {
+		if (!running) {
+			return Futures.immediateFailedFuture(new RejectedExecutionException("DID job queue not running"));
+		}
+		if (!idempotencyKey.isEmpty()) {
+			Job existing = byKey.get(idempotencyKey);
+			if (existing != null) {
+				deduplicated.incrementAndGet();
+				return snapshotWhenRecorded(existing);
+			}
+		}
+		final Job job = new Job(nextId++, idempotencyKey, publicKey);
+		try {
+			job.recorded = append(job.submitRecord());
+		} catch (RejectedExecutionException e) {
+			return Futures.immediateFailedFuture(e);
+		}
+		remember(job);
+		submitted.incrementAndGet();
+		Futures.addCallback(job.recorded, new FutureCallback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				queued.add(job);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				finish(job, DIDJob.State.FAILED, "Not recorded: " + t.getMessage());
+			}
+		}, MoreExecutors.directExecutor());
+		return snapshotWhenRecorded(job);
+	}
+
+	/** Returns the job with {@code id}, or null if it is unknown or forgotten. */
+	public synchronized DIDJob get(long id) {
+		Job job = jobs.get(id);
+		return job != null ? job.toProto() : null;
+	}
+
+	private ListenableFuture<DIDJob> snapshotWhenRecorded(final Job job) {
+		return Futures.transform(job.recorded, new Function<Void, DIDJob>() {
+			@Override
+			public DIDJob apply(Void ignored) {
+				synchronized (DidJobQueue.this) {
+					return job.toProto();
+				}
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private void drain() {
+		try {
+			while (running) {
+				final Job job = queued.take();
+				inFlight.acquire();
+				Futures.addCallback(didPipeline.submit(job.publicKey), new FutureCallback<Bytes>() {
+					@Override
+					public void onSuccess(Bytes hash) {
+						inFlight.release();
+						finish(job, DIDJob.State.SUBMITTED, hash.toString());
+					}
+
+					@Override
+					public void onFailure(Throwable t) {
+						inFlight.release();
+						if (t instanceof RejectedExecutionException) {
+							retry(job);
+						} else {
+							logger.log(Level.WARNING, "DID job " + job.id + " failed", t);
+							finish(job, DIDJob.State.FAILED, String.valueOf(t.getMessage()));
+						}
+					}
+				}, MoreExecutors.directExecutor());
+			}
+		} catch (InterruptedException e) {
+			// Shut down.
+		}
+	}
+
+	private void retry(final Job job) {
+		if (!running) {
+			return;
+		}
+		retried.incrementAndGet();
+		try {
+			retries.schedule(new Runnable() {
+				@Override
+				public void run() {
+					queued.add(job);
+				}
+			}, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Shut down; the job is replayed on the next start.
+		}
+	}
+
+	private synchronized void finish(Job job, DIDJob.State state, String value) {
+		job.state = state;
+		if (state == DIDJob.State.SUBMITTED) {
+			job.txhash = value;
+			done.incrementAndGet();
+		} else {
+			job.failure = value;
+			failed.incrementAndGet();
+		}
+		if (journal != null && running) {
+			try {
+				append(job.finishRecord());
+			} catch (RejectedExecutionException e) {
+				// Only costs a resend of the job after a restart.
+				logger.warning("DID job " + job.id + " finished but not journaled: " + e.getMessage());
+			}
+		}
+		completed(job);
+	}
+
+	/** Appends {@code record}, first rewriting the journal if it has no room left. */
+	private ListenableFuture<Void> append(byte[] record) {
+		if (!journal.hasRoom(record.length)) {
+			try {
+				compact();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Could not rewrite DID journal", e);
+			}
+		}
+		return journal.append(record);
+	}
+
+	/** Rewrites the journal with the jobs still remembered. */
+	private void compact() throws IOException {
+		List<Job> live = new ArrayList<Job>(jobs.values());
+		Collections.sort(live, ID_ORDER);
+		List<byte[]> records = new ArrayList<byte[]>();
+		for (Job job : live) {
+			records.add(job.submitRecord());
+			if (job.state != DIDJob.State.QUEUED) {
+				records.add(job.finishRecord());
+			}
+		}
+		journal.rewrite(records);
+	}
+
+	private void replay(byte[] record) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+			byte type = in.readByte();
+			long id = in.readLong();
+			nextId = Math.max(nextId, id + 1);
+			if (type == SUBMIT) {
+				Job job = new Job(id, in.readUTF(), in.readUTF());
+				job.recorded = Futures.immediateFuture(null);
+				remember(job);
+				return;
+			}
+			Job job = jobs.get(id);
+			if (job == null || job.state != DIDJob.State.QUEUED) {
+				return;
+			}
+			if (type == DONE) {
+				job.state = DIDJob.State.SUBMITTED;
+				job.txhash = in.readUTF();
+			} else {
+				job.state = DIDJob.State.FAILED;
+				job.failure = in.readUTF();
+			}
+			completed(job);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Skipping unreadable DID journal record", e);
+		}
+	}
+
+	private void remember(Job job) {
+		jobs.put(job.id, job);
+		if (!job.key.isEmpty()) {
+			byKey.put(job.key, job);
+		}
+	}
+
+	private void completed(Job job) {
+		completed.addLast(job);
+		while (completed.size() > maxCompleted) {
+			Job oldest = completed.removeFirst();
+			jobs.remove(oldest.id);
+			if (byKey.get(oldest.key) == oldest) {
+				byKey.remove(oldest.key);
+			}
+		}
+	}
+
+	/** Jobs created by {@link #submit}. */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/** Submissions answered with an existing job of the same idempotency key. */
+	public long getDeduplicatedCount() {
+		return deduplicated.get();
+	}
+
+	/** Unfinished jobs found in the journal on start. */
+	public long getReplayedCount() {
+		return replayed.get();
+	}
+
+	/** Jobs whose transaction the node accepted. */
+	public long getDoneCount() {
+		return done.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Times a job was offered again after the pipeline refused it. */
+	public long getRetriedCount() {
+		return retried.get();
+	}
+
+	@Override
+	public String toString() {
+		return "submitted=" + submitted.get() + ", deduplicated=" + deduplicated.get() + ", replayed="
+				+ replayed.get() + ", done=" + done.get() + ", failed=" + failed.get() + ", retried="
+				+ retried.get() + (journal != null ? ", journal records=" + journal.getRecordCount()
+						+ ", flushes=" + journal.getFlushCount() : "");
+	}
+
+	private static final class Job {
+		final long id;
+		final String key;
+		final String publicKey;
+		ListenableFuture<Void> recorded;
+		DIDJob.State state = DIDJob.State.QUEUED;
+		String txhash = "";
+		String failure = "";
+
+		Job(long id, String key, String publicKey) {
+			this.id = id;
+			this.key = key;
+			this.publicKey = publicKey;
+		}
+
+		byte[] submitRecord() {
+			return record(SUBMIT, key, publicKey);
+		}
+
+		byte[] finishRecord() {
+			return state == DIDJob.State.SUBMITTED ? record(DONE, txhash) : record(FAILED, failure);
+		}
+
+		private byte[] record(byte type, String... fields) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeByte(type);
+				out.writeLong(id);
+				for (String field : fields) {
+					out.writeUTF(field);
+				}
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		DIDJob toProto() {
+			return DIDJob.newBuilder().setJobId(id).setState(state).setTxhash(txhash).setFailure(failure).build();
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package io.grpc.examples.helloworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Append-only journal of records in a memory-mapped file, made durable by group commit.
+ *
+ * <p>Each record is framed by its length and a CRC32 of its payload; reading stops at the first
+ * empty or damaged frame, so a record torn by a crash is ignored together with anything after it.
+ * {@link #append} copies the record into the mapping and returns a future that completes once a
+ * {@link MappedByteBuffer#force() force} covering it has returned. A single flusher thread forces
+ * the mapping for every record appended since its previous pass, so concurrent appenders share
+ * one disk flush instead of paying for one each.
+ *
+ * <p>The file has a fixed size. When it is full, the owner {@link #rewrite rewrites} it with only
+ * the records it still needs.
+ */
+final class DidJournal {
+	private static final Logger logger = Logger.getLogger(DidJournal.class.getName());
+
+	private static final int MAGIC = 0x444a4e31;
+	private static final int HEADER_BYTES = 16;
+	/** Length and CRC32 of each record. */
+	private static final int FRAME_BYTES = 8;
+
+	/** Receives the records found when a journal is opened, in order. */
+	interface Visitor {
+		void visit(byte[] record);
+	}
+
+	private final File file;
+	private final int capacity;
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+
+	// Guarded by this.
+	private MappedByteBuffer buffer;
+	private int position;
+	private List<SettableFuture<Void>> unflushed = new ArrayList<SettableFuture<Void>>();
+	private Thread flusher;
+	private boolean closed;
+
+	private DidJournal(File file, int capacity) {
+		this.file = file;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Opens or creates the journal in {@code file}, passing every intact record to
+	 * {@code visitor}, which may be null. A new file is {@code capacity} bytes long; an existing one
+	 * keeps its size.
+	 */
+	static DidJournal open(File file, int capacity, Visitor visitor) throws IOException {
+		final DidJournal journal;
+		MappedByteBuffer buffer;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			boolean created = raf.length() == 0;
+			if (created && capacity < HEADER_BYTES + FRAME_BYTES + 1) {
+				throw new IllegalArgumentException("capacity too small: " + capacity);
+			}
+			if (!created && raf.length() > Integer.MAX_VALUE) {
+				throw new IOException("Journal larger than 2 GiB: " + file);
+			}
+			int size = created ? capacity : (int) raf.length();
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (created) {
+				buffer.putInt(0, MAGIC);
+				buffer.force();
+			} else if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a DID journal: " + file);
+			}
+			journal = new DidJournal(file, size);
+		}
+		journal.buffer = buffer;
+		journal.position = scan(buffer, visitor);
+		ThreadFactoryBuilder threads = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("did-journal-flush");
+		journal.flusher = threads.build().newThread(new Runnable() {
+			@Override
+			public void run() {
+				journal.flushLoop();
+			}
+		});
+		journal.flusher.start();
+		return journal;
+	}
+
+	/** Visits the intact records of {@code buffer} and returns the offset after the last one. */
+	private static int scan(ByteBuffer buffer, Visitor visitor) {
+		int offset = HEADER_BYTES;
+		CRC32 crc = new CRC32();
+		while (offset + FRAME_BYTES <= buffer.limit()) {
+			int length = buffer.getInt(offset);
+			if (length <= 0 || length > buffer.limit() - offset - FRAME_BYTES) {
+				break;
+			}
+			byte[] record = new byte[length];
+			ByteBuffer data = buffer.duplicate();
+			data.position(offset + FRAME_BYTES);
+			data.get(record);
+			crc.reset();
+			crc.update(record, 0, length);
+			if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+				logger.warning("Damaged DID journal record at offset " + offset + "; ignoring the rest");
+				break;
+			}
+			if (visitor != null) {
+				visitor.visit(record);
+			}
+			offset += FRAME_BYTES + length;
+		}
+		return offset;
+	}
+
+	/**
+	 * Appends {@code record} and returns a future that completes once it is on disk. Throws
+	 * {@link RejectedExecutionException} when the journal has no room left for it.
+	 */
+	synchronized ListenableFuture<Void> append(byte[] record) {
+		if (closed) {
+			throw new RejectedExecutionException("DID journal closed");
+		}
+		if (!hasRoom(record.length)) {
+			throw new RejectedExecutionException("DID journal full");
+		}
+		write(buffer, position, record);
+		position += FRAME_BYTES + record.length;
+		records.incrementAndGet();
+		SettableFuture<Void> flushed = SettableFuture.create();
+		unflushed.add(flushed);
+		notifyAll();
+		return flushed;
+	}
+
+	/** True if a record of {@code length} bytes still fits. */
+	synchronized boolean hasRoom(int length) {
+		return position + FRAME_BYTES + length <= capacity;
+	}
+
+	/**
+	 * Replaces the journal with {@code replacement}, written to a new file that is forced and then
+	 * renamed over the old one. Records appended before are dropped; their futures complete once
+	 * the new file is on disk.
+	 */
+	synchronized void rewrite(List<byte[]> replacement) throws IOException {
+		if (closed) {
+			throw new IOException("DID journal closed");
+		}
+		File next = new File(file.getPath() + ".rewrite");
+		int size = HEADER_BYTES;
+		for (byte[] record : replacement) {
+			size += FRAME_BYTES + record.length;
+		}
+		if (size > capacity) {
+			throw new IOException("DID journal too small for " + replacement.size() + " records");
+		}
+		MappedByteBuffer rewritten;
+		try (RandomAccessFile raf = new RandomAccessFile(next, "rw")) {
+			raf.setLength(0);
+			rewritten = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+		rewritten.putInt(0, MAGIC);
+		int offset = HEADER_BYTES;
+		for (byte[] record : replacement) {
+			write(rewritten, offset, record);
+			offset += FRAME_BYTES + record.length;
+		}
+		rewritten.force();
+		Files.move(next.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		buffer = rewritten;
+		position = offset;
+		for (SettableFuture<Void> flushed : unflushed) {
+			flushed.set(null);
+		}
+		unflushed = new ArrayList<SettableFuture<Void>>();
+		logger.info("DID journal rewritten with " + replacement.size() + " records");
+	}
+
+	/** Flushes pending records and stops the flusher; later appends are refused. */
+	void close() {
+		Thread thread;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+			thread = flusher;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void write(ByteBuffer target, int offset, byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+		int next = offset + FRAME_BYTES + record.length;
+		if (next + 4 <= target.limit()) {
+			// Ends the journal here even if older records, cut off by a damaged one, follow.
+			target.putInt(next, 0);
+		}
+		ByteBuffer data = target.duplicate();
+		data.position(offset + FRAME_BYTES);
+		data.put(record);
+		target.putInt(offset + 4, (int) crc.getValue());
+		// The length goes last: until it is set, readers see the end of the journal here.
+		target.putInt(offset, record.length);
+	}
+
+	private void flushLoop() {
+		while (true) {
+			MappedByteBuffer toForce;
+			List<SettableFuture<Void>> group;
+			synchronized (this) {
+				while (unflushed.isEmpty() && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						closed = true;
+					}
+				}
+				if (unflushed.isEmpty()) {
+					buffer.force();
+					return;
+				}
+				toForce = buffer;
+				group = unflushed;
+				unflushed = new ArrayList<SettableFuture<Void>>();
+			}
+			// Records appended while this runs wait for the next pass and share its flush.
+			try {
+				toForce.force();
+				flushes.incrementAndGet();
+				for (SettableFuture<Void> flushed : group) {
+					flushed.set(null);
+				}
+			} catch (RuntimeException e) {
+				logger.log(Level.SEVERE, "DID journal flush failed", e);
+				for (SettableFuture<Void> flushed : group) {
+					flushed.setException(e);
+				}
+			}
+		}
+	}
+
+	/** Records appended since the journal was opened. */
+	long getRecordCount() {
+		return records.get();
+	}
+
+	/** Disk flushes made for them; the ratio is the average group size. */
+	long getFlushCount() {
+		return flushes.get();
+	}
+
+	File getFile() {
+		return file;
+	}
+}
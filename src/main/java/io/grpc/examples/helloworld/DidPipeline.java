@@ -0,0 +1,637 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.SignedTransaction;
+import foundation.icon.icx.Transaction;
+import foundation.icon.icx.TransactionBuilder;
+import foundation.icon.icx.Wallet;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Bytes;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.Request;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Submits {@code create_did_from_pubkey} transactions through three stages connected by bounded
+ * queues:
+ *
+ * <ol>
+ *   <li>build: picks the next wallet of the {@link SignerPool} and a nonce from the
+ *       {@link NonceManager} and builds the transaction;
+ *   <li>sign: signs whatever is queued, up to {@code maxBatchSize} transactions at a time, on a
+ *       {@link SigningEngine} with one thread per core by default;
+ *   <li>submit: sends whatever is signed, up to {@code maxBatchSize} transactions per JSON-RPC
+ *       batch, without waiting for the node's answer.
+ * </ol>
+ *
+ * <p>A stage whose output queue is full waits, so a slow stage backs up into the admission queue;
+ * once that is full, {@link #submit} fails fast with {@link RejectedExecutionException}.
+ *
+ * <p>When a {@link ReceiptTracker} is configured, every accepted transaction is handed to it so
+ * that its result can be watched.
+ */
+public class DidPipeline {
+	/** Most public keys one {@code CreateDIDs} call may send, so that its summary stays small. */
+	public static final int MAX_DIDS_PER_CALL = 10_000;
+
+	private static final Logger logger = Logger.getLogger(DidPipeline.class.getName());
+	private static final BigInteger STEP_LIMIT = new BigInteger("1000000");
+	/** Longest the submit stage holds a group back for members that are still being signed. */
+	private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final Function<RpcItem, Bytes> AS_BYTES = new Function<RpcItem, Bytes>() {
+		@Override
+		public Bytes apply(RpcItem item) {
+			return Converters.BYTES.convertTo(item);
+		}
+	};
+
+	private final IconClient iconClient;
+	private final SignerPool signers;
+	private final NonceManager nonces;
+	private final BigInteger networkId;
+	private final Address scoreAddress;
+	private final int signThreads;
+	private final int maxBatchSize;
+	private final int queueCapacity;
+	private final ReceiptTracker receiptTracker;
+
+	private final BlockingQueue<Job> buildQueue;
+	private final BlockingQueue<Job> signQueue;
+	private final BlockingQueue<Job> submitQueue;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong upstreamCalls = new AtomicLong();
+
+	private ExecutorService workers;
+	private SigningEngine signingEngine;
+	private volatile boolean running;
+
+	private DidPipeline(Builder builder) {
+		this.iconClient = builder.iconClient;
+		this.signers = builder.signers;
+		this.nonces = builder.nonces;
+		this.networkId = builder.networkId;
+		this.scoreAddress = builder.scoreAddress;
+		this.signThreads = builder.signThreads;
+		this.maxBatchSize = builder.maxBatchSize;
+		this.queueCapacity = builder.queueCapacity;
+		this.receiptTracker = builder.receiptTracker;
+		this.buildQueue = new ArrayBlockingQueue<Job>(builder.queueCapacity);
+		this.signQueue = new ArrayBlockingQueue<Job>(builder.queueCapacity);
+		this.submitQueue = new ArrayBlockingQueue<Job>(builder.queueCapacity);
+	}
+
+	public static Builder newBuilder(IconClient iconClient, SignerPool signers) {
+		return new Builder(iconClient, signers);
+	}
+
+	public synchronized DidPipeline start() {
+		if (workers != null) {
+			throw new IllegalStateException("Already started");
+		}
+		workers = Executors.newFixedThreadPool(3,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("did-pipeline-%d").build());
+		final SigningEngine engine = new SigningEngine(signThreads).start();
+		signingEngine = engine;
+		workers.execute(new Stage(buildQueue) {
+			@Override
+			void process(Job job) throws InterruptedException {
+				build(job);
+				signQueue.put(job);
+			}
+		});
+		workers.execute(new Stage(signQueue) {
+			@Override
+			void process(Job job) throws InterruptedException {
+				List<Job> batch = new ArrayList<Job>(maxBatchSize);
+				batch.add(job);
+				signQueue.drainTo(batch, maxBatchSize - 1);
+				sign(engine, batch);
+			}
+		});
+		workers.execute(new Stage(submitQueue) {
+			@Override
+			void process(Job job) {
+				List<Job> batch = new ArrayList<Job>(maxBatchSize);
+				batch.add(job);
+				if (job.group != null) {
+					fillGroup(batch, job.group);
+				} else {
+					submitQueue.drainTo(batch, maxBatchSize - 1);
+				}
+				send(batch);
+			}
+		});
+		running = true;
+		return this;
+	}
+
+	/** Stops the stages and fails every transaction that was not sent yet. */
+	public synchronized void shutdown() {
+		if (workers == null) {
+			return;
+		}
+		running = false;
+		workers.shutdownNow();
+		workers = null;
+		signingEngine.shutdown();
+		signingEngine = null;
+		failQueued(buildQueue);
+		failQueued(signQueue);
+		failQueued(submitQueue);
+	}
+
+	private static void failQueued(BlockingQueue<Job> queue) {
+		List<Job> jobs = new ArrayList<Job>();
+		queue.drainTo(jobs);
+		for (Job job : jobs) {
+			job.result.setException(new RejectedExecutionException("DID pipeline shut down"));
+			job.doneSigning();
+		}
+	}
+
+	/**
+	 * Queues a DID creation for {@code publicKey} and returns the hash of its transaction once the
+	 * node accepted it.
+	 */
+	public ListenableFuture<Bytes> submit(String publicKey) {
+		return submit(new Job(publicKey, null));
+	}
+
+	/**
+	 * Queues DID creations for all of {@code publicKeys} and returns the hashes of their
+	 * transactions in the same order. The keys are sent together once all of them are signed, in
+	 * as few batches as {@code maxBatchSize} allows, rather than as each is signed.
+	 */
+	public List<ListenableFuture<Bytes>> submitAll(List<String> publicKeys) {
+		Group group = new Group(publicKeys.size());
+		List<ListenableFuture<Bytes>> hashes = new ArrayList<ListenableFuture<Bytes>>(publicKeys.size());
+		for (String publicKey : publicKeys) {
+			hashes.add(submit(new Job(publicKey, group)));
+		}
+		return hashes;
+	}
+
+	private ListenableFuture<Bytes> submit(Job job) {
+		if (!running) {
+			job.doneSigning();
+			return Futures.immediateFailedFuture(new RejectedExecutionException("DID pipeline not running"));
+		}
+		if (!buildQueue.offer(job)) {
+			job.doneSigning();
+			rejected.incrementAndGet();
+			return Futures.immediateFailedFuture(
+					new RejectedExecutionException("DID pipeline full: " + buildQueue.size() + " waiting"));
+		}
+		submitted.incrementAndGet();
+		if (!running) {
+			// Raced with shutdown after it emptied the queues.
+			failQueued(buildQueue);
+		}
+		if (receiptTracker != null) {
+			Futures.addCallback(job.result, new FutureCallback<Bytes>() {
+				@Override
+				public void onSuccess(Bytes hash) {
+					receiptTracker.track(hash);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+				}
+			}, MoreExecutors.directExecutor());
+		}
+		return job.result;
+	}
+
+	/**
+	 * Returns the request observer of a {@code CreateDIDs} stream. The stream reads public keys in
+	 * groups of {@code maxBatchSize} and {@link #submitAll submits} each group together, so it goes
+	 * upstream as one batch. It asks the client for the next group while at most one other is in
+	 * the pipeline, so one batch fills while the previous one is in flight. The summary lists the
+	 * outcome of every key in request order; a key the pipeline refused is reported as failed
+	 * rather than ending the stream. Created DIDs are recorded in {@code didIndex} unless it is
+	 * null. Must be called from the RPC method.
+	 */
+	public StreamObserver<CreateDIDRequest> stream(ServerCallStreamObserver<CreateDIDsReply> responseObserver,
+			DidIndex didIndex) {
+		DidStream stream = new DidStream(responseObserver, didIndex);
+		stream.start();
+		return stream;
+	}
+
+	/**
+	 * Signs {@code batch} on {@code engine} and queues the jobs for submission in order. A job
+	 * that fails to sign fails alone.
+	 */
+	private void sign(SigningEngine engine, List<Job> batch) throws InterruptedException {
+		List<Transaction> transactions = new ArrayList<Transaction>(batch.size());
+		List<Wallet> wallets = new ArrayList<Wallet>(batch.size());
+		for (Job job : batch) {
+			transactions.add(job.transaction);
+			wallets.add(job.signer);
+		}
+		List<ListenableFuture<SignedTransaction>> signed;
+		try {
+			signed = engine.signAll(transactions, wallets);
+		} catch (RuntimeException e) {
+			for (Job job : batch) {
+				job.result.setException(e);
+				job.doneSigning();
+			}
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			Job job = batch.get(i);
+			try {
+				job.signed = signed.get(i).get();
+				submitQueue.put(job);
+			} catch (ExecutionException e) {
+				job.result.setException(e.getCause());
+			} catch (InterruptedException e) {
+				// Shutting down: every job not queued yet fails.
+				for (Job unsigned : batch.subList(i, batch.size())) {
+					unsigned.result.setException(new RejectedExecutionException("DID pipeline shut down"));
+					unsigned.doneSigning();
+				}
+				throw e;
+			}
+			job.doneSigning();
+		}
+	}
+
+	/** Adds signed jobs to {@code batch} until it is full or every job of {@code group} is in it. */
+	private void fillGroup(List<Job> batch, Group group) {
+		long deadline = System.nanoTime() + MAX_GROUP_WAIT_NANOS;
+		try {
+			while (batch.size() < maxBatchSize) {
+				// Members are counted as signed only once they are queued, so read the count first.
+				boolean allSigned = group.unsigned.get() == 0;
+				submitQueue.drainTo(batch, maxBatchSize - batch.size());
+				long remaining = deadline - System.nanoTime();
+				if (allSigned || batch.size() >= maxBatchSize || remaining <= 0) {
+					return;
+				}
+				Job next = submitQueue.poll(remaining, TimeUnit.NANOSECONDS);
+				if (next != null) {
+					batch.add(next);
+				}
+			}
+		} catch (InterruptedException e) {
+			// Shutting down: send what was taken, and let the stage stop on its next take.
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void build(Job job) {
+		job.signer = signers.next();
+		Address from = job.signer.getAddress();
+		RpcObject params = new RpcObject.Builder().put("publickey", new RpcValue(job.publicKey)).build();
+		job.transaction = TransactionBuilder.newBuilder()
+				.nid(networkId)
+				.from(from)
+				.to(scoreAddress)
+				.value(BigInteger.ZERO)
+				.stepLimit(STEP_LIMIT)
+				.timestamp(BigInteger.valueOf(System.currentTimeMillis() * 1000L))
+				.nonce(nonces.next(from))
+				.call("create_did_from_pubkey")
+				.params(params)
+				.build();
+	}
+
+	private void send(List<Job> batch) {
+		upstreamCalls.incrementAndGet();
+		try {
+			if (batch.size() == 1) {
+				Job job = batch.get(0);
+				job.result.setFuture(iconClient.executeAsync(iconClient.getIconService().sendTransaction(job.signed)));
+				return;
+			}
+			List<Request> requests = new ArrayList<Request>(batch.size());
+			for (Job job : batch) {
+				requests.add(iconClient.newRequest("icx_sendTransaction", job.signed.getProperties()));
+			}
+			List<ListenableFuture<RpcItem>> results = iconClient.executeBatchAsync(requests);
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).result.setFuture(
+						Futures.transform(results.get(i), AS_BYTES, MoreExecutors.directExecutor()));
+			}
+		} catch (RuntimeException e) {
+			for (Job job : batch) {
+				job.result.setException(e);
+			}
+		}
+	}
+
+	/** Number of DID creations accepted by {@link #submit}. */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	/** Number of DID creations refused because the pipeline was full. */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/** Number of HTTP requests sent to the node, single or batched. */
+	public long getUpstreamCallCount() {
+		return upstreamCalls.get();
+	}
+
+	private final class DidStream implements StreamObserver<CreateDIDRequest> {
+		/** Groups in the pipeline before the stream stops reading. */
+		private static final int MAX_GROUPS_IN_FLIGHT = 2;
+
+		private final ServerCallStreamObserver<CreateDIDsReply> observer;
+		private final DidIndex didIndex;
+		private final int groupSize = Math.min(maxBatchSize, queueCapacity);
+		// Guarded by this; in request order.
+		private final List<String> publicKeys = new ArrayList<String>();
+		private final List<ListenableFuture<Bytes>> hashes = new ArrayList<ListenableFuture<Bytes>>();
+		// Guarded by this.
+		private List<String> group = new ArrayList<String>();
+		private int groupsInFlight;
+		/** Keys asked from the client and not yet received. */
+		private int requested;
+		private boolean halfClosed;
+		private boolean closed;
+
+		DidStream(ServerCallStreamObserver<CreateDIDsReply> observer, DidIndex didIndex) {
+			this.observer = observer;
+			this.didIndex = didIndex;
+		}
+
+		void start() {
+			observer.disableAutoInboundFlowControl();
+			observer.setOnCancelHandler(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (DidStream.this) {
+						closed = true;
+					}
+				}
+			});
+			synchronized (this) {
+				requestMore();
+			}
+		}
+
+		@Override
+		public synchronized void onNext(CreateDIDRequest request) {
+			requested--;
+			if (closed) {
+				return;
+			}
+			if (publicKeys.size() >= MAX_DIDS_PER_CALL) {
+				closed = true;
+				observer.onError(Status.INVALID_ARGUMENT
+						.withDescription("Send at most " + MAX_DIDS_PER_CALL + " public keys per call")
+						.asRuntimeException());
+				return;
+			}
+			publicKeys.add(request.getPublickey());
+			group.add(request.getPublickey());
+			if (group.size() == groupSize) {
+				submitGroup();
+			}
+			requestMore();
+		}
+
+		@Override
+		public synchronized void onError(Throwable t) {
+			closed = true;
+		}
+
+		@Override
+		public synchronized void onCompleted() {
+			halfClosed = true;
+			if (!closed && !group.isEmpty()) {
+				submitGroup();
+			}
+			finishIfDone();
+		}
+
+		private void submitGroup() {
+			List<ListenableFuture<Bytes>> groupHashes = submitAll(group);
+			group = new ArrayList<String>();
+			hashes.addAll(groupHashes);
+			groupsInFlight++;
+			Futures.successfulAsList(groupHashes).addListener(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (DidStream.this) {
+						groupsInFlight--;
+						finishIfDone();
+						requestMore();
+					}
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		private void finishIfDone() {
+			if (!closed && halfClosed && groupsInFlight == 0) {
+				closed = true;
+				observer.onNext(summary());
+				observer.onCompleted();
+			}
+		}
+
+		/** Asks for the rest of the current group while there is room for it in the pipeline. */
+		private void requestMore() {
+			int more = groupSize - group.size() - requested;
+			if (!closed && !halfClosed && groupsInFlight < MAX_GROUPS_IN_FLIGHT && more > 0) {
+				requested += more;
+				observer.request(more);
+			}
+		}
+
+		private CreateDIDsReply summary() {
+			CreateDIDsReply.Builder summary = CreateDIDsReply.newBuilder();
+			for (int i = 0; i < hashes.size(); i++) {
+				CreateDIDReply.Builder reply = CreateDIDReply.newBuilder();
+				try {
+					String hash = Futures.getDone(hashes.get(i)).toString();
+					reply.setMessage("Send ICX result = ").setTxhash(hash);
+					summary.setSubmitted(summary.getSubmitted() + 1);
+					if (didIndex != null) {
+						// DIDs created here are the public key itself.
+						didIndex.record(publicKeys.get(i), publicKeys.get(i), "", hash);
+					}
+				} catch (ExecutionException e) {
+					if (!(e.getCause() instanceof RejectedExecutionException)) {
+						logger.log(Level.WARNING, "DID creation failed", e.getCause());
+					}
+					reply.setMessage(String.valueOf(e.getCause().getMessage()));
+					summary.setFailed(summary.getFailed() + 1);
+				}
+				summary.addDid(reply);
+			}
+			return summary.build();
+		}
+	}
+
+	private static final class Job {
+		final String publicKey;
+		/** Jobs to send along with this one, or null. */
+		final Group group;
+		final SettableFuture<Bytes> result = SettableFuture.create();
+		final AtomicBoolean signingDone = new AtomicBoolean();
+		Wallet signer;
+		Transaction transaction;
+		SignedTransaction signed;
+
+		Job(String publicKey, Group group) {
+			this.publicKey = publicKey;
+			this.group = group;
+		}
+
+		/** Called once the job is queued for submission or failed before that; repeats are ignored. */
+		void doneSigning() {
+			if (group != null && signingDone.compareAndSet(false, true)) {
+				group.unsigned.decrementAndGet();
+			}
+		}
+	}
+
+	/** Jobs submitted together, which the submit stage holds back until all of them are signed. */
+	private static final class Group {
+		final AtomicInteger unsigned;
+
+		Group(int size) {
+			this.unsigned = new AtomicInteger(size);
+		}
+	}
+
+	/** Takes jobs from one queue until interrupted; a job that throws fails on its own. */
+	private abstract static class Stage implements Runnable {
+		private final BlockingQueue<Job> input;
+
+		Stage(BlockingQueue<Job> input) {
+			this.input = input;
+		}
+
+		abstract void process(Job job) throws InterruptedException;
+
+		@Override
+		public void run() {
+			while (true) {
+				Job job;
+				try {
+					job = input.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					process(job);
+				} catch (InterruptedException e) {
+					job.result.setException(new RejectedExecutionException("DID pipeline shut down"));
+					job.doneSigning();
+					return;
+				} catch (RuntimeException e) {
+					job.result.setException(e);
+					job.doneSigning();
+				}
+			}
+		}
+	}
+
+	public static final class Builder {
+		private final IconClient iconClient;
+		private final SignerPool signers;
+		private NonceManager nonces = new NonceManager();
+		private BigInteger networkId = new BigInteger(CommonData.TESTNET_NID);
+		private Address scoreAddress = new Address(CommonData.DID_SCORE_ADDRESS);
+		private int signThreads = Runtime.getRuntime().availableProcessors();
+		private int queueCapacity = 1024;
+		private int maxBatchSize = 100;
+		private ReceiptTracker receiptTracker;
+
+		private Builder(IconClient iconClient, SignerPool signers) {
+			this.iconClient = iconClient;
+			this.signers = signers;
+		}
+
+		public Builder nonceManager(NonceManager nonces) {
+			this.nonces = nonces;
+			return this;
+		}
+
+		/** Defaults to the testnet. */
+		public Builder networkId(BigInteger networkId) {
+			this.networkId = networkId;
+			return this;
+		}
+
+		/** Defaults to {@link CommonData#DID_SCORE_ADDRESS}. */
+		public Builder scoreAddress(Address scoreAddress) {
+			this.scoreAddress = scoreAddress;
+			return this;
+		}
+
+		/** Threads of the signing engine, defaults to the number of cores. */
+		public Builder signThreads(int signThreads) {
+			if (signThreads < 1) {
+				throw new IllegalArgumentException("signThreads < 1: " + signThreads);
+			}
+			this.signThreads = signThreads;
+			return this;
+		}
+
+		/** Capacity of each queue between two stages, and of the admission queue. */
+		public Builder queueCapacity(int queueCapacity) {
+			if (queueCapacity < 1) {
+				throw new IllegalArgumentException("queueCapacity < 1: " + queueCapacity);
+			}
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		/** Most transactions sent in one JSON-RPC batch. */
+		public Builder maxBatchSize(int maxBatchSize) {
+			if (maxBatchSize < 1) {
+				throw new IllegalArgumentException("maxBatchSize < 1: " + maxBatchSize);
+			}
+			this.maxBatchSize = maxBatchSize;
+			return this;
+		}
+
+		/** Follows the result of every accepted transaction; none by default. */
+		public Builder receiptTracker(ReceiptTracker receiptTracker) {
+			this.receiptTracker = receiptTracker;
+			return this;
+		}
+
+		public DidPipeline build() {
+			return new DidPipeline(this);
+		}
+	}
+}
@@ -0,0 +1,392 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.ConfirmedTransaction;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.data.TransactionResult;
+import foundation.icon.icx.transport.jsonrpc.Request;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * Pushes event logs of SCOREs to {@code WatchEvents} streams from a single scan of each block, no
+ * matter how many streams are open.
+ *
+ * <p>Event logs are only found in transaction results, and fetching the result of every
+ * transaction would cost far more than the block. The scanner therefore uses {@link LogsBloom logs
+ * blooms} to fetch and decode as little as it can: a block whose bloom cannot hold any watched
+ * SCORE and signature is skipped without a call, the results of a block that might are fetched in
+ * JSON-RPC batches, and a result whose own bloom cannot match is not decoded. Blocks without a
+ * bloom only have the results of transactions sent to a watched SCORE fetched.
+ *
+ * <p>Blocks are scanned one at a time, in order, on the scanner thread, so every stream sees its
+ * events in chain order. A stream buffers at most {@link #MAX_PENDING_EVENTS} events its client has
+ * not taken; a client that falls further behind is ended with {@code RESOURCE_EXHAUSTED}.
+ */
+public class EventScanner implements BlockPoller.Listener {
+	private static final Logger logger = Logger.getLogger(EventScanner.class.getName());
+
+	/** Largest number of event signatures a single stream may filter on. */
+	public static final int MAX_SIGNATURES_PER_STREAM = 100;
+
+	/** Events a stream may hold while its client is not reading. */
+	static final int MAX_PENDING_EVENTS = 10_000;
+
+	/** Transaction results fetched per upstream call. */
+	static final int MAX_BATCH_SIZE = 100;
+
+	private final IconClient iconClient;
+	private final int maxStreams;
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+	private final AtomicLong blocksScanned = new AtomicLong();
+	private final AtomicLong blocksSkipped = new AtomicLong();
+	private final AtomicLong resultsDecoded = new AtomicLong();
+	private final AtomicLong resultsSkipped = new AtomicLong();
+	private final AtomicLong eventsDelivered = new AtomicLong();
+	private final AtomicLong upstreamCalls = new AtomicLong();
+
+	private ExecutorService executor;
+
+	/** @param maxStreams {@code WatchEvents} streams that may be open at once */
+	public EventScanner(IconClient iconClient, int maxStreams) {
+		this.iconClient = iconClient;
+		this.maxStreams = maxStreams;
+	}
+
+	public synchronized EventScanner start() {
+		if (executor != null) {
+			throw new IllegalStateException("Already started");
+		}
+		executor = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("event-scanner").build());
+		return this;
+	}
+
+	/** Stops scanning and ends every open stream. */
+	public void shutdown() {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+		for (Subscription subscription : subscriptions) {
+			subscription.complete();
+		}
+		subscriptions.clear();
+	}
+
+	/**
+	 * Starts streaming the events of {@code score} whose signature is one of {@code signatures}, or
+	 * every event of {@code score} when there are none, from the next block on. Must be called from
+	 * the RPC method so that the stream's handlers can still be set.
+	 *
+	 * @throws IllegalArgumentException if {@code score} is not an address
+	 */
+	public void subscribe(String score, List<String> signatures, ServerCallStreamObserver<EventNotification> observer) {
+		final Subscription subscription = new Subscription(score, signatures, observer);
+		synchronized (this) {
+			if (executor == null) {
+				observer.onError(Status.UNAVAILABLE.withDescription("Event scanner not running").asRuntimeException());
+				return;
+			}
+			if (subscriptions.size() >= maxStreams) {
+				observer.onError(Status.RESOURCE_EXHAUSTED
+						.withDescription("More than " + maxStreams + " event streams open").asRuntimeException());
+				return;
+			}
+			subscriptions.add(subscription);
+		}
+		observer.setOnCancelHandler(new Runnable() {
+			@Override
+			public void run() {
+				subscriptions.remove(subscription);
+			}
+		});
+		observer.setOnReadyHandler(new Runnable() {
+			@Override
+			public void run() {
+				subscription.drain();
+			}
+		});
+	}
+
+	@Override
+	public void onNewBlock(final Block block) {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		if (executor == null || subscriptions.isEmpty()) {
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					scan(block);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.log(Level.FINE, "Event scanner stopped before block " + block.getHeight(), e);
+		}
+	}
+
+	/** Delivers the watched events of {@code block}. */
+	void scan(Block block) {
+		List<Subscription> interested = new ArrayList<Subscription>(subscriptions);
+		byte[] blockBloom = LogsBloom.parse(property(block.getProperties(), "logsBloom"));
+		if (blockBloom != null) {
+			interested = mightMatch(interested, blockBloom);
+		}
+		List<String> hashes = new ArrayList<String>();
+		if (!interested.isEmpty()) {
+			Set<String> scores = new HashSet<String>();
+			for (Subscription subscription : interested) {
+				scores.add(subscription.score);
+			}
+			for (ConfirmedTransaction tx : block.getTransactions()) {
+				Address to = tx.getTo();
+				if (tx.getTxHash() != null
+						&& (blockBloom != null || to != null && scores.contains(to.toString().toLowerCase()))) {
+					hashes.add(tx.getTxHash().toString());
+				}
+			}
+		}
+		if (hashes.isEmpty()) {
+			blocksSkipped.incrementAndGet();
+			return;
+		}
+		blocksScanned.incrementAndGet();
+		for (int from = 0; from < hashes.size(); from += MAX_BATCH_SIZE) {
+			List<String> batch = hashes.subList(from, Math.min(hashes.size(), from + MAX_BATCH_SIZE));
+			List<RpcItem> results;
+			try {
+				results = fetch(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException | RuntimeException e) {
+				logger.log(Level.WARNING, "Failed to read " + batch.size() + " transaction results of block "
+						+ block.getHeight() + "; their events are not delivered", e);
+				continue;
+			}
+			for (RpcItem item : results) {
+				publish(Converters.TRANSACTION_RESULT.convertTo(item), block.getHeight(), interested);
+			}
+		}
+	}
+
+	private List<RpcItem> fetch(List<String> hashes) throws ExecutionException, InterruptedException {
+		List<Request> requests = new ArrayList<Request>(hashes.size());
+		for (String hash : hashes) {
+			RpcObject params = new RpcObject.Builder().put("txHash", new RpcValue(hash)).build();
+			requests.add(iconClient.newRequest("icx_getTransactionResult", params));
+		}
+		upstreamCalls.incrementAndGet();
+		return Futures.allAsList(iconClient.executeBatchAsync(requests)).get();
+	}
+
+	private void publish(TransactionResult result, BigInteger height, List<Subscription> interested) {
+		byte[] bloom = LogsBloom.parse(result.getLogsBloom());
+		List<Subscription> targets = bloom != null ? mightMatch(interested, bloom) : interested;
+		if (targets.isEmpty() || result.getEventLogs() == null) {
+			resultsSkipped.incrementAndGet();
+			return;
+		}
+		resultsDecoded.incrementAndGet();
+		for (TransactionResult.EventLog log : result.getEventLogs()) {
+			List<RpcItem> indexed = log.getIndexed();
+			if (log.getScoreAddress() == null || indexed == null || indexed.isEmpty()) {
+				continue;
+			}
+			String score = log.getScoreAddress().toLowerCase();
+			String signature = text(indexed.get(0));
+			EventNotification event = null;
+			for (Subscription subscription : targets) {
+				if (!subscription.matches(score, signature)) {
+					continue;
+				}
+				if (event == null) {
+					EventNotification.Builder builder = EventNotification.newBuilder()
+							.setScore(score)
+							.setSignature(signature)
+							.setTxhash(result.getTxHash() != null ? result.getTxHash().toString() : "")
+							.setBlockHeight(height.longValue());
+					for (RpcItem argument : indexed.subList(1, indexed.size())) {
+						builder.addIndexed(text(argument));
+					}
+					if (log.getData() != null) {
+						for (RpcItem argument : log.getData()) {
+							builder.addData(text(argument));
+						}
+					}
+					event = builder.build();
+				}
+				if (subscription.offer(event)) {
+					eventsDelivered.incrementAndGet();
+				} else {
+					subscriptions.remove(subscription);
+				}
+			}
+		}
+	}
+
+	private static List<Subscription> mightMatch(List<Subscription> subscriptions, byte[] bloom) {
+		List<Subscription> matching = new ArrayList<Subscription>();
+		for (Subscription subscription : subscriptions) {
+			if (subscription.mightMatch(bloom)) {
+				matching.add(subscription);
+			}
+		}
+		return matching;
+	}
+
+	private static String property(RpcObject properties, String key) {
+		RpcItem item = properties != null ? properties.getItem(key) : null;
+		return item instanceof RpcValue ? item.asString() : null;
+	}
+
+	private static String text(RpcItem item) {
+		if (!(item instanceof RpcValue)) {
+			return item == null ? "" : item.toString();
+		}
+		String value = item.asString();
+		return value != null ? value : "";
+	}
+
+	/** Number of open {@code WatchEvents} streams. */
+	public int getStreamCount() {
+		return subscriptions.size();
+	}
+
+	/** Number of blocks whose transaction results were read. */
+	public long getScannedCount() {
+		return blocksScanned.get();
+	}
+
+	/** Number of blocks skipped without reading any transaction result. */
+	public long getSkippedCount() {
+		return blocksSkipped.get();
+	}
+
+	/** Number of transaction results whose event logs were decoded. */
+	public long getDecodedCount() {
+		return resultsDecoded.get();
+	}
+
+	/** Number of events sent, counting each stream that received one. */
+	public long getDeliveredCount() {
+		return eventsDelivered.get();
+	}
+
+	public long getUpstreamCallCount() {
+		return upstreamCalls.get();
+	}
+
+	@Override
+	public String toString() {
+		return "streams=" + getStreamCount() + ", blocks scanned=" + blocksScanned.get() + ", skipped="
+				+ blocksSkipped.get() + ", results decoded=" + resultsDecoded.get() + ", skipped="
+				+ resultsSkipped.get() + ", events delivered=" + eventsDelivered.get() + ", upstream calls="
+				+ upstreamCalls.get();
+	}
+
+	/** One {@code WatchEvents} stream and the events its client has not taken yet. */
+	private static final class Subscription {
+		final String score;
+		private final Set<String> signatures;
+		private final int[] scoreBits;
+		private final List<int[]> signatureBits = new ArrayList<int[]>();
+		private final ServerCallStreamObserver<EventNotification> observer;
+		// Guarded by this.
+		private final ArrayDeque<EventNotification> pending = new ArrayDeque<EventNotification>();
+		private boolean closed;
+
+		Subscription(String score, List<String> signatures, ServerCallStreamObserver<EventNotification> observer) {
+			this.score = score.trim().toLowerCase();
+			this.scoreBits = LogsBloom.scoreBits(this.score);
+			this.signatures = new LinkedHashSet<String>(signatures);
+			for (String signature : this.signatures) {
+				signatureBits.add(LogsBloom.signatureBits(signature));
+			}
+			this.observer = observer;
+		}
+
+		boolean mightMatch(byte[] bloom) {
+			if (!LogsBloom.mightContain(bloom, scoreBits)) {
+				return false;
+			}
+			if (signatureBits.isEmpty()) {
+				return true;
+			}
+			for (int[] bits : signatureBits) {
+				if (LogsBloom.mightContain(bloom, bits)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean matches(String eventScore, String signature) {
+			return score.equals(eventScore) && (signatures.isEmpty() || signatures.contains(signature));
+		}
+
+		/** Queues {@code event}; returns false once the stream is closed. */
+		boolean offer(EventNotification event) {
+			synchronized (this) {
+				if (closed || observer.isCancelled()) {
+					return false;
+				}
+				if (pending.size() >= MAX_PENDING_EVENTS) {
+					closed = true;
+					pending.clear();
+					observer.onError(Status.RESOURCE_EXHAUSTED
+							.withDescription("More than " + MAX_PENDING_EVENTS + " events not read").asRuntimeException());
+					return false;
+				}
+				pending.add(event);
+			}
+			drain();
+			return true;
+		}
+
+		synchronized void drain() {
+			while (!closed && !observer.isCancelled() && !pending.isEmpty() && observer.isReady()) {
+				observer.onNext(pending.poll());
+			}
+		}
+
+		synchronized void complete() {
+			if (closed || observer.isCancelled()) {
+				return;
+			}
+			closed = true;
+			pending.clear();
+			observer.onCompleted();
+		}
+	}
+}
@@ -0,0 +1,564 @@
+package io.grpc.examples.helloworld;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.grpc.Channel;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+
+/**
+ * Puts a running {@link HelloWorldServer} under a weighted mix of Greeter calls and complete
+ * {@link OnboardingWorkflow onboarding} scenarios for a fixed time, and reports latency
+ * percentiles and failures by status code for each of them as JSON.
+ *
+ * <p>In the closed loop, a fixed number of calls is kept outstanding and each completed call
+ * issues the next one, optionally paced so that all of them together do not exceed the target
+ * rate. In the open loop, calls are issued at the target rate whether or not earlier ones have
+ * replied, and latency is measured from when a call was due rather than when it was sent, so that
+ * a stalled server is not hidden by the generator slowing down with it. Calls due while as many as
+ * the concurrency are outstanding are not sent and are reported as {@code SHED}.
+ *
+ * <p>Usage: {@code greeter-load-generator [--target=HOST:PORT] [--mode=open|closed] [--qps=N]
+ * [--concurrency=N] [--duration-s=N] [--warmup-s=N] [--mix=SCENARIO:WEIGHT,...]
+ * [--output=FILE]}, where a scenario is one of {@code say-hello}, {@code create-key-wallet},
+ * {@code create-keystore-file}, {@code check-balance}, {@code send-icx}, {@code create-did},
+ * {@code lookup-did} or {@code onboarding}.
+ */
+public class GreeterLoadGenerator {
+	private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+	private static final long DRAIN_SECONDS = 30;
+	private static final String SHED = "SHED";
+
+	/** What one unit of load does. */
+	public enum Scenario {
+		SAY_HELLO {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.sayHello(HelloRequest.newBuilder().setName("load-" + n).build());
+			}
+		},
+		CREATE_KEY_WALLET {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.createKeyWallet(CreateKeyWalletRequest.getDefaultInstance());
+			}
+		},
+		CREATE_KEYSTORE_FILE {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.createKeystoreFile(CreateKeystoreFileRequest.newBuilder()
+						.setPrivatekey(String.format("%064x", n + 1)).setPassword(CommonData.PASSWORD).build());
+			}
+		},
+		CHECK_BALANCE {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.checkBalance(
+						CheckBalanceRequest.newBuilder().setAddress(GreeterLoadHarness.address(n)).build());
+			}
+		},
+		SEND_ICX {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.sendICX(SendIcxRequest.getDefaultInstance());
+			}
+		},
+		CREATE_DID {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.createDID(CreateDIDRequest.newBuilder().setPublickey(String.format("%066x", n)).build());
+			}
+		},
+		LOOKUP_DID {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return stub.lookupDID(LookupDIDRequest.newBuilder().setPublickey(String.format("%066x", n)).build());
+			}
+		},
+		/** All the calls of {@link HelloWorldClient#greet}, as an {@link OnboardingWorkflow}. */
+		ONBOARDING {
+			@Override
+			ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n) {
+				return workflow.run("load-" + n);
+			}
+		};
+
+		abstract ListenableFuture<?> start(GreeterGrpc.GreeterFutureStub stub, OnboardingWorkflow workflow, int n);
+
+		String label() {
+			return name().toLowerCase().replace('_', '-');
+		}
+
+		static Scenario parse(String label) {
+			return valueOf(label.trim().toUpperCase().replace('-', '_'));
+		}
+	}
+
+	private final GreeterGrpc.GreeterFutureStub stub;
+	private final OnboardingWorkflow workflow;
+	private final Map<Scenario, Integer> mix;
+	private final boolean openLoop;
+	private final double qps;
+	private final int concurrency;
+	private final long durationNanos;
+	private final long warmupNanos;
+
+	private GreeterLoadGenerator(Builder builder) {
+		this.stub = GreeterGrpc.newFutureStub(builder.channel);
+		this.workflow = OnboardingWorkflow.newBuilder(builder.channel).build();
+		this.mix = Collections.unmodifiableMap(new EnumMap<Scenario, Integer>(builder.mix));
+		this.openLoop = builder.openLoop;
+		this.qps = builder.qps;
+		this.concurrency = builder.concurrency;
+		this.durationNanos = builder.durationNanos;
+		this.warmupNanos = builder.warmupNanos;
+	}
+
+	public static Builder newBuilder(Channel channel) {
+		return new Builder(channel);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String target = "localhost:50051";
+		String output = null;
+		List<String> options = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--target=")) {
+				target = arg.substring("--target=".length());
+			} else if (arg.startsWith("--output=")) {
+				output = arg.substring("--output=".length());
+			} else {
+				options.add(arg);
+			}
+		}
+
+		ManagedChannel channel = ManagedChannelBuilder.forTarget(target).usePlaintext().build();
+		try {
+			Builder builder = newBuilder(channel);
+			for (String arg : options) {
+				String value = arg.substring(arg.indexOf('=') + 1);
+				if (arg.startsWith("--mode=")) {
+					if (!"open".equals(value) && !"closed".equals(value)) {
+						throw new IllegalArgumentException("--mode must be open or closed: " + value);
+					}
+					builder.openLoop("open".equals(value));
+				} else if (arg.startsWith("--qps=")) {
+					builder.qps(Double.parseDouble(value));
+				} else if (arg.startsWith("--concurrency=")) {
+					builder.concurrency(Integer.parseInt(value));
+				} else if (arg.startsWith("--duration-s=")) {
+					builder.duration(Long.parseLong(value), TimeUnit.SECONDS);
+				} else if (arg.startsWith("--warmup-s=")) {
+					builder.warmup(Long.parseLong(value), TimeUnit.SECONDS);
+				} else if (arg.startsWith("--mix=")) {
+					builder.mix(value);
+				} else {
+					System.err.println("Unknown argument: " + arg);
+					System.exit(1);
+				}
+			}
+			ObjectNode report = builder.build().run();
+			report.put("target", target);
+			printSummary(System.err, report);
+			ObjectMapper mapper = new ObjectMapper();
+			if (output == null) {
+				System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+			} else {
+				mapper.writerWithDefaultPrettyPrinter().writeValue(new File(output), report);
+			}
+		} finally {
+			channel.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the load for the warm-up and the duration, waits for outstanding calls and returns the
+	 * report of the calls that were due after the warm-up.
+	 */
+	public ObjectNode run() throws InterruptedException {
+		Run run = new Run();
+		run.execute();
+		return run.report();
+	}
+
+	/** Latencies of successful calls, and failures by status, of one scenario or onboarding step. */
+	private static final class Stats {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+		final AtomicLong errorCount = new AtomicLong();
+
+		void fail(String code) {
+			AtomicLong count = errors.get(code);
+			if (count == null) {
+				AtomicLong created = new AtomicLong();
+				count = errors.putIfAbsent(code, created);
+				if (count == null) {
+					count = created;
+				}
+			}
+			count.incrementAndGet();
+			errorCount.incrementAndGet();
+		}
+
+		ObjectNode toJson() {
+			ObjectNode json = NODES.objectNode();
+			json.put("count", latency.getCount() + errorCount.get());
+			json.put("errors", errorCount.get());
+			ObjectNode millis = json.putObject("latencyMs");
+			millis.put("p50", latency.getValueAtPercentile(50));
+			millis.put("p90", latency.getValueAtPercentile(90));
+			millis.put("p99", latency.getValueAtPercentile(99));
+			millis.put("p999", latency.getValueAtPercentile(99.9));
+			millis.put("max", latency.getValueAtPercentile(100));
+			millis.put("mean", latency.getMeanMillis());
+			ObjectNode byStatus = json.putObject("errorsByStatus");
+			for (Map.Entry<String, AtomicLong> error : errors.entrySet()) {
+				byStatus.put(error.getKey(), error.getValue().get());
+			}
+			return json;
+		}
+	}
+
+	/** One run of the load. */
+	private final class Run {
+		private final Scenario[] picks;
+		private final Map<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+		private final AtomicInteger sequence = new AtomicInteger();
+		private final AtomicLong ticket = new AtomicLong();
+		private final Semaphore outstanding = new Semaphore(concurrency);
+		private final ScheduledExecutorService pacer = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("load-pacer").build());
+		private final long intervalNanos = qps > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / qps) : 0;
+		private long start;
+		private long elapsedNanos;
+
+		Run() {
+			List<Scenario> weighted = new ArrayList<Scenario>();
+			for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+				for (int i = 0; i < entry.getValue(); i++) {
+					weighted.add(entry.getKey());
+				}
+				stats(entry.getKey().label());
+			}
+			picks = weighted.toArray(new Scenario[0]);
+		}
+
+		void execute() throws InterruptedException {
+			start = System.nanoTime();
+			try {
+				if (openLoop) {
+					openLoop();
+				} else {
+					closedLoop();
+				}
+			} finally {
+				pacer.shutdownNow();
+			}
+			elapsedNanos = System.nanoTime() - start - warmupNanos;
+		}
+
+		private void openLoop() throws InterruptedException {
+			final Runnable release = new Runnable() {
+				@Override
+				public void run() {
+					outstanding.release();
+				}
+			};
+			for (long i = 0;; i++) {
+				long due = start + i * intervalNanos;
+				if (due - start >= warmupNanos + durationNanos) {
+					break;
+				}
+				long wait;
+				while ((wait = due - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				if (outstanding.tryAcquire()) {
+					issue(due, false, release);
+				} else if (due - start >= warmupNanos) {
+					stats(pick().label()).fail(SHED);
+				}
+			}
+			if (!outstanding.tryAcquire(concurrency, DRAIN_SECONDS, TimeUnit.SECONDS)) {
+				System.err.println("Calls still outstanding after " + DRAIN_SECONDS + " s; not waiting for them");
+			}
+		}
+
+		private void closedLoop() throws InterruptedException {
+			final CountDownLatch done = new CountDownLatch(concurrency);
+			for (int i = 0; i < concurrency; i++) {
+				next(done);
+			}
+			done.await();
+		}
+
+		/** Issues the next call of a closed-loop chain, waiting for its turn if the rate is capped. */
+		private void next(final CountDownLatch done) {
+			long due = intervalNanos > 0 ? start + ticket.getAndIncrement() * intervalNanos : System.nanoTime();
+			if (due - start >= warmupNanos + durationNanos) {
+				done.countDown();
+				return;
+			}
+			final Runnable after = new Runnable() {
+				@Override
+				public void run() {
+					next(done);
+				}
+			};
+			long wait = due - System.nanoTime();
+			if (wait <= 0) {
+				issue(System.nanoTime(), true, after);
+				return;
+			}
+			pacer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					issue(System.nanoTime(), true, after);
+				}
+			}, wait, TimeUnit.NANOSECONDS);
+		}
+
+		/** Starts one scenario due at {@code due}, and runs {@code after} once it has completed. */
+		private void issue(final long due, final boolean sentAtDue, final Runnable after) {
+			final Scenario scenario = pick();
+			final long sent = System.nanoTime();
+			ListenableFuture<?> call;
+			try {
+				call = scenario.start(stub, workflow, sequence.getAndIncrement());
+			} catch (RuntimeException e) {
+				call = Futures.immediateFailedFuture(e);
+			}
+			Futures.addCallback(call, new FutureCallback<Object>() {
+				@Override
+				public void onSuccess(Object reply) {
+					if (due - start >= warmupNanos) {
+						record(scenario, sentAtDue ? sent : due, reply);
+					}
+					after.run();
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					if (due - start >= warmupNanos) {
+						stats(scenario.label()).fail(Status.fromThrowable(t).getCode().name());
+					}
+					after.run();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		private void record(Scenario scenario, long from, Object reply) {
+			long latency = System.nanoTime() - from;
+			Stats scenarioStats = stats(scenario.label());
+			if (!(reply instanceof OnboardingWorkflow.Result)) {
+				scenarioStats.latency.record(latency);
+				return;
+			}
+			// A workflow with failed steps counts as failed with the status of its first failure.
+			OnboardingWorkflow.Result result = (OnboardingWorkflow.Result) reply;
+			for (OnboardingWorkflow.Step step : OnboardingWorkflow.Step.values()) {
+				Stats stepStats = stats(scenario.label() + "/" + step.name().toLowerCase().replace('_', '-'));
+				Status failure = result.getFailure(step);
+				if (failure != null) {
+					stepStats.fail(failure.getCode().name());
+				} else {
+					stepStats.latency.record(result.getStepElapsed(step, TimeUnit.NANOSECONDS));
+				}
+			}
+			if (result.isSuccessful()) {
+				scenarioStats.latency.record(latency);
+			} else {
+				scenarioStats.fail(result.getFailures().values().iterator().next().getCode().name());
+			}
+		}
+
+		private Scenario pick() {
+			return picks[ThreadLocalRandom.current().nextInt(picks.length)];
+		}
+
+		private Stats stats(String label) {
+			Stats existing = stats.get(label);
+			if (existing != null) {
+				return existing;
+			}
+			synchronized (stats) {
+				existing = stats.get(label);
+				if (existing == null) {
+					existing = new Stats();
+					stats.put(label, existing);
+				}
+				return existing;
+			}
+		}
+
+		ObjectNode report() {
+			ObjectNode report = NODES.objectNode();
+			report.put("mode", openLoop ? "open" : "closed");
+			report.put("targetQps", qps);
+			report.put("concurrency", concurrency);
+			report.put("durationSeconds", durationNanos / 1e9);
+			report.put("warmupSeconds", warmupNanos / 1e9);
+			ObjectNode weights = report.putObject("mix");
+			for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+				weights.put(entry.getKey().label(), entry.getValue());
+			}
+
+			LatencyHistogram all = new LatencyHistogram();
+			long errors = 0;
+			long shed = 0;
+			ObjectNode scenarios = NODES.objectNode();
+			List<String> labels = new ArrayList<String>(stats.keySet());
+			Collections.sort(labels);
+			for (String label : labels) {
+				Stats scenario = stats.get(label);
+				scenarios.set(label, scenario.toJson());
+				if (label.indexOf('/') < 0) {
+					all.add(scenario.latency);
+					errors += scenario.errorCount.get();
+					AtomicLong scenarioShed = scenario.errors.get(SHED);
+					shed += scenarioShed == null ? 0 : scenarioShed.get();
+				}
+			}
+			long completed = all.getCount() + errors - shed;
+			report.put("calls", completed);
+			report.put("errors", errors - shed);
+			report.put("shed", shed);
+			report.put("achievedQps", completed / Math.max(elapsedNanos / 1e9, 1e-9));
+			report.set("scenarios", scenarios);
+			return report;
+		}
+	}
+
+	private static void printSummary(PrintStream out, ObjectNode report) {
+		out.printf("mode=%s qps=%.0f (target %.0f) concurrency=%d calls=%d errors=%d shed=%d%n",
+				report.get("mode").asText(), report.get("achievedQps").asDouble(), report.get("targetQps").asDouble(),
+				report.get("concurrency").asInt(), report.get("calls").asLong(), report.get("errors").asLong(),
+				report.get("shed").asLong());
+		Iterator<Map.Entry<String, JsonNode>> scenarios =
+				report.get("scenarios").fields();
+		while (scenarios.hasNext()) {
+			Map.Entry<String, JsonNode> scenario = scenarios.next();
+			JsonNode millis = scenario.getValue().get("latencyMs");
+			out.printf("  %-36s n=%-8d p50=%.2f p99=%.2f p99.9=%.2f max=%.2f ms errors=%s%n", scenario.getKey(),
+					scenario.getValue().get("count").asLong(), millis.get("p50").asDouble(),
+					millis.get("p99").asDouble(), millis.get("p999").asDouble(), millis.get("max").asDouble(),
+					scenario.getValue().get("errorsByStatus"));
+		}
+	}
+
+	public static final class Builder {
+		private final Channel channel;
+		private final Map<Scenario, Integer> mix = new EnumMap<Scenario, Integer>(Scenario.class);
+		private boolean openLoop;
+		private double qps;
+		private int concurrency = 64;
+		private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+		private long warmupNanos = TimeUnit.SECONDS.toNanos(3);
+
+		private Builder(Channel channel) {
+			this.channel = channel;
+			mix.put(Scenario.SAY_HELLO, 4);
+			mix.put(Scenario.CHECK_BALANCE, 3);
+			mix.put(Scenario.CREATE_KEY_WALLET, 2);
+			mix.put(Scenario.ONBOARDING, 1);
+		}
+
+		/** Replaces the mix with {@code SCENARIO:WEIGHT,...}; a scenario without a weight has weight 1. */
+		public Builder mix(String mix) {
+			Map<Scenario, Integer> parsed = new EnumMap<Scenario, Integer>(Scenario.class);
+			for (String entry : mix.split(",")) {
+				int colon = entry.indexOf(':');
+				int weight = colon < 0 ? 1 : Integer.parseInt(entry.substring(colon + 1).trim());
+				if (weight < 0) {
+					throw new IllegalArgumentException("Negative weight: " + entry);
+				}
+				if (weight > 0) {
+					parsed.put(Scenario.parse(colon < 0 ? entry : entry.substring(0, colon)), weight);
+				}
+			}
+			if (parsed.isEmpty()) {
+				throw new IllegalArgumentException("Empty mix: " + mix);
+			}
+			this.mix.clear();
+			this.mix.putAll(parsed);
+			return this;
+		}
+
+		/** Issues calls at the target rate regardless of replies; requires {@link #qps}. */
+		public Builder openLoop(boolean openLoop) {
+			this.openLoop = openLoop;
+			return this;
+		}
+
+		/** Target calls per second over all scenarios; 0, the default, is uncapped in the closed loop. */
+		public Builder qps(double qps) {
+			if (qps < 0) {
+				throw new IllegalArgumentException("qps < 0: " + qps);
+			}
+			this.qps = qps;
+			return this;
+		}
+
+		/** Calls kept outstanding in the closed loop, and at most outstanding in the open loop. */
+		public Builder concurrency(int concurrency) {
+			if (concurrency <= 0) {
+				throw new IllegalArgumentException("concurrency <= 0: " + concurrency);
+			}
+			this.concurrency = concurrency;
+			return this;
+		}
+
+		public Builder duration(long duration, TimeUnit unit) {
+			if (duration <= 0) {
+				throw new IllegalArgumentException("duration <= 0: " + duration);
+			}
+			this.durationNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/** Calls due during the warm-up are made but not reported. */
+		public Builder warmup(long warmup, TimeUnit unit) {
+			if (warmup < 0) {
+				throw new IllegalArgumentException("warmup < 0: " + warmup);
+			}
+			this.warmupNanos = unit.toNanos(warmup);
+			return this;
+		}
+
+		public GreeterLoadGenerator build() {
+			if (openLoop && qps == 0) {
+				throw new IllegalArgumentException("The open loop needs a target qps");
+			}
+			return new GreeterLoadGenerator(this);
+		}
+	}
+}
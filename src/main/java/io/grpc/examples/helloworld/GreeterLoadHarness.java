@@ -0,0 +1,255 @@
+package io.grpc.examples.helloworld;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+
+/**
+ * Drives a complete {@link HelloWorldServer} backed by a {@link MockIconNode} and reports the
+ * throughput and latency percentiles seen by gRPC clients, without touching the testnet.
+ *
+ * <p>A fixed number of calls is kept outstanding: each completed call immediately issues the next
+ * one. Calls completed during the warm-up are not recorded.
+ *
+ * <p>The server answers most RPCs whose upstream call failed with a default reply rather than a
+ * gRPC error, so such replies are counted apart from errors, together with the errors the node
+ * answered. A {@code SendICX} reply looks the same either way; only the node's count covers it.
+ *
+ * <p>Usage: {@code greeter-load-harness [--rpc=check-balance|check-balances|send-icx|create-did|mix]
+ * [--concurrency=N] [--duration-s=N] [--warmup-s=N] [--latency-ms=N] [--jitter-ms=N]
+ * [--error-rate=F] [--non-blocking]}.
+ */
+public class GreeterLoadHarness {
+	private static final int ADDRESSES = 1000;
+
+	/** The RPCs the harness can drive. */
+	enum Rpc {
+		CHECK_BALANCE {
+			@Override
+			ListenableFuture<?> call(GreeterGrpc.GreeterFutureStub stub, int n) {
+				return stub.checkBalance(CheckBalanceRequest.newBuilder().setAddress(address(n)).build());
+			}
+		},
+		CHECK_BALANCES {
+			@Override
+			ListenableFuture<?> call(GreeterGrpc.GreeterFutureStub stub, int n) {
+				CheckBalancesRequest.Builder request = CheckBalancesRequest.newBuilder();
+				for (int i = 0; i < 10; i++) {
+					request.addAddress(address(n * 10 + i));
+				}
+				return stub.checkBalances(request.build());
+			}
+		},
+		SEND_ICX {
+			@Override
+			ListenableFuture<?> call(GreeterGrpc.GreeterFutureStub stub, int n) {
+				return stub.sendICX(SendIcxRequest.getDefaultInstance());
+			}
+		},
+		CREATE_DID {
+			@Override
+			ListenableFuture<?> call(GreeterGrpc.GreeterFutureStub stub, int n) {
+				return stub.createDID(CreateDIDRequest.newBuilder().setPublickey(String.format("%066x", n)).build());
+			}
+		},
+		MIX {
+			@Override
+			ListenableFuture<?> call(GreeterGrpc.GreeterFutureStub stub, int n) {
+				return values()[n % MIX.ordinal()].call(stub, n);
+			}
+		};
+
+		abstract ListenableFuture<?> call(GreeterGrpc.GreeterFutureStub stub, int n);
+
+		/** Whether {@code reply} is the default the server answers with when the upstream call failed. */
+		static boolean isDefaultReply(Object reply) {
+			if (reply instanceof CheckBalanceReply) {
+				return ((CheckBalanceReply) reply).getBalance().isEmpty();
+			}
+			if (reply instanceof CheckBalancesReply) {
+				return ((CheckBalancesReply) reply).getBalanceCount() == 0;
+			}
+			if (reply instanceof CreateDIDReply) {
+				return ((CreateDIDReply) reply).getTxhash().isEmpty();
+			}
+			return false;
+		}
+
+		static Rpc parse(String name) {
+			return valueOf(name.toUpperCase().replace('-', '_'));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Rpc rpc = Rpc.CHECK_BALANCE;
+		int concurrency = 64;
+		long durationSeconds = 10;
+		long warmupSeconds = 3;
+		long latencyMillis = 20;
+		long jitterMillis = 5;
+		double errorRate = 0;
+		boolean nonBlocking = false;
+		for (String arg : args) {
+			String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.startsWith("--rpc=")) {
+				rpc = Rpc.parse(value);
+			} else if (arg.startsWith("--concurrency=")) {
+				concurrency = Integer.parseInt(value);
+			} else if (arg.startsWith("--duration-s=")) {
+				durationSeconds = Long.parseLong(value);
+			} else if (arg.startsWith("--warmup-s=")) {
+				warmupSeconds = Long.parseLong(value);
+			} else if (arg.startsWith("--latency-ms=")) {
+				latencyMillis = Long.parseLong(value);
+			} else if (arg.startsWith("--jitter-ms=")) {
+				jitterMillis = Long.parseLong(value);
+			} else if (arg.startsWith("--error-rate=")) {
+				errorRate = Double.parseDouble(value);
+			} else if ("--non-blocking".equals(arg)) {
+				nonBlocking = true;
+			} else {
+				System.err.println("Unknown argument: " + arg);
+				System.exit(1);
+			}
+		}
+
+		MockIconNode node = new MockIconNode(BlockPoller.DEFAULT_BLOCK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+				.setLatency(latencyMillis, TimeUnit.MILLISECONDS)
+				.setJitter(jitterMillis, TimeUnit.MILLISECONDS)
+				.setErrorRate(errorRate)
+				.start(0);
+		HelloWorldServer server = new HelloWorldServer(0, IconClient.newBuilder().endpoint(node.getEndpoint()).build(),
+				nonBlocking, 2, HelloWorldServer.defaultSigners());
+		server.start();
+		ManagedChannel channel = ManagedChannelBuilder.forAddress("127.0.0.1", server.getPort()).usePlaintext().build();
+		try {
+			GreeterGrpc.GreeterFutureStub stub = GreeterGrpc.newFutureStub(channel);
+			long upstreamBefore = node.getCallCount();
+			long upstreamErrorsBefore = node.getErrorCount();
+			Run run = new Run(stub, rpc, concurrency, TimeUnit.SECONDS.toNanos(warmupSeconds),
+					TimeUnit.SECONDS.toNanos(durationSeconds));
+			run.execute();
+			run.report(System.out, rpc, concurrency, durationSeconds, node.getCallCount() - upstreamBefore,
+					node.getErrorCount() - upstreamErrorsBefore);
+		} finally {
+			channel.shutdownNow();
+			server.stop();
+			node.stop();
+		}
+	}
+
+	static String address(int n) {
+		return String.format("hx%040x", n % ADDRESSES);
+	}
+
+	/** One closed-loop run with a fixed number of outstanding calls. */
+	private static final class Run {
+		private final GreeterGrpc.GreeterFutureStub stub;
+		private final Rpc rpc;
+		private final int concurrency;
+		private final long warmupNanos;
+		private final long durationNanos;
+		private final AtomicInteger sequence = new AtomicInteger();
+		private final AtomicLong errors = new AtomicLong();
+		private final AtomicLong defaultReplies = new AtomicLong();
+		private final CountDownLatch done;
+		private final Object lock = new Object();
+		// Guarded by lock.
+		private long[] latencies = new long[1 << 16];
+		private int count;
+		private long start;
+
+		Run(GreeterGrpc.GreeterFutureStub stub, Rpc rpc, int concurrency, long warmupNanos, long durationNanos) {
+			this.stub = stub;
+			this.rpc = rpc;
+			this.concurrency = concurrency;
+			this.warmupNanos = warmupNanos;
+			this.durationNanos = durationNanos;
+			this.done = new CountDownLatch(concurrency);
+		}
+
+		void execute() throws InterruptedException {
+			start = System.nanoTime();
+			for (int i = 0; i < concurrency; i++) {
+				next();
+			}
+			done.await();
+		}
+
+		private void next() {
+			final long begin = System.nanoTime();
+			if (begin - start >= warmupNanos + durationNanos) {
+				done.countDown();
+				return;
+			}
+			Futures.addCallback(rpc.call(stub, sequence.getAndIncrement()), new FutureCallback<Object>() {
+				@Override
+				public void onSuccess(Object reply) {
+					record(begin, true, Rpc.isDefaultReply(reply));
+					next();
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					record(begin, false, false);
+					next();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		private void record(long begin, boolean success, boolean defaultReply) {
+			long end = System.nanoTime();
+			if (begin - start < warmupNanos) {
+				return;
+			}
+			if (!success) {
+				errors.incrementAndGet();
+			}
+			if (defaultReply) {
+				defaultReplies.incrementAndGet();
+			}
+			synchronized (lock) {
+				if (count == latencies.length) {
+					latencies = Arrays.copyOf(latencies, count * 2);
+				}
+				latencies[count++] = end - begin;
+			}
+		}
+
+		void report(java.io.PrintStream out, Rpc rpc, int concurrency, long durationSeconds, long upstreamCalls,
+				long upstreamErrors) {
+			long[] sorted;
+			synchronized (lock) {
+				sorted = Arrays.copyOf(latencies, count);
+			}
+			Arrays.sort(sorted);
+			out.printf("rpc=%s concurrency=%d duration=%ds%n", rpc, concurrency, durationSeconds);
+			out.printf("calls=%d errors=%d throughput=%.0f calls/s upstream calls per call=%.2f%n", sorted.length,
+					errors.get(), sorted.length / (double) durationSeconds,
+					sorted.length == 0 ? 0 : upstreamCalls / (double) sorted.length);
+			out.printf("upstream failures: default replies=%d node errors=%d of %d upstream calls%n",
+					defaultReplies.get(), upstreamErrors, upstreamCalls);
+			out.printf("latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n", percentile(sorted, 0.50),
+					percentile(sorted, 0.90), percentile(sorted, 0.99), percentile(sorted, 0.999),
+					percentile(sorted, 1.0));
+		}
+
+		private static double percentile(long[] sorted, double p) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int index = Math.max(0, (int) Math.ceil(p * sorted.length) - 1);
+			return sorted[index] / 1e6;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.Status;
+import io.grpc.examples.helloworld.HelloWorldServer.UpstreamCallback;
+import io.grpc.examples.helloworld.v2.CheckBalanceReply;
+import io.grpc.examples.helloworld.v2.CheckBalanceRequest;
+import io.grpc.examples.helloworld.v2.CheckBalancesReply;
+import io.grpc.examples.helloworld.v2.CheckBalancesRequest;
+import io.grpc.examples.helloworld.v2.CreateDIDReply;
+import io.grpc.examples.helloworld.v2.CreateDIDRequest;
+import io.grpc.examples.helloworld.v2.CreateKeyWalletReply;
+import io.grpc.examples.helloworld.v2.CreateKeyWalletRequest;
+import io.grpc.examples.helloworld.v2.CreateKeystoreFileReply;
+import io.grpc.examples.helloworld.v2.CreateKeystoreFileRequest;
+import io.grpc.examples.helloworld.v2.GreeterV2Grpc;
+import io.grpc.examples.helloworld.v2.LookupDIDReply;
+import io.grpc.examples.helloworld.v2.LookupDIDRequest;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * {@code GreeterV2}: the wallet, balance and DID calls of {@code Greeter} with keys, addresses,
+ * hashes and balances as raw bytes. It runs on the same components as {@code Greeter}, so wallets
+ * and DIDs created through either are visible to both; values are converted to and from the forms
+ * the components use only at the edges, with {@link BinaryCodec}.
+ */
+final class GreeterV2Impl extends GreeterV2Grpc.GreeterV2ImplBase {
+	private final BalanceCache balanceCache;
+	private final DidPipeline didPipeline;
+	/** Null when DIDs are not indexed. */
+	private final DidIndex didIndex;
+	private final KeyWalletGenerator keyWalletGenerator;
+	private final KeystoreEngine keystoreEngine;
+	private final boolean nonBlocking;
+
+	GreeterV2Impl(BalanceCache balanceCache, DidPipeline didPipeline, DidIndex didIndex,
+			KeyWalletGenerator keyWalletGenerator, KeystoreEngine keystoreEngine, boolean nonBlocking) {
+		this.balanceCache = balanceCache;
+		this.didPipeline = didPipeline;
+		this.didIndex = didIndex;
+		this.keyWalletGenerator = keyWalletGenerator;
+		this.keystoreEngine = keystoreEngine;
+		this.nonBlocking = nonBlocking;
+	}
+
+	@Override
+	public void createKeyWallet(CreateKeyWalletRequest req, StreamObserver<CreateKeyWalletReply> responseObserver) {
+		KeyWallet wallet = keyWalletGenerator.create();
+		if (didIndex != null) {
+			String publicKey = wallet.getPublicKey().toHexString(false);
+			didIndex.record(publicKey, publicKey, wallet.getAddress().toString(), "");
+		}
+		responseObserver.onNext(toReply(wallet));
+		responseObserver.onCompleted();
+	}
+
+	@Override
+	public void createKeystoreFile(CreateKeystoreFileRequest req,
+			StreamObserver<CreateKeystoreFileReply> responseObserver) {
+		ListenableFuture<String> keystore;
+		try {
+			byte[] privateKey = BinaryCodec.checkLength(req.getPrivateKey().toByteArray(),
+					BinaryCodec.PRIVATE_KEY_BYTES, "Private keys");
+			keystore = keystoreEngine.encrypt(new Bytes(privateKey), req.getPassword());
+		} catch (IllegalArgumentException e) {
+			responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+			return;
+		}
+		Futures.addCallback(keystore, new UpstreamCallback<String, CreateKeystoreFileReply>(responseObserver,
+				CreateKeystoreFileReply.getDefaultInstance()) {
+			@Override
+			CreateKeystoreFileReply toReply(String keyStorefile) {
+				return CreateKeystoreFileReply.newBuilder().setKeystorefile(keyStorefile).build();
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	@Override
+	public void checkBalance(CheckBalanceRequest req, StreamObserver<CheckBalanceReply> responseObserver) {
+		Address address;
+		try {
+			address = toAddress(req.getAddress());
+		} catch (IllegalArgumentException e) {
+			responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+			return;
+		}
+		HelloWorldServer.complete(balanceCache.getBalanceAsync(address),
+				new UpstreamCallback<BigInteger, CheckBalanceReply>(responseObserver,
+						CheckBalanceReply.getDefaultInstance()) {
+					@Override
+					CheckBalanceReply toReply(BigInteger balance) {
+						return CheckBalanceReply.newBuilder()
+								.setBalance(ByteString.copyFrom(BinaryCodec.balance(balance))).build();
+					}
+				}, nonBlocking);
+	}
+
+	@Override
+	public void checkBalances(CheckBalancesRequest req, StreamObserver<CheckBalancesReply> responseObserver) {
+		List<Address> addresses = new ArrayList<Address>(req.getAddressCount());
+		try {
+			for (ByteString address : req.getAddressList()) {
+				addresses.add(toAddress(address));
+			}
+		} catch (IllegalArgumentException e) {
+			responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+			return;
+		}
+		HelloWorldServer.complete(balanceCache.getBalancesAsync(addresses),
+				new UpstreamCallback<List<BigInteger>, CheckBalancesReply>(responseObserver,
+						CheckBalancesReply.getDefaultInstance()) {
+					@Override
+					CheckBalancesReply toReply(List<BigInteger> balances) {
+						CheckBalancesReply.Builder builder = CheckBalancesReply.newBuilder();
+						for (BigInteger balance : balances) {
+							builder.addBalance(ByteString.copyFrom(BinaryCodec.balance(balance)));
+						}
+						return builder.build();
+					}
+				}, nonBlocking);
+	}
+
+	@Override
+	public void createDID(CreateDIDRequest req, StreamObserver<CreateDIDReply> responseObserver) {
+		final String publicKey;
+		try {
+			publicKey = toPublicKey(req.getPublicKey());
+		} catch (IllegalArgumentException e) {
+			responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+			return;
+		}
+		HelloWorldServer.complete(didPipeline.submit(publicKey),
+				new UpstreamCallback<Bytes, CreateDIDReply>(responseObserver, CreateDIDReply.getDefaultInstance()) {
+					@Override
+					CreateDIDReply toReply(Bytes hash) {
+						if (didIndex != null) {
+							// DIDs created here are the public key itself.
+							didIndex.record(publicKey, publicKey, "", hash.toString());
+						}
+						return CreateDIDReply.newBuilder()
+								.setTxhash(ByteString.copyFrom(BinaryCodec.fixed(hash.toByteArray(), BinaryCodec.HASH_BYTES)))
+								.build();
+					}
+				}, nonBlocking);
+	}
+
+	@Override
+	public void lookupDID(LookupDIDRequest req, StreamObserver<LookupDIDReply> responseObserver) {
+		if (didIndex == null) {
+			responseObserver.onError(Status.FAILED_PRECONDITION
+					.withDescription("LookupDID needs a DID index").asRuntimeException());
+			return;
+		}
+		String publicKey;
+		try {
+			publicKey = toPublicKey(req.getPublicKey());
+		} catch (IllegalArgumentException e) {
+			responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+			return;
+		}
+		io.grpc.examples.helloworld.LookupDIDReply entry = didIndex.lookup(publicKey);
+		if (entry == null) {
+			responseObserver.onError(Status.NOT_FOUND
+					.withDescription("No DID recorded for " + publicKey).asRuntimeException());
+			return;
+		}
+		responseObserver.onNext(toReply(entry));
+		responseObserver.onCompleted();
+	}
+
+	static CreateKeyWalletReply toReply(KeyWallet wallet) {
+		return CreateKeyWalletReply.newBuilder()
+				.setPrivateKey(ByteString.copyFrom(
+						BinaryCodec.fixed(wallet.getPrivateKey().toByteArray(), BinaryCodec.PRIVATE_KEY_BYTES)))
+				.setPublicKey(ByteString.copyFrom(wallet.getPublicKey().toByteArray()))
+				.setAddress(ByteString.copyFrom(BinaryCodec.address(wallet.getAddress().toString())))
+				.build();
+	}
+
+	/**
+	 * Converts an entry of the DID index. Addresses and hashes recorded as something other than
+	 * their usual hex are left out.
+	 */
+	static LookupDIDReply toReply(io.grpc.examples.helloworld.LookupDIDReply entry) {
+		LookupDIDReply.Builder reply = LookupDIDReply.newBuilder()
+				.setPublicKey(ByteString.copyFrom(BinaryCodec.hex(entry.getPublickey())));
+		if (!entry.getAddress().isEmpty()) {
+			try {
+				reply.setAddress(ByteString.copyFrom(BinaryCodec.address(entry.getAddress())));
+			} catch (IllegalArgumentException e) {
+				// Not an address.
+			}
+		}
+		if (!entry.getTxhash().isEmpty()) {
+			try {
+				reply.setTxhash(ByteString.copyFrom(
+						BinaryCodec.checkLength(BinaryCodec.hex(entry.getTxhash()), BinaryCodec.HASH_BYTES, "Hashes")));
+			} catch (IllegalArgumentException e) {
+				// Not a transaction hash.
+			}
+		}
+		if (entry.getDid().equals(entry.getPublickey())) {
+			reply.setDidIsPublicKey(true);
+		} else {
+			reply.setDid(entry.getDid());
+		}
+		return reply.build();
+	}
+
+	static Address toAddress(ByteString address) {
+		return new Address(BinaryCodec.address(address.toByteArray()));
+	}
+
+	/** The hex form of a public key, as {@code Greeter} and the DID SCORE take it. */
+	static String toPublicKey(ByteString publicKey) {
+		return BinaryCodec.hex(
+				BinaryCodec.checkLength(publicKey.toByteArray(), BinaryCodec.PUBLIC_KEY_BYTES, "Public keys"));
+	}
+}
@@ -16,10 +16,17 @@
 
 package io.grpc.examples.helloworld;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.StatusRuntimeException;
@@ -130,21 +137,77 @@ public class HelloWorldClient {
 		
 	}
 
+	/**
+	 * Runs {@code count} onboarding workflows at once over this client's channel, each doing the
+	 * work of {@link #greet} with independent calls in parallel, and logs how long they took.
+	 */
+	public void onboard(String name, int count) throws InterruptedException {
+		OnboardingWorkflow workflow = OnboardingWorkflow.newBuilder(channel).build();
+		long start = System.nanoTime();
+		List<ListenableFuture<OnboardingWorkflow.Result>> runs =
+				new ArrayList<ListenableFuture<OnboardingWorkflow.Result>>();
+		for (int i = 0; i < count; i++) {
+			runs.add(workflow.run(count == 1 ? name : name + "-" + i));
+		}
+		List<OnboardingWorkflow.Result> results;
+		try {
+			results = Futures.allAsList(runs).get();
+		} catch (ExecutionException e) {
+			// Workflows report failed steps in their result instead of failing.
+			throw new AssertionError(e);
+		}
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		long[] workflowMillis = new long[count];
+		int failed = 0;
+		for (int i = 0; i < count; i++) {
+			OnboardingWorkflow.Result result = results.get(i);
+			workflowMillis[i] = result.getElapsed(TimeUnit.MILLISECONDS);
+			if (!result.isSuccessful()) {
+				failed++;
+				logger.log(Level.WARNING, "Workflow {0} failed steps: {1}", new Object[] {i, result.getFailures()});
+			}
+		}
+		Arrays.sort(workflowMillis);
+		logger.info("Onboarded " + count + " in " + elapsedMillis + " ms (" + failed
+				+ " with failed steps); per workflow p50=" + workflowMillis[count / 2] + " ms, max="
+				+ workflowMillis[count - 1] + " ms");
+		OnboardingWorkflow.Result first = results.get(0);
+		for (OnboardingWorkflow.Step step : OnboardingWorkflow.Step.values()) {
+			logger.info("  " + step + ": " + first.getStepElapsed(step, TimeUnit.MILLISECONDS) + " ms");
+		}
+	}
+
 	/**
 	 * Greet server. If provided, the first element of {@code args} is the name to
-	 * use in the greeting.
+	 * use in the greeting. Pass {@code --workflows=N} to run N onboarding workflows concurrently
+	 * instead of the sequential greeting, or {@code --load} followed by the arguments of
+	 * {@link GreeterLoadGenerator} to put the server under load.
 	 */
 	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && "--load".equals(args[0])) {
+			GreeterLoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		String server_address = "localhost";
 		// String server_address = "54.180.150.120";
 		HelloWorldClient client = new HelloWorldClient(server_address, 50051);
 		try {
 			/* Access a service running on the local machine on port 50051 */
 			String user = "world";
-			if (args.length > 0) {
-				user = args[0]; /* Use the arg as the name to greet if provided */
+			int workflows = 0;
+			for (String arg : args) {
+				if (arg.startsWith("--workflows=")) {
+					workflows = Integer.parseInt(arg.substring("--workflows=".length()));
+				} else {
+					user = arg; /* Use the arg as the name to greet if provided */
+				}
+			}
+			if (workflows > 0) {
+				client.onboard(user, workflows);
+			} else {
+				client.greet(user);
 			}
-			client.greet(user);
 		} finally {
 			client.shutdown();
 		}
@@ -16,46 +16,208 @@
 
 package io.grpc.examples.helloworld;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
 import foundation.icon.icx.Call;
 import foundation.icon.icx.IconService;
 import foundation.icon.icx.KeyWallet;
-import foundation.icon.icx.SignedTransaction;
-import foundation.icon.icx.Transaction;
-import foundation.icon.icx.TransactionBuilder;
 import foundation.icon.icx.data.Address;
 import foundation.icon.icx.data.Bytes;
-import foundation.icon.icx.data.IconAmount;
-import foundation.icon.icx.transport.http.HttpProvider;
 import foundation.icon.icx.transport.jsonrpc.RpcItem;
-import foundation.icon.icx.transport.jsonrpc.RpcObject;
-import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.BindableService;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.examples.executor.ExecutorRouter;
+import io.grpc.examples.transport.ServerTransport;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
-import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 /**
- * Server that manages startup/shutdown of a {@code Greeter} server.
+ * Server that manages startup/shutdown of a {@code Greeter} server, which also serves the binary
+ * {@code GreeterV2} from the same components.
  */
 public class HelloWorldServer {
 	private static final Logger logger = Logger.getLogger(HelloWorldServer.class.getName());
-	private static IconService iconService;
-
+	private static final long DEFAULT_BATCH_WINDOW_MILLIS = 2;
+	/** Transactions not in a block after this long are reported as expired. */
+	private static final long RECEIPT_TIMEOUT_MINUTES = 5;
+	/** Room in a new result cache file: a million results of about 1 KiB each. */
+	private static final int RESULT_FILE_ENTRIES = 1 << 20;
+	private static final int RESULT_FILE_BYTES = 1 << 30;
+	/** Size of a new DID job journal: about a million jobs of a few dozen bytes each. */
+	private static final int DID_JOURNAL_BYTES = 64 << 20;
+	private static final int DID_JOBS_IN_FLIGHT = 256;
+	private static final int DID_JOBS_REMEMBERED = 100_000;
+	/** Room in a new DID index file: four million entries, about 600 MiB with the table. */
+	private static final int DID_INDEX_ENTRIES = 4 << 20;
+	private static final int DID_INDEX_BYTES = 256 << 20;
+	/** How long calls in flight may take to finish once the server is stopped. */
+	private static final long SHUTDOWN_GRACE_SECONDS = 5;
+	private static final int SIGNATURE_KEYS_CACHED = 100_000;
+	/** Room in a new transaction store: eight million transactions, about 1.4 GiB with the table. */
+	private static final int TX_STORE_TRANSACTIONS = 8 << 20;
+	private static final int TX_STORE_ADDRESSES = 4 << 20;
+	private static final int EVENT_STREAMS = 10_000;
+
+	private final int port;
+	private final IconClient iconClient;
+	private final boolean nonBlocking;
+	private final BlockPoller blockPoller;
+	private final BalanceBatcher balanceBatcher;
+	private final BalanceCache balanceCache;
+	private final BalanceWatcher balanceWatcher;
+	private final DidPipeline didPipeline;
+	private final DidJobQueue didJobQueue;
+	private final DidIndex didIndex;
+	private final TransactionStore transactionStore;
+	private final BlockIngester blockIngester;
+	private final KeyWalletGenerator keyWalletGenerator;
+	private final KeystoreEngine keystoreEngine;
+	private final SignatureVerifier signatureVerifier;
+	private final ReceiptTracker receiptTracker;
+	private final EventScanner eventScanner;
+	private final ExecutorRouter executorRouter;
+	private final ServerTransport transport;
+	private final AtomicBoolean stopped = new AtomicBoolean();
 	private Server server;
 
-	private void start() throws IOException {
-		/* The port on which the server should run */
-		int port = 50051;
-		server = ServerBuilder.forPort(port).addService(new GreeterImpl()).build().start();
-		logger.info("Server started, listening on " + port);
+	public HelloWorldServer(int port, IconClient iconClient) {
+		this(port, iconClient, false, DEFAULT_BATCH_WINDOW_MILLIS, defaultSigners());
+	}
+
+	public HelloWorldServer(int port, IconClient iconClient, boolean nonBlocking, long batchWindowMillis,
+			SignerPool signers) {
+		this(port, iconClient, nonBlocking, batchWindowMillis, signers, null, null, null, null, null);
+	}
+
+	/**
+	 * @param batchWindowMillis how long a balance lookup may wait for others to share its JSON-RPC
+	 *     batch; 0 sends every lookup on its own
+	 * @param signers wallets that sign {@code CreateDID} transactions in turn
+	 * @param didJournal file that keeps {@code SubmitDID} jobs across restarts, or null to refuse
+	 *     {@code SubmitDID}
+	 * @param didIndex index of created wallets and DIDs behind {@code LookupDID}, or null to refuse
+	 *     {@code LookupDID}
+	 * @param transactionStore history that new blocks are ingested into and {@code GetTransactions}
+	 *     reads, or null to refuse {@code GetTransactions}
+	 * @param executorRouter executors that calls run on by method, or null to run every call on
+	 *     gRPC's default executor
+	 * @param transport event loops and acceptors the server listens with, or null for gRPC's
+	 *     default transport
+	 */
+	public HelloWorldServer(int port, IconClient iconClient, boolean nonBlocking, long batchWindowMillis,
+			SignerPool signers, File didJournal, DidIndex didIndex, TransactionStore transactionStore,
+			ExecutorRouter executorRouter, ServerTransport transport) {
+		this.port = port;
+		this.executorRouter = executorRouter;
+		this.transport = transport;
+		this.iconClient = iconClient;
+		this.nonBlocking = nonBlocking;
+		this.blockPoller = new BlockPoller(iconClient, BlockPoller.DEFAULT_BLOCK_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+		this.balanceBatcher = new BalanceBatcher(iconClient, batchWindowMillis, TimeUnit.MILLISECONDS, 100);
+		// Balances only change with a new block, so entries live for at most one block interval.
+		this.balanceCache = new BalanceCache(balanceBatcher, 100_000, BlockPoller.DEFAULT_BLOCK_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+		this.balanceWatcher = new BalanceWatcher(balanceCache);
+		// The cache is cleared before the watcher reads the balances changed by the same block.
+		blockPoller.addListener(balanceCache);
+		blockPoller.addListener(balanceWatcher);
+		this.receiptTracker = new ReceiptTracker(iconClient, BlockPoller.DEFAULT_BLOCK_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS, 10 * ReceiptTracker.MAX_BATCH_SIZE, RECEIPT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		blockPoller.addListener(receiptTracker);
+		this.eventScanner = new EventScanner(iconClient, EVENT_STREAMS);
+		blockPoller.addListener(eventScanner);
+		if (iconClient.getResultCache() != null) {
+			blockPoller.addListener(iconClient.getResultCache());
+		}
+		this.didPipeline = DidPipeline.newBuilder(iconClient, signers).receiptTracker(receiptTracker).build();
+		this.didJobQueue = didJournal != null
+				? new DidJobQueue(didPipeline, didJournal, DID_JOURNAL_BYTES, DID_JOBS_IN_FLIGHT, DID_JOBS_REMEMBERED)
+				: null;
+		this.didIndex = didIndex;
+		this.transactionStore = transactionStore;
+		this.blockIngester = transactionStore != null ? new BlockIngester(iconClient, transactionStore) : null;
+		if (blockIngester != null) {
+			blockPoller.addListener(blockIngester);
+		}
+		int cores = Runtime.getRuntime().availableProcessors();
+		this.keyWalletGenerator = new KeyWalletGenerator(cores);
+		// Each keystore costs tens of milliseconds of CPU; refuse work that would wait much longer.
+		this.keystoreEngine = new KeystoreEngine(cores, cores * 4);
+		// A verification takes well under a millisecond, so a deeper queue still drains quickly.
+		this.signatureVerifier = new SignatureVerifier(cores, cores * 256, SIGNATURE_KEYS_CACHED);
+	}
+
+	static SignerPool defaultSigners() {
+		return SignerPool.fromPrivateKeys(Collections.singletonList(CommonData.DID_SIGNER_PRIVATE_KEY));
+	}
+
+	void start() throws IOException {
+		iconClient.start();
+		balanceBatcher.start();
+		blockPoller.start();
+		receiptTracker.start();
+		eventScanner.start();
+		didPipeline.start();
+		if (didJobQueue != null) {
+			didJobQueue.start();
+		}
+		keyWalletGenerator.start();
+		keystoreEngine.start();
+		signatureVerifier.start();
+		if (blockIngester != null) {
+			blockIngester.start();
+		}
+		BindableService greeter = GreeterImpl.newBuilder(iconClient)
+				.balanceCache(balanceCache)
+				.balanceWatcher(balanceWatcher)
+				.didPipeline(didPipeline)
+				.didJobQueue(didJobQueue)
+				.didIndex(didIndex)
+				.transactionStore(transactionStore)
+				.keyWalletGenerator(keyWalletGenerator)
+				.keystoreEngine(keystoreEngine)
+				.signatureVerifier(signatureVerifier)
+				.receiptTracker(receiptTracker)
+				.eventScanner(eventScanner)
+				.nonBlocking(nonBlocking)
+				.build();
+		BindableService greeterV2 = new GreeterV2Impl(balanceCache, didPipeline, didIndex, keyWalletGenerator,
+				keystoreEngine, nonBlocking);
+		ServerBuilder<?> builder = transport != null ? transport.forPort(port) : ServerBuilder.forPort(port);
+		if (executorRouter != null) {
+			// The router moves each call off the transport thread itself.
+			builder.directExecutor()
+					.addService(ServerInterceptors.intercept(greeter, executorRouter))
+					.addService(ServerInterceptors.intercept(greeterV2, executorRouter));
+		} else {
+			builder.addService(greeter).addService(greeterV2);
+		}
+		server = builder.build().start();
+		logger.info("Server started, listening on " + port + (transport != null ? " with " + transport : ""));
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			@Override
 			public void run() {
@@ -64,14 +226,115 @@ public class HelloWorldServer {
 				System.err.println("*** shutting down gRPC server since JVM is shutting down");
 				HelloWorldServer.this.stop();
 				System.err.println("*** server shut down");
+				System.err.println(HelloWorldServer.this.stats());
 			}
 		});
 	}
 
-	private void stop() {
+	/** Shuts everything down; later calls, such as the shutdown hook's, do nothing. */
+	void stop() {
+		if (!stopped.compareAndSet(false, true)) {
+			return;
+		}
 		if (server != null) {
 			server.shutdown();
 		}
+		// Calls in flight still use the components and stores below; streams that outlast the grace
+		// period, such as WatchBalances, are cancelled.
+		awaitCallsInFlight();
+		balanceWatcher.shutdown();
+		if (didJobQueue != null) {
+			didJobQueue.shutdown();
+		}
+		didPipeline.shutdown();
+		keyWalletGenerator.shutdown();
+		keystoreEngine.shutdown();
+		signatureVerifier.shutdown();
+		receiptTracker.shutdown();
+		eventScanner.shutdown();
+		blockPoller.shutdown();
+		if (blockIngester != null) {
+			blockIngester.shutdown();
+		}
+		balanceBatcher.shutdown();
+		iconClient.shutdown();
+		if (iconClient.getResultCache() != null) {
+			iconClient.getResultCache().shutdown();
+		}
+		if (didIndex != null) {
+			didIndex.close();
+		}
+		if (transactionStore != null) {
+			transactionStore.close();
+		}
+		if (executorRouter != null) {
+			executorRouter.shutdown();
+		}
+	}
+
+	/** What the components have done so far, one line each, such as cache hits and upstream calls. */
+	String stats() {
+		StringBuilder stats = new StringBuilder();
+		line(stats, "balance cache " + balanceCache.stats() + ", block invalidations="
+				+ balanceCache.blockInvalidationCount() + ", coalesced lookups=" + balanceBatcher.getCoalescedCount()
+				+ ", upstream calls=" + balanceBatcher.getUpstreamCallCount());
+		line(stats, "DID transactions submitted=" + didPipeline.getSubmittedCount() + ", rejected="
+				+ didPipeline.getRejectedCount() + ", upstream calls=" + didPipeline.getUpstreamCallCount());
+		if (didJobQueue != null) {
+			line(stats, "DID jobs " + didJobQueue);
+		}
+		if (didIndex != null) {
+			line(stats, "DID index " + didIndex);
+		}
+		if (transactionStore != null) {
+			line(stats, "transaction store " + transactionStore + ", blocks ingested="
+					+ blockIngester.getIngestedCount() + ", upstream calls=" + blockIngester.getUpstreamCallCount());
+		}
+		line(stats, "keystores created=" + keystoreEngine.getCompletedCount() + ", rejected="
+				+ keystoreEngine.getRejectedCount());
+		line(stats, "signatures verified=" + signatureVerifier.getVerifiedCount() + ", invalid="
+				+ signatureVerifier.getInvalidCount() + ", rejected=" + signatureVerifier.getRejectedCount());
+		line(stats, "transaction results found=" + receiptTracker.getCompletedCount() + ", expired="
+				+ receiptTracker.getExpiredCount() + ", pending=" + receiptTracker.getPendingCount()
+				+ ", upstream calls=" + receiptTracker.getUpstreamCallCount());
+		line(stats, "events " + eventScanner);
+		line(stats, "upstream calls skipped for cancelled RPCs=" + iconClient.getSkippedCallCount()
+				+ ", aborted=" + iconClient.getAbortedCallCount() + ", deadline-bounded="
+				+ iconClient.getDeadlineBoundedCallCount());
+		if (iconClient.getRouter() != null) {
+			line(stats, "ICON router " + iconClient.getRouter());
+		}
+		if (iconClient.getResultCache() != null) {
+			line(stats, "ICON result cache " + iconClient.getResultCache());
+		}
+		return stats.toString();
+	}
+
+	private static void line(StringBuilder stats, String line) {
+		if (stats.length() > 0) {
+			stats.append('\n');
+		}
+		stats.append(line);
+	}
+
+	/** Waits for the calls in flight to finish, and cancels those still running after the grace period. */
+	private void awaitCallsInFlight() {
+		if (server == null) {
+			return;
+		}
+		try {
+			if (!server.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+				server.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			server.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Port the server listens on, once started. */
+	int getPort() {
+		return server.getPort();
 	}
 
 	/**
@@ -85,15 +348,218 @@ public class HelloWorldServer {
 	}
 
 	/**
-	 * Main launches the server from the command line.
+	 * Main launches the server from the command line. Pass {@code --non-blocking} to serve the
+	 * ICON-backed methods without blocking gRPC threads on the upstream round trip, and
+	 * {@code --batch-window-ms=N} to change how long balance lookups wait to be batched, and
+	 * {@code --signer-keys=FILE} to sign DID transactions with the private keys listed in FILE, one
+	 * per line, and {@code --icon-endpoints=URL,URL,...} to spread ICON requests over several nodes,
+	 * and {@code --result-cache-file=FILE} to keep final transaction results in FILE across restarts,
+	 * and {@code --did-journal=FILE} to accept {@code SubmitDID} jobs, journaled in FILE, and
+	 * {@code --did-index=FILE} to remember created wallets and DIDs in FILE for {@code LookupDID}, and
+	 * {@code --tx-store=FILE} to ingest new blocks into a transaction history in FILE for
+	 * {@code GetTransactions}, and {@code --executor=MODE} to run calls on one of the
+	 * {@link io.grpc.examples.executor.ServerExecutors}, and {@code --route=METHOD=MODE}, repeated,
+	 * to run a method or service on its own, such as
+	 * {@code --route=helloworld.Greeter/SayHello=direct --route=helloworld.Greeter/CheckBalance=virtual},
+	 * and {@code --transport=SPEC} to listen with a {@link ServerTransport}, such as
+	 * {@code --transport=epoll,acceptors=4,workers=8}.
 	 */
 	public static void main(String[] args) throws IOException, InterruptedException {
-		final HelloWorldServer server = new HelloWorldServer();
+		/* The port on which the server should run */
+		int port = 50051;
+		boolean nonBlocking = false;
+		long batchWindowMillis = DEFAULT_BATCH_WINDOW_MILLIS;
+		SignerPool signers = null;
+		IconClient.Builder iconClient = IconClient.newBuilder();
+		ResultCache.Builder resultCache = ResultCache.newBuilder();
+		File didJournal = null;
+		DidIndex didIndex = null;
+		TransactionStore transactionStore = null;
+		String executor = null;
+		List<String> routes = new ArrayList<String>();
+		ServerTransport transport = null;
+		for (String arg : args) {
+			if ("--non-blocking".equals(arg)) {
+				nonBlocking = true;
+			} else if (arg.startsWith("--batch-window-ms=")) {
+				batchWindowMillis = Long.parseLong(arg.substring("--batch-window-ms=".length()));
+			} else if (arg.startsWith("--signer-keys=")) {
+				signers = SignerPool.fromFile(new File(arg.substring("--signer-keys=".length())));
+			} else if (arg.startsWith("--icon-endpoints=")) {
+				List<String> endpoints = Arrays.asList(arg.substring("--icon-endpoints=".length()).split(","));
+				iconClient.router(UpstreamRouter.newBuilder(endpoints).build());
+			} else if (arg.startsWith("--result-cache-file=")) {
+				resultCache.file(new File(arg.substring("--result-cache-file=".length())), RESULT_FILE_ENTRIES,
+						RESULT_FILE_BYTES);
+			} else if (arg.startsWith("--did-journal=")) {
+				didJournal = new File(arg.substring("--did-journal=".length()));
+			} else if (arg.startsWith("--did-index=")) {
+				didIndex = DidIndex.open(new File(arg.substring("--did-index=".length())), DID_INDEX_ENTRIES,
+						DID_INDEX_BYTES);
+			} else if (arg.startsWith("--tx-store=")) {
+				transactionStore = TransactionStore.open(new File(arg.substring("--tx-store=".length())),
+						TX_STORE_TRANSACTIONS, TX_STORE_ADDRESSES);
+			} else if (arg.startsWith("--executor=")) {
+				executor = arg.substring("--executor=".length());
+			} else if (arg.startsWith("--route=")) {
+				routes.add(arg.substring("--route=".length()));
+			} else if (arg.startsWith("--transport=")) {
+				transport = ServerTransport.parse(arg.substring("--transport=".length()));
+			} else {
+				System.err.println("Unknown argument: " + arg);
+				System.exit(1);
+			}
+		}
+		iconClient.resultCache(resultCache.build());
+		final HelloWorldServer server = new HelloWorldServer(port, iconClient.build(), nonBlocking,
+				batchWindowMillis, signers != null ? signers : defaultSigners(), didJournal, didIndex, transactionStore,
+				executor != null || !routes.isEmpty()
+						? ExecutorRouter.parse(executor != null ? executor : "cached", routes) : null,
+				transport);
 		server.start();
 		server.blockUntilShutdown();
 	}
 
 	static class GreeterImpl extends GreeterGrpc.GreeterImplBase {
+		private final IconClient iconClient;
+		private final BalanceCache balanceCache;
+		private final BalanceWatcher balanceWatcher;
+		private final DidPipeline didPipeline;
+		private final DidJobQueue didJobQueue;
+		private final DidIndex didIndex;
+		private final TransactionStore transactionStore;
+		private final KeyWalletGenerator keyWalletGenerator;
+		private final KeystoreEngine keystoreEngine;
+		private final SignatureVerifier signatureVerifier;
+		private final ReceiptTracker receiptTracker;
+		private final EventScanner eventScanner;
+		private final boolean nonBlocking;
+
+		private GreeterImpl(Builder builder) {
+			this.iconClient = builder.iconClient;
+			this.balanceCache = builder.balanceCache != null ? builder.balanceCache
+					: new BalanceCache(new BalanceBatcher(iconClient, 0, TimeUnit.MILLISECONDS, 1), 0, 1,
+							TimeUnit.MILLISECONDS);
+			this.balanceWatcher = builder.balanceWatcher != null ? builder.balanceWatcher
+					: new BalanceWatcher(balanceCache);
+			this.didPipeline = builder.didPipeline != null ? builder.didPipeline
+					: DidPipeline.newBuilder(iconClient, defaultSigners()).build();
+			this.didJobQueue = builder.didJobQueue;
+			this.didIndex = builder.didIndex;
+			this.transactionStore = builder.transactionStore;
+			this.keyWalletGenerator = builder.keyWalletGenerator != null ? builder.keyWalletGenerator
+					: new KeyWalletGenerator(1);
+			this.keystoreEngine = builder.keystoreEngine != null ? builder.keystoreEngine : new KeystoreEngine(1, 0);
+			this.signatureVerifier = builder.signatureVerifier != null ? builder.signatureVerifier
+					: new SignatureVerifier(1, 0, 1);
+			this.receiptTracker = builder.receiptTracker != null ? builder.receiptTracker
+					: new ReceiptTracker(iconClient, BlockPoller.DEFAULT_BLOCK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS,
+							ReceiptTracker.MAX_BATCH_SIZE, RECEIPT_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+			this.eventScanner = builder.eventScanner != null ? builder.eventScanner : new EventScanner(iconClient, 0);
+			this.nonBlocking = builder.nonBlocking;
+		}
+
+		/**
+		 * Creates a builder of a greeter backed by {@code iconClient}. Components that are not set
+		 * are never started: balances are not cached, watched balances and transactions are never
+		 * refreshed, and CreateDID, CreateKeyWallets, the keystore methods, VerifySignatures and
+		 * WatchEvents are refused, as are SubmitDID, LookupDID and GetTransactions.
+		 */
+		static Builder newBuilder(IconClient iconClient) {
+			return new Builder(iconClient);
+		}
+
+		static final class Builder {
+			private final IconClient iconClient;
+			private BalanceCache balanceCache;
+			private BalanceWatcher balanceWatcher;
+			private DidPipeline didPipeline;
+			private DidJobQueue didJobQueue;
+			private DidIndex didIndex;
+			private TransactionStore transactionStore;
+			private KeyWalletGenerator keyWalletGenerator;
+			private KeystoreEngine keystoreEngine;
+			private SignatureVerifier signatureVerifier;
+			private ReceiptTracker receiptTracker;
+			private EventScanner eventScanner;
+			private boolean nonBlocking;
+
+			private Builder(IconClient iconClient) {
+				this.iconClient = iconClient;
+			}
+
+			/** Cache that balances are read through; the watcher defaults to one over it. */
+			Builder balanceCache(BalanceCache balanceCache) {
+				this.balanceCache = balanceCache;
+				return this;
+			}
+
+			Builder balanceWatcher(BalanceWatcher balanceWatcher) {
+				this.balanceWatcher = balanceWatcher;
+				return this;
+			}
+
+			Builder didPipeline(DidPipeline didPipeline) {
+				this.didPipeline = didPipeline;
+				return this;
+			}
+
+			/** Queue behind {@code SubmitDID}. */
+			Builder didJobQueue(DidJobQueue didJobQueue) {
+				this.didJobQueue = didJobQueue;
+				return this;
+			}
+
+			/** Index that remembers created wallets and DIDs, behind {@code LookupDID}. */
+			Builder didIndex(DidIndex didIndex) {
+				this.didIndex = didIndex;
+				return this;
+			}
+
+			/** History behind {@code GetTransactions}. */
+			Builder transactionStore(TransactionStore transactionStore) {
+				this.transactionStore = transactionStore;
+				return this;
+			}
+
+			Builder keyWalletGenerator(KeyWalletGenerator keyWalletGenerator) {
+				this.keyWalletGenerator = keyWalletGenerator;
+				return this;
+			}
+
+			Builder keystoreEngine(KeystoreEngine keystoreEngine) {
+				this.keystoreEngine = keystoreEngine;
+				return this;
+			}
+
+			Builder signatureVerifier(SignatureVerifier signatureVerifier) {
+				this.signatureVerifier = signatureVerifier;
+				return this;
+			}
+
+			Builder receiptTracker(ReceiptTracker receiptTracker) {
+				this.receiptTracker = receiptTracker;
+				return this;
+			}
+
+			Builder eventScanner(EventScanner eventScanner) {
+				this.eventScanner = eventScanner;
+				return this;
+			}
+
+			/**
+			 * When true, ICON-backed methods return right after issuing the upstream request and
+			 * complete the call from its callback instead of parking the gRPC thread.
+			 */
+			Builder nonBlocking(boolean nonBlocking) {
+				this.nonBlocking = nonBlocking;
+				return this;
+			}
+
+			GreeterImpl build() {
+				return new GreeterImpl(this);
+			}
+		}
 
 		@Override
 		public void sayHello(HelloRequest req, StreamObserver<HelloReply> responseObserver) {
@@ -107,7 +573,6 @@ public class HelloWorldServer {
 			CreateKeyWalletReply reply = CreateKeyWalletReply.newBuilder().setPrivatekey("").build();
 
 			// Create keyWallet and store it as a keyStorefile
-			System.out.println("Create KeyWallet");
 			KeyWallet createdWallet;
 			try {
 				createdWallet = KeyWallet.create();
@@ -117,141 +582,392 @@ public class HelloWorldServer {
 						.setPublickey(createdWallet.getPublicKey().toHexString(false))
 						.setDid(createdWallet.getPublicKey().toHexString(false))
 						.setAddress(createdWallet.getAddress().toString()).build();
+				if (didIndex != null) {
+					didIndex.record(reply.getPublickey(), reply.getDid(), reply.getAddress(), "");
+				}
 			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.log(Level.WARNING, "Failed to create a key wallet", e);
 			}
 			responseObserver.onNext(reply);
 			responseObserver.onCompleted();
 		}
 
+		@Override
+		public void createKeyWallets(CreateKeyWalletsRequest req, StreamObserver<CreateKeyWalletsReply> responseObserver) {
+			if (req.getCount() < 1 || req.getCount() > KeyWalletGenerator.MAX_WALLETS_PER_CALL) {
+				responseObserver.onError(Status.INVALID_ARGUMENT
+						.withDescription("Create between 1 and " + KeyWalletGenerator.MAX_WALLETS_PER_CALL + " wallets")
+						.asRuntimeException());
+				return;
+			}
+			keyWalletGenerator.stream(req.getCount(), (ServerCallStreamObserver<CreateKeyWalletsReply>) responseObserver);
+		}
+
 		@Override
 		public void createKeystoreFile(CreateKeystoreFileRequest req,
 				StreamObserver<CreateKeystoreFileReply> responseObserver) {
 			CreateKeystoreFileReply reply = CreateKeystoreFileReply.newBuilder().setKeystorefile("").build();
 
-			// Create keyWallet and store it as a keyStorefile
-			System.out.println("Create KeyWallet");
-
-			String dirPath = "./";
-			// File of directory for keystorfile.
-			File destinationDirectory = new File(dirPath);
-
+			ListenableFuture<String> keystore;
 			try {
-				KeyWallet wallet = KeyWallet.load(new Bytes(req.getPrivatekey()));
-				String fileName = KeyWallet.store(wallet, req.getPassword(), destinationDirectory);
-				BufferedReader br;
-				String keyStorefile = "";
-
-				File file = new File(destinationDirectory, fileName);
-				if (file.exists() && file.isFile() && file.canRead()) {
-					// ObjectMapper mapper = new ObjectMapper();
-					// KeystoreFile keystoreFile = mapper.readValue(file, KeystoreFile.class);
-					br = new BufferedReader(new FileReader(file));
-					keyStorefile = br.readLine();
-				}
-				logger.info("keyStorefile: " + keyStorefile);
-				reply = CreateKeystoreFileReply.newBuilder().setKeystorefile(keyStorefile).build();
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				keystore = keystoreEngine.encrypt(new Bytes(req.getPrivatekey()), req.getPassword());
+			} catch (IllegalArgumentException e) {
+				keystore = Futures.immediateFailedFuture(e);
 			}
-			responseObserver.onNext(reply);
-			responseObserver.onCompleted();
+			// The key derivation runs on the keystore engine; the reply is sent from its callback.
+			Futures.addCallback(keystore, new UpstreamCallback<String, CreateKeystoreFileReply>(responseObserver, reply) {
+				@Override
+				CreateKeystoreFileReply toReply(String keyStorefile) {
+					logger.info("keyStorefile: " + keyStorefile);
+					return CreateKeystoreFileReply.newBuilder().setKeystorefile(keyStorefile).build();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		@Override
+		public StreamObserver<CreateKeystoreFileRequest> createKeystoreFiles(
+				StreamObserver<CreateKeystoreFileReply> responseObserver) {
+			return keystoreEngine.stream((ServerCallStreamObserver<CreateKeystoreFileReply>) responseObserver);
+		}
+
+		@Override
+		public StreamObserver<VerifySignatureRequest> verifySignatures(
+				StreamObserver<VerifySignatureReply> responseObserver) {
+			return signatureVerifier.stream((ServerCallStreamObserver<VerifySignatureReply>) responseObserver);
 		}
 
 		@Override
 		public void checkBalance(CheckBalanceRequest req, StreamObserver<CheckBalanceReply> responseObserver) {
 			CheckBalanceReply reply = CheckBalanceReply.newBuilder().setBalance("").build();
 
-			HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-			logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-			OkHttpClient httpClient = new OkHttpClient.Builder().addInterceptor(logging).build();
-			IconService iconService = new IconService(new HttpProvider(httpClient, CommonData.URI4testnet));
+			Address address;
+			try {
+				address = new Address(req.getAddress());
+			} catch (IllegalArgumentException e) {
+				responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+				return;
+			}
+			UpstreamCallback<BigInteger, CheckBalanceReply> callback =
+					new UpstreamCallback<BigInteger, CheckBalanceReply>(responseObserver, reply) {
+						@Override
+						CheckBalanceReply toReply(BigInteger balance) {
+							if (logger.isLoggable(Level.FINE)) {
+								logger.fine("Example_wallet balance: " + balance);
+							}
+							return CheckBalanceReply.newBuilder().setBalance(balance.toString()).build();
+						}
+					};
+			complete(balanceCache.getBalanceAsync(address), callback, nonBlocking);
+		}
 
-			Address address = new Address(req.getAddress());
-			BigInteger balance;
+		@Override
+		public void checkBalances(CheckBalancesRequest req, StreamObserver<CheckBalancesReply> responseObserver) {
+			CheckBalancesReply reply = CheckBalancesReply.getDefaultInstance();
+
+			List<Address> addresses = new ArrayList<Address>(req.getAddressCount());
 			try {
-				balance = iconService.getBalance(address).execute();
-				System.out.println("Example_wallet balance:" + balance);
-				reply = CheckBalanceReply.newBuilder().setBalance(balance.toString()).build();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				for (String address : req.getAddressList()) {
+					addresses.add(new Address(address));
+				}
+			} catch (IllegalArgumentException e) {
+				responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+				return;
 			}
+			ListenableFuture<List<BigInteger>> balances = balanceCache.getBalancesAsync(addresses);
+			UpstreamCallback<List<BigInteger>, CheckBalancesReply> callback =
+					new UpstreamCallback<List<BigInteger>, CheckBalancesReply>(responseObserver, reply) {
+						@Override
+						CheckBalancesReply toReply(List<BigInteger> result) {
+							CheckBalancesReply.Builder builder = CheckBalancesReply.newBuilder();
+							for (BigInteger balance : result) {
+								builder.addBalance(balance.toString());
+							}
+							return builder.build();
+						}
+					};
+			complete(balances, callback, nonBlocking);
+		}
 
-			responseObserver.onNext(reply);
-			responseObserver.onCompleted();
+		@Override
+		public void watchBalances(WatchBalancesRequest req, StreamObserver<BalanceUpdate> responseObserver) {
+			if (req.getAddressCount() == 0 || req.getAddressCount() > BalanceWatcher.MAX_ADDRESSES_PER_STREAM) {
+				responseObserver.onError(Status.INVALID_ARGUMENT
+						.withDescription("Watch between 1 and " + BalanceWatcher.MAX_ADDRESSES_PER_STREAM + " addresses")
+						.asRuntimeException());
+				return;
+			}
+			List<Address> addresses = new ArrayList<Address>(req.getAddressCount());
+			try {
+				for (String address : req.getAddressList()) {
+					addresses.add(new Address(address));
+				}
+			} catch (IllegalArgumentException e) {
+				responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+				return;
+			}
+			balanceWatcher.subscribe(addresses, (ServerCallStreamObserver<BalanceUpdate>) responseObserver);
+		}
+
+		@Override
+		public void watchTransactions(WatchTransactionsRequest req, StreamObserver<TransactionStatus> responseObserver) {
+			if (req.getTxhashCount() == 0 || req.getTxhashCount() > ReceiptTracker.MAX_HASHES_PER_STREAM) {
+				responseObserver.onError(Status.INVALID_ARGUMENT
+						.withDescription("Watch between 1 and " + ReceiptTracker.MAX_HASHES_PER_STREAM + " transactions")
+						.asRuntimeException());
+				return;
+			}
+			List<Bytes> hashes = new ArrayList<Bytes>(req.getTxhashCount());
+			try {
+				for (String txhash : req.getTxhashList()) {
+					Bytes hash = new Bytes(txhash);
+					if (hash.length() != PendingHashes.HASH_SIZE) {
+						throw new IllegalArgumentException("Not a transaction hash: " + txhash);
+					}
+					hashes.add(hash);
+				}
+			} catch (IllegalArgumentException e) {
+				responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+				return;
+			}
+			receiptTracker.stream(hashes, (ServerCallStreamObserver<TransactionStatus>) responseObserver);
 		}
 
 		@Override
 		public void sendICX(SendIcxRequest req, StreamObserver<SendIcxReply> responseObserver) {
-			SendIcxReply reply = SendIcxReply.newBuilder().setMessage("Send ICX result = ").build();
+			final SendIcxReply reply = SendIcxReply.newBuilder().setMessage("Send ICX result = ").build();
 
 			final Address scoreAddress = new Address("cx6775fe9c32444a917f854f4a53fa08d763127c79");
 
-			HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-			logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-			OkHttpClient httpClient = new OkHttpClient.Builder().addInterceptor(logging).build();
-			IconService iconService = new IconService(new HttpProvider(httpClient, CommonData.URI4testnet));
+			IconService iconService = iconClient.getIconService();
 
 			Call<RpcItem> call = new Call.Builder().to(scoreAddress).method("create_did").build();
 
-			try {
-				RpcItem result = iconService.call(call).execute();
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			UpstreamCallback<RpcItem, SendIcxReply> callback =
+					new UpstreamCallback<RpcItem, SendIcxReply>(responseObserver, reply) {
+						@Override
+						SendIcxReply toReply(RpcItem result) {
+							return reply;
+						}
+					};
+			complete(iconClient.executeAsync(iconService.call(call)), callback, nonBlocking);
+		}
+
+		@Override
+		public void createDID(final CreateDIDRequest req, StreamObserver<CreateDIDReply> responseObserver) {
+			CreateDIDReply reply = CreateDIDReply.newBuilder().setMessage("Send ICX result = ").build();
+
+			ListenableFuture<Bytes> hash = didPipeline.submit(req.getPublickey());
+			UpstreamCallback<Bytes, CreateDIDReply> callback =
+					new UpstreamCallback<Bytes, CreateDIDReply>(responseObserver, reply) {
+						@Override
+						CreateDIDReply toReply(Bytes hash) {
+							if (logger.isLoggable(Level.FINE)) {
+								logger.fine("txHash: " + hash);
+							}
+							if (didIndex != null) {
+								// DIDs created here are the public key itself.
+								didIndex.record(req.getPublickey(), req.getPublickey(), "", hash.toString());
+							}
+							return CreateDIDReply.newBuilder().setMessage("Send ICX result = ")
+									.setTxhash(hash.toString()).build();
+						}
+					};
+			complete(hash, callback, nonBlocking);
+		}
+
+		@Override
+		public StreamObserver<CreateDIDRequest> createDIDs(StreamObserver<CreateDIDsReply> responseObserver) {
+			return didPipeline.stream((ServerCallStreamObserver<CreateDIDsReply>) responseObserver, didIndex);
+		}
+
+		@Override
+		public void submitDID(SubmitDIDRequest req, final StreamObserver<DIDJob> responseObserver) {
+			if (didJobQueue == null) {
+				responseObserver.onError(Status.FAILED_PRECONDITION
+						.withDescription("SubmitDID needs a DID journal").asRuntimeException());
+				return;
+			}
+			// Only waits for the journal flush, which is shared with other submissions.
+			Futures.addCallback(didJobQueue.submit(req.getIdempotencyKey(), req.getPublickey()),
+					new FutureCallback<DIDJob>() {
+						@Override
+						public void onSuccess(DIDJob job) {
+							responseObserver.onNext(job);
+							responseObserver.onCompleted();
+						}
+
+						@Override
+						public void onFailure(Throwable t) {
+							Status status = t instanceof RejectedExecutionException ? Status.RESOURCE_EXHAUSTED
+									: Status.UNAVAILABLE;
+							responseObserver.onError(status.withDescription(t.getMessage()).asRuntimeException());
+						}
+					}, MoreExecutors.directExecutor());
+		}
+
+		@Override
+		public void lookupDID(LookupDIDRequest req, StreamObserver<LookupDIDReply> responseObserver) {
+			if (didIndex == null) {
+				responseObserver.onError(Status.FAILED_PRECONDITION
+						.withDescription("LookupDID needs a DID index").asRuntimeException());
+				return;
+			}
+			LookupDIDReply reply = didIndex.lookup(req.getPublickey());
+			if (reply == null) {
+				responseObserver.onError(Status.NOT_FOUND
+						.withDescription("No DID recorded for " + req.getPublickey()).asRuntimeException());
+				return;
 			}
 			responseObserver.onNext(reply);
 			responseObserver.onCompleted();
 		}
 
 		@Override
-		public void createDID(CreateDIDRequest req, StreamObserver<CreateDIDReply> responseObserver) {
-			CreateDIDReply reply = CreateDIDReply.newBuilder().setMessage("Send ICX result = ").build();
-
-			KeyWallet wallet = KeyWallet
-					.load(new Bytes("1915704752ee6e926e15e938d2d8153957fb8d43724a5f61a129ddd1fbb9884d"));
-			Address fromAddress = wallet.getAddress();
-			Address scoreAddress = new Address("cxd6bdebfbba1b35141fdade2a5f806d618c713369");
-
-			BigInteger networkId = new BigInteger("3");
-			BigInteger value = IconAmount.of("0", IconAmount.Unit.ICX).toLoop();
-			BigInteger stepLimit = new BigInteger("1000000");
-			long timestamp = System.currentTimeMillis() * 1000L;
-			BigInteger nonce = new BigInteger("1");
-
-			RpcObject params = new RpcObject.Builder().put("publickey", new RpcValue(req.getPublickey())).build();
-
-			Transaction transaction = TransactionBuilder.newBuilder()
-					.nid(networkId)
-					.from(fromAddress)
-					.to(scoreAddress)
-					.value(value)
-					.stepLimit(stepLimit)
-					.timestamp(new BigInteger(Long.toString(timestamp)))
-					.nonce(nonce)
-					.call("create_did_from_pubkey")
-					.params(params)
-					.build();
-
-			SignedTransaction signedTransaction = new SignedTransaction(transaction, wallet);
-
-			HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-			logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-			OkHttpClient httpClient = new OkHttpClient.Builder().addInterceptor(logging).build();
-			iconService = new IconService(new HttpProvider(httpClient, CommonData.URI4testnet));
+		public void watchEvents(WatchEventsRequest req, StreamObserver<EventNotification> responseObserver) {
+			if (req.getSignatureCount() > EventScanner.MAX_SIGNATURES_PER_STREAM) {
+				responseObserver.onError(Status.INVALID_ARGUMENT
+						.withDescription("Watch at most " + EventScanner.MAX_SIGNATURES_PER_STREAM + " event signatures")
+						.asRuntimeException());
+				return;
+			}
+			String score = req.getScore().isEmpty() ? CommonData.DID_SCORE_ADDRESS : req.getScore();
 			try {
-				Bytes hash = iconService.sendTransaction(signedTransaction).execute();
-				System.out.println("txHash:" + hash);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				eventScanner.subscribe(score, req.getSignatureList(),
+						(ServerCallStreamObserver<EventNotification>) responseObserver);
+			} catch (IllegalArgumentException e) {
+				responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
 			}
+		}
 
+		@Override
+		public void getTransactions(GetTransactionsRequest req, StreamObserver<GetTransactionsReply> responseObserver) {
+			if (transactionStore == null) {
+				responseObserver.onError(Status.FAILED_PRECONDITION
+						.withDescription("GetTransactions needs a transaction store").asRuntimeException());
+				return;
+			}
+			GetTransactionsReply reply;
+			try {
+				reply = transactionStore.read(req.getAddress(), req.getCursor(), req.getLimit());
+			} catch (IllegalArgumentException e) {
+				responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).asRuntimeException());
+				return;
+			}
 			responseObserver.onNext(reply);
 			responseObserver.onCompleted();
 		}
+
+		@Override
+		public void getDIDJob(GetDIDJobRequest req, StreamObserver<DIDJob> responseObserver) {
+			DIDJob job = didJobQueue != null ? didJobQueue.get(req.getJobId()) : null;
+			if (job == null) {
+				responseObserver.onError(
+						Status.NOT_FOUND.withDescription("No DID job " + req.getJobId()).asRuntimeException());
+				return;
+			}
+			responseObserver.onNext(job);
+			responseObserver.onCompleted();
+		}
+	}
+
+	/**
+	 * True once the client cancelled the call or its deadline passed, so a reply would be dropped.
+	 * The deadline is only seen on the thread serving the call, where it may expire slightly before
+	 * the call is marked cancelled.
+	 */
+	static boolean isCancelled(StreamObserver<?> responseObserver) {
+		if (responseObserver instanceof ServerCallStreamObserver
+				&& ((ServerCallStreamObserver<?>) responseObserver).isCancelled()) {
+			return true;
+		}
+		Deadline deadline = Context.current().getDeadline();
+		return deadline != null && deadline.isExpired();
+	}
+
+	/**
+	 * Waits for {@code future} on the calling gRPC thread, giving up with a
+	 * {@link CancellationException} as soon as the current call is cancelled. The work behind the
+	 * future, which may be shared with other calls, is left running.
+	 */
+	static <T> T awaitUnlessCancelled(ListenableFuture<T> future) throws ExecutionException, InterruptedException {
+		final ListenableFuture<T> waited = Futures.nonCancellationPropagating(future);
+		Context.CancellationListener listener = new Context.CancellationListener() {
+			@Override
+			public void cancelled(Context context) {
+				waited.cancel(false);
+			}
+		};
+		Context context = Context.current();
+		context.addListener(listener, MoreExecutors.directExecutor());
+		try {
+			return waited.get();
+		} finally {
+			context.removeListener(listener);
+		}
+	}
+
+	/**
+	 * Passes the result of {@code future} to {@code callback}: from whichever thread completes it
+	 * when {@code nonBlocking}, or else after waiting for it on the calling gRPC thread, unless the
+	 * call is cancelled first.
+	 */
+	static <T> void complete(ListenableFuture<T> future, FutureCallback<T> callback, boolean nonBlocking) {
+		if (nonBlocking) {
+			Futures.addCallback(future, callback, MoreExecutors.directExecutor());
+			return;
+		}
+		try {
+			callback.onSuccess(awaitUnlessCancelled(future));
+		} catch (CancellationException e) {
+			return;
+		} catch (ExecutionException e) {
+			callback.onFailure(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			callback.onFailure(e);
+		}
+	}
+
+	/**
+	 * Completes a unary call from the result of a non-blocking ICON request or other background
+	 * work. Errors keep the blocking path's behaviour of logging and answering with the default
+	 * reply, while calls rejected by an in-flight or queue limit fail with
+	 * {@code RESOURCE_EXHAUSTED}. Nothing is sent once the call has been cancelled or its deadline
+	 * has passed.
+	 */
+	abstract static class UpstreamCallback<T, R> implements FutureCallback<T> {
+		private final StreamObserver<R> responseObserver;
+		private final R defaultReply;
+
+		UpstreamCallback(StreamObserver<R> responseObserver, R defaultReply) {
+			this.responseObserver = responseObserver;
+			this.defaultReply = defaultReply;
+		}
+
+		abstract R toReply(T result);
+
+		@Override
+		public void onSuccess(T result) {
+			if (isCancelled(responseObserver)) {
+				return;
+			}
+			responseObserver.onNext(toReply(result));
+			responseObserver.onCompleted();
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			if (isCancelled(responseObserver)) {
+				return;
+			}
+			if (t instanceof RejectedExecutionException) {
+				responseObserver.onError(
+						Status.RESOURCE_EXHAUSTED.withDescription(t.getMessage()).asRuntimeException());
+				return;
+			}
+			logger.log(Level.WARNING, "Request failed", t);
+			responseObserver.onNext(defaultReply);
+			responseObserver.onCompleted();
+		}
 	}
 }
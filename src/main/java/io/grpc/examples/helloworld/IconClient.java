@@ -0,0 +1,462 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.Callback;
+import foundation.icon.icx.IconService;
+import foundation.icon.icx.Request;
+import foundation.icon.icx.transport.http.HttpProvider;
+import foundation.icon.icx.transport.jsonrpc.Response;
+import foundation.icon.icx.transport.jsonrpc.RpcError;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcItemDeserializer;
+import foundation.icon.icx.transport.jsonrpc.RpcItemSerializer;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Long-lived ICON JSON-RPC client shared by every {@code Greeter} call.
+ *
+ * <p>A single {@link OkHttpClient} is kept for the lifetime of the server so that connections to
+ * the ICON node are pooled and reused (HTTP/2 when the node negotiates it, keep-alive otherwise),
+ * and the number of upstream requests running at once is bounded by the OkHttp
+ * {@link Dispatcher}. The client must be {@link #start() started} before use and
+ * {@link #shutdown() shut down} together with the gRPC server.
+ *
+ * <p>{@link #executeAsync} runs a request without blocking the caller. Calls waiting for a
+ * dispatcher slot are queued without holding a thread, and the total number of admitted calls is
+ * capped by {@code maxInFlight} so an overloaded node fails fast instead of queueing forever.
+ * {@link #executeBatchAsync} sends several JSON-RPC requests in one HTTP round trip.
+ *
+ * <p>With an {@link UpstreamRouter}, every request, whether sent by the SDK or as a batch, is
+ * routed over several nodes instead of the single endpoint. With a {@link ResultCache}, calls
+ * whose result is cached are answered before they reach the router or the network.
+ *
+ * <p>Calls created while serving a gRPC call are cancelled together with it and time out at its
+ * deadline; see {@link DeadlinePropagator}.
+ */
+public class IconClient {
+	private static final Logger logger = Logger.getLogger(IconClient.class.getName());
+	private static final MediaType JSON = MediaType.parse("application/json");
+	/** Same wire format as the SDK's {@link HttpProvider}. */
+	private static final ObjectMapper MAPPER = new ObjectMapper()
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL)
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+			.registerModule(new SimpleModule()
+					.addSerializer(RpcItem.class, new RpcItemSerializer())
+					.addDeserializer(RpcItem.class, new RpcItemDeserializer()));
+
+	private final String endpoint;
+	private final int maxRequests;
+	private final int maxInFlight;
+	private final Semaphore inFlight;
+	private final int maxIdleConnections;
+	private final long keepAliveMillis;
+	private final long connectTimeoutMillis;
+	private final long readTimeoutMillis;
+	private final boolean http2;
+	private final HttpLoggingInterceptor.Level logLevel;
+	private final UpstreamRouter router;
+	private final ResultCache resultCache;
+	private final AtomicLong requestIds = new AtomicLong();
+	private final DeadlinePropagator deadlines = new DeadlinePropagator();
+
+	private ExecutorService dispatcherExecutor;
+	private OkHttpClient attemptClient;
+	private volatile OkHttpClient httpClient;
+	private volatile IconService iconService;
+
+	private IconClient(Builder builder) {
+		this.router = builder.router;
+		this.resultCache = builder.resultCache;
+		this.endpoint = router != null ? router.defaultEndpoint() : builder.endpoint;
+		this.maxRequests = builder.maxRequests;
+		this.maxInFlight = builder.maxInFlight;
+		this.inFlight = new Semaphore(builder.maxInFlight);
+		this.maxIdleConnections = builder.maxIdleConnections;
+		this.keepAliveMillis = builder.keepAliveMillis;
+		this.connectTimeoutMillis = builder.connectTimeoutMillis;
+		this.readTimeoutMillis = builder.readTimeoutMillis;
+		this.http2 = builder.http2;
+		this.logLevel = builder.logLevel;
+	}
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	/** Creates the shared connection pool and dispatcher. */
+	public synchronized IconClient start() {
+		if (httpClient != null) {
+			throw new IllegalStateException("Already started");
+		}
+		dispatcherExecutor = newDispatcherExecutor("icon-client-%d");
+		Dispatcher dispatcher = new Dispatcher(dispatcherExecutor);
+		dispatcher.setMaxRequests(maxRequests);
+		dispatcher.setMaxRequestsPerHost(maxRequests);
+
+		OkHttpClient.Builder httpBuilder = new OkHttpClient.Builder()
+				.dispatcher(dispatcher)
+				.connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+				.connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+				.readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+				.retryOnConnectionFailure(true)
+				.eventListenerFactory(deadlines);
+		if (http2) {
+			httpBuilder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+		} else {
+			httpBuilder.protocols(Arrays.asList(Protocol.HTTP_1_1));
+		}
+		if (logLevel != HttpLoggingInterceptor.Level.NONE) {
+			HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+			logging.setLevel(logLevel);
+			httpBuilder.addInterceptor(logging);
+		}
+		OkHttpClient client = httpBuilder.build();
+		// The cache answers before the router so that hits never take an attempt.
+		OkHttpClient.Builder routed = client.newBuilder().addInterceptor(deadlines.newInterceptor());
+		if (resultCache != null) {
+			routed.addInterceptor(resultCache.newInterceptor());
+		}
+		if (router != null) {
+			// A routed call waits for its attempts, so they must not compete for its dispatcher; each
+			// call makes at most two attempts.
+			Dispatcher attemptDispatcher = new Dispatcher(newDispatcherExecutor("icon-attempt-%d"));
+			attemptDispatcher.setMaxRequests(2 * maxRequests);
+			attemptDispatcher.setMaxRequestsPerHost(2 * maxRequests);
+			attemptClient = client.newBuilder().dispatcher(attemptDispatcher).build();
+			routed.addInterceptor(router.newInterceptor(attemptClient));
+		}
+		httpClient = routed.build();
+		iconService = new IconService(new HttpProvider(httpClient, endpoint));
+		logger.info("ICON client started for " + endpoint + " (maxRequests=" + maxRequests + ")");
+		return this;
+	}
+
+	/**
+	 * Creates the executor of a {@link Dispatcher}, which alone bounds the calls running at once.
+	 * The executor itself must not: a finishing call hands the next queued one over while its own
+	 * thread is still busy, so a pool capped at the dispatcher's limit would reject the hand-off
+	 * and OkHttp would fail that call. Idle threads are released after a minute.
+	 */
+	private static ExecutorService newDispatcherExecutor(String nameFormat) {
+		return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build());
+	}
+
+	/** Cancels queued calls and releases pooled connections and dispatcher threads. */
+	public synchronized void shutdown() {
+		OkHttpClient client = httpClient;
+		if (client == null) {
+			return;
+		}
+		client.dispatcher().cancelAll();
+		dispatcherExecutor.shutdown();
+		if (attemptClient != null) {
+			attemptClient.dispatcher().cancelAll();
+			attemptClient.dispatcher().executorService().shutdown();
+			attemptClient = null;
+		}
+		client.connectionPool().evictAll();
+		httpClient = null;
+		iconService = null;
+	}
+
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		ExecutorService executor;
+		synchronized (this) {
+			executor = dispatcherExecutor;
+		}
+		return executor == null || executor.awaitTermination(timeout, unit);
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/** The router spreading requests over several nodes, or null with a single endpoint. */
+	public UpstreamRouter getRouter() {
+		return router;
+	}
+
+	/** The cache answering immutable calls, or null. */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/** Returns the shared {@link IconService}; the client must have been started. */
+	public IconService getIconService() {
+		IconService service = iconService;
+		if (service == null) {
+			throw new IllegalStateException("ICON client is not started");
+		}
+		return service;
+	}
+
+	/**
+	 * Executes {@code request} on the dispatcher and completes the returned future from the OkHttp
+	 * callback. Fails immediately with {@link RejectedExecutionException} when {@code maxInFlight}
+	 * calls are already outstanding.
+	 */
+	public <T> ListenableFuture<T> executeAsync(Request<T> request) {
+		if (!inFlight.tryAcquire()) {
+			return Futures.immediateFailedFuture(
+					new RejectedExecutionException("More than " + maxInFlight + " ICON calls in flight"));
+		}
+		final SettableFuture<T> future = SettableFuture.create();
+		try {
+			request.execute(new Callback<T>() {
+				@Override
+				public void onSuccess(T result) {
+					inFlight.release();
+					future.set(result);
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+					inFlight.release();
+					future.setException(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			future.setException(e);
+		}
+		return future;
+	}
+
+	/** Creates a JSON-RPC request with an id that is unique for this client. */
+	public foundation.icon.icx.transport.jsonrpc.Request newRequest(String method, RpcObject params) {
+		return new foundation.icon.icx.transport.jsonrpc.Request(requestIds.incrementAndGet(), method, params);
+	}
+
+	/**
+	 * Sends {@code requests} as a single JSON-RPC batch. The returned futures are in request order
+	 * and complete with the {@code result} item of the matching response, or fail with its
+	 * {@link RpcError}. The whole batch takes one {@code maxInFlight} permit.
+	 */
+	public List<ListenableFuture<RpcItem>> executeBatchAsync(
+			List<foundation.icon.icx.transport.jsonrpc.Request> requests) {
+		final Map<Long, SettableFuture<RpcItem>> pending = new HashMap<Long, SettableFuture<RpcItem>>();
+		final List<ListenableFuture<RpcItem>> futures = new ArrayList<ListenableFuture<RpcItem>>(requests.size());
+		for (foundation.icon.icx.transport.jsonrpc.Request request : requests) {
+			SettableFuture<RpcItem> future = SettableFuture.create();
+			pending.put(request.getId(), future);
+			futures.add(future);
+		}
+		if (!inFlight.tryAcquire()) {
+			failAll(pending, new RejectedExecutionException("More than " + maxInFlight + " ICON calls in flight"));
+			return futures;
+		}
+		okhttp3.Request httpRequest;
+		try {
+			httpRequest = new okhttp3.Request.Builder()
+					.url(endpoint)
+					.post(RequestBody.create(JSON, MAPPER.writeValueAsBytes(requests)))
+					.build();
+		} catch (IOException | RuntimeException e) {
+			inFlight.release();
+			failAll(pending, e);
+			return futures;
+		}
+		getHttpClient().newCall(httpRequest).enqueue(new okhttp3.Callback() {
+			@Override
+			public void onFailure(okhttp3.Call call, IOException e) {
+				inFlight.release();
+				failAll(pending, e);
+			}
+
+			@Override
+			public void onResponse(okhttp3.Call call, okhttp3.Response response) {
+				inFlight.release();
+				try (ResponseBody body = response.body()) {
+					completeBatch(pending, response, body);
+				} catch (IOException | RuntimeException e) {
+					failAll(pending, e);
+				}
+			}
+		});
+		return futures;
+	}
+
+	private static void completeBatch(Map<Long, SettableFuture<RpcItem>> pending, okhttp3.Response response,
+			ResponseBody body) throws IOException {
+		JsonNode tree = MAPPER.readTree(body.byteStream());
+		if (!tree.isArray()) {
+			// Nodes answer a batch they cannot process with a single error object.
+			Response single = MAPPER.treeToValue(tree, Response.class);
+			RpcError error = single.getError();
+			failAll(pending, error != null ? error : new RpcError(response.code(), response.message()));
+			return;
+		}
+		for (JsonNode node : tree) {
+			Response item = MAPPER.treeToValue(node, Response.class);
+			SettableFuture<RpcItem> future = pending.remove(item.getId());
+			if (future == null) {
+				continue;
+			}
+			if (item.getError() != null) {
+				future.setException(item.getError());
+			} else {
+				future.set(item.getResult());
+			}
+		}
+		failAll(pending, new IOException("No response in batch"));
+	}
+
+	private static void failAll(Map<Long, SettableFuture<RpcItem>> pending, Throwable t) {
+		for (SettableFuture<RpcItem> future : pending.values()) {
+			future.setException(t);
+		}
+		pending.clear();
+	}
+
+	/** Upstream calls never sent because the gRPC call they served was already cancelled. */
+	public long getSkippedCallCount() {
+		return deadlines.getSkippedCount();
+	}
+
+	/** Upstream calls cancelled in flight with the gRPC call they served, or at its deadline. */
+	public long getAbortedCallCount() {
+		return deadlines.getAbortedCount();
+	}
+
+	/** Upstream calls whose timeout was shortened to the deadline of the gRPC call they served. */
+	public long getDeadlineBoundedCallCount() {
+		return deadlines.getDeadlineBoundedCount();
+	}
+
+	/** Number of asynchronous calls and batches that have not completed yet. */
+	public int getInFlightCount() {
+		return maxInFlight - inFlight.availablePermits();
+	}
+
+	OkHttpClient getHttpClient() {
+		OkHttpClient client = httpClient;
+		if (client == null) {
+			throw new IllegalStateException("ICON client is not started");
+		}
+		return client;
+	}
+
+	/** Configuration for an {@link IconClient}. */
+	public static final class Builder {
+		private String endpoint = CommonData.URI4testnet;
+		private int maxRequests = 64;
+		private int maxInFlight = 4096;
+		private int maxIdleConnections = 16;
+		private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+		private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+		private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+		private boolean http2 = true;
+		private HttpLoggingInterceptor.Level logLevel = HttpLoggingInterceptor.Level.NONE;
+		private UpstreamRouter router;
+		private ResultCache resultCache;
+
+		private Builder() {
+		}
+
+		/** ICON JSON-RPC v3 endpoint, defaults to {@link CommonData#URI4testnet}. */
+		public Builder endpoint(String endpoint) {
+			this.endpoint = endpoint;
+			return this;
+		}
+
+		/** Maximum number of upstream HTTP calls executing at once. */
+		public Builder maxRequests(int maxRequests) {
+			if (maxRequests < 1) {
+				throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+			}
+			this.maxRequests = maxRequests;
+			return this;
+		}
+
+		/** Maximum number of {@link IconClient#executeAsync} calls admitted but not yet completed. */
+		public Builder maxInFlight(int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("maxInFlight < 1: " + maxInFlight);
+			}
+			this.maxInFlight = maxInFlight;
+			return this;
+		}
+
+		/** Idle connections kept open to the node between calls. */
+		public Builder maxIdleConnections(int maxIdleConnections) {
+			this.maxIdleConnections = maxIdleConnections;
+			return this;
+		}
+
+		public Builder keepAlive(long duration, TimeUnit unit) {
+			this.keepAliveMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		public Builder connectTimeout(long duration, TimeUnit unit) {
+			this.connectTimeoutMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		public Builder readTimeout(long duration, TimeUnit unit) {
+			this.readTimeoutMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		/** Offer HTTP/2 during TLS negotiation; plain-text endpoints always use HTTP/1.1. */
+		public Builder http2(boolean http2) {
+			this.http2 = http2;
+			return this;
+		}
+
+		/** Request logging, {@code NONE} by default since {@code BODY} logging dominates cost. */
+		public Builder logLevel(HttpLoggingInterceptor.Level logLevel) {
+			this.logLevel = logLevel;
+			return this;
+		}
+
+		/** Routes requests over several nodes; {@link #endpoint} is then ignored. */
+		public Builder router(UpstreamRouter router) {
+			this.router = router;
+			return this;
+		}
+
+		/** Answers SCORE calls and final transaction results from {@code resultCache} when it can. */
+		public Builder resultCache(ResultCache resultCache) {
+			this.resultCache = resultCache;
+			return this;
+		}
+
+		public IconClient build() {
+			return new IconClient(this);
+		}
+	}
+}
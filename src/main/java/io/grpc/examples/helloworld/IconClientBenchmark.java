@@ -0,0 +1,173 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import foundation.icon.icx.IconService;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.transport.http.HttpProvider;
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * Compares requests/sec and tail latency of {@code icx_getBalance} through a shared
+ * {@link IconClient} against building a new {@link OkHttpClient} and {@link IconService} for
+ * every call, which is what {@code GreeterImpl} used to do.
+ *
+ * <p>Usage: {@code icon-client-benchmark [threads] [seconds] [endpoint]}. Without an endpoint a
+ * local JSON-RPC stub is started so that only client-side costs are measured.
+ */
+public class IconClientBenchmark {
+
+	/** One upstream balance lookup. */
+	private interface BalanceCall {
+		BigInteger getBalance(Address address) throws IOException;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		HttpServer stub = null;
+		final String endpoint;
+		if (args.length > 2) {
+			endpoint = args[2];
+		} else {
+			stub = startStub();
+			endpoint = "http://127.0.0.1:" + stub.getAddress().getPort() + "/api/v3";
+		}
+		try {
+			BalanceCall perCall = new BalanceCall() {
+				@Override
+				public BigInteger getBalance(Address address) throws IOException {
+					HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+					logging.setLevel(HttpLoggingInterceptor.Level.NONE);
+					OkHttpClient httpClient = new OkHttpClient.Builder().addInterceptor(logging).build();
+					IconService iconService = new IconService(new HttpProvider(httpClient, endpoint));
+					return iconService.getBalance(address).execute();
+				}
+			};
+			run("per-call", perCall, threads, seconds);
+
+			final IconClient iconClient = IconClient.newBuilder().endpoint(endpoint).maxRequests(threads).build()
+					.start();
+			try {
+				BalanceCall shared = new BalanceCall() {
+					@Override
+					public BigInteger getBalance(Address address) throws IOException {
+						return iconClient.getIconService().getBalance(address).execute();
+					}
+				};
+				run("shared", shared, threads, seconds);
+			} finally {
+				iconClient.shutdown();
+			}
+		} finally {
+			if (stub != null) {
+				stub.stop(0);
+			}
+		}
+	}
+
+	private static void run(String name, final BalanceCall call, int threads, int seconds)
+			throws InterruptedException {
+		final Address address = new Address(CommonData.ADDRESS_1);
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		final AtomicLong errors = new AtomicLong();
+		final long[][] samples = new long[threads][];
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++) {
+			final int slot = i;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					long[] latencies = new long[1024];
+					int count = 0;
+					while (System.nanoTime() < deadline) {
+						long start = System.nanoTime();
+						try {
+							call.getBalance(address);
+						} catch (IOException e) {
+							errors.incrementAndGet();
+							continue;
+						}
+						if (count == latencies.length) {
+							latencies = Arrays.copyOf(latencies, count * 2);
+						}
+						latencies[count++] = System.nanoTime() - start;
+					}
+					samples[slot] = Arrays.copyOf(latencies, count);
+					done.countDown();
+				}
+			}, "bench-" + name + "-" + i).start();
+		}
+		done.await();
+
+		int total = 0;
+		for (long[] s : samples) {
+			total += s.length;
+		}
+		long[] all = new long[total];
+		int pos = 0;
+		for (long[] s : samples) {
+			System.arraycopy(s, 0, all, pos, s.length);
+			pos += s.length;
+		}
+		Arrays.sort(all);
+		System.out.printf("%-8s threads=%d requests=%d errors=%d rps=%.1f p50=%.2fms p99=%.2fms%n",
+				name, threads, total, errors.get(), total / (double) seconds,
+				percentileMillis(all, 0.50), percentileMillis(all, 0.99));
+	}
+
+	private static double percentileMillis(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	/** Starts a loopback JSON-RPC endpoint that answers every request with a fixed balance. */
+	private static HttpServer startStub() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		server.createContext("/api/v3", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				JSONObject request;
+				try (InputStream in = exchange.getRequestBody()) {
+					request = new JSONObject(new JSONTokener(in));
+				}
+				byte[] body = new JSONObject()
+						.put("jsonrpc", "2.0")
+						.put("id", request.opt("id"))
+						.put("result", "0xde0b6b3a7640000")
+						.toString().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("icon-stub-%d").build()));
+		server.start();
+		return server;
+	}
+}
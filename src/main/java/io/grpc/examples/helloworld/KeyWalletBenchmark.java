@@ -0,0 +1,83 @@
+package io.grpc.examples.helloworld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import foundation.icon.icx.KeyWallet;
+
+/**
+ * Reports key wallets created per second for 1, 2, 4, ... threads up to the number of cores,
+ * with {@link KeyWallet#create()} and its shared random generator, and with a
+ * {@link KeyWalletGenerator} whose workers each own one.
+ *
+ * <p>Usage: {@code key-wallet-benchmark [wallets]}.
+ */
+public class KeyWalletBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int wallets = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		// Warm up the JIT and both entropy sources.
+		runShared(Math.min(2, cores), wallets / 10);
+		runGenerator(Math.min(2, cores), wallets / 10);
+
+		System.out.printf("%-8s %16s %16s%n", "threads", "shared wallets/s", "worker wallets/s");
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for (int threads = 1; threads < cores; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(cores);
+		for (int threads : threadCounts) {
+			double shared = runShared(threads, wallets);
+			double generator = runGenerator(threads, wallets);
+			System.out.printf("%-8d %16.0f %16.0f%n", threads, shared, generator);
+		}
+	}
+
+	private static double runShared(int threads, final int wallets) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			long start = System.nanoTime();
+			for (int i = 0; i < threads; i++) {
+				final int count = wallets / threads + (i < wallets % threads ? 1 : 0);
+				tasks.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int n = 0; n < count; n++) {
+							KeyWallet.create();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+			return perSecond(wallets, System.nanoTime() - start);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static double runGenerator(int threads, int wallets) throws Exception {
+		KeyWalletGenerator generator = new KeyWalletGenerator(threads).start();
+		try {
+			long start = System.nanoTime();
+			generator.generate(wallets).get();
+			return perSecond(wallets, System.nanoTime() - start);
+		} finally {
+			generator.shutdown();
+		}
+	}
+
+	private static double perSecond(int count, long nanos) {
+		return count / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+}
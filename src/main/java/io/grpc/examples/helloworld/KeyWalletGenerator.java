@@ -0,0 +1,236 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.bouncycastle.jce.ECNamedCurveTable;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * Generates key wallets on a pool of worker threads.
+ *
+ * <p>{@link KeyWallet#create()} draws every key from one process-wide {@link SecureRandom}, which
+ * serializes concurrent callers. Here each worker draws from its own generator instead, seeded
+ * once from the system entropy source.
+ */
+public class KeyWalletGenerator {
+	/** Largest number of wallets one {@code CreateKeyWallets} call may ask for. */
+	public static final int MAX_WALLETS_PER_CALL = 1_000_000;
+
+	/** Wallets per streamed message and per task. */
+	static final int CHUNK_SIZE = 100;
+
+	private static final BigInteger CURVE_ORDER = ECNamedCurveTable.getParameterSpec("secp256k1").getN();
+
+	private final int threads;
+	private final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+		@Override
+		protected SecureRandom initialValue() {
+			try {
+				// Unlike NativePRNG, SHA1PRNG keeps its state per instance and has no shared lock.
+				return SecureRandom.getInstance("SHA1PRNG");
+			} catch (NoSuchAlgorithmException e) {
+				return new SecureRandom();
+			}
+		}
+	};
+
+	private ListeningExecutorService executor;
+
+	/** @param threads number of workers, normally the number of cores */
+	public KeyWalletGenerator(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads < 1: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public synchronized KeyWalletGenerator start() {
+		if (executor != null) {
+			throw new IllegalStateException("Already started");
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("key-wallet-generator-%d").build());
+		executor = MoreExecutors.listeningDecorator(pool);
+		return this;
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private synchronized ListeningExecutorService executor() {
+		if (executor == null) {
+			throw new RejectedExecutionException("Key wallet generator not running");
+		}
+		return executor;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/** Creates a wallet on the calling thread, using that thread's own random generator. */
+	public KeyWallet create() {
+		byte[] privateKey = new byte[32];
+		BigInteger d;
+		do {
+			random.get().nextBytes(privateKey);
+			d = new BigInteger(1, privateKey);
+		} while (d.signum() == 0 || d.compareTo(CURVE_ORDER) >= 0);
+		return KeyWallet.load(new Bytes(privateKey));
+	}
+
+	/** Creates {@code count} wallets split across the workers. */
+	public ListenableFuture<List<KeyWallet>> generate(int count) {
+		ListeningExecutorService executor = executor();
+		List<ListenableFuture<List<KeyWallet>>> chunks = new ArrayList<ListenableFuture<List<KeyWallet>>>();
+		for (int start = 0; start < count; start += CHUNK_SIZE) {
+			final int size = Math.min(CHUNK_SIZE, count - start);
+			chunks.add(executor.submit(new Callable<List<KeyWallet>>() {
+				@Override
+				public List<KeyWallet> call() {
+					List<KeyWallet> wallets = new ArrayList<KeyWallet>(size);
+					for (int i = 0; i < size; i++) {
+						wallets.add(create());
+					}
+					return wallets;
+				}
+			}));
+		}
+		return Futures.transform(Futures.allAsList(chunks),
+				new Function<List<List<KeyWallet>>, List<KeyWallet>>() {
+					@Override
+					public List<KeyWallet> apply(List<List<KeyWallet>> chunks) {
+						List<KeyWallet> wallets = new ArrayList<KeyWallet>();
+						for (List<KeyWallet> chunk : chunks) {
+							wallets.addAll(chunk);
+						}
+						return wallets;
+					}
+				}, MoreExecutors.directExecutor());
+	}
+
+	/**
+	 * Streams {@code count} wallets to {@code observer} in messages of {@link #CHUNK_SIZE}. Chunks
+	 * are only generated while the stream is ready, at most one per worker at a time, so a slow
+	 * client holds back generation instead of buffering keys. Must be called from the RPC method.
+	 */
+	public void stream(int count, ServerCallStreamObserver<CreateKeyWalletsReply> observer) {
+		final WalletStream stream = new WalletStream(count, observer);
+		observer.setOnCancelHandler(new Runnable() {
+			@Override
+			public void run() {
+				stream.cancel();
+			}
+		});
+		observer.setOnReadyHandler(stream);
+		stream.pump();
+	}
+
+	static CreateKeyWalletReply toReply(KeyWallet wallet) {
+		String publicKey = wallet.getPublicKey().toHexString(false);
+		return CreateKeyWalletReply.newBuilder()
+				.setPrivatekey(wallet.getPrivateKey().toHexString(false))
+				.setPublickey(publicKey)
+				.setDid(publicKey)
+				.setAddress(wallet.getAddress().toString())
+				.build();
+	}
+
+	private final class WalletStream implements Runnable {
+		private final ServerCallStreamObserver<CreateKeyWalletsReply> observer;
+		// Guarded by this.
+		private int remaining;
+		private int running;
+		private boolean closed;
+
+		WalletStream(int count, ServerCallStreamObserver<CreateKeyWalletsReply> observer) {
+			this.remaining = count;
+			this.observer = observer;
+		}
+
+		@Override
+		public void run() {
+			pump();
+		}
+
+		synchronized void cancel() {
+			closed = true;
+		}
+
+		synchronized void pump() {
+			while (!closed && remaining > 0 && running < threads && observer.isReady()) {
+				final int size = Math.min(CHUNK_SIZE, remaining);
+				try {
+					executor().execute(new Runnable() {
+						@Override
+						public void run() {
+							generateChunk(size);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					close(Status.UNAVAILABLE.withDescription(e.getMessage()));
+					return;
+				}
+				remaining -= size;
+				running++;
+			}
+			if (!closed && remaining == 0 && running == 0) {
+				closed = true;
+				observer.onCompleted();
+			}
+		}
+
+		private void generateChunk(int size) {
+			CreateKeyWalletsReply.Builder reply = CreateKeyWalletsReply.newBuilder();
+			RuntimeException failure = null;
+			try {
+				for (int i = 0; i < size; i++) {
+					reply.addWallet(toReply(create()));
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			synchronized (this) {
+				running--;
+				if (failure != null) {
+					close(Status.INTERNAL.withDescription("Failed to create key wallets").withCause(failure));
+					return;
+				}
+				if (!closed) {
+					observer.onNext(reply.build());
+				}
+				pump();
+			}
+		}
+
+		private void close(Status status) {
+			if (!closed) {
+				closed = true;
+				observer.onError(status.asRuntimeException());
+			}
+		}
+	}
+}
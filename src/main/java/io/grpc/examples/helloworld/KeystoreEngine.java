@@ -0,0 +1,263 @@
+package io.grpc.examples.helloworld;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.crypto.Keystore;
+import foundation.icon.icx.crypto.KeystoreException;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Encrypts private keys into keystore JSON on a dedicated pool, so that the scrypt key derivation
+ * never runs on gRPC threads.
+ *
+ * <p>The pool has one thread per core and a bounded queue; once the queue is full new work is
+ * refused at once with {@link RejectedExecutionException} rather than waiting behind seconds of
+ * CPU time. The keystore is serialized in memory with the same parameters and layout as
+ * {@link KeyWallet#store}, without writing a file.
+ */
+public class KeystoreEngine {
+	private static final Logger logger = Logger.getLogger(KeystoreEngine.class.getName());
+
+	/** scrypt cost parameters used by {@link KeyWallet#store}. */
+	private static final int SCRYPT_N = 16384;
+	private static final int SCRYPT_P = 1;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final int threads;
+	private final int maxQueued;
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private ListeningExecutorService executor;
+
+	/**
+	 * @param threads workers deriving keys, normally the number of cores
+	 * @param maxQueued keystores that may wait for a worker before new ones are refused
+	 */
+	public KeystoreEngine(int threads, int maxQueued) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads < 1: " + threads);
+		}
+		this.threads = threads;
+		this.maxQueued = maxQueued;
+	}
+
+	public synchronized KeystoreEngine start() {
+		if (executor != null) {
+			throw new IllegalStateException("Already started");
+		}
+		executor = MoreExecutors.listeningDecorator(new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueued)),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("keystore-%d").build(),
+				new ThreadPoolExecutor.AbortPolicy()));
+		return this;
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/** Encrypts {@code privateKey} with {@code password} and returns the keystore JSON. */
+	public ListenableFuture<String> encrypt(final Bytes privateKey, final String password) {
+		ListeningExecutorService executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		if (executor == null) {
+			return Futures.immediateFailedFuture(new RejectedExecutionException("Keystore engine not running"));
+		}
+		try {
+			return executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws KeystoreException, JsonProcessingException {
+					String keystore = encode(privateKey, password);
+					completed.incrementAndGet();
+					return keystore;
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			return Futures.immediateFailedFuture(
+					new RejectedExecutionException("Keystore engine busy: " + maxQueued + " keystores queued"));
+		}
+	}
+
+	/** Runs the key derivation on the calling thread. */
+	static String encode(Bytes privateKey, String password) throws KeystoreException, JsonProcessingException {
+		return MAPPER.writeValueAsString(Keystore.create(password, privateKey, SCRYPT_N, SCRYPT_P));
+	}
+
+	/**
+	 * Returns the request observer of a {@code CreateKeystoreFiles} stream. Replies are sent in
+	 * request order; each stream has at most one keystore per worker in progress and reads no
+	 * further requests while its replies cannot be sent. Must be called from the RPC method.
+	 */
+	public StreamObserver<CreateKeystoreFileRequest> stream(
+			ServerCallStreamObserver<CreateKeystoreFileReply> responseObserver) {
+		KeystoreStream stream = new KeystoreStream(responseObserver);
+		stream.start();
+		return stream;
+	}
+
+	/** Number of keystores produced. */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/** Number of keystores refused because the queue was full. */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	private final class KeystoreStream implements StreamObserver<CreateKeystoreFileRequest>, Runnable {
+		private final ServerCallStreamObserver<CreateKeystoreFileReply> observer;
+		// Guarded by this; keystores in request order, completed or not.
+		private final ArrayDeque<ListenableFuture<String>> pending = new ArrayDeque<ListenableFuture<String>>();
+		// Guarded by this; requests asked from the client and not yet received.
+		private int requested;
+		private boolean halfClosed;
+		private boolean closed;
+
+		KeystoreStream(ServerCallStreamObserver<CreateKeystoreFileReply> observer) {
+			this.observer = observer;
+		}
+
+		void start() {
+			observer.disableAutoInboundFlowControl();
+			observer.setOnReadyHandler(this);
+			observer.setOnCancelHandler(new Runnable() {
+				@Override
+				public void run() {
+					close();
+				}
+			});
+			synchronized (this) {
+				requestMore();
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				requestMore();
+			}
+		}
+
+		@Override
+		public void onNext(CreateKeystoreFileRequest request) {
+			ListenableFuture<String> keystore;
+			try {
+				keystore = encrypt(new Bytes(request.getPrivatekey()), request.getPassword());
+			} catch (IllegalArgumentException e) {
+				keystore = Futures.immediateFailedFuture(e);
+			}
+			synchronized (this) {
+				requested--;
+				if (closed) {
+					keystore.cancel(false);
+					return;
+				}
+				if (keystore.isDone() && isRejected(keystore)) {
+					closed = true;
+					observer.onError(Status.RESOURCE_EXHAUSTED.withDescription("Keystore engine busy").asRuntimeException());
+					cancelPending();
+					return;
+				}
+				pending.add(keystore);
+			}
+			keystore.addListener(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			close();
+		}
+
+		@Override
+		public synchronized void onCompleted() {
+			halfClosed = true;
+			drain();
+		}
+
+		private synchronized void drain() {
+			while (!closed && !pending.isEmpty() && pending.peek().isDone()) {
+				String keystore = "";
+				try {
+					keystore = Futures.getDone(pending.poll());
+				} catch (ExecutionException e) {
+					logger.log(Level.WARNING, "Failed to create keystore", e.getCause());
+				}
+				observer.onNext(CreateKeystoreFileReply.newBuilder().setKeystorefile(keystore).build());
+			}
+			if (closed) {
+				return;
+			}
+			if (halfClosed && pending.isEmpty()) {
+				closed = true;
+				observer.onCompleted();
+				return;
+			}
+			requestMore();
+		}
+
+		/** Keeps up to one keystore per worker in progress while replies can be sent. */
+		private void requestMore() {
+			int more = threads - pending.size() - requested;
+			if (!closed && !halfClosed && more > 0 && observer.isReady()) {
+				requested += more;
+				observer.request(more);
+			}
+		}
+
+		private synchronized void close() {
+			closed = true;
+			cancelPending();
+		}
+
+		private void cancelPending() {
+			for (ListenableFuture<String> keystore : pending) {
+				keystore.cancel(false);
+			}
+			pending.clear();
+		}
+
+		private boolean isRejected(ListenableFuture<String> keystore) {
+			try {
+				Futures.getDone(keystore);
+				return false;
+			} catch (ExecutionException e) {
+				return e.getCause() instanceof RejectedExecutionException;
+			}
+		}
+	}
+}
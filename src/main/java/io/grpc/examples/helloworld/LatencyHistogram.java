@@ -0,0 +1,103 @@
+package io.grpc.examples.helloworld;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size latency histogram laid out like HdrHistogram with two significant digits: values
+ * below 256 ns get a bucket each, and every power of two above that is split into 128 linear
+ * buckets. Any recorded value is therefore reported within 1% of its true value, whatever its
+ * magnitude, and recording is a few atomic increments with no allocation, so every thread of a
+ * load run can record into the same histogram.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_VALUES = 2 * SUB_BUCKETS;
+	private static final int BUCKETS = LINEAR_VALUES + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Records one latency of {@code nanos}; negative values are recorded as zero. */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+		}
+	}
+
+	/** Adds the values recorded by {@code other} to this histogram. */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long n = other.counts.get(i);
+			if (n != 0) {
+				counts.addAndGet(i, n);
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		long otherMax = other.max.get();
+		long current;
+		while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	/** Mean of the recorded values in milliseconds, or 0 if there are none. */
+	public double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / (double) n / 1e6;
+	}
+
+	/**
+	 * Value in milliseconds below which {@code percentile} percent of the recorded values fall, or
+	 * 0 if there are none. Like HdrHistogram, reports the highest value of the bucket it falls in.
+	 */
+	public double getValueAtPercentile(double percentile) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max.get()) / 1e6;
+			}
+		}
+		// Values recorded after count was read.
+		return max.get() / 1e6;
+	}
+
+	static int index(long value) {
+		if (value < LINEAR_VALUES) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return LINEAR_VALUES + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	static long highestValue(int index) {
+		if (index < LINEAR_VALUES) {
+			return index;
+		}
+		int shift = (index - LINEAR_VALUES) / SUB_BUCKETS + 1;
+		long subBucket = (index - LINEAR_VALUES) % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,99 @@
+package io.grpc.examples.helloworld;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.bouncycastle.crypto.digests.SHA3Digest;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The 2048-bit bloom filter ICON keeps of the event logs of a transaction result, and of a block
+ * in block versions that have one.
+ *
+ * <p>Every event adds the emitting SCORE address, tagged {@code 0xff}, and each indexed argument
+ * {@code i}, tagged with the byte {@code i}; the event signature is indexed argument 0. An item
+ * sets three bits, each given by eleven bits of a pair of bytes at the start of its SHA3-256 hash.
+ * A filter is written as a 256-byte big-endian number in hex.
+ */
+final class LogsBloom {
+	static final int BYTES = 256;
+
+	private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+	private static final int SCORE_TAG = 0xff;
+	private static final int BITS_PER_ITEM = 3;
+
+	private LogsBloom() {
+	}
+
+	/** Bits set by the SCORE address {@code score}, as {@code hx...} or {@code cx...}. */
+	static int[] scoreBits(String score) {
+		String normalized = score.trim().toLowerCase();
+		if (normalized.length() != 42 || !(normalized.startsWith("hx") || normalized.startsWith("cx"))) {
+			throw new IllegalArgumentException("Not an ICON address: " + score);
+		}
+		byte[] body = HEX.decode(normalized.substring(2));
+		// ICON encodes an EOA as its 20 bytes and a contract with a leading 1.
+		byte[] address = normalized.startsWith("cx") ? concat(new byte[] {1}, body) : body;
+		return bits(concat(new byte[] {(byte) SCORE_TAG}, address));
+	}
+
+	/** Bits set by the event signature, such as {@code Transfer(Address,Address,int)}. */
+	static int[] signatureBits(String signature) {
+		return bits(concat(new byte[] {0}, signature.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/** Parses a filter from hex, with or without {@code 0x}; returns null when it is not one. */
+	static byte[] parse(String hex) {
+		if (hex == null) {
+			return null;
+		}
+		String trimmed = hex.trim().toLowerCase();
+		if (trimmed.startsWith("0x")) {
+			trimmed = trimmed.substring(2);
+		}
+		if (trimmed.length() != 2 * BYTES || !HEX.canDecode(trimmed)) {
+			return null;
+		}
+		return HEX.decode(trimmed);
+	}
+
+	/** Whether every bit in {@code bits} is set in {@code bloom}. */
+	static boolean mightContain(byte[] bloom, int[] bits) {
+		for (int bit : bits) {
+			if ((bloom[BYTES - 1 - bit / 8] & (1 << (bit % 8))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Sets {@code bits} in {@code bloom}. */
+	static void add(byte[] bloom, int[] bits) {
+		for (int bit : bits) {
+			bloom[BYTES - 1 - bit / 8] |= 1 << (bit % 8);
+		}
+	}
+
+	static String toHex(byte[] bloom) {
+		return "0x" + HEX.encode(bloom);
+	}
+
+	private static int[] bits(byte[] item) {
+		SHA3Digest digest = new SHA3Digest(256);
+		digest.update(item, 0, item.length);
+		byte[] hash = new byte[32];
+		digest.doFinal(hash, 0);
+		int[] bits = new int[BITS_PER_ITEM];
+		for (int i = 0; i < BITS_PER_ITEM; i++) {
+			bits[i] = ((hash[2 * i] & 0xff) << 8 | (hash[2 * i + 1] & 0xff)) & (BYTES * 8 - 1);
+		}
+		return bits;
+	}
+
+	private static byte[] concat(byte[] a, byte[] b) {
+		byte[] joined = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, joined, a.length, b.length);
+		return joined;
+	}
+}
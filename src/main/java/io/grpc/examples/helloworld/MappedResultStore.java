@@ -0,0 +1,215 @@
+package io.grpc.examples.helloworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Values keyed by 32-byte hash in a memory-mapped file, so that they survive a restart.
+ *
+ * <p>The file holds a header, an open-addressing table of {@code slots} entries and an append-only
+ * data region. The table lives in the file too, so reopening needs no scan and the heap cost does
+ * not grow with the number of entries. Values are never removed, and a {@link #replace replaced}
+ * value keeps its bytes in the data region; once the table is three quarters full or the data
+ * region has no room left, new values are dropped.
+ *
+ * <p>A value is written and the data position advanced past it before the slot that points at it,
+ * and the slot's length last, so a process that dies mid-write leaves at worst an empty slot or
+ * the previous value behind, and never a live slot whose bytes the next value overwrites.
+ */
+final class MappedResultStore {
+	static final int KEY_BYTES = 32;
+
+	private static final int MAGIC = 0x49525331;
+	private static final int HEADER_BYTES = 32;
+	private static final int MAGIC_OFFSET = 0;
+	private static final int SLOTS_OFFSET = 4;
+	private static final int DATA_CAPACITY_OFFSET = 8;
+	private static final int DATA_POSITION_OFFSET = 12;
+	private static final int COUNT_OFFSET = 16;
+	/** Key, then data offset and value length. */
+	private static final int SLOT_BYTES = KEY_BYTES + 8;
+
+	private final File file;
+	private final int slots;
+	private final int mask;
+	private final int dataStart;
+	private final int dataCapacity;
+
+	// Guarded by this; null once closed.
+	private MappedByteBuffer buffer;
+
+	private MappedResultStore(File file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+		this.slots = buffer.getInt(SLOTS_OFFSET);
+		this.mask = slots - 1;
+		this.dataStart = HEADER_BYTES + slots * SLOT_BYTES;
+		this.dataCapacity = buffer.getInt(DATA_CAPACITY_OFFSET);
+	}
+
+	/**
+	 * Maps {@code file}, creating it with room for {@code maxEntries} values of {@code dataBytes} in
+	 * total when it does not exist. An existing file keeps the sizes it was created with.
+	 */
+	static MappedResultStore open(File file, int maxEntries, int dataBytes) throws IOException {
+		if (maxEntries < 1 || maxEntries > 1 << 26 || dataBytes < 1) {
+			throw new IllegalArgumentException("maxEntries=" + maxEntries + ", dataBytes=" + dataBytes);
+		}
+		int slots = 4;
+		while (slots - slots / 4 < maxEntries) {
+			slots <<= 1;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			boolean created = raf.length() == 0;
+			long size;
+			if (created) {
+				size = (long) HEADER_BYTES + (long) slots * SLOT_BYTES + dataBytes;
+				if (size > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("Result store larger than 2 GiB: " + size);
+				}
+			} else {
+				size = raf.length();
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (created) {
+				buffer.putInt(SLOTS_OFFSET, slots);
+				buffer.putInt(DATA_CAPACITY_OFFSET, dataBytes);
+				buffer.putInt(MAGIC_OFFSET, MAGIC);
+			} else if (size < HEADER_BYTES || buffer.getInt(MAGIC_OFFSET) != MAGIC
+					|| size != (long) HEADER_BYTES + (long) buffer.getInt(SLOTS_OFFSET) * SLOT_BYTES
+							+ buffer.getInt(DATA_CAPACITY_OFFSET)) {
+				throw new IOException("Not a result store: " + file);
+			}
+			// The mapping stays valid after the channel is closed.
+			return new MappedResultStore(file, buffer);
+		}
+	}
+
+	/** Returns a copy of the value stored for {@code key}, or null. */
+	synchronized byte[] get(byte[] key) {
+		checkKey(key);
+		if (buffer == null) {
+			return null;
+		}
+		int slot = find(key);
+		int length = buffer.getInt(slotOffset(slot) + KEY_BYTES + 4);
+		if (length == 0) {
+			return null;
+		}
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataStart + buffer.getInt(slotOffset(slot) + KEY_BYTES));
+		byte[] value = new byte[length];
+		data.get(value);
+		return value;
+	}
+
+	/**
+	 * Stores {@code value} under {@code key} unless a value is already stored. Returns false when
+	 * the store is full or closed.
+	 */
+	synchronized boolean put(byte[] key, byte[] value) {
+		checkKey(key);
+		if (buffer == null || value.length == 0) {
+			return false;
+		}
+		int slot = find(key);
+		int offset = slotOffset(slot);
+		if (buffer.getInt(offset + KEY_BYTES + 4) != 0) {
+			return true;
+		}
+		int count = buffer.getInt(COUNT_OFFSET);
+		int position = buffer.getInt(DATA_POSITION_OFFSET);
+		if (count >= slots - slots / 4 || value.length > dataCapacity - position) {
+			return false;
+		}
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataStart + position);
+		data.put(value);
+		data.position(offset);
+		data.put(key);
+		buffer.putInt(offset + KEY_BYTES, position);
+		buffer.putInt(DATA_POSITION_OFFSET, position + value.length);
+		buffer.putInt(COUNT_OFFSET, count + 1);
+		// The length publishes the slot, so it goes last.
+		buffer.putInt(offset + KEY_BYTES + 4, value.length);
+		return true;
+	}
+
+	/**
+	 * Stores {@code value} under {@code key}, replacing any value already stored. Returns false
+	 * when the store is full or closed.
+	 */
+	synchronized boolean replace(byte[] key, byte[] value) {
+		checkKey(key);
+		if (buffer == null || value.length == 0) {
+			return false;
+		}
+		int offset = slotOffset(find(key));
+		if (buffer.getInt(offset + KEY_BYTES + 4) == 0) {
+			return put(key, value);
+		}
+		int position = buffer.getInt(DATA_POSITION_OFFSET);
+		if (value.length > dataCapacity - position) {
+			return false;
+		}
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataStart + position);
+		data.put(value);
+		buffer.putInt(DATA_POSITION_OFFSET, position + value.length);
+		// Offset and length change in one aligned write, so readers see either value whole.
+		buffer.putLong(offset + KEY_BYTES, (long) position << 32 | value.length);
+		return true;
+	}
+
+	/** Number of stored values. */
+	synchronized int size() {
+		return buffer == null ? 0 : buffer.getInt(COUNT_OFFSET);
+	}
+
+	/** Writes outstanding changes to disk and releases the mapping. */
+	synchronized void close() {
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/** Slot holding {@code key}, or the empty slot where it belongs. */
+	private int find(byte[] key) {
+		int slot = ((key[0] & 0xff) << 24 | (key[1] & 0xff) << 16 | (key[2] & 0xff) << 8 | (key[3] & 0xff)) & mask;
+		while (true) {
+			int offset = slotOffset(slot);
+			if (buffer.getInt(offset + KEY_BYTES + 4) == 0 || matches(offset, key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(int offset, byte[] key) {
+		for (int i = 0; i < KEY_BYTES; i++) {
+			if (buffer.get(offset + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int slotOffset(int slot) {
+		return HEADER_BYTES + slot * SLOT_BYTES;
+	}
+
+	private static void checkKey(byte[] key) {
+		if (key.length != KEY_BYTES) {
+			throw new IllegalArgumentException("Key is " + key.length + " bytes, not " + KEY_BYTES);
+		}
+	}
+}
@@ -0,0 +1,432 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an ICON node, speaking enough JSON-RPC v3 for {@link HelloWorldServer}
+ * to run against it without the network.
+ *
+ * <p>It answers {@code icx_getBalance}, {@code icx_call}, {@code icx_sendTransaction},
+ * {@code icx_getTransactionResult}, {@code icx_getLastBlock} and {@code icx_getBlockByHeight},
+ * alone or in batches. A new block is produced every block interval; a transaction sent now is
+ * part of the next block and succeeds once that block exists. Latency, jitter and the fraction of
+ * calls answered with an error can be changed while the node runs, so a harness can script
+ * phases of degradation.
+ *
+ * <p>Tests can also {@link #respond script} the answer of any method, make it {@link #fail}, or
+ * answer every HTTP request with an {@link #setHttpStatus error status}, and count the calls of
+ * each method.
+ */
+public class MockIconNode {
+	private static final Logger logger = Logger.getLogger(MockIconNode.class.getName());
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+	/** Blocks whose transactions are kept for {@code icx_getBlockByHeight}. */
+	private static final int KEPT_BLOCKS = 10_000;
+	private static final BigInteger DEFAULT_BALANCE = BigInteger.TEN.pow(20);
+	private static final String PATH = "/api/v3";
+
+	private final long blockIntervalMillis;
+	private final long genesisMillis = System.currentTimeMillis();
+	private final ConcurrentMap<String, BigInteger> balances = new ConcurrentHashMap<String, BigInteger>();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong httpRequests = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> methodCalls = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, Responder> responders = new ConcurrentHashMap<String, Responder>();
+
+	// Guarded by this; transactions by the height of the block that includes them.
+	private final LinkedHashMap<Long, List<ObjectNode>> blocks = new LinkedHashMap<Long, List<ObjectNode>>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, List<ObjectNode>> eldest) {
+			return size() > KEPT_BLOCKS;
+		}
+	};
+	// Guarded by this; height of the block including each transaction.
+	private final Map<String, Long> transactionHeights = new HashMap<String, Long>();
+
+	private volatile long latencyMicros;
+	private volatile long jitterMicros;
+	private volatile double errorRate;
+	private volatile String callResult = "0x1";
+	private volatile int httpStatus = 200;
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * Computes the {@code result} of one JSON-RPC call from its params, or returns null to answer
+	 * with a JSON-RPC error. A result is a string, a number, or an org.json object or array.
+	 */
+	public interface Responder {
+		Object respond(JSONObject params);
+	}
+
+	public MockIconNode(long blockInterval, TimeUnit unit) {
+		this.blockIntervalMillis = Math.max(1, unit.toMillis(blockInterval));
+	}
+
+	/** Listens on {@code port} of the loopback interface; 0 picks a free port. */
+	public synchronized MockIconNode start(int port) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Already started");
+		}
+		executor = Executors.newCachedThreadPool(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("mock-icon-node-%d").build());
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+		logger.info("Mock ICON node listening on " + getEndpoint());
+		return this;
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/** JSON-RPC URL of the running node. */
+	public synchronized String getEndpoint() {
+		if (server == null) {
+			throw new IllegalStateException("Not started");
+		}
+		return "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+	}
+
+	/** Delay added to every HTTP request. */
+	public MockIconNode setLatency(long latency, TimeUnit unit) {
+		latencyMicros = unit.toMicros(latency);
+		return this;
+	}
+
+	/** The delay varies uniformly by up to this much either way. */
+	public MockIconNode setJitter(long jitter, TimeUnit unit) {
+		jitterMicros = unit.toMicros(jitter);
+		return this;
+	}
+
+	/** Fraction of JSON-RPC calls answered with a server error instead of a result. */
+	public MockIconNode setErrorRate(double errorRate) {
+		if (errorRate < 0 || errorRate > 1) {
+			throw new IllegalArgumentException("errorRate not in [0, 1]: " + errorRate);
+		}
+		this.errorRate = errorRate;
+		return this;
+	}
+
+	/** Balance returned for {@code address}; others have 100 ICX. */
+	public MockIconNode setBalance(String address, BigInteger balance) {
+		balances.put(address, balance);
+		return this;
+	}
+
+	/** Result of every {@code icx_call}. */
+	public MockIconNode setCallResult(String callResult) {
+		this.callResult = callResult;
+		return this;
+	}
+
+	/** Answers {@code method} with {@code result} instead of simulating it. */
+	public MockIconNode respond(String method, final Object result) {
+		return respond(method, new Responder() {
+			@Override
+			public Object respond(JSONObject params) {
+				return result;
+			}
+		});
+	}
+
+	/** Answers {@code method} with what {@code responder} computes instead of simulating it. */
+	public MockIconNode respond(String method, Responder responder) {
+		responders.put(method, responder);
+		return this;
+	}
+
+	/** Answers {@code method} with a JSON-RPC error. */
+	public MockIconNode fail(String method) {
+		return respond(method, (Object) null);
+	}
+
+	/** Answers every HTTP request with {@code status} and no body unless it is 200. */
+	public MockIconNode setHttpStatus(int status) {
+		httpStatus = status;
+		return this;
+	}
+
+	/** Number of JSON-RPC calls received, counting each member of a batch. */
+	public long getCallCount() {
+		return calls.get();
+	}
+
+	/** Number of JSON-RPC calls of {@code method}, counting each member of a batch. */
+	public long getCallCount(String method) {
+		AtomicLong count = methodCalls.get(method);
+		return count == null ? 0 : count.get();
+	}
+
+	/** Number of HTTP requests received; a batch counts once. */
+	public long getHttpRequestCount() {
+		return httpRequests.get();
+	}
+
+	/** Number of calls answered with an injected error. */
+	public long getErrorCount() {
+		return errors.get();
+	}
+
+	/** Height of the last block; the first block has height 1. */
+	public long getHeight() {
+		return (System.currentTimeMillis() - genesisMillis) / blockIntervalMillis + 1;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		httpRequests.incrementAndGet();
+		JsonNode request;
+		try (InputStream in = exchange.getRequestBody()) {
+			request = MAPPER.readTree(in);
+		}
+		delay();
+		if (httpStatus != 200) {
+			exchange.sendResponseHeaders(httpStatus, -1);
+			return;
+		}
+		JsonNode response;
+		if (request != null && request.isArray()) {
+			ArrayNode responses = NODES.arrayNode();
+			for (JsonNode call : request) {
+				responses.add(answer(call));
+			}
+			response = responses;
+		} else if (request != null) {
+			response = answer(request);
+		} else {
+			exchange.sendResponseHeaders(400, -1);
+			return;
+		}
+		byte[] body = MAPPER.writeValueAsBytes(response);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private void delay() {
+		long micros = latencyMicros;
+		long jitter = jitterMicros;
+		if (jitter > 0) {
+			micros += ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+		}
+		if (micros <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.MICROSECONDS.sleep(micros);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private ObjectNode answer(JsonNode call) {
+		calls.incrementAndGet();
+		JsonNode params = call.path("params");
+		String method = call.path("method").asText();
+		AtomicLong count = methodCalls.get(method);
+		if (count == null) {
+			methodCalls.putIfAbsent(method, new AtomicLong());
+			count = methodCalls.get(method);
+		}
+		count.incrementAndGet();
+		ObjectNode response = NODES.objectNode().put("jsonrpc", "2.0");
+		response.set("id", call.get("id"));
+		if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			errors.incrementAndGet();
+			return error(response, -32000, "Injected failure");
+		}
+		Responder responder = responders.get(method);
+		if (responder != null) {
+			Object result = responder.respond(params.isObject() ? new JSONObject(params.toString()) : new JSONObject());
+			if (result == null) {
+				return error(response, -32602, "Invalid params for " + method);
+			}
+			return (ObjectNode) response.set("result", toJsonNode(result));
+		}
+		switch (method) {
+			case "icx_getBalance":
+				BigInteger balance = balances.get(params.path("address").asText());
+				return response.put("result", hex(balance != null ? balance : DEFAULT_BALANCE));
+			case "icx_call":
+				return response.put("result", callResult);
+			case "icx_sendTransaction":
+				return response.put("result", send(params));
+			case "icx_getTransactionResult":
+				ObjectNode result = transactionResult(params.path("txHash").asText());
+				if (result == null) {
+					return error(response, -32602, "Pending transaction");
+				}
+				return (ObjectNode) response.set("result", result);
+			case "icx_getLastBlock":
+				return (ObjectNode) response.set("result", block(getHeight()));
+			case "icx_getBlockByHeight":
+				long height = Long.decode(params.path("height").asText());
+				if (height < 1 || height > getHeight()) {
+					return error(response, -32602, "Invalid params height");
+				}
+				return (ObjectNode) response.set("result", block(height));
+			default:
+				return error(response, -32601, "Method not found: " + method);
+		}
+	}
+
+	private static JsonNode toJsonNode(Object result) {
+		if (result instanceof String) {
+			return NODES.textNode((String) result);
+		}
+		try {
+			return MAPPER.readTree(JSONObject.valueToString(result));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Not a JSON result: " + result, e);
+		}
+	}
+
+	private static ObjectNode error(ObjectNode response, int code, String message) {
+		response.putObject("error").put("code", code).put("message", message);
+		return response;
+	}
+
+	private String send(JsonNode params) {
+		String hash = "0x" + sha256(params.toString());
+		ObjectNode transaction = params.isObject() ? ((ObjectNode) params).deepCopy() : NODES.objectNode();
+		transaction.put("txHash", hash);
+		if (!transaction.has("version")) {
+			transaction.put("version", "0x3");
+		}
+		long height = getHeight() + 1;
+		synchronized (this) {
+			if (!transactionHeights.containsKey(hash)) {
+				transactionHeights.put(hash, height);
+				List<ObjectNode> transactions = blocks.get(height);
+				if (transactions == null) {
+					transactions = new ArrayList<ObjectNode>();
+					blocks.put(height, transactions);
+				}
+				transactions.add(transaction);
+			}
+		}
+		return hash;
+	}
+
+	private ObjectNode transactionResult(String hash) {
+		Long height;
+		synchronized (this) {
+			height = transactionHeights.get(hash);
+		}
+		if (height == null || height > getHeight()) {
+			return null;
+		}
+		ObjectNode result = NODES.objectNode()
+				.put("status", "0x1")
+				.put("txHash", hash)
+				.put("txIndex", "0x0")
+				.put("blockHeight", hex(BigInteger.valueOf(height)))
+				.put("blockHash", "0x" + sha256("block " + height))
+				.put("cumulativeStepUsed", "0x186a0")
+				.put("stepUsed", "0x186a0")
+				.put("stepPrice", "0x2540be400")
+				.put("logsBloom", "0x" + new String(new char[512]).replace('\0', '0'));
+		result.putArray("eventLogs");
+		return result;
+	}
+
+	private ObjectNode block(long height) {
+		ObjectNode block = NODES.objectNode()
+				.put("version", "0.1a")
+				.put("height", height)
+				.put("block_hash", sha256("block " + height))
+				.put("prev_block_hash", sha256("block " + (height - 1)))
+				.put("merkle_tree_root_hash", sha256("transactions " + height))
+				.put("time_stamp", (genesisMillis + (height - 1) * blockIntervalMillis) * 1000)
+				.put("peer_id", "hx0000000000000000000000000000000000000000")
+				.put("signature", "");
+		ArrayNode transactions = block.putArray("confirmed_transaction_list");
+		synchronized (this) {
+			List<ObjectNode> included = blocks.get(height);
+			if (included != null) {
+				transactions.addAll(included);
+			}
+		}
+		return block;
+	}
+
+	private static String hex(BigInteger value) {
+		return "0x" + value.toString(16);
+	}
+
+	private static String sha256(String value) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes("UTF-8"));
+			return String.format("%064x", new BigInteger(1, digest));
+		} catch (NoSuchAlgorithmException | IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Runs a mock node until the process is killed.
+	 *
+	 * <p>Usage: {@code MockIconNode [port] [latency-ms] [jitter-ms] [error-rate]}.
+	 */
+	public static void main(String[] args) throws Exception {
+		MockIconNode node = new MockIconNode(BlockPoller.DEFAULT_BLOCK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+				.setLatency(args.length > 1 ? Long.parseLong(args[1]) : 0, TimeUnit.MILLISECONDS)
+				.setJitter(args.length > 2 ? Long.parseLong(args[2]) : 0, TimeUnit.MILLISECONDS)
+				.setErrorRate(args.length > 3 ? Double.parseDouble(args[3]) : 0)
+				.start(args.length > 0 ? Integer.parseInt(args[0]) : 9000);
+		Thread.currentThread().join();
+	}
+}
@@ -0,0 +1,41 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import foundation.icon.icx.data.Address;
+
+/**
+ * Hands out transaction nonces per sending account without a round trip to the node.
+ *
+ * <p>ICON does not require nonces to follow a sequence; a nonce only keeps two transactions of
+ * one account that share a timestamp from having the same hash. A local counter per account is
+ * therefore enough, and concurrent submissions never wait on each other to pick one.
+ */
+public class NonceManager {
+	private final ConcurrentMap<Address, AtomicLong> next = new ConcurrentHashMap<Address, AtomicLong>();
+	private final long initialNonce;
+
+	public NonceManager() {
+		this(1);
+	}
+
+	public NonceManager(long initialNonce) {
+		this.initialNonce = initialNonce;
+	}
+
+	/** Returns a nonce that no earlier call returned for {@code account}. */
+	public BigInteger next(Address account) {
+		AtomicLong counter = next.get(account);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong(initialNonce);
+			counter = next.putIfAbsent(account, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return BigInteger.valueOf(counter.getAndIncrement());
+	}
+}
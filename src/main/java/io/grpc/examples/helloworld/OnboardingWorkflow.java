@@ -0,0 +1,264 @@
+package io.grpc.examples.helloworld;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import io.grpc.Channel;
+import io.grpc.Status;
+
+/**
+ * Runs the onboarding calls of {@link HelloWorldClient#greet} as a dependency graph on the future
+ * stub instead of one after another:
+ *
+ * <pre>
+ * SayHello
+ * CreateKeyWallet ─┬─ CreateKeystoreFile
+ *                  ├─ CheckBalance
+ *                  ├─ SendICX
+ *                  └─ CreateDID
+ * </pre>
+ *
+ * <p>Every step starts as soon as the step it depends on has replied, and gets its own deadline,
+ * counted from when it starts. A workflow therefore takes about as long as its slowest path, and
+ * many workflows can run at once over one channel without a thread each.
+ *
+ * <p>A failed step does not stop the steps that do not depend on it; the steps that do fail with
+ * the same status.
+ */
+public class OnboardingWorkflow {
+	/** The calls of a workflow, with their default deadlines. */
+	public enum Step {
+		SAY_HELLO(1000),
+		CREATE_KEY_WALLET(5000),
+		// Key derivation takes tens of milliseconds of server CPU and may queue.
+		CREATE_KEYSTORE_FILE(30000),
+		CHECK_BALANCE(5000),
+		SEND_ICX(10000),
+		CREATE_DID(10000);
+
+		final long defaultDeadlineMillis;
+
+		Step(long defaultDeadlineMillis) {
+			this.defaultDeadlineMillis = defaultDeadlineMillis;
+		}
+	}
+
+	private final GreeterGrpc.GreeterFutureStub stub;
+	private final Map<Step, Long> deadlineMillis;
+	private final String keystorePassword;
+
+	private OnboardingWorkflow(Builder builder) {
+		this.stub = GreeterGrpc.newFutureStub(builder.channel);
+		this.deadlineMillis = new EnumMap<Step, Long>(builder.deadlineMillis);
+		this.keystorePassword = builder.keystorePassword;
+	}
+
+	public static Builder newBuilder(Channel channel) {
+		return new Builder(channel);
+	}
+
+	/** Starts a workflow greeting {@code name}; the result is complete once every step is. */
+	public ListenableFuture<Result> run(String name) {
+		final Result result = new Result();
+		List<ListenableFuture<?>> steps = new ArrayList<ListenableFuture<?>>();
+
+		final HelloRequest hello = HelloRequest.newBuilder().setName(name).build();
+		steps.add(start(Step.SAY_HELLO, result, new Callable<ListenableFuture<HelloReply>>() {
+			@Override
+			public ListenableFuture<HelloReply> call() {
+				return stub(Step.SAY_HELLO).sayHello(hello);
+			}
+		}));
+		ListenableFuture<CreateKeyWalletReply> wallet = start(Step.CREATE_KEY_WALLET, result,
+				new Callable<ListenableFuture<CreateKeyWalletReply>>() {
+					@Override
+					public ListenableFuture<CreateKeyWalletReply> call() {
+						return stub(Step.CREATE_KEY_WALLET).createKeyWallet(CreateKeyWalletRequest.getDefaultInstance());
+					}
+				});
+		steps.add(wallet);
+		steps.add(after(wallet, Step.CREATE_KEYSTORE_FILE, result,
+				new AsyncFunction<CreateKeyWalletReply, CreateKeystoreFileReply>() {
+					@Override
+					public ListenableFuture<CreateKeystoreFileReply> apply(CreateKeyWalletReply wallet) {
+						return stub(Step.CREATE_KEYSTORE_FILE).createKeystoreFile(CreateKeystoreFileRequest.newBuilder()
+								.setPrivatekey(wallet.getPrivatekey()).setPassword(keystorePassword).build());
+					}
+				}));
+		steps.add(after(wallet, Step.CHECK_BALANCE, result, new AsyncFunction<CreateKeyWalletReply, CheckBalanceReply>() {
+			@Override
+			public ListenableFuture<CheckBalanceReply> apply(CreateKeyWalletReply wallet) {
+				return stub(Step.CHECK_BALANCE)
+						.checkBalance(CheckBalanceRequest.newBuilder().setAddress(wallet.getAddress()).build());
+			}
+		}));
+		steps.add(after(wallet, Step.SEND_ICX, result, new AsyncFunction<CreateKeyWalletReply, SendIcxReply>() {
+			@Override
+			public ListenableFuture<SendIcxReply> apply(CreateKeyWalletReply wallet) {
+				return stub(Step.SEND_ICX)
+						.sendICX(SendIcxRequest.newBuilder().setPrivatekey(wallet.getPrivatekey()).build());
+			}
+		}));
+		steps.add(after(wallet, Step.CREATE_DID, result, new AsyncFunction<CreateKeyWalletReply, CreateDIDReply>() {
+			@Override
+			public ListenableFuture<CreateDIDReply> apply(CreateKeyWalletReply wallet) {
+				return stub(Step.CREATE_DID)
+						.createDID(CreateDIDRequest.newBuilder().setPublickey(wallet.getPublickey()).build());
+			}
+		}));
+
+		return Futures.whenAllComplete(steps).call(new Callable<Result>() {
+			@Override
+			public Result call() {
+				result.finish();
+				return result;
+			}
+		}, MoreExecutors.directExecutor());
+	}
+
+	private GreeterGrpc.GreeterFutureStub stub(Step step) {
+		return stub.withDeadlineAfter(deadlineMillis.get(step), TimeUnit.MILLISECONDS);
+	}
+
+	private static <T> ListenableFuture<T> start(Step step, Result result, Callable<ListenableFuture<T>> call) {
+		try {
+			return record(step, result, System.nanoTime(), call.call());
+		} catch (Exception e) {
+			return record(step, result, System.nanoTime(), Futures.<T>immediateFailedFuture(e));
+		}
+	}
+
+	/** Starts {@code step} once {@code input} has succeeded, or fails it with the input's failure. */
+	private static <I, T> ListenableFuture<T> after(ListenableFuture<I> input, final Step step, final Result result,
+			final AsyncFunction<I, T> call) {
+		ListenableFuture<T> output = Futures.transformAsync(input, new AsyncFunction<I, T>() {
+			@Override
+			public ListenableFuture<T> apply(I reply) throws Exception {
+				result.started(step, System.nanoTime());
+				return call.apply(reply);
+			}
+		}, MoreExecutors.directExecutor());
+		return record(step, result, -1, output);
+	}
+
+	private static <T> ListenableFuture<T> record(final Step step, final Result result, long startNanos,
+			ListenableFuture<T> reply) {
+		if (startNanos >= 0) {
+			result.started(step, startNanos);
+		}
+		Futures.addCallback(reply, new FutureCallback<T>() {
+			@Override
+			public void onSuccess(T reply) {
+				result.succeeded(step, reply);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				result.failed(step, Status.fromThrowable(t));
+			}
+		}, MoreExecutors.directExecutor());
+		return reply;
+	}
+
+	/** The replies and timings of one workflow. */
+	public static final class Result {
+		private final long startNanos = System.nanoTime();
+		// Guarded by this.
+		private final Map<Step, Object> replies = new EnumMap<Step, Object>(Step.class);
+		private final Map<Step, Status> failures = new EnumMap<Step, Status>(Step.class);
+		private final Map<Step, Long> stepStartNanos = new EnumMap<Step, Long>(Step.class);
+		private final Map<Step, Long> stepEndNanos = new EnumMap<Step, Long>(Step.class);
+		private long endNanos;
+
+		synchronized void started(Step step, long nanos) {
+			stepStartNanos.put(step, nanos);
+		}
+
+		synchronized void succeeded(Step step, Object reply) {
+			replies.put(step, reply);
+			stepEndNanos.put(step, System.nanoTime());
+		}
+
+		synchronized void failed(Step step, Status status) {
+			failures.put(step, status);
+			stepEndNanos.put(step, System.nanoTime());
+		}
+
+		synchronized void finish() {
+			endNanos = System.nanoTime();
+		}
+
+		/** Reply of {@code step}, or null if it failed. */
+		public synchronized <T> T getReply(Step step, Class<T> type) {
+			return type.cast(replies.get(step));
+		}
+
+		/** Status of {@code step} if it failed, or null. */
+		public synchronized Status getFailure(Step step) {
+			return failures.get(step);
+		}
+
+		/** Steps that failed, with their status. */
+		public synchronized Map<Step, Status> getFailures() {
+			return Collections.unmodifiableMap(new EnumMap<Step, Status>(failures));
+		}
+
+		public synchronized boolean isSuccessful() {
+			return failures.isEmpty();
+		}
+
+		/** Time from the start of the workflow to the end of its last step. */
+		public synchronized long getElapsed(TimeUnit unit) {
+			return unit.convert(endNanos - startNanos, TimeUnit.NANOSECONDS);
+		}
+
+		/** Time {@code step} took from its start to its reply, or -1 if it never started. */
+		public synchronized long getStepElapsed(Step step, TimeUnit unit) {
+			Long start = stepStartNanos.get(step);
+			Long end = stepEndNanos.get(step);
+			return start == null || end == null ? -1 : unit.convert(end - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	public static final class Builder {
+		private final Channel channel;
+		private final Map<Step, Long> deadlineMillis = new EnumMap<Step, Long>(Step.class);
+		private String keystorePassword = "Pa55w0rd";
+
+		private Builder(Channel channel) {
+			this.channel = channel;
+			for (Step step : Step.values()) {
+				deadlineMillis.put(step, step.defaultDeadlineMillis);
+			}
+		}
+
+		/** Sets the deadline of {@code step}, counted from when the step starts. */
+		public Builder deadline(Step step, long deadline, TimeUnit unit) {
+			if (deadline <= 0) {
+				throw new IllegalArgumentException("deadline <= 0: " + deadline);
+			}
+			deadlineMillis.put(step, unit.toMillis(deadline));
+			return this;
+		}
+
+		public Builder keystorePassword(String keystorePassword) {
+			this.keystorePassword = keystorePassword;
+			return this;
+		}
+
+		public OnboardingWorkflow build() {
+			return new OnboardingWorkflow(this);
+		}
+	}
+}
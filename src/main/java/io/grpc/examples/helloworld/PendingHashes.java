@@ -0,0 +1,185 @@
+package io.grpc.examples.helloworld;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Set of 32-byte transaction hashes, each with a deadline, kept in two primitive arrays.
+ *
+ * <p>Entries are stored inline with open addressing and linear probing, so the set allocates no
+ * object per hash: 100,000 pending hashes cost a few megabytes and nothing for the garbage
+ * collector to trace. Transaction hashes are uniformly distributed, so their first eight bytes are
+ * used as the hash code directly. Not thread-safe.
+ */
+final class PendingHashes {
+	static final int HASH_SIZE = 32;
+
+	private static final int LONGS = HASH_SIZE / 8;
+	private static final long EMPTY = 0;
+	private static final long REMOVED = -1;
+
+	private long[] keys;
+	/** Deadline of each slot, or {@link #EMPTY} or {@link #REMOVED}. */
+	private long[] deadlines;
+	private int mask;
+	private int size;
+	/** Slots that are not {@link #EMPTY}, including removed ones. */
+	private int used;
+	private int cursor;
+
+	PendingHashes(int expectedSize) {
+		allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity * LONGS];
+		deadlines = new long[capacity];
+		mask = capacity - 1;
+		cursor = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds {@code hash} unless present.
+	 *
+	 * @param deadline positive time after which {@link #sweep} reports the hash as expired
+	 */
+	boolean add(byte[] hash, long deadline) {
+		if (deadline <= 0) {
+			throw new IllegalArgumentException("deadline <= 0: " + deadline);
+		}
+		ByteBuffer key = key(hash);
+		if (find(key) >= 0) {
+			return false;
+		}
+		if ((used + 1) * 4L > deadlines.length * 3L) {
+			rehash(size * 2 >= deadlines.length / 2 ? deadlines.length * 2 : deadlines.length);
+		}
+		int slot = index(key.getLong(0));
+		while (deadlines[slot] > 0) {
+			slot = (slot + 1) & mask;
+		}
+		if (deadlines[slot] == EMPTY) {
+			used++;
+		}
+		put(slot, key, deadline);
+		size++;
+		return true;
+	}
+
+	boolean contains(byte[] hash) {
+		return find(key(hash)) >= 0;
+	}
+
+	boolean remove(byte[] hash) {
+		int slot = find(key(hash));
+		if (slot < 0) {
+			return false;
+		}
+		deadlines[slot] = REMOVED;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Visits up to {@code max} hashes, continuing where the previous sweep stopped. Hashes whose
+	 * deadline is before {@code now} are removed and added to {@code expired}, the others are added
+	 * to {@code due}.
+	 */
+	void sweep(int max, long now, List<byte[]> due, List<byte[]> expired) {
+		int visited = 0;
+		for (int scanned = 0; scanned < deadlines.length && visited < max; scanned++) {
+			int slot = cursor;
+			cursor = (cursor + 1) & mask;
+			long deadline = deadlines[slot];
+			if (deadline <= 0) {
+				continue;
+			}
+			visited++;
+			if (deadline < now) {
+				deadlines[slot] = REMOVED;
+				size--;
+				expired.add(hash(slot));
+			} else {
+				due.add(hash(slot));
+			}
+		}
+	}
+
+	private int find(ByteBuffer key) {
+		int slot = index(key.getLong(0));
+		while (true) {
+			long deadline = deadlines[slot];
+			if (deadline == EMPTY) {
+				return -1;
+			}
+			if (deadline != REMOVED && matches(slot, key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(int slot, ByteBuffer key) {
+		int base = slot * LONGS;
+		for (int i = 0; i < LONGS; i++) {
+			if (keys[base + i] != key.getLong(i * 8)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void put(int slot, ByteBuffer key, long deadline) {
+		int base = slot * LONGS;
+		for (int i = 0; i < LONGS; i++) {
+			keys[base + i] = key.getLong(i * 8);
+		}
+		deadlines[slot] = deadline;
+	}
+
+	private byte[] hash(int slot) {
+		ByteBuffer hash = ByteBuffer.allocate(HASH_SIZE);
+		for (int i = 0; i < LONGS; i++) {
+			hash.putLong(keys[slot * LONGS + i]);
+		}
+		return hash.array();
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldDeadlines = deadlines;
+		allocate(capacity);
+		used = 0;
+		ByteBuffer key = ByteBuffer.allocate(HASH_SIZE);
+		for (int slot = 0; slot < oldDeadlines.length; slot++) {
+			if (oldDeadlines[slot] <= 0) {
+				continue;
+			}
+			key.clear();
+			for (int i = 0; i < LONGS; i++) {
+				key.putLong(oldKeys[slot * LONGS + i]);
+			}
+			int target = index(key.getLong(0));
+			while (deadlines[target] != EMPTY) {
+				target = (target + 1) & mask;
+			}
+			put(target, key, oldDeadlines[slot]);
+			used++;
+		}
+	}
+
+	private int index(long firstLong) {
+		return (int) (firstLong ^ (firstLong >>> 32)) & mask;
+	}
+
+	private static ByteBuffer key(byte[] hash) {
+		if (hash.length != HASH_SIZE) {
+			throw new IllegalArgumentException("Not a transaction hash: " + hash.length + " bytes");
+		}
+		return ByteBuffer.wrap(hash);
+	}
+}
@@ -0,0 +1,243 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.examples.helloworld.v2.CheckBalancesReply;
+import io.grpc.examples.helloworld.v2.CheckBalancesRequest;
+import io.grpc.examples.helloworld.v2.CreateKeyWalletReply;
+import io.grpc.examples.helloworld.v2.LookupDIDReply;
+
+/**
+ * Compares the {@code Greeter} messages that carry keys, addresses and balances with their binary
+ * {@code GreeterV2} forms: the serialized size of each, and the time to build one from the values
+ * the server has, serialize it, parse it and read the values back, as the two ends of a call do.
+ *
+ * <p>Usage: {@code protocol-benchmark [seconds per measurement]}.
+ */
+public class ProtocolBenchmark {
+	/** Addresses and balances per {@code CheckBalances} call. */
+	private static final int BATCH_SIZE = 100;
+	private static final int SAMPLES = 1_000;
+
+	/** Keeps the JIT from dropping decoded values. */
+	private static volatile int sink;
+
+	public static void main(String[] args) throws Exception {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		Random random = new Random(1);
+		KeyWalletGenerator generator = new KeyWalletGenerator(1);
+		final List<KeyWallet> wallets = new ArrayList<KeyWallet>(SAMPLES);
+		final List<BigInteger> balances = new ArrayList<BigInteger>(SAMPLES);
+		final List<io.grpc.examples.helloworld.LookupDIDReply> entries =
+				new ArrayList<io.grpc.examples.helloworld.LookupDIDReply>(SAMPLES);
+		for (int i = 0; i < SAMPLES; i++) {
+			KeyWallet wallet = generator.create();
+			wallets.add(wallet);
+			// Up to about a billion ICX, in loop.
+			balances.add(new BigInteger(90, random));
+			String publicKey = wallet.getPublicKey().toHexString(false);
+			entries.add(io.grpc.examples.helloworld.LookupDIDReply.newBuilder()
+					.setPublickey(publicKey)
+					.setDid(publicKey)
+					.setAddress(wallet.getAddress().toString())
+					.setTxhash(new Bytes(BinaryCodec.fixed(BigInteger.valueOf(i).toByteArray(), 32)).toString())
+					.build());
+		}
+
+		List<Case> cases = new ArrayList<Case>();
+		cases.add(new Case("CreateKeyWalletReply", new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				return KeyWalletGenerator.toReply(wallets.get(i)).toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				io.grpc.examples.helloworld.CreateKeyWalletReply reply =
+						io.grpc.examples.helloworld.CreateKeyWalletReply.parseFrom(bytes);
+				return new Bytes(reply.getPrivatekey()).toByteArray().length
+						+ new Bytes(reply.getPublickey()).toByteArray().length
+						+ new Address(reply.getAddress()).hashCode();
+			}
+		}, new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				return GreeterV2Impl.toReply(wallets.get(i)).toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				CreateKeyWalletReply reply = CreateKeyWalletReply.parseFrom(bytes);
+				return reply.getPrivateKey().toByteArray().length + reply.getPublicKey().toByteArray().length
+						+ GreeterV2Impl.toAddress(reply.getAddress()).hashCode();
+			}
+		}));
+		cases.add(new Case("CheckBalancesRequest", new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				io.grpc.examples.helloworld.CheckBalancesRequest.Builder request =
+						io.grpc.examples.helloworld.CheckBalancesRequest.newBuilder();
+				for (int n = 0; n < BATCH_SIZE; n++) {
+					request.addAddress(wallets.get((i + n) % SAMPLES).getAddress().toString());
+				}
+				return request.build().toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				int hash = 0;
+				for (String address : io.grpc.examples.helloworld.CheckBalancesRequest.parseFrom(bytes)
+						.getAddressList()) {
+					hash += new Address(address).hashCode();
+				}
+				return hash;
+			}
+		}, new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				CheckBalancesRequest.Builder request = CheckBalancesRequest.newBuilder();
+				for (int n = 0; n < BATCH_SIZE; n++) {
+					request.addAddress(ByteString.copyFrom(
+							BinaryCodec.address(wallets.get((i + n) % SAMPLES).getAddress().toString())));
+				}
+				return request.build().toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				int hash = 0;
+				for (ByteString address : CheckBalancesRequest.parseFrom(bytes).getAddressList()) {
+					hash += GreeterV2Impl.toAddress(address).hashCode();
+				}
+				return hash;
+			}
+		}));
+		cases.add(new Case("CheckBalancesReply", new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				io.grpc.examples.helloworld.CheckBalancesReply.Builder reply =
+						io.grpc.examples.helloworld.CheckBalancesReply.newBuilder();
+				for (int n = 0; n < BATCH_SIZE; n++) {
+					reply.addBalance(balances.get((i + n) % SAMPLES).toString());
+				}
+				return reply.build().toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				int hash = 0;
+				for (String balance : io.grpc.examples.helloworld.CheckBalancesReply.parseFrom(bytes)
+						.getBalanceList()) {
+					hash += new BigInteger(balance).hashCode();
+				}
+				return hash;
+			}
+		}, new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				CheckBalancesReply.Builder reply = CheckBalancesReply.newBuilder();
+				for (int n = 0; n < BATCH_SIZE; n++) {
+					reply.addBalance(ByteString.copyFrom(BinaryCodec.balance(balances.get((i + n) % SAMPLES))));
+				}
+				return reply.build().toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				int hash = 0;
+				for (ByteString balance : CheckBalancesReply.parseFrom(bytes).getBalanceList()) {
+					hash += BinaryCodec.balance(balance.toByteArray()).hashCode();
+				}
+				return hash;
+			}
+		}));
+		cases.add(new Case("LookupDIDReply", new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				return entries.get(i).toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				io.grpc.examples.helloworld.LookupDIDReply reply =
+						io.grpc.examples.helloworld.LookupDIDReply.parseFrom(bytes);
+				return new Bytes(reply.getPublickey()).toByteArray().length + new Address(reply.getAddress()).hashCode()
+						+ new Bytes(reply.getTxhash()).toByteArray().length + reply.getDid().length();
+			}
+		}, new Codec() {
+			@Override
+			public byte[] encode(int i) {
+				return GreeterV2Impl.toReply(entries.get(i)).toByteArray();
+			}
+
+			@Override
+			public int decode(byte[] bytes) throws InvalidProtocolBufferException {
+				LookupDIDReply reply = LookupDIDReply.parseFrom(bytes);
+				return reply.getPublicKey().toByteArray().length + GreeterV2Impl.toAddress(reply.getAddress()).hashCode()
+						+ reply.getTxhash().toByteArray().length + (reply.getDidIsPublicKey() ? 1 : 0);
+			}
+		}));
+
+		// Warm up the JIT on every codec.
+		for (Case c : cases) {
+			run(c.v1, seconds / 2);
+			run(c.v2, seconds / 2);
+		}
+
+		System.out.printf("%-22s %9s %9s %6s %11s %11s %6s%n", "message", "v1 bytes", "v2 bytes", "size",
+				"v1 ns/call", "v2 ns/call", "cpu");
+		for (Case c : cases) {
+			int v1Bytes = c.v1.encode(0).length;
+			int v2Bytes = c.v2.encode(0).length;
+			double v1Nanos = run(c.v1, seconds);
+			double v2Nanos = run(c.v2, seconds);
+			System.out.printf("%-22s %9d %9d %5.0f%% %11.0f %11.0f %5.0f%%%n", c.name, v1Bytes, v2Bytes,
+					100.0 * v2Bytes / v1Bytes, v1Nanos, v2Nanos, 100 * v2Nanos / v1Nanos);
+		}
+	}
+
+	/** Encodes and decodes messages for {@code seconds} and returns the mean nanoseconds per message. */
+	private static double run(Codec codec, double seconds) throws Exception {
+		long end = System.nanoTime() + (long) (seconds * TimeUnit.SECONDS.toNanos(1));
+		long start = System.nanoTime();
+		long count = 0;
+		int hash = 0;
+		do {
+			for (int i = 0; i < SAMPLES; i++) {
+				hash += codec.decode(codec.encode(i));
+			}
+			count += SAMPLES;
+		} while (System.nanoTime() < end);
+		sink = hash;
+		return (System.nanoTime() - start) / (double) count;
+	}
+
+	/** One end of a call each way: the values to a serialized message, and back. */
+	private interface Codec {
+		byte[] encode(int i);
+
+		int decode(byte[] bytes) throws InvalidProtocolBufferException;
+	}
+
+	private static final class Case {
+		final String name;
+		final Codec v1;
+		final Codec v2;
+
+		Case(String name, Codec v1, Codec v2) {
+			this.name = name;
+			this.v1 = v1;
+			this.v2 = v2;
+		}
+	}
+}
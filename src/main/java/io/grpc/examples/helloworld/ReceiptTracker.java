@@ -0,0 +1,416 @@
+package io.grpc.examples.helloworld;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Bytes;
+import foundation.icon.icx.data.ConfirmedTransaction;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.data.TransactionResult;
+import foundation.icon.icx.transport.jsonrpc.Request;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * Follows submitted transactions until their result is known and hands it to
+ * {@code WatchTransactions} streams.
+ *
+ * <p>All pending hashes are kept in one {@link PendingHashes} table and looked up together on a
+ * single schedule, up to {@code maxPerTick} per tick in JSON-RPC batches of
+ * {@link #MAX_BATCH_SIZE}, instead of every caller polling {@code icx_getTransactionResult} for its
+ * own hash. As a {@link BlockPoller.Listener} the tracker reads every new block and looks up the
+ * pending hashes it contains first; the rest of each tick's budget sweeps the table round-robin,
+ * which finds transactions whose block was skipped and expires those not found within the
+ * timeout. A tick is skipped while the previous one still has lookups outstanding.
+ *
+ * <p>Final results are kept for a while, so a hash watched shortly after it completed is answered
+ * at once.
+ */
+public class ReceiptTracker implements BlockPoller.Listener {
+	private static final Logger logger = Logger.getLogger(ReceiptTracker.class.getName());
+
+	/** Largest number of hashes a single stream may watch. */
+	public static final int MAX_HASHES_PER_STREAM = 1000;
+
+	/** Most lookups sent in one JSON-RPC batch. */
+	static final int MAX_BATCH_SIZE = 100;
+
+	/** Hashes tracked at once before new ones are refused. */
+	static final int MAX_PENDING = 1 << 20;
+
+	private static final int FINISHED_CACHE_SIZE = 10_000;
+	private static final long FINISHED_CACHE_MINUTES = 10;
+	private static final long SUCCESS = 1;
+
+	private final IconClient iconClient;
+	private final long intervalMillis;
+	private final int maxPerTick;
+	private final long timeoutMillis;
+
+	private final Object lock = new Object();
+	// Guarded by lock.
+	private final PendingHashes pending = new PendingHashes(1024);
+	// Guarded by lock; pending hashes seen in a block and not looked up since.
+	private final ArrayDeque<byte[]> confirmed = new ArrayDeque<byte[]>();
+	// Guarded by lock.
+	private final Map<Bytes, SettableFuture<TransactionStatus>> waiters =
+			new HashMap<Bytes, SettableFuture<TransactionStatus>>();
+	private final Cache<Bytes, TransactionStatus> finished = CacheBuilder.newBuilder()
+			.maximumSize(FINISHED_CACHE_SIZE)
+			.expireAfterWrite(FINISHED_CACHE_MINUTES, TimeUnit.MINUTES)
+			.build();
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong upstreamCalls = new AtomicLong();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param interval time between two ticks, normally the block interval
+	 * @param maxPerTick most hashes looked up in one tick
+	 * @param timeout how long a hash may stay unknown before it is reported as expired
+	 */
+	public ReceiptTracker(IconClient iconClient, long interval, TimeUnit unit, int maxPerTick, long timeout,
+			TimeUnit timeoutUnit) {
+		if (maxPerTick < 1) {
+			throw new IllegalArgumentException("maxPerTick < 1: " + maxPerTick);
+		}
+		this.iconClient = iconClient;
+		this.intervalMillis = unit.toMillis(interval);
+		this.maxPerTick = maxPerTick;
+		this.timeoutMillis = timeoutUnit.toMillis(timeout);
+	}
+
+	public synchronized ReceiptTracker start() {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("receipt-tracker").build());
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+	/** Stops looking up results and fails every waiting caller. */
+	public void shutdown() {
+		synchronized (this) {
+			if (scheduler != null) {
+				scheduler.shutdownNow();
+				scheduler = null;
+			}
+		}
+		List<SettableFuture<TransactionStatus>> failed;
+		synchronized (lock) {
+			failed = new ArrayList<SettableFuture<TransactionStatus>>(waiters.values());
+			waiters.clear();
+		}
+		for (SettableFuture<TransactionStatus> waiter : failed) {
+			waiter.setException(new RejectedExecutionException("Receipt tracker shut down"));
+		}
+	}
+
+	/**
+	 * Starts following {@code hash}; returns false if it is already followed or the tracker is
+	 * full.
+	 */
+	public boolean track(Bytes hash) {
+		byte[] key = hash.toByteArray();
+		synchronized (lock) {
+			return add(key);
+		}
+	}
+
+	private boolean add(byte[] key) {
+		if (pending.size() >= MAX_PENDING) {
+			return false;
+		}
+		return pending.add(key, System.currentTimeMillis() + timeoutMillis);
+	}
+
+	/**
+	 * Returns the final status of {@code hash}, following it if it is not already. Fails with
+	 * {@link RejectedExecutionException} when too many hashes are pending.
+	 */
+	public ListenableFuture<TransactionStatus> watch(Bytes hash) {
+		TransactionStatus status = finished.getIfPresent(hash);
+		if (status != null) {
+			return Futures.immediateFuture(status);
+		}
+		byte[] key = hash.toByteArray();
+		SettableFuture<TransactionStatus> waiter;
+		synchronized (lock) {
+			// Checked again under the lock in case the result arrived in between.
+			status = finished.getIfPresent(hash);
+			if (status != null) {
+				return Futures.immediateFuture(status);
+			}
+			if (!pending.contains(key) && !add(key)) {
+				return Futures.immediateFailedFuture(
+						new RejectedExecutionException("More than " + MAX_PENDING + " transactions pending"));
+			}
+			waiter = waiters.get(hash);
+			if (waiter == null) {
+				waiter = SettableFuture.create();
+				waiters.put(hash, waiter);
+			}
+		}
+		// Several streams may wait on one hash; none of them may cancel it for the others.
+		return Futures.nonCancellationPropagating(waiter);
+	}
+
+	/**
+	 * Sends the final status of each of {@code hashes} to {@code observer} as it becomes known and
+	 * completes the stream after the last one. Must be called from the RPC method so that the
+	 * stream's cancel handler can still be set.
+	 */
+	public void stream(List<Bytes> hashes, ServerCallStreamObserver<TransactionStatus> observer) {
+		List<Bytes> distinct = new ArrayList<Bytes>(new LinkedHashSet<Bytes>(hashes));
+		final TransactionStream stream = new TransactionStream(observer, distinct.size());
+		observer.setOnCancelHandler(new Runnable() {
+			@Override
+			public void run() {
+				stream.cancel();
+			}
+		});
+		for (Bytes hash : distinct) {
+			stream.add(watch(hash));
+		}
+	}
+
+	@Override
+	public void onNewBlock(Block block) {
+		synchronized (lock) {
+			if (pending.size() == 0) {
+				return;
+			}
+			for (ConfirmedTransaction tx : block.getTransactions()) {
+				Bytes hash = tx.getTxHash();
+				if (hash == null) {
+					continue;
+				}
+				byte[] key = hash.toByteArray();
+				if (key.length == PendingHashes.HASH_SIZE && pending.contains(key)) {
+					confirmed.add(key);
+				}
+			}
+		}
+	}
+
+	/** Looks up the next round of pending hashes. */
+	void tick() {
+		if (outstanding.get() > 0) {
+			return;
+		}
+		Set<Bytes> due = new LinkedHashSet<Bytes>();
+		List<byte[]> swept = new ArrayList<byte[]>();
+		List<byte[]> timedOut = new ArrayList<byte[]>();
+		synchronized (lock) {
+			while (due.size() < maxPerTick && !confirmed.isEmpty()) {
+				byte[] key = confirmed.poll();
+				if (key.length == PendingHashes.HASH_SIZE && pending.contains(key)) {
+					due.add(new Bytes(key));
+				}
+			}
+			pending.sweep(maxPerTick - due.size(), System.currentTimeMillis(), swept, timedOut);
+		}
+		for (byte[] key : swept) {
+			due.add(new Bytes(key));
+		}
+		for (byte[] key : timedOut) {
+			Bytes hash = new Bytes(key);
+			expired.incrementAndGet();
+			finish(hash, TransactionStatus.newBuilder()
+					.setTxhash(hash.toString())
+					.setStatus(TransactionStatus.Status.EXPIRED)
+					.build());
+		}
+		List<Bytes> hashes = new ArrayList<Bytes>(due);
+		for (int from = 0; from < hashes.size(); from += MAX_BATCH_SIZE) {
+			lookUp(hashes.subList(from, Math.min(hashes.size(), from + MAX_BATCH_SIZE)));
+		}
+	}
+
+	private void lookUp(List<Bytes> batch) {
+		List<Request> requests = new ArrayList<Request>(batch.size());
+		for (Bytes hash : batch) {
+			RpcObject params = new RpcObject.Builder().put("txHash", new RpcValue(hash)).build();
+			requests.add(iconClient.newRequest("icx_getTransactionResult", params));
+		}
+		upstreamCalls.incrementAndGet();
+		List<ListenableFuture<RpcItem>> results;
+		try {
+			results = iconClient.executeBatchAsync(requests);
+		} catch (RuntimeException e) {
+			logger.log(Level.FINE, "Failed to look up " + batch.size() + " transaction results", e);
+			return;
+		}
+		outstanding.addAndGet(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			final Bytes hash = batch.get(i);
+			Futures.addCallback(results.get(i), new FutureCallback<RpcItem>() {
+				@Override
+				public void onSuccess(RpcItem item) {
+					outstanding.decrementAndGet();
+					try {
+						finish(hash, toStatus(hash, Converters.TRANSACTION_RESULT.convertTo(item)));
+					} catch (RuntimeException e) {
+						logger.log(Level.WARNING, "Unexpected result for transaction " + hash, e);
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					outstanding.decrementAndGet();
+					// Not in a block yet, or the node is unavailable: the sweep looks it up again.
+					logger.log(Level.FINE, "No result for transaction " + hash, t);
+				}
+			}, MoreExecutors.directExecutor());
+		}
+	}
+
+	private static TransactionStatus toStatus(Bytes hash, TransactionResult result) {
+		TransactionStatus.Builder status = TransactionStatus.newBuilder().setTxhash(hash.toString());
+		if (result.getBlockHeight() != null) {
+			status.setBlockHeight(result.getBlockHeight().longValue());
+		}
+		if (result.getStatus() != null && result.getStatus().longValue() == SUCCESS) {
+			return status.setStatus(TransactionStatus.Status.SUCCESS).build();
+		}
+		status.setStatus(TransactionStatus.Status.FAILURE);
+		if (result.getFailure() != null && result.getFailure().getMessage() != null) {
+			status.setFailure(result.getFailure().getMessage());
+		}
+		return status.build();
+	}
+
+	private void finish(Bytes hash, TransactionStatus status) {
+		SettableFuture<TransactionStatus> waiter;
+		synchronized (lock) {
+			pending.remove(hash.toByteArray());
+			finished.put(hash, status);
+			waiter = waiters.remove(hash);
+		}
+		if (status.getStatus() != TransactionStatus.Status.EXPIRED) {
+			completed.incrementAndGet();
+		}
+		if (waiter != null) {
+			waiter.set(status);
+		}
+	}
+
+	/** Number of hashes whose result is not known yet. */
+	public int getPendingCount() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	/** Number of transactions whose result was found. */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/** Number of transactions given up on after the timeout. */
+	public long getExpiredCount() {
+		return expired.get();
+	}
+
+	/** Number of JSON-RPC batches sent to the node. */
+	public long getUpstreamCallCount() {
+		return upstreamCalls.get();
+	}
+
+	/** One {@code WatchTransactions} stream and the statuses it still waits for. */
+	private static final class TransactionStream implements FutureCallback<TransactionStatus> {
+		private final ServerCallStreamObserver<TransactionStatus> observer;
+		// Guarded by this.
+		private final List<ListenableFuture<TransactionStatus>> statuses =
+				new ArrayList<ListenableFuture<TransactionStatus>>();
+		private int remaining;
+		private boolean closed;
+
+		TransactionStream(ServerCallStreamObserver<TransactionStatus> observer, int count) {
+			this.observer = observer;
+			this.remaining = count;
+		}
+
+		void add(ListenableFuture<TransactionStatus> status) {
+			synchronized (this) {
+				if (closed) {
+					status.cancel(false);
+					return;
+				}
+				statuses.add(status);
+			}
+			Futures.addCallback(status, this, MoreExecutors.directExecutor());
+		}
+
+		@Override
+		public synchronized void onSuccess(TransactionStatus status) {
+			if (closed) {
+				return;
+			}
+			observer.onNext(status);
+			if (--remaining == 0) {
+				closed = true;
+				observer.onCompleted();
+			}
+		}
+
+		@Override
+		public synchronized void onFailure(Throwable t) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			cancelAll();
+			Status status = t instanceof RejectedExecutionException ? Status.RESOURCE_EXHAUSTED : Status.UNAVAILABLE;
+			observer.onError(status.withDescription(t.getMessage()).withCause(t).asRuntimeException());
+		}
+
+		synchronized void cancel() {
+			closed = true;
+			cancelAll();
+		}
+
+		private void cancelAll() {
+			for (ListenableFuture<TransactionStatus> status : statuses) {
+				status.cancel(false);
+			}
+			statuses.clear();
+		}
+	}
+}
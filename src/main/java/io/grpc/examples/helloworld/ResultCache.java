@@ -0,0 +1,371 @@
+package io.grpc.examples.helloworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.io.BaseEncoding;
+
+import foundation.icon.icx.data.Block;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+/**
+ * Answers ICON JSON-RPC calls whose result cannot have changed without asking the node.
+ *
+ * <p>Two kinds of results are kept:
+ * <ul>
+ * <li>{@code icx_call} results, keyed by the call parameters (SCORE, method and its params) and
+ * the block height the {@link BlockPoller} last reported. They are dropped when a new block is
+ * seen, and calls are not cached until the first block is.
+ * <li>{@code icx_getTransactionResult} results of transactions that are in a block, keyed by
+ * transaction hash. ICON blocks are final, so these are kept until evicted for space, and
+ * optionally also written to a memory-mapped file that survives a restart.
+ * </ul>
+ *
+ * <p>Each in-heap tier is bounded by the approximate number of bytes it holds and evicts the least
+ * recently used results first. The cache works on the wire format, as an OkHttp interceptor
+ * installed by {@link IconClient.Builder#resultCache}, so calls made through the SDK and
+ * {@link IconClient#executeBatchAsync batches} are answered alike; a batch is forwarded with only
+ * the calls that missed.
+ */
+public class ResultCache implements BlockPoller.Listener {
+	private static final Logger logger = Logger.getLogger(ResultCache.class.getName());
+	private static final MediaType JSON = MediaType.parse("application/json");
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	/** Writes maps with sorted keys so that equal parameters give equal cache keys. */
+	private static final ObjectWriter CANONICAL =
+			MAPPER.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+	private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+	private static final Weigher<String, byte[]> WEIGHER = new Weigher<String, byte[]>() {
+		@Override
+		public int weigh(String key, byte[] value) {
+			return 2 * key.length() + value.length;
+		}
+	};
+
+	private final Cache<String, byte[]> calls;
+	private final Cache<String, byte[]> results;
+	private final MappedResultStore disk;
+	private final AtomicLong callHits = new AtomicLong();
+	private final AtomicLong resultHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile long height = -1;
+
+	private ResultCache(Builder builder, MappedResultStore disk) {
+		this.calls = CacheBuilder.newBuilder().maximumWeight(builder.maxCallBytes).weigher(WEIGHER).build();
+		this.results = CacheBuilder.newBuilder().maximumWeight(builder.maxResultBytes).weigher(WEIGHER).build();
+		this.disk = disk;
+	}
+
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+
+	@Override
+	public void onNewBlock(Block block) {
+		long newHeight = block.getHeight().longValue();
+		if (newHeight <= height) {
+			return;
+		}
+		height = newHeight;
+		calls.invalidateAll();
+	}
+
+	/** Flushes the on-disk tier; the cache keeps answering from the heap afterwards. */
+	public void shutdown() {
+		if (disk != null) {
+			disk.close();
+		}
+	}
+
+	/** Returns the interceptor that answers cached calls of one client. */
+	Interceptor newInterceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				return answer(chain);
+			}
+		};
+	}
+
+	private Response answer(Interceptor.Chain chain) throws IOException {
+		Request request = chain.request();
+		if (request.body() == null) {
+			return chain.proceed(request);
+		}
+		Buffer buffer = new Buffer();
+		request.body().writeTo(buffer);
+		JsonNode tree;
+		try {
+			tree = MAPPER.readTree(buffer.readByteArray());
+		} catch (IOException e) {
+			return chain.proceed(request);
+		}
+		if (tree == null || !(tree.isObject() || tree.isArray())) {
+			return chain.proceed(request);
+		}
+		List<JsonNode> requests = new ArrayList<JsonNode>();
+		if (tree.isArray()) {
+			for (JsonNode call : tree) {
+				requests.add(call);
+			}
+		} else {
+			requests.add(tree);
+		}
+
+		long callHeight = height;
+		String[] keys = new String[requests.size()];
+		JsonNode[] answers = new JsonNode[requests.size()];
+		ArrayNode forwarded = NODES.arrayNode();
+		int cacheable = 0;
+		int hits = 0;
+		for (int i = 0; i < keys.length; i++) {
+			JsonNode call = requests.get(i);
+			keys[i] = key(call, callHeight);
+			if (keys[i] != null) {
+				cacheable++;
+				byte[] cached = lookup(keys[i]);
+				if (cached != null) {
+					ObjectNode answer = NODES.objectNode().put("jsonrpc", "2.0");
+					answer.set("id", call.get("id"));
+					answer.set("result", MAPPER.readTree(cached));
+					answers[i] = answer;
+					hits++;
+					continue;
+				}
+				misses.incrementAndGet();
+			}
+			forwarded.add(call);
+		}
+		if (cacheable == 0) {
+			return chain.proceed(request);
+		}
+		if (forwarded.size() == 0) {
+			byte[] body = MAPPER.writeValueAsBytes(
+					tree.isArray() ? NODES.arrayNode().addAll(Arrays.asList(answers)) : answers[0]);
+			return new Response.Builder()
+					.request(request)
+					.protocol(Protocol.HTTP_1_1)
+					.code(200)
+					.message("OK")
+					.body(ResponseBody.create(JSON, body))
+					.build();
+		}
+
+		Request upstream = request;
+		if (hits > 0) {
+			upstream = request.newBuilder().post(RequestBody.create(JSON, MAPPER.writeValueAsBytes(forwarded))).build();
+		}
+		Response response = chain.proceed(upstream);
+		if (!response.isSuccessful() || response.body() == null) {
+			return response;
+		}
+		byte[] body;
+		MediaType contentType;
+		try (ResponseBody responseBody = response.body()) {
+			contentType = responseBody.contentType();
+			body = responseBody.bytes();
+		}
+		JsonNode answered;
+		try {
+			answered = MAPPER.readTree(body);
+		} catch (IOException e) {
+			answered = null;
+		}
+		if (answered == null || !(answered.isObject() || answered.isArray())) {
+			return response.newBuilder().body(ResponseBody.create(contentType, body)).build();
+		}
+		Map<String, JsonNode> byId = new HashMap<String, JsonNode>();
+		if (answered.isArray()) {
+			for (JsonNode item : answered) {
+				byId.put(item.path("id").toString(), item);
+			}
+		} else if (!tree.isArray()) {
+			byId.put(requests.get(0).path("id").toString(), answered);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null && answers[i] == null) {
+				store(keys[i], byId.get(requests.get(i).path("id").toString()), callHeight);
+			}
+		}
+		if (hits == 0 || !answered.isArray()) {
+			// A batch the node refused as a whole fails the cached calls along with the rest.
+			return response.newBuilder().body(ResponseBody.create(contentType, body)).build();
+		}
+		ArrayNode merged = NODES.arrayNode();
+		for (int i = 0; i < keys.length; i++) {
+			JsonNode item = answers[i] != null ? answers[i] : byId.get(requests.get(i).path("id").toString());
+			if (item != null) {
+				merged.add(item);
+			}
+		}
+		return response.newBuilder().body(ResponseBody.create(JSON, MAPPER.writeValueAsBytes(merged))).build();
+	}
+
+	/**
+	 * Cache key of {@code call}, or null if its result may change: a transaction hash for
+	 * transaction results, the height and canonical parameters for SCORE calls.
+	 */
+	private static String key(JsonNode call, long height) throws IOException {
+		JsonNode params = call.path("params");
+		switch (call.path("method").asText()) {
+			case "icx_call":
+				if (height < 0 || !params.isObject()) {
+					return null;
+				}
+				return height + ":" + CANONICAL.writeValueAsString(MAPPER.treeToValue(params, Object.class));
+			case "icx_getTransactionResult":
+				String hash = params.path("txHash").asText().toLowerCase();
+				return hash.matches("0x[0-9a-f]{64}") ? hash : null;
+			default:
+				return null;
+		}
+	}
+
+	private static boolean isTransactionResult(String key) {
+		return key.startsWith("0x");
+	}
+
+	private byte[] lookup(String key) {
+		if (!isTransactionResult(key)) {
+			byte[] cached = calls.getIfPresent(key);
+			if (cached != null) {
+				callHits.incrementAndGet();
+			}
+			return cached;
+		}
+		byte[] cached = results.getIfPresent(key);
+		if (cached == null && disk != null) {
+			cached = disk.get(hashBytes(key));
+			if (cached != null) {
+				diskHits.incrementAndGet();
+				results.put(key, cached);
+			}
+		}
+		if (cached != null) {
+			resultHits.incrementAndGet();
+		}
+		return cached;
+	}
+
+	private void store(String key, JsonNode response, long callHeight) throws IOException {
+		if (response == null || response.has("error") || !response.has("result")) {
+			return;
+		}
+		JsonNode result = response.get("result");
+		if (!isTransactionResult(key)) {
+			// A block seen while the call was running may have changed its result.
+			if (height == callHeight) {
+				calls.put(key, MAPPER.writeValueAsBytes(result));
+			}
+			return;
+		}
+		if (result.path("blockHeight").asText().isEmpty()) {
+			return;
+		}
+		byte[] value = MAPPER.writeValueAsBytes(result);
+		results.put(key, value);
+		if (disk != null && !disk.put(hashBytes(key), value)) {
+			logger.fine("Result store full, " + key + " kept in memory only");
+		}
+	}
+
+	private static byte[] hashBytes(String key) {
+		return BaseEncoding.base16().lowerCase().decode(key.substring(2));
+	}
+
+	/** {@code icx_call} results answered from memory. */
+	public long getCallHitCount() {
+		return callHits.get();
+	}
+
+	/** Transaction results answered from memory or disk. */
+	public long getResultHitCount() {
+		return resultHits.get();
+	}
+
+	/** Transaction results read back from the on-disk tier. */
+	public long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	/** Cacheable calls that had to be sent to the node. */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "call hits=" + callHits.get() + ", result hits=" + resultHits.get() + ", disk hits=" + diskHits.get()
+				+ ", misses=" + misses.get() + ", results on disk=" + (disk != null ? disk.size() : 0);
+	}
+
+	/** Configuration for a {@link ResultCache}. */
+	public static final class Builder {
+		private long maxCallBytes = 16L << 20;
+		private long maxResultBytes = 64L << 20;
+		private File file;
+		private int maxFileEntries;
+		private int maxFileDataBytes;
+
+		private Builder() {
+		}
+
+		/** Approximate heap taken by {@code icx_call} results, 16 MiB by default. */
+		public Builder maxCallBytes(long maxCallBytes) {
+			this.maxCallBytes = maxCallBytes;
+			return this;
+		}
+
+		/** Approximate heap taken by transaction results, 64 MiB by default. */
+		public Builder maxResultBytes(long maxResultBytes) {
+			this.maxResultBytes = maxResultBytes;
+			return this;
+		}
+
+		/**
+		 * Also keeps transaction results in {@code file}, which is created with room for
+		 * {@code maxEntries} results of {@code maxDataBytes} in total if it does not exist yet.
+		 */
+		public Builder file(File file, int maxEntries, int maxDataBytes) {
+			this.file = file;
+			this.maxFileEntries = maxEntries;
+			this.maxFileDataBytes = maxDataBytes;
+			return this;
+		}
+
+		/** Opens the on-disk tier, if any. */
+		public ResultCache build() throws IOException {
+			MappedResultStore disk = null;
+			if (file != null) {
+				disk = MappedResultStore.open(file, maxFileEntries, maxFileDataBytes);
+				logger.info("Result cache file " + file + " holds " + disk.size() + " transaction results");
+			}
+			return new ResultCache(this, disk);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.Wallet;
+import foundation.icon.icx.crypto.IconKeys;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Bytes;
+
+/**
+ * A {@link Wallet} that signs with a secp256k1 key parsed once, producing the same recoverable
+ * signatures as {@link KeyWallet#sign}.
+ *
+ * <p>{@link KeyWallet} keeps the key as bytes, so every signature converts it again, derives the
+ * public key with another point multiplication, and then recovers up to four public keys from the
+ * signature to find the one that matches. Here the key, public key and address are computed when
+ * the signer is loaded, the comb table for the generator is built once per process, and the
+ * recovery id is read off the point {@code kG} that the signature already computes.
+ *
+ * <p>{@link #verify} checks such signatures against a decoded public key; the multiplication
+ * tables it builds for a key are kept with the decoded point, so a caller that keeps the point
+ * verifies later signatures of that key faster.
+ */
+public final class Secp256k1Signer implements Wallet {
+	private static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256k1");
+	private static final BigInteger N = CURVE.getN();
+	private static final BigInteger HALF_N = N.shiftRight(1);
+	private static final ECPoint G = CURVE.getG();
+	private static final ECMultiplier MULTIPLIER = new FixedPointCombMultiplier();
+
+	static {
+		FixedPointUtil.precompute(G);
+	}
+
+	private final BigInteger privateKey;
+	private final Bytes publicKey;
+	private final Address address;
+
+	private Secp256k1Signer(Bytes privateKey) {
+		this.privateKey = new BigInteger(1, privateKey.toByteArray());
+		if (this.privateKey.signum() == 0 || this.privateKey.compareTo(N) >= 0) {
+			throw new IllegalArgumentException("Not a secp256k1 private key");
+		}
+		this.publicKey = IconKeys.getPublicKey(privateKey);
+		this.address = IconKeys.getAddress(publicKey);
+	}
+
+	/** Loads a hex-encoded private key, with or without {@code 0x}. */
+	public static Secp256k1Signer load(String privateKey) {
+		return load(new Bytes(privateKey));
+	}
+
+	public static Secp256k1Signer load(Bytes privateKey) {
+		return new Secp256k1Signer(privateKey);
+	}
+
+	@Override
+	public Address getAddress() {
+		return address;
+	}
+
+	public Bytes getPublicKey() {
+		return publicKey;
+	}
+
+	/**
+	 * Signs a 32-byte hash deterministically (RFC 6979) and returns {@code r || s || recovery id},
+	 * with {@code s} in the lower half of the order.
+	 */
+	@Override
+	public byte[] sign(byte[] hash) {
+		BigInteger e = new BigInteger(1, hash);
+		HMacDSAKCalculator kCalculator = new HMacDSAKCalculator(new SHA256Digest());
+		kCalculator.init(N, privateKey, hash);
+		while (true) {
+			BigInteger k = kCalculator.nextK();
+			ECPoint p = MULTIPLIER.multiply(G, k).normalize();
+			BigInteger x = p.getAffineXCoord().toBigInteger();
+			BigInteger r = x.mod(N);
+			if (r.signum() == 0) {
+				continue;
+			}
+			BigInteger s = k.modInverse(N).multiply(e.add(privateKey.multiply(r))).mod(N);
+			if (s.signum() == 0) {
+				continue;
+			}
+			int recoveryId = (p.getAffineYCoord().testBitZero() ? 1 : 0) | (x.compareTo(N) >= 0 ? 2 : 0);
+			if (s.compareTo(HALF_N) > 0) {
+				// -s signs for -kG, whose y has the other parity.
+				s = N.subtract(s);
+				recoveryId ^= 1;
+			}
+			byte[] signature = new byte[65];
+			copyUnsigned(r, signature, 0);
+			copyUnsigned(s, signature, 32);
+			signature[64] = (byte) recoveryId;
+			return signature;
+		}
+	}
+
+	/** Decodes a public key given as {@code x || y}, or as a compressed or uncompressed SEC 1 point. */
+	static ECPoint decodePublicKey(byte[] encoded) {
+		if (encoded.length == 64) {
+			byte[] uncompressed = new byte[65];
+			uncompressed[0] = 0x04;
+			System.arraycopy(encoded, 0, uncompressed, 1, 64);
+			encoded = uncompressed;
+		}
+		// Throws IllegalArgumentException unless the point is on the curve.
+		return CURVE.getCurve().decodePoint(encoded);
+	}
+
+	/**
+	 * Whether {@code signature}, {@code r || s} optionally followed by a recovery id, is a valid
+	 * signature of the 32-byte {@code hash} by {@code publicKey}.
+	 */
+	static boolean verify(ECPoint publicKey, byte[] hash, byte[] signature) {
+		if (signature.length != 64 && signature.length != 65) {
+			return false;
+		}
+		BigInteger r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32));
+		BigInteger s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64));
+		if (r.signum() == 0 || r.compareTo(N) >= 0 || s.signum() == 0 || s.compareTo(N) >= 0) {
+			return false;
+		}
+		BigInteger w = s.modInverse(N);
+		BigInteger u1 = new BigInteger(1, hash).multiply(w).mod(N);
+		BigInteger u2 = r.multiply(w).mod(N);
+		ECPoint p = ECAlgorithms.sumOfTwoMultiplies(G, u1, publicKey, u2).normalize();
+		return !p.isInfinity() && p.getAffineXCoord().toBigInteger().mod(N).equals(r);
+	}
+
+	private static void copyUnsigned(BigInteger value, byte[] to, int offset) {
+		byte[] bytes = value.toByteArray();
+		int skip = bytes.length > 32 ? bytes.length - 32 : 0;
+		System.arraycopy(bytes, skip, to, offset + 32 - (bytes.length - skip), bytes.length - skip);
+	}
+}
@@ -0,0 +1,312 @@
+package io.grpc.examples.helloworld;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bouncycastle.crypto.digests.SHA3Digest;
+import org.bouncycastle.math.ec.ECPoint;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Verifies secp256k1 signatures made by wallets of {@code CreateKeyWallet} on a dedicated pool,
+ * with one thread per core and a bounded queue like the {@link KeystoreEngine}.
+ *
+ * <p>Decoded public keys are kept in a bounded cache, together with the multiplication tables
+ * built the first time a key is used, so that the usual case of many signatures by the same few
+ * keys skips decoding and table setup.
+ */
+public class SignatureVerifier {
+	/** Requests a stream may have in progress per worker, so that workers do not wait between them. */
+	static final int IN_FLIGHT_PER_THREAD = 16;
+
+	private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+	private final int threads;
+	private final int maxQueued;
+	private final Cache<String, ECPoint> publicKeys;
+	private final AtomicLong verified = new AtomicLong();
+	private final AtomicLong invalid = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private ListeningExecutorService executor;
+
+	/**
+	 * @param threads workers verifying signatures, normally the number of cores
+	 * @param maxQueued signatures that may wait for a worker before new ones are refused
+	 * @param maxPublicKeys decoded public keys kept
+	 */
+	public SignatureVerifier(int threads, int maxQueued, int maxPublicKeys) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads < 1: " + threads);
+		}
+		this.threads = threads;
+		this.maxQueued = maxQueued;
+		this.publicKeys = CacheBuilder.newBuilder().maximumSize(maxPublicKeys).build();
+	}
+
+	public synchronized SignatureVerifier start() {
+		if (executor != null) {
+			throw new IllegalStateException("Already started");
+		}
+		executor = MoreExecutors.listeningDecorator(new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, maxQueued)),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("signature-verifier-%d").build(),
+				new ThreadPoolExecutor.AbortPolicy()));
+		return this;
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/** Verifies {@code request} on a worker. */
+	public ListenableFuture<VerifySignatureReply> verify(final VerifySignatureRequest request) {
+		ListeningExecutorService executor;
+		synchronized (this) {
+			executor = this.executor;
+		}
+		if (executor == null) {
+			return Futures.immediateFailedFuture(new RejectedExecutionException("Signature verifier not running"));
+		}
+		try {
+			return executor.submit(new Callable<VerifySignatureReply>() {
+				@Override
+				public VerifySignatureReply call() {
+					return verifyNow(request);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			return Futures.immediateFailedFuture(
+					new RejectedExecutionException("Signature verifier busy: " + maxQueued + " signatures queued"));
+		}
+	}
+
+	/** Verifies {@code request} on the calling thread. */
+	VerifySignatureReply verifyNow(VerifySignatureRequest request) {
+		ECPoint publicKey;
+		byte[] message;
+		byte[] signature;
+		try {
+			publicKey = publicKey(request.getPublickey());
+		} catch (IllegalArgumentException e) {
+			return malformed("Invalid public key: " + e.getMessage());
+		}
+		try {
+			message = HEX.decode(cleanHex(request.getMessage()));
+		} catch (IllegalArgumentException e) {
+			return malformed("Message is not hex: " + e.getMessage());
+		}
+		try {
+			signature = BaseEncoding.base64().decode(request.getSignature());
+		} catch (IllegalArgumentException e) {
+			return malformed("Signature is not base64: " + e.getMessage());
+		}
+		boolean valid = Secp256k1Signer.verify(publicKey, sha3(message), signature);
+		verified.incrementAndGet();
+		if (!valid) {
+			invalid.incrementAndGet();
+		}
+		return VerifySignatureReply.newBuilder().setValid(valid).build();
+	}
+
+	private ECPoint publicKey(String hex) {
+		String key = cleanHex(hex);
+		ECPoint publicKey = publicKeys.getIfPresent(key);
+		if (publicKey == null) {
+			publicKey = Secp256k1Signer.decodePublicKey(HEX.decode(key));
+			publicKeys.put(key, publicKey);
+		}
+		return publicKey;
+	}
+
+	private static String cleanHex(String hex) {
+		String trimmed = hex.trim().toLowerCase();
+		return trimmed.startsWith("0x") ? trimmed.substring(2) : trimmed;
+	}
+
+	private static byte[] sha3(byte[] message) {
+		SHA3Digest digest = new SHA3Digest(256);
+		digest.update(message, 0, message.length);
+		byte[] hash = new byte[32];
+		digest.doFinal(hash, 0);
+		return hash;
+	}
+
+	private static VerifySignatureReply malformed(String error) {
+		return VerifySignatureReply.newBuilder().setError(error).build();
+	}
+
+	/**
+	 * Returns the request observer of a {@code VerifySignatures} stream. Replies are sent in request
+	 * order; each stream has at most {@link #IN_FLIGHT_PER_THREAD} signatures per worker in progress
+	 * and reads no further requests while its replies cannot be sent. Must be called from the RPC
+	 * method.
+	 */
+	public StreamObserver<VerifySignatureRequest> stream(
+			ServerCallStreamObserver<VerifySignatureReply> responseObserver) {
+		VerifyStream stream = new VerifyStream(responseObserver);
+		stream.start();
+		return stream;
+	}
+
+	/** Number of well-formed signatures checked. */
+	public long getVerifiedCount() {
+		return verified.get();
+	}
+
+	/** Number of well-formed signatures found invalid. */
+	public long getInvalidCount() {
+		return invalid.get();
+	}
+
+	/** Number of signatures refused because the queue was full. */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	private final class VerifyStream implements StreamObserver<VerifySignatureRequest>, Runnable {
+		private final ServerCallStreamObserver<VerifySignatureReply> observer;
+		// Guarded by this; verdicts in request order, completed or not.
+		private final ArrayDeque<ListenableFuture<VerifySignatureReply>> pending =
+				new ArrayDeque<ListenableFuture<VerifySignatureReply>>();
+		// Guarded by this; requests asked from the client and not yet received.
+		private int requested;
+		private boolean halfClosed;
+		private boolean closed;
+
+		VerifyStream(ServerCallStreamObserver<VerifySignatureReply> observer) {
+			this.observer = observer;
+		}
+
+		void start() {
+			observer.disableAutoInboundFlowControl();
+			observer.setOnReadyHandler(this);
+			observer.setOnCancelHandler(new Runnable() {
+				@Override
+				public void run() {
+					close();
+				}
+			});
+			synchronized (this) {
+				requestMore();
+			}
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				requestMore();
+			}
+		}
+
+		@Override
+		public void onNext(VerifySignatureRequest request) {
+			ListenableFuture<VerifySignatureReply> verdict = verify(request);
+			synchronized (this) {
+				requested--;
+				if (closed) {
+					verdict.cancel(false);
+					return;
+				}
+				if (verdict.isDone() && isRejected(verdict)) {
+					closed = true;
+					observer.onError(
+							Status.RESOURCE_EXHAUSTED.withDescription("Signature verifier busy").asRuntimeException());
+					cancelPending();
+					return;
+				}
+				pending.add(verdict);
+			}
+			verdict.addListener(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			}, MoreExecutors.directExecutor());
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			close();
+		}
+
+		@Override
+		public synchronized void onCompleted() {
+			halfClosed = true;
+			drain();
+		}
+
+		private synchronized void drain() {
+			while (!closed && !pending.isEmpty() && pending.peek().isDone()) {
+				VerifySignatureReply verdict;
+				try {
+					verdict = Futures.getDone(pending.poll());
+				} catch (ExecutionException e) {
+					verdict = malformed(String.valueOf(e.getCause().getMessage()));
+				}
+				observer.onNext(verdict);
+			}
+			if (closed) {
+				return;
+			}
+			if (halfClosed && pending.isEmpty()) {
+				closed = true;
+				observer.onCompleted();
+				return;
+			}
+			requestMore();
+		}
+
+		/** Keeps up to {@link #IN_FLIGHT_PER_THREAD} signatures per worker in progress while replies can be sent. */
+		private void requestMore() {
+			int more = threads * IN_FLIGHT_PER_THREAD - pending.size() - requested;
+			if (!closed && !halfClosed && more > 0 && observer.isReady()) {
+				requested += more;
+				observer.request(more);
+			}
+		}
+
+		private synchronized void close() {
+			closed = true;
+			cancelPending();
+		}
+
+		private void cancelPending() {
+			for (ListenableFuture<VerifySignatureReply> verdict : pending) {
+				verdict.cancel(false);
+			}
+			pending.clear();
+		}
+
+		private boolean isRejected(ListenableFuture<VerifySignatureReply> verdict) {
+			try {
+				Futures.getDone(verdict);
+				return false;
+			} catch (ExecutionException e) {
+				return e.getCause() instanceof RejectedExecutionException;
+			}
+		}
+	}
+}
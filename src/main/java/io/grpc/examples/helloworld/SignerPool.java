@@ -0,0 +1,64 @@
+package io.grpc.examples.helloworld;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import foundation.icon.icx.Wallet;
+
+/**
+ * Fixed set of wallets that sign transactions in turn, so that submissions are spread over
+ * several accounts instead of all being sent from one.
+ */
+public class SignerPool {
+	private final List<Wallet> wallets;
+	private final AtomicInteger next = new AtomicInteger();
+
+	public SignerPool(List<? extends Wallet> wallets) {
+		if (wallets.isEmpty()) {
+			throw new IllegalArgumentException("No signer wallets");
+		}
+		this.wallets = Collections.unmodifiableList(new ArrayList<Wallet>(wallets));
+	}
+
+	/** Loads one {@link Secp256k1Signer} per hex-encoded private key. */
+	public static SignerPool fromPrivateKeys(List<String> privateKeys) {
+		List<Wallet> wallets = new ArrayList<Wallet>(privateKeys.size());
+		for (String privateKey : privateKeys) {
+			wallets.add(Secp256k1Signer.load(privateKey));
+		}
+		return new SignerPool(wallets);
+	}
+
+	/** Reads one hex private key per line; blank lines and lines starting with {@code #} are skipped. */
+	public static SignerPool fromFile(File file) throws IOException {
+		List<String> privateKeys = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					privateKeys.add(line);
+				}
+			}
+		}
+		return fromPrivateKeys(privateKeys);
+	}
+
+	/** Returns the wallets in round-robin order. */
+	public Wallet next() {
+		return wallets.get((next.getAndIncrement() & Integer.MAX_VALUE) % wallets.size());
+	}
+
+	public int size() {
+		return wallets.size();
+	}
+}
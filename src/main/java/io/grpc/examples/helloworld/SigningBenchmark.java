@@ -0,0 +1,121 @@
+package io.grpc.examples.helloworld;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.Futures;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.SignedTransaction;
+import foundation.icon.icx.Transaction;
+import foundation.icon.icx.TransactionBuilder;
+import foundation.icon.icx.Wallet;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Bytes;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+
+/**
+ * Reports {@code create_did_from_pubkey} transactions signed per second for 1, 2, 4, ... threads up
+ * to the number of cores: with a {@link SignedTransaction} per transaction and a {@link KeyWallet}
+ * loaded from hex, as {@code createDID} used to, and in batches on a {@link SigningEngine} with a
+ * {@link Secp256k1Signer} loaded once.
+ *
+ * <p>Usage: {@code signing-benchmark [transactions]}.
+ */
+public class SigningBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+		int cores = Runtime.getRuntime().availableProcessors();
+		List<Transaction> transactions = transactions(count);
+
+		// Warm up the JIT for both paths.
+		runKeyWallet(Math.min(2, cores), transactions.subList(0, count / 10));
+		runEngine(Math.min(2, cores), transactions.subList(0, count / 10));
+
+		System.out.printf("%-8s %18s %18s%n", "threads", "key wallet sigs/s", "engine sigs/s");
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for (int threads = 1; threads < cores; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(cores);
+		for (int threads : threadCounts) {
+			double keyWallet = runKeyWallet(threads, transactions);
+			double engine = runEngine(threads, transactions);
+			System.out.printf("%-8d %18.0f %18.0f%n", threads, keyWallet, engine);
+		}
+	}
+
+	private static List<Transaction> transactions(int count) {
+		Address from = Secp256k1Signer.load(CommonData.DID_SIGNER_PRIVATE_KEY).getAddress();
+		List<Transaction> transactions = new ArrayList<Transaction>(count);
+		for (int i = 0; i < count; i++) {
+			RpcObject params = new RpcObject.Builder()
+					.put("publickey", new RpcValue(String.format("04%0128x", i))).build();
+			transactions.add(TransactionBuilder.newBuilder()
+					.nid(new BigInteger(CommonData.TESTNET_NID))
+					.from(from)
+					.to(new Address(CommonData.DID_SCORE_ADDRESS))
+					.value(BigInteger.ZERO)
+					.stepLimit(new BigInteger("1000000"))
+					.timestamp(BigInteger.valueOf(System.currentTimeMillis() * 1000L))
+					.nonce(BigInteger.valueOf(i))
+					.call("create_did_from_pubkey")
+					.params(params)
+					.build());
+		}
+		return transactions;
+	}
+
+	private static double runKeyWallet(int threads, final List<Transaction> transactions) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			long start = System.nanoTime();
+			for (int i = 0; i < threads; i++) {
+				final List<Transaction> run = transactions.subList(transactions.size() * i / threads,
+						transactions.size() * (i + 1) / threads);
+				tasks.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (Transaction transaction : run) {
+							new SignedTransaction(transaction, KeyWallet.load(new Bytes(CommonData.DID_SIGNER_PRIVATE_KEY)));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+			return perSecond(transactions.size(), System.nanoTime() - start);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static double runEngine(int threads, List<Transaction> transactions) throws Exception {
+		SigningEngine engine = new SigningEngine(threads).start();
+		try {
+			List<Wallet> signers = Collections.<Wallet>nCopies(transactions.size(),
+					Secp256k1Signer.load(CommonData.DID_SIGNER_PRIVATE_KEY));
+			long start = System.nanoTime();
+			Futures.allAsList(engine.signAll(transactions, signers)).get();
+			return perSecond(transactions.size(), System.nanoTime() - start);
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	private static double perSecond(int count, long nanos) {
+		return count / (nanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+}
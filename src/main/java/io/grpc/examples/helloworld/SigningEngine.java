@@ -0,0 +1,128 @@
+package io.grpc.examples.helloworld;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import foundation.icon.icx.SignedTransaction;
+import foundation.icon.icx.Transaction;
+import foundation.icon.icx.Wallet;
+
+/**
+ * Signs batches of transactions on a pool of worker threads. A batch is cut into one run of
+ * consecutive transactions per worker, so that a worker signs its run without handing off
+ * between transactions.
+ *
+ * <p>The engine signs with whatever {@link Wallet} it is given; with a {@link Secp256k1Signer}
+ * the key setup is done once per signer instead of once per transaction.
+ */
+public class SigningEngine {
+	private final int threads;
+	private ExecutorService executor;
+
+	/** @param threads number of workers, normally the number of cores */
+	public SigningEngine(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads < 1: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public synchronized SigningEngine start() {
+		if (executor != null) {
+			throw new IllegalStateException("Already started");
+		}
+		executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("signing-engine-%d").build());
+		return this;
+	}
+
+	public synchronized void shutdown() {
+		if (executor != null) {
+			for (Runnable pending : executor.shutdownNow()) {
+				((SignRun) pending).fail(new RejectedExecutionException("Signing engine shut down"));
+			}
+			executor = null;
+		}
+	}
+
+	private synchronized ExecutorService executor() {
+		if (executor == null) {
+			throw new RejectedExecutionException("Signing engine not running");
+		}
+		return executor;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Signs {@code transactions.get(i)} with {@code signers.get(i)}. The futures are in the same
+	 * order as the transactions, and one that fails to sign fails alone.
+	 */
+	public List<ListenableFuture<SignedTransaction>> signAll(List<Transaction> transactions,
+			List<? extends Wallet> signers) {
+		if (transactions.size() != signers.size()) {
+			throw new IllegalArgumentException(
+					transactions.size() + " transactions but " + signers.size() + " signers");
+		}
+		ExecutorService executor = executor();
+		int count = transactions.size();
+		List<SettableFuture<SignedTransaction>> results = new ArrayList<SettableFuture<SignedTransaction>>(count);
+		for (int i = 0; i < count; i++) {
+			results.add(SettableFuture.<SignedTransaction>create());
+		}
+		int runs = Math.min(threads, count);
+		for (int run = 0; run < runs; run++) {
+			int from = (int) ((long) count * run / runs);
+			int to = (int) ((long) count * (run + 1) / runs);
+			SignRun signRun = new SignRun(transactions.subList(from, to), signers.subList(from, to),
+					results.subList(from, to));
+			try {
+				executor.execute(signRun);
+			} catch (RejectedExecutionException e) {
+				signRun.fail(e);
+			}
+		}
+		return Collections.<ListenableFuture<SignedTransaction>>unmodifiableList(results);
+	}
+
+	/** Consecutive transactions of a batch, signed by one worker. */
+	private static final class SignRun implements Runnable {
+		private final List<Transaction> transactions;
+		private final List<? extends Wallet> signers;
+		private final List<SettableFuture<SignedTransaction>> results;
+
+		SignRun(List<Transaction> transactions, List<? extends Wallet> signers,
+				List<SettableFuture<SignedTransaction>> results) {
+			this.transactions = transactions;
+			this.signers = signers;
+			this.results = results;
+		}
+
+		@Override
+		public void run() {
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					results.get(i).set(new SignedTransaction(transactions.get(i), signers.get(i)));
+				} catch (RuntimeException e) {
+					results.get(i).setException(e);
+				}
+			}
+		}
+
+		void fail(Throwable t) {
+			for (SettableFuture<SignedTransaction> result : results) {
+				result.setException(t);
+			}
+		}
+	}
+}
@@ -0,0 +1,420 @@
+package io.grpc.examples.helloworld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.io.BaseEncoding;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.ConfirmedTransaction;
+
+/**
+ * The transactions of ingested blocks, and for every address the transactions sent from or to it,
+ * in a memory-mapped file so that the history lives off the heap and survives restarts.
+ *
+ * <p>The file is columnar: after the header comes one region per transaction field, holding a
+ * fixed-width value per transaction in the order the transactions were appended, then the
+ * postings and the address table. A posting names a transaction and the previous posting of the
+ * same address, so the postings of an address form a list from its newest transaction back, and
+ * the address table, open-addressed like {@link MappedResultStore}, holds the head of each list.
+ * A page of history thus reads only the postings and column values of that page, and a cursor,
+ * which is a posting number, stays valid while later blocks are appended.
+ *
+ * <p>Blocks are appended whole and in height order, and the counts in the header are written
+ * last. Opening the file unwinds address lists past those counts, so a process that dies while
+ * appending a block leaves the store as it was before that block.
+ */
+public class TransactionStore {
+	/** Transactions per page when the request does not say. */
+	public static final int DEFAULT_PAGE_SIZE = 20;
+	public static final int MAX_PAGE_SIZE = 100;
+
+	private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+	private static final int MAGIC = 0x49545331;
+	private static final int HEADER_BYTES = 64;
+	private static final int MAGIC_OFFSET = 0;
+	private static final int MAX_TRANSACTIONS_OFFSET = 4;
+	private static final int SLOTS_OFFSET = 8;
+	private static final int TRANSACTION_COUNT_OFFSET = 12;
+	private static final int POSTING_COUNT_OFFSET = 16;
+	private static final int ADDRESS_COUNT_OFFSET = 20;
+	private static final int FIRST_HEIGHT_OFFSET = 24;
+	private static final int HEIGHT_OFFSET = 32;
+
+	/** A prefix byte, then the 20 bytes of the address, as {@link BinaryCodec} writes it. */
+	private static final int ADDRESS_BYTES = BinaryCodec.ADDRESS_BYTES;
+	/** Prefix of a transaction without a sender or recipient. */
+	private static final byte NO_ADDRESS = -1;
+	private static final int HASH_BYTES = BinaryCodec.HASH_BYTES;
+	/** ICX values are 256-bit unsigned integers. */
+	private static final int VALUE_BYTES = BinaryCodec.BALANCE_BYTES;
+	/** Address, a used flag, then the newest posting plus one and the number of postings. */
+	private static final int SLOT_BYTES = 32;
+	private static final int SLOT_USED = ADDRESS_BYTES;
+	private static final int SLOT_HEAD = 24;
+	private static final int SLOT_COUNT = 28;
+
+	private final File file;
+	private final int maxTransactions;
+	private final int maxPostings;
+	private final int slots;
+	private final int mask;
+	private final int heights;
+	private final int timestamps;
+	private final int hashes;
+	private final int senders;
+	private final int recipients;
+	private final int values;
+	private final int postingTransactions;
+	private final int postingPrevious;
+	private final int table;
+	private final AtomicLong pages = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	// Guarded by this; null once closed.
+	private MappedByteBuffer buffer;
+
+	private TransactionStore(File file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+		this.maxTransactions = buffer.getInt(MAX_TRANSACTIONS_OFFSET);
+		this.maxPostings = 2 * maxTransactions;
+		this.slots = buffer.getInt(SLOTS_OFFSET);
+		this.mask = slots - 1;
+		this.heights = HEADER_BYTES;
+		this.timestamps = heights + 8 * maxTransactions;
+		this.hashes = timestamps + 8 * maxTransactions;
+		this.senders = hashes + HASH_BYTES * maxTransactions;
+		this.recipients = senders + ADDRESS_BYTES * maxTransactions;
+		this.values = recipients + ADDRESS_BYTES * maxTransactions;
+		this.postingTransactions = values + VALUE_BYTES * maxTransactions;
+		this.postingPrevious = postingTransactions + 4 * maxPostings;
+		this.table = postingPrevious + 4 * maxPostings;
+	}
+
+	/**
+	 * Maps {@code file}, creating it with room for {@code maxTransactions} transactions involving
+	 * {@code maxAddresses} addresses when it does not exist. An existing file keeps the sizes it was
+	 * created with.
+	 */
+	public static TransactionStore open(File file, int maxTransactions, int maxAddresses) throws IOException {
+		if (maxTransactions < 1 || maxAddresses < 1 || maxAddresses > 1 << 26) {
+			throw new IllegalArgumentException("maxTransactions=" + maxTransactions + ", maxAddresses=" + maxAddresses);
+		}
+		int slots = 4;
+		while (slots - slots / 4 < maxAddresses) {
+			slots <<= 1;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			boolean created = raf.length() == 0;
+			long size;
+			if (created) {
+				size = size(maxTransactions, slots);
+				if (size > Integer.MAX_VALUE) {
+					throw new IllegalArgumentException("Transaction store larger than 2 GiB: " + size);
+				}
+			} else {
+				size = raf.length();
+			}
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if (created) {
+				buffer.putInt(MAX_TRANSACTIONS_OFFSET, maxTransactions);
+				buffer.putInt(SLOTS_OFFSET, slots);
+				buffer.putLong(FIRST_HEIGHT_OFFSET, -1);
+				buffer.putLong(HEIGHT_OFFSET, -1);
+				buffer.putInt(MAGIC_OFFSET, MAGIC);
+			} else if (size < HEADER_BYTES || buffer.getInt(MAGIC_OFFSET) != MAGIC
+					|| size != size(buffer.getInt(MAX_TRANSACTIONS_OFFSET), buffer.getInt(SLOTS_OFFSET))) {
+				throw new IOException("Not a transaction store: " + file);
+			}
+			// The mapping stays valid after the channel is closed.
+			TransactionStore store = new TransactionStore(file, buffer);
+			store.unwind();
+			return store;
+		}
+	}
+
+	private static long size(long maxTransactions, long slots) {
+		return HEADER_BYTES + maxTransactions * (8 + 8 + HASH_BYTES + 2 * ADDRESS_BYTES + VALUE_BYTES + 2 * (4 + 4))
+				+ slots * SLOT_BYTES;
+	}
+
+	/**
+	 * Appends the transactions of {@code block}, which must be the block after the last one
+	 * appended. Returns false, leaving the store unchanged, when there is no room for them.
+	 */
+	public synchronized boolean append(Block block) {
+		if (buffer == null) {
+			return false;
+		}
+		long height = block.getHeight().longValue();
+		long last = buffer.getLong(HEIGHT_OFFSET);
+		if (last >= 0 && height != last + 1) {
+			throw new IllegalArgumentException("Block " + height + " does not follow block " + last);
+		}
+		List<ConfirmedTransaction> transactions = block.getTransactions();
+		int transactionCount = buffer.getInt(TRANSACTION_COUNT_OFFSET);
+		int postingCount = buffer.getInt(POSTING_COUNT_OFFSET);
+		int addressCount = buffer.getInt(ADDRESS_COUNT_OFFSET);
+		Set<ByteBuffer> added = new HashSet<ByteBuffer>();
+		for (ConfirmedTransaction tx : transactions) {
+			for (Address address : new Address[] {tx.getFrom(), tx.getTo()}) {
+				byte[] encoded = encode(address);
+				if (encoded != null && !isUsed(find(encoded))) {
+					added.add(ByteBuffer.wrap(encoded));
+				}
+			}
+		}
+		if (transactions.size() > maxTransactions - transactionCount
+				|| 2 * transactions.size() > maxPostings - postingCount
+				|| addressCount + added.size() > slots - slots / 4) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		long timestamp = block.getTimestamp() != null ? block.getTimestamp().longValue() : 0;
+		for (ConfirmedTransaction tx : transactions) {
+			int index = transactionCount++;
+			buffer.putLong(heights + 8 * index, height);
+			buffer.putLong(timestamps + 8 * index,
+					tx.getTimestamp() != null ? tx.getTimestamp().longValue() : timestamp);
+			putFixed(hashes + HASH_BYTES * index, tx.getTxHash() != null ? tx.getTxHash().toByteArray() : null,
+					HASH_BYTES);
+			byte[] from = encode(tx.getFrom());
+			byte[] to = encode(tx.getTo());
+			putAddress(senders + ADDRESS_BYTES * index, from);
+			putAddress(recipients + ADDRESS_BYTES * index, to);
+			putFixed(values + VALUE_BYTES * index, tx.getValue() != null ? tx.getValue().toByteArray() : null,
+					VALUE_BYTES);
+			if (from != null) {
+				addPosting(from, index, postingCount++);
+			}
+			if (to != null && !Arrays.equals(to, from)) {
+				addPosting(to, index, postingCount++);
+			}
+		}
+		buffer.putInt(TRANSACTION_COUNT_OFFSET, transactionCount);
+		buffer.putInt(POSTING_COUNT_OFFSET, postingCount);
+		buffer.putInt(ADDRESS_COUNT_OFFSET, addressCount + added.size());
+		if (last < 0) {
+			buffer.putLong(FIRST_HEIGHT_OFFSET, height);
+		}
+		buffer.putLong(HEIGHT_OFFSET, height);
+		return true;
+	}
+
+	/**
+	 * Returns up to {@code limit} transactions of {@code address}, newest first, starting after the
+	 * page whose {@code next_cursor} is {@code cursor}, or with the newest when {@code cursor} is
+	 * empty. A {@code limit} of 0 or less reads {@link #DEFAULT_PAGE_SIZE} transactions.
+	 *
+	 * @throws IllegalArgumentException if the address or the cursor is malformed, or the cursor
+	 *     belongs to another address
+	 */
+	public synchronized GetTransactionsReply read(String address, String cursor, int limit) {
+		byte[] encoded = BinaryCodec.address(address);
+		int pageSize = limit > 0 ? Math.min(limit, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+		pages.incrementAndGet();
+		GetTransactionsReply.Builder reply = GetTransactionsReply.newBuilder();
+		if (buffer == null) {
+			return reply.setIndexedHeight(-1).build();
+		}
+		reply.setIndexedHeight(buffer.getLong(HEIGHT_OFFSET));
+		int slot = find(encoded);
+		int next = isUsed(slot) ? buffer.getInt(slotOffset(slot) + SLOT_HEAD) : 0;
+		if (!cursor.isEmpty()) {
+			try {
+				next = Integer.parseInt(cursor);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Malformed cursor: " + cursor);
+			}
+			if (next < 1 || next > buffer.getInt(POSTING_COUNT_OFFSET)
+					|| !involves(buffer.getInt(postingTransactions + 4 * (next - 1)), encoded)) {
+				throw new IllegalArgumentException("Not a cursor of " + address + ": " + cursor);
+			}
+		}
+		for (int i = 0; i < pageSize && next != 0; i++) {
+			reply.addTransactions(record(buffer.getInt(postingTransactions + 4 * (next - 1))));
+			next = buffer.getInt(postingPrevious + 4 * (next - 1));
+		}
+		return reply.setNextCursor(next != 0 ? Integer.toString(next) : "").build();
+	}
+
+	/** Height of the last block appended, or -1 when empty. */
+	public synchronized long getHeight() {
+		return buffer == null ? -1 : buffer.getLong(HEIGHT_OFFSET);
+	}
+
+	/** Height of the first block appended, or -1 when empty. */
+	public synchronized long getFirstHeight() {
+		return buffer == null ? -1 : buffer.getLong(FIRST_HEIGHT_OFFSET);
+	}
+
+	/** Number of transactions appended. */
+	public synchronized int getTransactionCount() {
+		return buffer == null ? 0 : buffer.getInt(TRANSACTION_COUNT_OFFSET);
+	}
+
+	/** Number of addresses with a transaction. */
+	public synchronized int getAddressCount() {
+		return buffer == null ? 0 : buffer.getInt(ADDRESS_COUNT_OFFSET);
+	}
+
+	/** Writes outstanding blocks to disk and releases the file. */
+	public synchronized void close() {
+		if (buffer != null) {
+			buffer.force();
+			buffer = null;
+		}
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return "blocks=" + getFirstHeight() + ".." + getHeight() + ", transactions=" + getTransactionCount()
+				+ ", addresses=" + getAddressCount() + ", pages read=" + pages.get() + ", blocks dropped="
+				+ dropped.get();
+	}
+
+	private void addPosting(byte[] address, int transaction, int posting) {
+		int offset = slotOffset(find(address));
+		if (buffer.get(offset + SLOT_USED) == 0) {
+			ByteBuffer slot = buffer.duplicate();
+			slot.position(offset);
+			slot.put(address);
+			buffer.put(offset + SLOT_USED, (byte) 1);
+		}
+		buffer.putInt(postingTransactions + 4 * posting, transaction);
+		buffer.putInt(postingPrevious + 4 * posting, buffer.getInt(offset + SLOT_HEAD));
+		buffer.putInt(offset + SLOT_HEAD, posting + 1);
+		buffer.putInt(offset + SLOT_COUNT, buffer.getInt(offset + SLOT_COUNT) + 1);
+	}
+
+	/** Drops postings of a block that was not appended completely. */
+	private void unwind() {
+		int postingCount = buffer.getInt(POSTING_COUNT_OFFSET);
+		int addressCount = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			int offset = slotOffset(slot);
+			if (buffer.get(offset + SLOT_USED) == 0) {
+				continue;
+			}
+			int head = buffer.getInt(offset + SLOT_HEAD);
+			int count = buffer.getInt(offset + SLOT_COUNT);
+			while (head > postingCount) {
+				head = buffer.getInt(postingPrevious + 4 * (head - 1));
+				count--;
+			}
+			buffer.putInt(offset + SLOT_HEAD, head);
+			buffer.putInt(offset + SLOT_COUNT, count);
+			// An address first seen in the unwound block keeps its slot, so it still counts.
+			addressCount++;
+		}
+		buffer.putInt(ADDRESS_COUNT_OFFSET, addressCount);
+	}
+
+	private TransactionRecord record(int transaction) {
+		return TransactionRecord.newBuilder()
+				.setBlockHeight(buffer.getLong(heights + 8 * transaction))
+				.setTimestamp(buffer.getLong(timestamps + 8 * transaction))
+				.setTxhash("0x" + HEX.encode(getFixed(hashes + HASH_BYTES * transaction, HASH_BYTES)))
+				.setFrom(getAddress(senders + ADDRESS_BYTES * transaction))
+				.setTo(getAddress(recipients + ADDRESS_BYTES * transaction))
+				.setValue("0x" + new BigInteger(1, getFixed(values + VALUE_BYTES * transaction, VALUE_BYTES)).toString(16))
+				.build();
+	}
+
+	private boolean involves(int transaction, byte[] address) {
+		return matches(senders + ADDRESS_BYTES * transaction, address)
+				|| matches(recipients + ADDRESS_BYTES * transaction, address);
+	}
+
+	/** Slot holding {@code address}, or the unused slot where it belongs. */
+	private int find(byte[] address) {
+		int slot = ((address[1] & 0xff) << 24 | (address[2] & 0xff) << 16 | (address[3] & 0xff) << 8
+				| (address[4] & 0xff)) & mask;
+		while (true) {
+			int offset = slotOffset(slot);
+			if (buffer.get(offset + SLOT_USED) == 0 || matches(offset, address)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean isUsed(int slot) {
+		return buffer.get(slotOffset(slot) + SLOT_USED) != 0;
+	}
+
+	private boolean matches(int offset, byte[] address) {
+		for (int i = 0; i < ADDRESS_BYTES; i++) {
+			if (buffer.get(offset + i) != address[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int slotOffset(int slot) {
+		return table + slot * SLOT_BYTES;
+	}
+
+	/** Writes the unsigned big-endian {@code value} right-aligned in {@code width} bytes. */
+	private void putFixed(int offset, byte[] value, int width) {
+		ByteBuffer column = buffer.duplicate();
+		column.position(offset);
+		column.put(BinaryCodec.fixed(value, width));
+	}
+
+	private byte[] getFixed(int offset, int width) {
+		byte[] value = new byte[width];
+		ByteBuffer column = buffer.duplicate();
+		column.position(offset);
+		column.get(value);
+		return value;
+	}
+
+	private void putAddress(int offset, byte[] address) {
+		if (address == null) {
+			buffer.put(offset, NO_ADDRESS);
+			return;
+		}
+		ByteBuffer column = buffer.duplicate();
+		column.position(offset);
+		column.put(address);
+	}
+
+	private String getAddress(int offset) {
+		byte prefix = buffer.get(offset);
+		if (prefix == NO_ADDRESS) {
+			return "";
+		}
+		return BinaryCodec.address(getFixed(offset, ADDRESS_BYTES));
+	}
+
+	/** Encodes an address of a transaction, or returns null if it has none or it is malformed. */
+	private static byte[] encode(Address address) {
+		if (address == null) {
+			return null;
+		}
+		try {
+			return BinaryCodec.address(address.toString());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,552 @@
+package io.grpc.examples.helloworld;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ * Spreads ICON JSON-RPC calls over several equivalent nodes.
+ *
+ * <p>Each call goes to the better of two randomly chosen endpoints, scored by a peak-sensitive
+ * EWMA of their latency multiplied by their outstanding calls, so a slow or busy node quickly
+ * loses traffic. The average decays while an endpoint is idle, which lets a recovered node win
+ * calls back.
+ *
+ * <p>Read-only calls are hedged: when no answer arrived after the configured percentile of recent
+ * latencies, the same call is also sent to a second endpoint and the first answer wins. A
+ * read-only call whose endpoint fails is sent to a second endpoint at once. Transactions are never
+ * sent twice.
+ *
+ * <p>Each endpoint has a circuit breaker that opens after {@code failureThreshold} consecutive
+ * transport errors or HTTP 5xx answers. An open endpoint receives no calls for
+ * {@code openDuration}, then a single trial call decides whether it closes again. JSON-RPC errors
+ * are answers, not failures, and attempts refused by the local dispatcher never reached the node.
+ *
+ * <p>The router is installed with {@link IconClient.Builder#router}.
+ */
+public class UpstreamRouter {
+	/** Methods that do not change state and may be sent to two nodes. */
+	private static final Set<String> READ_ONLY_METHODS = new HashSet<String>(Arrays.asList(
+			"icx_getLastBlock", "icx_getBlockByHeight", "icx_getBlockByHash", "icx_call", "icx_getBalance",
+			"icx_getScoreApi", "icx_getTotalSupply", "icx_getTransactionResult", "icx_getTransactionByHash",
+			"debug_estimateStep"));
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final long MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final int LATENCY_WINDOW = 256;
+	/** Recent latencies are sorted again after this many new samples. */
+	private static final int PERCENTILE_REFRESH = 32;
+
+	private final List<Endpoint> endpoints;
+	private final double hedgePercentile;
+	private final int failureThreshold;
+	private final long openNanos;
+	private final long decayNanos;
+	private final Ticker ticker;
+
+	private final Object latencyLock = new Object();
+	// Guarded by latencyLock; ring of recent successful latencies.
+	private final long[] latencies = new long[LATENCY_WINDOW];
+	private long latencyCount;
+	private volatile long hedgeDelayNanos;
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong failovers = new AtomicLong();
+
+	private UpstreamRouter(Builder builder) {
+		List<Endpoint> endpoints = new ArrayList<Endpoint>(builder.endpoints.size());
+		for (String url : builder.endpoints) {
+			endpoints.add(new Endpoint(HttpUrl.get(url)));
+		}
+		this.endpoints = Collections.unmodifiableList(endpoints);
+		this.hedgePercentile = builder.hedgePercentile;
+		this.hedgeDelayNanos = builder.initialHedgeDelayNanos;
+		this.failureThreshold = builder.failureThreshold;
+		this.openNanos = builder.openNanos;
+		this.decayNanos = builder.decayNanos;
+		this.ticker = builder.ticker;
+	}
+
+	/** @param endpoints ICON JSON-RPC v3 URLs of equivalent nodes */
+	public static Builder newBuilder(List<String> endpoints) {
+		return new Builder(endpoints);
+	}
+
+	/** URL given to the SDK; every request is rewritten to the chosen endpoint. */
+	String defaultEndpoint() {
+		return endpoints.get(0).url.toString();
+	}
+
+	/**
+	 * Returns the interceptor that routes the calls of one client. Attempts are sent with
+	 * {@code attempts}, which must not go through the router and must have a dispatcher of its own
+	 * so that routed calls never wait for a slot held by their own caller.
+	 */
+	Interceptor newInterceptor(final OkHttpClient attempts) {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				return route(chain.request(), attempts);
+			}
+		};
+	}
+
+	private Response route(Request request, OkHttpClient attempts) throws IOException {
+		calls.incrementAndGet();
+		byte[] body = new byte[0];
+		if (request.body() != null) {
+			Buffer buffer = new Buffer();
+			request.body().writeTo(buffer);
+			body = buffer.readByteArray();
+		}
+		boolean readOnly = isReadOnly(body);
+		Race race = new Race(request, body, attempts);
+		Endpoint first = choose(null);
+		if (first == null) {
+			throw new IOException("All " + endpoints.size() + " ICON endpoints are unavailable");
+		}
+		race.start(first);
+		boolean second = !readOnly;
+		while (true) {
+			Response response = race.await(second ? Long.MAX_VALUE : getHedgeDelayNanos());
+			if (response != null) {
+				return response;
+			}
+			if (!second) {
+				second = true;
+				Endpoint next = choose(first);
+				if (next != null) {
+					(race.isRunning() ? hedges : failovers).incrementAndGet();
+					race.start(next);
+					continue;
+				}
+			}
+			if (!race.isRunning()) {
+				throw race.error();
+			}
+		}
+	}
+
+	/** True if {@code body} holds one read-only call or a batch of them. */
+	static boolean isReadOnly(byte[] body) {
+		JsonNode tree;
+		try {
+			tree = MAPPER.readTree(body);
+		} catch (IOException e) {
+			return false;
+		}
+		if (tree == null) {
+			return false;
+		}
+		if (!tree.isArray()) {
+			return READ_ONLY_METHODS.contains(tree.path("method").asText());
+		}
+		for (JsonNode call : tree) {
+			if (!READ_ONLY_METHODS.contains(call.path("method").asText())) {
+				return false;
+			}
+		}
+		return tree.size() > 0;
+	}
+
+	/**
+	 * Picks the better of two random endpoints that may take a call, other than {@code exclude};
+	 * null if there is none. Ties go to the endpoint listed first.
+	 */
+	private Endpoint choose(Endpoint exclude) {
+		long now = ticker.read();
+		List<Endpoint> candidates = new ArrayList<Endpoint>(endpoints.size());
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint != exclude && endpoint.isAvailable(now)) {
+				candidates.add(endpoint);
+			}
+		}
+		while (!candidates.isEmpty()) {
+			Endpoint chosen = candidates.get(0);
+			if (candidates.size() > 1) {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				int i = random.nextInt(candidates.size());
+				int j = random.nextInt(candidates.size() - 1);
+				if (j >= i) {
+					j++;
+				}
+				Endpoint a = candidates.get(Math.min(i, j));
+				Endpoint b = candidates.get(Math.max(i, j));
+				chosen = b.score(now) < a.score(now) ? b : a;
+			}
+			if (chosen.acquire(now)) {
+				return chosen;
+			}
+			// Another call took the trial of a half-open endpoint.
+			candidates.remove(chosen);
+		}
+		return null;
+	}
+
+	private void recordLatency(long nanos) {
+		synchronized (latencyLock) {
+			latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = nanos;
+			if (hedgePercentile <= 0 || latencyCount % PERCENTILE_REFRESH != 0) {
+				return;
+			}
+			long[] sorted = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(hedgePercentile * sorted.length) - 1;
+			hedgeDelayNanos = Math.max(MIN_HEDGE_DELAY_NANOS, sorted[Math.max(0, index)]);
+		}
+	}
+
+	/** Time a read-only call waits before it is hedged; infinite when hedging is disabled. */
+	long getHedgeDelayNanos() {
+		return hedgePercentile <= 0 ? Long.MAX_VALUE : hedgeDelayNanos;
+	}
+
+	/** Number of calls routed. */
+	public long getCallCount() {
+		return calls.get();
+	}
+
+	/** Number of read-only calls also sent to a second endpoint because the first was slow. */
+	public long getHedgeCount() {
+		return hedges.get();
+	}
+
+	/** Number of read-only calls sent to a second endpoint because the first failed. */
+	public long getFailoverCount() {
+		return failovers.get();
+	}
+
+	/** Number of endpoints whose circuit breaker is not closed. */
+	public int getOpenCircuitCount() {
+		int open = 0;
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.isOpen()) {
+				open++;
+			}
+		}
+		return open;
+	}
+
+	/** Number of calls each endpoint has answered, in the configured order. */
+	public List<Long> getAnsweredCounts() {
+		List<Long> counts = new ArrayList<Long>(endpoints.size());
+		for (Endpoint endpoint : endpoints) {
+			counts.add(endpoint.answered.get());
+		}
+		return counts;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("calls=").append(calls.get())
+				.append(", hedges=").append(hedges.get())
+				.append(", failovers=").append(failovers.get());
+		long now = ticker.read();
+		for (Endpoint endpoint : endpoints) {
+			sb.append(", ").append(endpoint.describe(now));
+		}
+		return sb.toString();
+	}
+
+	/** One node with its latency average and circuit breaker. */
+	private final class Endpoint {
+		final HttpUrl url;
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicLong answered = new AtomicLong();
+		// Guarded by this.
+		private double ewmaNanos;
+		private boolean sampled;
+		private long lastSampleNanos;
+		private int consecutiveFailures;
+		private boolean open;
+		private boolean trialInFlight;
+		private long openedAtNanos;
+
+		Endpoint(HttpUrl url) {
+			this.url = url;
+		}
+
+		synchronized double score(long now) {
+			return decayed(now) * (inFlight.get() + 1);
+		}
+
+		private double decayed(long now) {
+			return sampled ? ewmaNanos * decay(now) : ewmaNanos;
+		}
+
+		private double decay(long now) {
+			return Math.exp(-(double) Math.max(0, now - lastSampleNanos) / decayNanos);
+		}
+
+		synchronized boolean isAvailable(long now) {
+			return !open || !trialInFlight && now - openedAtNanos >= openNanos;
+		}
+
+		synchronized boolean isOpen() {
+			return open;
+		}
+
+		/** Takes the trial call if the breaker is open and its time is up. */
+		synchronized boolean acquire(long now) {
+			if (!open) {
+				return true;
+			}
+			if (trialInFlight || now - openedAtNanos < openNanos) {
+				return false;
+			}
+			trialInFlight = true;
+			return true;
+		}
+
+		synchronized void onSuccess(long now, long latency) {
+			answered.incrementAndGet();
+			sample(now, latency);
+			consecutiveFailures = 0;
+			open = false;
+			trialInFlight = false;
+		}
+
+		synchronized void onFailure(long now, long latency) {
+			sample(now, latency);
+			trialInFlight = false;
+			if (open || ++consecutiveFailures >= failureThreshold) {
+				open = true;
+				openedAtNanos = now;
+			}
+		}
+
+		/** The call lost a hedge race; it took at least {@code latency}. */
+		synchronized void onCancelled(long now, long latency) {
+			sample(now, latency);
+			// An interrupted trial decides nothing; the next call may try again.
+			trialInFlight = false;
+		}
+
+		/** The attempt was refused locally before reaching the endpoint, which says nothing of it. */
+		synchronized void onRejected() {
+			trialInFlight = false;
+		}
+
+		/** Peak EWMA: a slower sample is taken at once, faster ones are averaged in over time. */
+		private void sample(long now, long latency) {
+			double current = decayed(now);
+			if (!sampled || latency > current) {
+				ewmaNanos = latency;
+			} else {
+				double weight = decay(now);
+				ewmaNanos = current * weight + latency * (1 - weight);
+			}
+			sampled = true;
+			lastSampleNanos = now;
+		}
+
+		synchronized String describe(long now) {
+			return url + " " + TimeUnit.NANOSECONDS.toMillis((long) decayed(now)) + "ms"
+					+ (open ? " open" : "") + " answered=" + answered.get();
+		}
+	}
+
+	/** The attempts of one call; the first answer wins and the others are cancelled. */
+	private final class Race {
+		private final Request request;
+		private final byte[] body;
+		private final OkHttpClient attempts;
+		// Guarded by this.
+		private final List<Call> calls = new ArrayList<Call>(2);
+		private int running;
+		private Response winner;
+		private IOException error;
+
+		Race(Request request, byte[] body, OkHttpClient attempts) {
+			this.request = request;
+			this.body = body;
+			this.attempts = attempts;
+		}
+
+		void start(final Endpoint endpoint) {
+			Request.Builder attempt = request.newBuilder().url(endpoint.url);
+			if (request.body() != null) {
+				attempt.method(request.method(), RequestBody.create(request.body().contentType(), body));
+			}
+			Call call = attempts.newCall(attempt.build());
+			final long start = ticker.read();
+			synchronized (this) {
+				running++;
+				calls.add(call);
+			}
+			endpoint.inFlight.incrementAndGet();
+			call.enqueue(new Callback() {
+				@Override
+				public void onFailure(Call call, IOException e) {
+					endpoint.inFlight.decrementAndGet();
+					long now = ticker.read();
+					if (call.isCanceled()) {
+						endpoint.onCancelled(now, now - start);
+					} else if (e.getCause() instanceof RejectedExecutionException) {
+						// OkHttp's "executor rejected": the attempt never left this process.
+						endpoint.onRejected();
+					} else {
+						endpoint.onFailure(now, now - start);
+					}
+					finish(call, null, e);
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) {
+					endpoint.inFlight.decrementAndGet();
+					long now = ticker.read();
+					if (response.code() >= 500) {
+						endpoint.onFailure(now, now - start);
+						response.close();
+						finish(call, null, new IOException("HTTP " + response.code() + " from " + endpoint.url));
+						return;
+					}
+					endpoint.onSuccess(now, now - start);
+					recordLatency(now - start);
+					finish(call, response, null);
+				}
+			});
+		}
+
+		private synchronized void finish(Call call, Response response, IOException e) {
+			running--;
+			if (response != null && winner == null) {
+				winner = response;
+				for (Call other : calls) {
+					if (other != call) {
+						other.cancel();
+					}
+				}
+			} else if (response != null) {
+				response.close();
+			} else if (winner == null) {
+				error = e;
+			}
+			notifyAll();
+		}
+
+		synchronized boolean isRunning() {
+			return running > 0;
+		}
+
+		synchronized IOException error() {
+			return error != null ? error : new IOException("No ICON endpoint answered");
+		}
+
+		/**
+		 * Waits up to {@code nanos} for an answer; returns null on timeout or once every attempt
+		 * failed.
+		 */
+		synchronized Response await(long nanos) throws InterruptedIOException {
+			long deadline = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + nanos;
+			try {
+				while (winner == null && running > 0) {
+					if (deadline == Long.MAX_VALUE) {
+						wait();
+						continue;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return null;
+					}
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the ICON node");
+			}
+			return winner;
+		}
+	}
+
+	/** Configuration for an {@link UpstreamRouter}. */
+	public static final class Builder {
+		private final List<String> endpoints;
+		private double hedgePercentile = 0.95;
+		private long initialHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+		private int failureThreshold = 5;
+		private long openNanos = TimeUnit.SECONDS.toNanos(5);
+		private long decayNanos = TimeUnit.SECONDS.toNanos(10);
+		private Ticker ticker = Ticker.systemTicker();
+
+		private Builder(List<String> endpoints) {
+			if (endpoints.isEmpty()) {
+				throw new IllegalArgumentException("No endpoints");
+			}
+			this.endpoints = new ArrayList<String>(endpoints);
+		}
+
+		/**
+		 * Read-only calls are hedged once they took longer than this fraction of recent calls,
+		 * 0.95 by default; 0 disables hedging.
+		 */
+		public Builder hedgePercentile(double hedgePercentile) {
+			if (hedgePercentile < 0 || hedgePercentile > 1) {
+				throw new IllegalArgumentException("hedgePercentile not in [0, 1]: " + hedgePercentile);
+			}
+			this.hedgePercentile = hedgePercentile;
+			return this;
+		}
+
+		/** Hedge delay used until enough latencies were observed, 100 ms by default. */
+		public Builder initialHedgeDelay(long delay, TimeUnit unit) {
+			this.initialHedgeDelayNanos = Math.max(MIN_HEDGE_DELAY_NANOS, unit.toNanos(delay));
+			return this;
+		}
+
+		/** Consecutive failures that open an endpoint's circuit breaker, 5 by default. */
+		public Builder failureThreshold(int failureThreshold) {
+			if (failureThreshold < 1) {
+				throw new IllegalArgumentException("failureThreshold < 1: " + failureThreshold);
+			}
+			this.failureThreshold = failureThreshold;
+			return this;
+		}
+
+		/** How long an open breaker rejects calls before a trial, 5 seconds by default. */
+		public Builder openDuration(long duration, TimeUnit unit) {
+			this.openNanos = unit.toNanos(duration);
+			return this;
+		}
+
+		/** Time constant of the latency average, 10 seconds by default. */
+		public Builder decay(long duration, TimeUnit unit) {
+			this.decayNanos = Math.max(1, unit.toNanos(duration));
+			return this;
+		}
+
+		Builder ticker(Ticker ticker) {
+			this.ticker = ticker;
+			return this;
+		}
+
+		public UpstreamRouter build() {
+			return new UpstreamRouter(this);
+		}
+	}
+}
@@ -27,6 +27,10 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptors;
+import io.grpc.examples.executor.ExecutorRouter;
+import io.grpc.examples.executor.ServerExecutors;
+import io.grpc.examples.transport.ServerTransport;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
 import java.net.URL;
@@ -36,6 +40,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,9 +49,12 @@ import java.util.logging.Logger;
  */
 public class RouteGuideServer {
   private static final Logger logger = Logger.getLogger(RouteGuideServer.class.getName());
+  /** How long calls in flight may take to finish once the server is stopped. */
+  private static final long SHUTDOWN_GRACE_SECONDS = 5;
 
   private final int port;
   private final Server server;
+  private final ExecutorRouter executorRouter;
 
   public RouteGuideServer(int port) throws IOException {
     this(port, RouteGuideUtil.getDefaultFeaturesFile());
@@ -59,9 +67,25 @@ public class RouteGuideServer {
 
   /** Create a RouteGuide server using serverBuilder as a base and features as data. */
   public RouteGuideServer(ServerBuilder<?> serverBuilder, int port, Collection<Feature> features) {
+    this(serverBuilder, port, features, null);
+  }
+
+  /**
+   * Create a RouteGuide server whose calls run on the executors of {@code executorRouter}, or on
+   * the executor of serverBuilder if it is null.
+   */
+  public RouteGuideServer(ServerBuilder<?> serverBuilder, int port, Collection<Feature> features,
+      ExecutorRouter executorRouter) {
     this.port = port;
-    server = serverBuilder.addService(new RouteGuideService(features))
-        .build();
+    this.executorRouter = executorRouter;
+    if (executorRouter != null) {
+      // The router moves each call off the transport thread itself.
+      serverBuilder.directExecutor()
+          .addService(ServerInterceptors.intercept(new RouteGuideService(features), executorRouter));
+    } else {
+      serverBuilder.addService(new RouteGuideService(features));
+    }
+    server = serverBuilder.build();
   }
 
   /** Start serving requests. */
@@ -83,6 +107,18 @@ public class RouteGuideServer {
   public void stop() {
     if (server != null) {
       server.shutdown();
+      // Calls in flight still need the router's executors for their later events.
+      try {
+        if (!server.awaitTermination(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+          server.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        server.shutdownNow();
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (executorRouter != null) {
+      executorRouter.shutdown();
     }
   }
 
@@ -96,10 +132,33 @@ public class RouteGuideServer {
   }
 
   /**
-   * Main method.  This comment makes the linter happy.
+   * Main method. Pass {@code --executor=MODE} to run calls on one of the {@link ServerExecutors},
+   * and {@code --route=METHOD=MODE}, repeated, to run a method on its own, such as
+   * {@code --route=routeguide.RouteGuide/GetFeature=direct}, and {@code --transport=SPEC} to
+   * listen with a {@link ServerTransport}, such as {@code --transport=epoll,acceptors=4}.
    */
   public static void main(String[] args) throws Exception {
-    RouteGuideServer server = new RouteGuideServer(8980);
+    String executor = null;
+    List<String> routes = new ArrayList<String>();
+    ServerTransport transport = null;
+    for (String arg : args) {
+      if (arg.startsWith("--executor=")) {
+        executor = arg.substring("--executor=".length());
+      } else if (arg.startsWith("--route=")) {
+        routes.add(arg.substring("--route=".length()));
+      } else if (arg.startsWith("--transport=")) {
+        transport = ServerTransport.parse(arg.substring("--transport=".length()));
+      } else {
+        System.err.println("Unknown argument: " + arg);
+        System.exit(1);
+      }
+    }
+    int port = 8980;
+    RouteGuideServer server = new RouteGuideServer(
+        transport != null ? transport.forPort(port) : ServerBuilder.forPort(port), port,
+        RouteGuideUtil.parseFeatures(RouteGuideUtil.getDefaultFeaturesFile()),
+        executor != null || !routes.isEmpty()
+            ? ExecutorRouter.parse(executor != null ? executor : "cached", routes) : null);
     server.start();
     server.blockUntilShutdown();
   }
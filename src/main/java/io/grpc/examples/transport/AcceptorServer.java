@@ -0,0 +1,131 @@
+package io.grpc.examples.transport;
+
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.netty.channel.EventLoopGroup;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The servers of the acceptors of one port, run as one. Their event loops are shut down once
+ * every server has terminated, as the loops would otherwise close connections still in use.
+ */
+final class AcceptorServer extends Server {
+  private final List<Server> servers;
+  private final EventLoopGroup bossGroup;
+  private final EventLoopGroup workerGroup;
+  private final AtomicBoolean releasing = new AtomicBoolean();
+
+  AcceptorServer(List<Server> servers, EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+    this.servers = servers;
+    this.bossGroup = bossGroup;
+    this.workerGroup = workerGroup;
+  }
+
+  @Override
+  public Server start() throws IOException {
+    try {
+      for (Server server : servers) {
+        server.start();
+      }
+    } catch (IOException | RuntimeException e) {
+      shutdownNow();
+      throw e;
+    }
+    return this;
+  }
+
+  @Override
+  public int getPort() {
+    return servers.get(0).getPort();
+  }
+
+  @Override
+  public List<ServerServiceDefinition> getServices() {
+    return servers.get(0).getServices();
+  }
+
+  @Override
+  public List<ServerServiceDefinition> getImmutableServices() {
+    return servers.get(0).getImmutableServices();
+  }
+
+  @Override
+  public List<ServerServiceDefinition> getMutableServices() {
+    return servers.get(0).getMutableServices();
+  }
+
+  @Override
+  public Server shutdown() {
+    for (Server server : servers) {
+      server.shutdown();
+    }
+    releaseWhenTerminated();
+    return this;
+  }
+
+  @Override
+  public Server shutdownNow() {
+    for (Server server : servers) {
+      server.shutdownNow();
+    }
+    releaseWhenTerminated();
+    return this;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return servers.get(0).isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    for (Server server : servers) {
+      if (!server.isTerminated()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Server server : servers) {
+      if (!server.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void awaitTermination() throws InterruptedException {
+    for (Server server : servers) {
+      server.awaitTermination();
+    }
+  }
+
+  private void releaseWhenTerminated() {
+    if (!releasing.compareAndSet(false, true)) {
+      return;
+    }
+    Thread releaser = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          awaitTermination();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+          workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+      }
+    }, "grpc-transport-release");
+    releaser.setDaemon(true);
+    releaser.start();
+  }
+}
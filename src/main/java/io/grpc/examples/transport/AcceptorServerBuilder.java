@@ -0,0 +1,187 @@
+package io.grpc.examples.transport;
+
+import com.google.common.io.ByteStreams;
+import io.grpc.BinaryLog;
+import io.grpc.BindableService;
+import io.grpc.CompressorRegistry;
+import io.grpc.DecompressorRegistry;
+import io.grpc.HandlerRegistry;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServerStreamTracer;
+import io.grpc.ServerTransportFilter;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures the servers of every acceptor of a {@link ServerTransport} alike, and builds them
+ * into one {@link AcceptorServer} on event loops of its own.
+ */
+final class AcceptorServerBuilder extends ServerBuilder<AcceptorServerBuilder> {
+  private final ServerTransport transport;
+  private final List<NettyServerBuilder> builders;
+
+  AcceptorServerBuilder(ServerTransport transport, List<NettyServerBuilder> builders) {
+    this.transport = transport;
+    this.builders = builders;
+  }
+
+  @Override
+  public AcceptorServerBuilder directExecutor() {
+    for (NettyServerBuilder builder : builders) {
+      builder.directExecutor();
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder executor(Executor executor) {
+    for (NettyServerBuilder builder : builders) {
+      builder.executor(executor);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder addService(ServerServiceDefinition service) {
+    for (NettyServerBuilder builder : builders) {
+      builder.addService(service);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder addService(BindableService bindableService) {
+    return addService(bindableService.bindService());
+  }
+
+  @Override
+  public AcceptorServerBuilder intercept(ServerInterceptor interceptor) {
+    for (NettyServerBuilder builder : builders) {
+      builder.intercept(interceptor);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder addTransportFilter(ServerTransportFilter filter) {
+    for (NettyServerBuilder builder : builders) {
+      builder.addTransportFilter(filter);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder addStreamTracerFactory(ServerStreamTracer.Factory factory) {
+    for (NettyServerBuilder builder : builders) {
+      builder.addStreamTracerFactory(factory);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder fallbackHandlerRegistry(HandlerRegistry fallbackRegistry) {
+    for (NettyServerBuilder builder : builders) {
+      builder.fallbackHandlerRegistry(fallbackRegistry);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder useTransportSecurity(File certChain, File privateKey) {
+    for (NettyServerBuilder builder : builders) {
+      builder.useTransportSecurity(certChain, privateKey);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder useTransportSecurity(InputStream certChain, InputStream privateKey) {
+    // Every acceptor reads the streams, so they are read once up front.
+    byte[] certChainBytes;
+    byte[] privateKeyBytes;
+    try {
+      certChainBytes = ByteStreams.toByteArray(certChain);
+      privateKeyBytes = ByteStreams.toByteArray(privateKey);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Unable to read the certificate chain or private key", e);
+    }
+    for (NettyServerBuilder builder : builders) {
+      builder.useTransportSecurity(
+          new ByteArrayInputStream(certChainBytes), new ByteArrayInputStream(privateKeyBytes));
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder decompressorRegistry(DecompressorRegistry registry) {
+    for (NettyServerBuilder builder : builders) {
+      builder.decompressorRegistry(registry);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder compressorRegistry(CompressorRegistry registry) {
+    for (NettyServerBuilder builder : builders) {
+      builder.compressorRegistry(registry);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder handshakeTimeout(long timeout, TimeUnit unit) {
+    for (NettyServerBuilder builder : builders) {
+      builder.handshakeTimeout(timeout, unit);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder maxInboundMessageSize(int bytes) {
+    for (NettyServerBuilder builder : builders) {
+      builder.maxInboundMessageSize(bytes);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder maxInboundMetadataSize(int bytes) {
+    for (NettyServerBuilder builder : builders) {
+      builder.maxInboundMetadataSize(bytes);
+    }
+    return this;
+  }
+
+  @Override
+  public AcceptorServerBuilder setBinaryLog(BinaryLog binaryLog) {
+    for (NettyServerBuilder builder : builders) {
+      builder.setBinaryLog(binaryLog);
+    }
+    return this;
+  }
+
+  @Override
+  public Server build() {
+    EventLoopGroup bossGroup = transport.newBossGroup();
+    EventLoopGroup workerGroup = transport.newWorkerGroup();
+    List<Server> servers = new ArrayList<Server>(builders.size());
+    for (NettyServerBuilder builder : builders) {
+      servers.add(builder.channelType(transport.channelType())
+          .bossEventLoopGroup(bossGroup)
+          .workerEventLoopGroup(workerGroup)
+          .build());
+    }
+    return new AcceptorServer(servers, bossGroup, workerGroup);
+  }
+}
@@ -0,0 +1,98 @@
+package io.grpc.examples.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.util.concurrent.AbstractEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boss loops that turn on {@code SO_REUSEPORT} for each listening channel registered with them,
+ * which happens before it binds. {@link io.grpc.netty.NettyServerBuilder} only sets options on
+ * accepted channels, and the epoll channel cannot be subclassed, so this is the one place left to
+ * set it.
+ */
+final class ReusePortEventLoopGroup extends AbstractEventExecutorGroup implements EventLoopGroup {
+  private final EventLoopGroup delegate;
+
+  ReusePortEventLoopGroup(EventLoopGroup delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public EventLoop next() {
+    return delegate.next();
+  }
+
+  @Override
+  public Iterator<EventExecutor> iterator() {
+    return delegate.iterator();
+  }
+
+  @Override
+  public ChannelFuture register(Channel channel) {
+    return delegate.register(reusePort(channel));
+  }
+
+  @Override
+  public ChannelFuture register(ChannelPromise promise) {
+    reusePort(promise.channel());
+    return delegate.register(promise);
+  }
+
+  @Deprecated
+  @Override
+  public ChannelFuture register(Channel channel, ChannelPromise promise) {
+    return delegate.register(reusePort(channel), promise);
+  }
+
+  private static Channel reusePort(Channel channel) {
+    if (channel instanceof EpollServerSocketChannel) {
+      channel.config().setOption(EpollChannelOption.SO_REUSEPORT, true);
+    }
+    return channel;
+  }
+
+  @Override
+  public boolean isShuttingDown() {
+    return delegate.isShuttingDown();
+  }
+
+  @Override
+  public Future<?> shutdownGracefully(long quietPeriod, long timeout, TimeUnit unit) {
+    return delegate.shutdownGracefully(quietPeriod, timeout, unit);
+  }
+
+  @Override
+  public Future<?> terminationFuture() {
+    return delegate.terminationFuture();
+  }
+
+  @Deprecated
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,211 @@
+package io.grpc.examples.transport;
+
+import io.grpc.ServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The Netty transport a server listens with: the kind of event loops, how many threads accept
+ * connections and how many serve them.
+ *
+ * <p>Epoll, where the JVM can load it, saves the selector wake-ups and the garbage of NIO. With
+ * more than one acceptor, as many servers bind the same port with {@code SO_REUSEPORT}, so that
+ * the kernel spreads new connections over their accept loops instead of queueing them all behind
+ * one; that needs epoll. The servers share the worker loops and the services, and together act as
+ * one {@link io.grpc.Server}, which releases the loops once it has terminated.
+ *
+ * <p>A transport is written {@code TYPE[,acceptors=N][,boss=N][,workers=N]}, where TYPE is
+ * {@code auto}, {@code epoll} or {@code nio}, such as {@code epoll,acceptors=4,workers=8}. By
+ * default there is one acceptor, one boss thread per acceptor and one worker per core.
+ */
+public final class ServerTransport {
+  private static final Logger logger = Logger.getLogger(ServerTransport.class.getName());
+
+  /** The kind of event loops. */
+  public enum Type {
+    /** Epoll where it is available, NIO elsewhere. */
+    AUTO,
+    EPOLL,
+    NIO
+  }
+
+  private final boolean epoll;
+  private final int acceptors;
+  private final int bossThreads;
+  private final int workerThreads;
+
+  private ServerTransport(boolean epoll, int acceptors, int bossThreads, int workerThreads) {
+    this.epoll = epoll;
+    this.acceptors = acceptors;
+    this.bossThreads = bossThreads;
+    this.workerThreads = workerThreads;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /** Creates a transport from its written form, described above. */
+  public static ServerTransport parse(String spec) {
+    String[] parts = spec.trim().toLowerCase().split(",");
+    Builder builder = new Builder();
+    try {
+      builder.type(Type.valueOf(parts[0].trim().toUpperCase()));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown transport: " + spec);
+    }
+    for (int i = 1; i < parts.length; i++) {
+      String part = parts[i].trim();
+      int separator = part.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalArgumentException("Not a setting of the form NAME=N: " + part);
+      }
+      String name = part.substring(0, separator);
+      int value;
+      try {
+        value = Integer.parseInt(part.substring(separator + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Not a thread count: " + part);
+      }
+      if ("acceptors".equals(name)) {
+        builder.acceptors(value);
+      } else if ("boss".equals(name)) {
+        builder.bossThreads(value);
+      } else if ("workers".equals(name)) {
+        builder.workerThreads(value);
+      } else {
+        throw new IllegalArgumentException("Unknown transport setting: " + part);
+      }
+    }
+    return builder.build();
+  }
+
+  public boolean isEpoll() {
+    return epoll;
+  }
+
+  public int getAcceptors() {
+    return acceptors;
+  }
+
+  /**
+   * Creates a builder of a server that listens on {@code port} with this transport. Every server
+   * built from it has event loops of its own, released when it terminates. With more than one
+   * acceptor the port must be fixed, so that they all bind the same one.
+   */
+  public ServerBuilder<?> forPort(int port) {
+    if (acceptors > 1 && port == 0) {
+      throw new IllegalArgumentException("Acceptors sharing a port need a fixed port");
+    }
+    List<NettyServerBuilder> builders = new ArrayList<NettyServerBuilder>(acceptors);
+    for (int i = 0; i < acceptors; i++) {
+      builders.add(NettyServerBuilder.forPort(port));
+    }
+    return new AcceptorServerBuilder(this, builders);
+  }
+
+  /** The boss loops, on which each acceptor registers its listening channel in turn. */
+  EventLoopGroup newBossGroup() {
+    DefaultThreadFactory threads = new DefaultThreadFactory(epoll ? "grpc-epoll-boss" : "grpc-nio-boss", true);
+    if (!epoll) {
+      return new NioEventLoopGroup(bossThreads, threads);
+    }
+    EpollEventLoopGroup group = new EpollEventLoopGroup(bossThreads, threads);
+    return acceptors > 1 ? new ReusePortEventLoopGroup(group) : group;
+  }
+
+  EventLoopGroup newWorkerGroup() {
+    DefaultThreadFactory threads =
+        new DefaultThreadFactory(epoll ? "grpc-epoll-worker" : "grpc-nio-worker", true);
+    return epoll ? new EpollEventLoopGroup(workerThreads, threads) : new NioEventLoopGroup(workerThreads, threads);
+  }
+
+  Class<? extends ServerChannel> channelType() {
+    return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+  }
+
+  @Override
+  public String toString() {
+    return (epoll ? "epoll" : "nio") + " acceptors=" + acceptors + " boss=" + bossThreads
+        + " workers=" + workerThreads;
+  }
+
+  public static final class Builder {
+    private Type type = Type.AUTO;
+    private int acceptors = 1;
+    private int bossThreads;
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+
+    private Builder() {
+    }
+
+    public Builder type(Type type) {
+      if (type == null) {
+        throw new NullPointerException("type");
+      }
+      this.type = type;
+      return this;
+    }
+
+    /** Listens with {@code acceptors} channels on the same port; more than one needs epoll. */
+    public Builder acceptors(int acceptors) {
+      this.acceptors = positive("acceptors", acceptors);
+      return this;
+    }
+
+    /** Accepts connections on {@code bossThreads} loops; one per acceptor by default. */
+    public Builder bossThreads(int bossThreads) {
+      this.bossThreads = positive("boss threads", bossThreads);
+      return this;
+    }
+
+    /** Serves connections on {@code workerThreads} loops; one per core by default. */
+    public Builder workerThreads(int workerThreads) {
+      this.workerThreads = positive("worker threads", workerThreads);
+      return this;
+    }
+
+    /**
+     * Builds the transport. An automatic one with several acceptors falls back to one when epoll
+     * is unavailable; an explicit epoll one fails.
+     */
+    public ServerTransport build() {
+      boolean epoll;
+      int acceptors = this.acceptors;
+      if (type == Type.NIO) {
+        if (acceptors > 1) {
+          throw new IllegalArgumentException("Acceptors sharing a port need epoll");
+        }
+        epoll = false;
+      } else if (Epoll.isAvailable()) {
+        epoll = true;
+      } else if (type == Type.EPOLL) {
+        throw new IllegalArgumentException("Epoll is not available", Epoll.unavailabilityCause());
+      } else {
+        if (acceptors > 1) {
+          logger.info("No epoll in this JVM; accepting on one NIO channel");
+          acceptors = 1;
+        }
+        epoll = false;
+      }
+      return new ServerTransport(epoll, acceptors, bossThreads > 0 ? bossThreads : acceptors, workerThreads);
+    }
+
+    private static int positive(String name, int value) {
+      if (value < 1) {
+        throw new IllegalArgumentException(name + " must be positive: " + value);
+      }
+      return value;
+    }
+  }
+}
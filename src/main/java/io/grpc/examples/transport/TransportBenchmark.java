@@ -0,0 +1,251 @@
+package io.grpc.examples.transport;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.examples.helloworld.GreeterGrpc;
+import io.grpc.examples.helloworld.HelloReply;
+import io.grpc.examples.helloworld.HelloRequest;
+import io.grpc.examples.helloworld.LatencyHistogram;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.epoll.Epoll;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares server transports under a connection storm and at steady state.
+ *
+ * <p>A Greeter that replies at once is served over a local socket with each transport in turn:
+ * gRPC's default, NIO and epoll with explicitly sized loops, and epoll with several acceptors
+ * sharing the port. In the storm, clients each open a new connection, make one call on it and
+ * close it, and the connections per second and their latency, connect included, are reported. At
+ * steady state a closed loop keeps calls outstanding over a few long-lived connections. Each
+ * transport is warmed up with steady calls before it is measured.
+ *
+ * <p>Usage: {@code transport-benchmark [--storm-connections=N] [--storm-concurrency=N]
+ * [--channels=N] [--concurrency=N] [--acceptors=N] [--workers=N] [--duration-s=N]
+ * [--warmup-s=N]}.
+ */
+public class TransportBenchmark {
+  /**
+   * Main method.
+   */
+  public static void main(String[] args) throws Exception {
+    int stormConnections = 2000;
+    int stormConcurrency = 64;
+    int channels = 4;
+    int concurrency = 64;
+    int cores = Runtime.getRuntime().availableProcessors();
+    int acceptors = Math.max(2, cores);
+    int workers = cores;
+    long durationSeconds = 10;
+    long warmupSeconds = 3;
+    for (String arg : args) {
+      String value = arg.substring(arg.indexOf('=') + 1);
+      if (arg.startsWith("--storm-connections=")) {
+        stormConnections = Integer.parseInt(value);
+      } else if (arg.startsWith("--storm-concurrency=")) {
+        stormConcurrency = Integer.parseInt(value);
+      } else if (arg.startsWith("--channels=")) {
+        channels = Integer.parseInt(value);
+      } else if (arg.startsWith("--concurrency=")) {
+        concurrency = Integer.parseInt(value);
+      } else if (arg.startsWith("--acceptors=")) {
+        acceptors = Integer.parseInt(value);
+      } else if (arg.startsWith("--workers=")) {
+        workers = Integer.parseInt(value);
+      } else if (arg.startsWith("--duration-s=")) {
+        durationSeconds = Long.parseLong(value);
+      } else if (arg.startsWith("--warmup-s=")) {
+        warmupSeconds = Long.parseLong(value);
+      } else {
+        System.err.println("Unknown argument: " + arg);
+        System.exit(1);
+      }
+    }
+
+    // Null stands for gRPC's own transport.
+    List<String> specs = new ArrayList<String>();
+    specs.add(null);
+    specs.add("nio,workers=" + workers);
+    if (Epoll.isAvailable()) {
+      specs.add("epoll,workers=" + workers);
+      specs.add("epoll,acceptors=" + acceptors + ",workers=" + workers);
+    } else {
+      System.out.println("No epoll in this JVM; only comparing NIO transports");
+    }
+
+    System.out.printf("storm connections=%d storm concurrency=%d channels=%d concurrency=%d duration=%ds "
+        + "cores=%d%n", stormConnections, stormConcurrency, channels, concurrency, durationSeconds, cores);
+    System.out.printf("%-34s %10s %10s %10s %7s %12s %10s %10s%n", "transport", "conn/s", "conn p50",
+        "conn p99", "failed", "calls/s", "call p50", "call p99");
+    for (String spec : specs) {
+      int port = freePort();
+      ServerBuilder<?> builder =
+          spec != null ? ServerTransport.parse(spec).forPort(port) : ServerBuilder.forPort(port);
+      Server server = builder.addService(new Greeter()).build().start();
+      try {
+        steady(port, channels, concurrency, TimeUnit.SECONDS.toNanos(warmupSeconds));
+        Storm storm = new Storm(port, stormConnections, stormConcurrency);
+        storm.run();
+        LatencyHistogram calls = steady(port, channels, concurrency, TimeUnit.SECONDS.toNanos(durationSeconds));
+        System.out.printf("%-34s %10.0f %10.2f %10.2f %7d %12.0f %10.2f %10.2f%n",
+            spec != null ? ServerTransport.parse(spec).toString() : "default",
+            storm.histogram.getCount() / (storm.elapsedNanos / 1e9), storm.histogram.getValueAtPercentile(50),
+            storm.histogram.getValueAtPercentile(99), storm.failed.get(),
+            calls.getCount() / (double) durationSeconds, calls.getValueAtPercentile(50),
+            calls.getValueAtPercentile(99));
+      } finally {
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  /** A port that is free now, as acceptors sharing a port cannot bind an ephemeral one. */
+  private static int freePort() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /**
+   * Keeps {@code concurrency} calls outstanding over {@code channels} connections for
+   * {@code durationNanos}, and returns their latencies.
+   */
+  private static LatencyHistogram steady(int port, int channels, int concurrency, long durationNanos)
+      throws InterruptedException {
+    List<ManagedChannel> open = new ArrayList<ManagedChannel>(channels);
+    for (int i = 0; i < channels; i++) {
+      open.add(ManagedChannelBuilder.forAddress("127.0.0.1", port).usePlaintext().directExecutor().build());
+    }
+    try {
+      Loop loop = new Loop(open, concurrency, System.nanoTime() + durationNanos);
+      loop.begin();
+      loop.await();
+      return loop.histogram;
+    } finally {
+      for (ManagedChannel channel : open) {
+        channel.shutdownNow();
+      }
+    }
+  }
+
+  /** Answers {@code SayHello} at once. */
+  private static final class Greeter extends GreeterGrpc.GreeterImplBase {
+    @Override
+    public void sayHello(HelloRequest req, StreamObserver<HelloReply> responseObserver) {
+      responseObserver.onNext(HelloReply.newBuilder().setMessage("Hello " + req.getName()).build());
+      responseObserver.onCompleted();
+    }
+  }
+
+  /** Clients that each open a connection, make one call on it and close it, over and over. */
+  private static final class Storm {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final AtomicInteger failed = new AtomicInteger();
+    long elapsedNanos;
+    private final int port;
+    private final int concurrency;
+    private final AtomicInteger remaining;
+
+    Storm(int port, int connections, int concurrency) {
+      this.port = port;
+      this.concurrency = concurrency;
+      this.remaining = new AtomicInteger(connections);
+    }
+
+    void run() throws InterruptedException {
+      ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+      long start = System.nanoTime();
+      for (int i = 0; i < concurrency; i++) {
+        clients.execute(new Runnable() {
+          @Override
+          public void run() {
+            while (remaining.getAndDecrement() > 0) {
+              connectAndCall();
+            }
+          }
+        });
+      }
+      clients.shutdown();
+      clients.awaitTermination(1, TimeUnit.HOURS);
+      elapsedNanos = System.nanoTime() - start;
+    }
+
+    private void connectAndCall() {
+      long begin = System.nanoTime();
+      ManagedChannel channel =
+          ManagedChannelBuilder.forAddress("127.0.0.1", port).usePlaintext().directExecutor().build();
+      try {
+        GreeterGrpc.newBlockingStub(channel).withDeadlineAfter(10, TimeUnit.SECONDS)
+            .sayHello(HelloRequest.getDefaultInstance());
+        histogram.record(System.nanoTime() - begin);
+      } catch (RuntimeException e) {
+        failed.incrementAndGet();
+      } finally {
+        channel.shutdownNow();
+      }
+    }
+  }
+
+  /** A closed loop with a fixed number of outstanding calls spread over the channels. */
+  private static final class Loop {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    private final List<GreeterGrpc.GreeterFutureStub> stubs = new ArrayList<GreeterGrpc.GreeterFutureStub>();
+    private final int concurrency;
+    private final long endNanos;
+    private final AtomicLong calls = new AtomicLong();
+    private final CountDownLatch done;
+
+    Loop(List<ManagedChannel> channels, int concurrency, long endNanos) {
+      for (ManagedChannel channel : channels) {
+        stubs.add(GreeterGrpc.newFutureStub(channel));
+      }
+      this.concurrency = concurrency;
+      this.endNanos = endNanos;
+      this.done = new CountDownLatch(concurrency);
+    }
+
+    void begin() {
+      for (int i = 0; i < concurrency; i++) {
+        next();
+      }
+    }
+
+    void await() throws InterruptedException {
+      done.await();
+    }
+
+    private void next() {
+      final long begin = System.nanoTime();
+      if (begin - endNanos >= 0) {
+        done.countDown();
+        return;
+      }
+      GreeterGrpc.GreeterFutureStub stub = stubs.get((int) (calls.getAndIncrement() % stubs.size()));
+      Futures.addCallback(stub.sayHello(HelloRequest.getDefaultInstance()), new FutureCallback<HelloReply>() {
+        @Override
+        public void onSuccess(HelloReply result) {
+          histogram.record(System.nanoTime() - begin);
+          next();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          next();
+        }
+      }, MoreExecutors.directExecutor());
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package io.grpc.examples.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.Context;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.CheckBalanceReply;
+import io.grpc.examples.helloworld.CheckBalanceRequest;
+import io.grpc.examples.helloworld.GreeterGrpc;
+import io.grpc.examples.helloworld.HelloReply;
+import io.grpc.examples.helloworld.HelloRequest;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link ExecutorRouter}.
+ */
+@RunWith(JUnit4.class)
+public class ExecutorRouterTest {
+  private static final String SAY_HELLO = GreeterGrpc.getSayHelloMethod().getFullMethodName();
+  private static final String SERVICE = GreeterGrpc.SERVICE_NAME;
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private ExecutorService cheap;
+  private ExecutorService blocking;
+
+  @Before
+  public void setUp() {
+    cheap = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("cheap").build());
+    blocking = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("blocking").build());
+  }
+
+  @After
+  public void tearDown() {
+    cheap.shutdownNow();
+    blocking.shutdownNow();
+  }
+
+  @Test
+  public void methodRoute_winsOverServiceAndDefault() {
+    Executor fallback = MoreExecutors.directExecutor();
+    ExecutorRouter router = ExecutorRouter.newBuilder(fallback)
+        .route(SERVICE, blocking)
+        .route(SAY_HELLO, cheap)
+        .build();
+
+    assertSame(cheap, router.executorFor(SAY_HELLO));
+    assertSame(blocking, router.executorFor(GreeterGrpc.getCheckBalanceMethod().getFullMethodName()));
+    assertSame(fallback, router.executorFor("routeguide.RouteGuide/GetFeature"));
+  }
+
+  @Test
+  public void calls_runOnTheirExecutorWithTheirContext() throws Exception {
+    GreeterGrpc.GreeterBlockingStub stub = stub(ExecutorRouter.newBuilder(blocking)
+        .route(SAY_HELLO, cheap)
+        .build());
+
+    assertEquals("cheap true", stub.withDeadlineAfter(5, TimeUnit.SECONDS)
+        .sayHello(HelloRequest.getDefaultInstance()).getMessage());
+    assertEquals("blocking", stub.checkBalance(CheckBalanceRequest.getDefaultInstance()).getBalance());
+  }
+
+  @Test
+  public void throwingHandler_closesCall() throws Exception {
+    GreeterGrpc.GreeterBlockingStub stub = stub(ExecutorRouter.newBuilder(cheap).build());
+
+    try {
+      stub.checkBalance(CheckBalanceRequest.newBuilder().setAddress("throw").build());
+      fail("Expected the call to fail");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.UNKNOWN, e.getStatus().getCode());
+    }
+    // The executor is still usable.
+    assertEquals("cheap", stub.checkBalance(CheckBalanceRequest.getDefaultInstance()).getBalance());
+  }
+
+  @Test
+  public void refusedCall_resourceExhausted() throws Exception {
+    blocking.shutdown();
+    GreeterGrpc.GreeterBlockingStub stub = stub(ExecutorRouter.newBuilder(blocking).build());
+
+    try {
+      stub.sayHello(HelloRequest.getDefaultInstance());
+      fail("Expected the call to be refused");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void parse_sharesExecutorsByMode() {
+    ExecutorRouter router = ExecutorRouter.parse("fork-join:2",
+        Arrays.asList(SAY_HELLO + "=direct", SERVICE + "=virtual", "routeguide.RouteGuide=fork-join:2"));
+    try {
+      assertSame(MoreExecutors.directExecutor(), router.executorFor(SAY_HELLO));
+      assertSame(router.executorFor("other.Service/Method"),
+          router.executorFor("routeguide.RouteGuide/GetFeature"));
+      assertTrue(router.executorFor(SERVICE + "/CheckBalance") instanceof ExecutorService);
+    } finally {
+      router.shutdown();
+    }
+    try {
+      ExecutorRouter.parse("cached", Collections.singletonList("no-mode"));
+      fail("Expected the route to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    try {
+      ServerExecutors.create("fork-join:0");
+      fail("Expected the pool size to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  private GreeterGrpc.GreeterBlockingStub stub(ExecutorRouter router) throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(ServerInterceptors.intercept(new ThreadReportingGreeter(), router))
+        .build().start());
+    return GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  /** Replies with the name of the thread that ran the handler. */
+  private static final class ThreadReportingGreeter extends GreeterGrpc.GreeterImplBase {
+    @Override
+    public void sayHello(HelloRequest request, StreamObserver<HelloReply> responseObserver) {
+      boolean hasDeadline = Context.current().getDeadline() != null;
+      responseObserver.onNext(HelloReply.newBuilder()
+          .setMessage(Thread.currentThread().getName() + " " + hasDeadline).build());
+      responseObserver.onCompleted();
+    }
+
+    @Override
+    public void checkBalance(CheckBalanceRequest request, StreamObserver<CheckBalanceReply> responseObserver) {
+      if (request.getAddress().equals("throw")) {
+        throw new IllegalStateException("Handler failed");
+      }
+      responseObserver.onNext(CheckBalanceReply.newBuilder()
+          .setBalance(Thread.currentThread().getName()).build());
+      responseObserver.onCompleted();
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.transport.jsonrpc.RpcError;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link BalanceBatcher}.
+ */
+@RunWith(JUnit4.class)
+public class BalanceBatcherTest {
+  private static final Address ADDRESS_1 = new Address("hx0000000000000000000000000000000000000001");
+  private static final Address ADDRESS_2 = new Address("hx0000000000000000000000000000000000000002");
+  private static final Address ADDRESS_3 = new Address("hx0000000000000000000000000000000000000003");
+
+  private MockIconNode node;
+  private IconClient iconClient;
+  private BalanceBatcher batcher;
+
+  @Before
+  public void setUp() throws Exception {
+    // Every address holds as many loop as its last hex digit.
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_getBalance", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        String address = params.getString("address");
+        return "0x" + address.charAt(address.length() - 1);
+      }
+    });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+  }
+
+  @After
+  public void tearDown() {
+    if (batcher != null) {
+      batcher.shutdown();
+    }
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void sameAddress_sharesOneCall() throws Exception {
+    batcher = start(50, 100);
+
+    ListenableFuture<BigInteger> first = batcher.getBalance(ADDRESS_1);
+    ListenableFuture<BigInteger> second = batcher.getBalance(ADDRESS_1);
+
+    assertSame(first, second);
+    assertEquals(BigInteger.ONE, second.get());
+    assertEquals(1, node.getCallCount("icx_getBalance"));
+    assertEquals(1, batcher.getCoalescedCount());
+  }
+
+  @Test
+  public void distinctAddressesInWindow_sentAsOneBatch() throws Exception {
+    batcher = start(50, 100);
+
+    List<BigInteger> balances =
+        batcher.getBalances(Arrays.asList(ADDRESS_3, ADDRESS_1, ADDRESS_2)).get();
+
+    assertEquals(Arrays.asList(BigInteger.valueOf(3), BigInteger.ONE, BigInteger.valueOf(2)),
+        balances);
+    assertEquals(1, node.getHttpRequestCount());
+    assertEquals(3, node.getCallCount("icx_getBalance"));
+  }
+
+  @Test
+  public void fullBatch_sentWithoutWaitingForWindow() throws Exception {
+    batcher = start(TimeUnit.MINUTES.toMillis(1), 2);
+
+    ListenableFuture<BigInteger> first = batcher.getBalance(ADDRESS_1);
+    ListenableFuture<BigInteger> second = batcher.getBalance(ADDRESS_2);
+
+    assertEquals(BigInteger.ONE, first.get(5, TimeUnit.SECONDS));
+    assertEquals(BigInteger.valueOf(2), second.get(5, TimeUnit.SECONDS));
+    assertEquals(1, node.getHttpRequestCount());
+  }
+
+  @Test
+  public void zeroWindow_sendsEachLookupAlone() throws Exception {
+    batcher = start(0, 100);
+
+    batcher.getBalances(Arrays.asList(ADDRESS_1, ADDRESS_2)).get();
+
+    assertEquals(2, node.getHttpRequestCount());
+    assertEquals(2, batcher.getUpstreamCallCount());
+  }
+
+  @Test
+  public void upstreamError_failsEveryLookupInBatch() throws Exception {
+    batcher = start(50, 100);
+    node.fail("icx_getBalance");
+
+    ListenableFuture<List<BigInteger>> balances =
+        batcher.getBalances(Arrays.asList(ADDRESS_1, ADDRESS_2));
+
+    try {
+      balances.get();
+      fail("Expected the batch to fail");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof RpcError);
+    }
+    // Failed lookups are not left in flight.
+    node.respond("icx_getBalance", "0x5");
+    assertEquals(BigInteger.valueOf(5), batcher.getBalance(ADDRESS_1).get());
+  }
+
+  private BalanceBatcher start(long windowMillis, int maxBatchSize) {
+    BalanceBatcher batcher =
+        new BalanceBatcher(iconClient, windowMillis, TimeUnit.MILLISECONDS, maxBatchSize);
+    batcher.start();
+    return batcher;
+  }
+}
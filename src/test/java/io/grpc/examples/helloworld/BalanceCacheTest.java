@@ -0,0 +1,92 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link BalanceCache}.
+ */
+@RunWith(JUnit4.class)
+public class BalanceCacheTest {
+  private static final Address ADDRESS = new Address(CommonData.ADDRESS_1);
+  private static final Address OTHER_ADDRESS =
+      new Address("hx0000000000000000000000000000000000000001");
+
+  private MockIconNode node;
+  private IconClient iconClient;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_getBalance", "0x64");
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+  }
+
+  @After
+  public void tearDown() {
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void repeatedLookupWithinBlock_servedFromCache() throws Exception {
+    BalanceCache cache = newCache(100);
+
+    assertEquals(BigInteger.valueOf(100), cache.getBalance(ADDRESS));
+    assertEquals(BigInteger.valueOf(100), cache.getBalanceAsync(ADDRESS).get());
+
+    assertEquals(1, node.getCallCount("icx_getBalance"));
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+  }
+
+  @Test
+  public void newBlock_invalidatesEntries() throws Exception {
+    BalanceCache cache = newCache(100);
+    cache.onNewBlock(block(10));
+    cache.getBalance(ADDRESS);
+
+    cache.onNewBlock(block(10));
+    cache.getBalance(ADDRESS);
+    assertEquals(1, node.getCallCount("icx_getBalance"));
+
+    cache.onNewBlock(block(11));
+    cache.getBalance(ADDRESS);
+    assertEquals(2, node.getCallCount("icx_getBalance"));
+    assertEquals(2, cache.blockInvalidationCount());
+    assertEquals(11, cache.getHeight());
+  }
+
+  @Test
+  public void sizeBound_evictsEntries() throws Exception {
+    BalanceCache cache = newCache(1);
+
+    cache.getBalance(ADDRESS);
+    cache.getBalance(OTHER_ADDRESS);
+
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.stats().evictionCount());
+  }
+
+  private BalanceCache newCache(long maximumSize) {
+    return new BalanceCache(new BalanceBatcher(iconClient, 0, TimeUnit.MILLISECONDS, 1), maximumSize,
+        1, TimeUnit.MINUTES);
+  }
+
+  static Block block(long height) {
+    return Converters.BLOCK.convertTo(new RpcObject.Builder()
+        .put("height", new RpcValue(BigInteger.valueOf(height)))
+        .build());
+  }
+}
@@ -0,0 +1,241 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.RpcArray;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link BalanceWatcher}.
+ */
+@RunWith(JUnit4.class)
+public class BalanceWatcherTest {
+  private static final Address ADDRESS_1 = new Address("hx0000000000000000000000000000000000000001");
+  private static final Address ADDRESS_2 = new Address("hx0000000000000000000000000000000000000002");
+  private static final Address OTHER = new Address("hx00000000000000000000000000000000000000ff");
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private final ConcurrentMap<String, String> balances = new ConcurrentHashMap<String, String>();
+  private MockIconNode node;
+  private IconClient iconClient;
+  private BalanceBatcher batcher;
+  private BalanceCache cache;
+  private BalanceWatcher watcher;
+  private GreeterGrpc.GreeterBlockingStub stub;
+
+  @Before
+  public void setUp() throws Exception {
+    balances.put(ADDRESS_1.toString(), "0x1");
+    balances.put(ADDRESS_2.toString(), "0x2");
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_getBalance", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        return balances.get(params.getString("address"));
+      }
+    });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    batcher = new BalanceBatcher(iconClient, 1, TimeUnit.MILLISECONDS, 100);
+    batcher.start();
+    cache = new BalanceCache(batcher, 100, 1, TimeUnit.MINUTES);
+    watcher = new BalanceWatcher(cache);
+
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(GreeterImpl.newBuilder(iconClient)
+            .balanceCache(cache)
+            .balanceWatcher(watcher)
+            .nonBlocking(true)
+            .build())
+        .build().start());
+    stub = GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  @After
+  public void tearDown() {
+    watcher.shutdown();
+    batcher.shutdown();
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void sendsCurrentBalances_thenChangesOfTouchedAddresses() throws Exception {
+    Iterator<BalanceUpdate> updates = watch(ADDRESS_1, ADDRESS_2);
+    Map<String, String> initial = new HashMap<String, String>();
+    for (int i = 0; i < 2; i++) {
+      BalanceUpdate update = updates.next();
+      initial.put(update.getAddress(), update.getBalance());
+    }
+    assertEquals("1", initial.get(ADDRESS_1.toString()));
+    assertEquals("2", initial.get(ADDRESS_2.toString()));
+
+    balances.put(ADDRESS_1.toString(), "0x5");
+    balances.put(ADDRESS_2.toString(), "0x7");
+    newBlock(block(11, ADDRESS_1, OTHER));
+    assertUpdate(ADDRESS_1, "5", 11, updates.next());
+
+    // ADDRESS_2 changed in block 11 too, but is only looked up once a transaction names it.
+    newBlock(block(12, OTHER, ADDRESS_2));
+    assertUpdate(ADDRESS_2, "7", 12, updates.next());
+  }
+
+  @Test
+  public void unchangedBalance_notSent() throws Exception {
+    Iterator<BalanceUpdate> updates = watch(ADDRESS_1);
+    updates.next();
+
+    newBlock(block(11, ADDRESS_1, OTHER));
+    // Waits for the lookup of block 11, which finds the balance unchanged.
+    assertEquals(BigInteger.ONE, cache.getBalance(ADDRESS_1));
+    balances.put(ADDRESS_1.toString(), "0x9");
+    newBlock(block(12, ADDRESS_1, OTHER));
+
+    assertUpdate(ADDRESS_1, "9", 12, updates.next());
+  }
+
+  @Test
+  public void sharedAddress_lookedUpOncePerBlock() throws Exception {
+    Iterator<BalanceUpdate> first = watch(ADDRESS_1);
+    Iterator<BalanceUpdate> second = watch(ADDRESS_1);
+    first.next();
+    second.next();
+    long calls = node.getCallCount("icx_getBalance");
+
+    balances.put(ADDRESS_1.toString(), "0x3");
+    newBlock(block(11, OTHER, ADDRESS_1));
+
+    assertUpdate(ADDRESS_1, "3", 11, first.next());
+    assertUpdate(ADDRESS_1, "3", 11, second.next());
+    assertEquals(calls + 1, node.getCallCount("icx_getBalance"));
+    assertEquals(1, watcher.watchedAddressCount());
+  }
+
+  @Test
+  public void lookupInFlightAtNewBlock_notSharedWithRefresh() throws Exception {
+    Iterator<BalanceUpdate> updates = stub.withDeadlineAfter(5, TimeUnit.SECONDS)
+        .watchBalances(WatchBalancesRequest.newBuilder().addAddress(ADDRESS_1.toString()).build());
+    updates.next();
+
+    // The node reads the balance before the block, but answers only once the block is out.
+    final CountDownLatch blockProduced = new CountDownLatch(1);
+    node.respond("icx_getBalance", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        String balance = balances.get(params.getString("address"));
+        try {
+          blockProduced.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return balance;
+      }
+    });
+    long calls = node.getCallCount("icx_getBalance");
+    // The first balance is cached, so look it up past the cache, as a miss elsewhere would.
+    batcher.getBalance(ADDRESS_1);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (node.getCallCount("icx_getBalance") == calls && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+
+    balances.put(ADDRESS_1.toString(), "0x5");
+    newBlock(block(11, ADDRESS_1, OTHER));
+    blockProduced.countDown();
+
+    assertUpdate(ADDRESS_1, "5", 11, updates.next());
+    assertEquals(calls + 2, node.getCallCount("icx_getBalance"));
+  }
+
+  @Test
+  public void cancelledStream_stopsWatching() throws Exception {
+    Context.CancellableContext context = Context.current().withCancellation();
+    Context previous = context.attach();
+    try {
+      watch(ADDRESS_1).next();
+    } finally {
+      context.detach(previous);
+    }
+    assertEquals(1, watcher.watchedAddressCount());
+
+    context.cancel(null);
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (watcher.watchedAddressCount() != 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, watcher.watchedAddressCount());
+  }
+
+  @Test
+  public void noAddresses_rejected() {
+    try {
+      stub.watchBalances(WatchBalancesRequest.getDefaultInstance()).hasNext();
+      fail("Expected INVALID_ARGUMENT");
+    } catch (StatusRuntimeException expected) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, expected.getStatus().getCode());
+    }
+  }
+
+  private Iterator<BalanceUpdate> watch(Address... addresses) {
+    WatchBalancesRequest.Builder request = WatchBalancesRequest.newBuilder();
+    for (Address address : addresses) {
+      request.addAddress(address.toString());
+    }
+    return stub.watchBalances(request.build());
+  }
+
+  /** Delivers {@code block} the way {@link BlockPoller} does, cache first. */
+  private void newBlock(Block block) {
+    cache.onNewBlock(block);
+    watcher.onNewBlock(block);
+  }
+
+  private static void assertUpdate(Address address, String balance, long height, BalanceUpdate update) {
+    assertEquals(address.toString(), update.getAddress());
+    assertEquals(balance, update.getBalance());
+    assertEquals(height, update.getHeight());
+  }
+
+  private static Block block(long height, Address from, Address to) {
+    RpcArray transactions = new RpcArray.Builder()
+        .add(new RpcObject.Builder()
+            .put("from", new RpcValue(from))
+            .put("to", new RpcValue(to))
+            .build())
+        .build();
+    return Converters.BLOCK.convertTo(new RpcObject.Builder()
+        .put("height", new RpcValue(BigInteger.valueOf(height)))
+        .put("confirmed_transaction_list", transactions)
+        .build());
+  }
+}
@@ -0,0 +1,132 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link BlockIngester}.
+ */
+@RunWith(JUnit4.class)
+public class BlockIngesterTest {
+  private static final String SENDER = CommonData.ADDRESS_1;
+  private static final String RECIPIENT = "hx" + String.format("%040x", 42);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private MockIconNode node;
+  private IconClient iconClient;
+  private TransactionStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(20, TimeUnit.MILLISECONDS).start(0);
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    store = TransactionStore.open(new File(folder.getRoot(), "tx-store"), 1024, 64);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void missedBlocks_fetchedInBatchesAndServed() throws Exception {
+    String first = send(SENDER, RECIPIENT);
+    Thread.sleep(100);
+    String second = send(RECIPIENT, SENDER);
+    // Wait for well over one batch of blocks after the second transaction.
+    Thread.sleep(40 * BlockIngester.MAX_BATCH_SIZE);
+    BlockIngester ingester = new BlockIngester(iconClient, store, 1);
+
+    Block head = iconClient.getIconService().getLastBlock().execute();
+    ingester.onNewBlock(head);
+    assertTrue(ingester.catchUp());
+
+    assertEquals(head.getHeight().longValue(), store.getHeight());
+    assertEquals(1, store.getFirstHeight());
+    assertEquals(head.getHeight().longValue(), ingester.getIngestedCount());
+    assertEquals((head.getHeight().longValue() - 1 + BlockIngester.MAX_BATCH_SIZE - 1)
+        / BlockIngester.MAX_BATCH_SIZE, ingester.getUpstreamCallCount());
+    assertEquals(0, ingester.getLag());
+
+    GreeterGrpc.GreeterBlockingStub stub = stub(store);
+    GetTransactionsReply page = stub.getTransactions(GetTransactionsRequest.newBuilder()
+        .setAddress(SENDER).setLimit(1).build());
+    assertEquals(1, page.getTransactionsCount());
+    assertEquals(second, page.getTransactions(0).getTxhash());
+    assertEquals(RECIPIENT, page.getTransactions(0).getFrom());
+    page = stub.getTransactions(GetTransactionsRequest.newBuilder()
+        .setAddress(SENDER).setCursor(page.getNextCursor()).build());
+    assertEquals(1, page.getTransactionsCount());
+    assertEquals(first, page.getTransactions(0).getTxhash());
+    assertEquals("", page.getNextCursor());
+    assertEquals(store.getHeight(), page.getIndexedHeight());
+
+    // The next block is appended as reported, without fetching it.
+    Thread.sleep(100);
+    Block next = iconClient.getIconService().getBlock(head.getHeight().add(BigInteger.ONE)).execute();
+    ingester.onNewBlock(next);
+    long calls = ingester.getUpstreamCallCount();
+    assertTrue(ingester.catchUp());
+    assertEquals(next.getHeight().longValue(), store.getHeight());
+    assertEquals(calls, ingester.getUpstreamCallCount());
+  }
+
+  @Test
+  public void getTransactions_withoutStore_failsPrecondition() throws Exception {
+    try {
+      stub(null).getTransactions(GetTransactionsRequest.newBuilder().setAddress(SENDER).build());
+      fail("Expected GetTransactions to be refused");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.FAILED_PRECONDITION, e.getStatus().getCode());
+    }
+  }
+
+  private String send(String from, String to) throws Exception {
+    RpcObject params = new RpcObject.Builder()
+        .put("from", new RpcValue(from))
+        .put("to", new RpcValue(to))
+        .put("timestamp", new RpcValue(BigInteger.valueOf(System.nanoTime())))
+        .build();
+    RpcItem hash = iconClient.executeBatchAsync(Collections.singletonList(
+        iconClient.newRequest("icx_sendTransaction", params))).get(0).get(5, TimeUnit.SECONDS);
+    return hash.asString();
+  }
+
+  private GreeterGrpc.GreeterBlockingStub stub(TransactionStore store) throws Exception {
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).transactionStore(store).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    return GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+}
@@ -0,0 +1,99 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+
+import foundation.icon.icx.data.Block;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link BlockPoller}.
+ */
+@RunWith(JUnit4.class)
+public class BlockPollerTest {
+  private final AtomicLong lastHeight = new AtomicLong(10);
+  private final List<Long> delivered = new ArrayList<Long>();
+  private MockIconNode node;
+  private IconClient iconClient;
+  private BlockPoller poller;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0)
+        .respond("icx_getLastBlock", new MockIconNode.Responder() {
+          @Override
+          public Object respond(JSONObject params) {
+            return new JSONObject().put("height", lastHeight.get());
+          }
+        })
+        .respond("icx_getBlockByHeight", new MockIconNode.Responder() {
+          @Override
+          public Object respond(JSONObject params) {
+            return new JSONObject().put("height", Long.decode(params.getString("height")));
+          }
+        });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    poller = new BlockPoller(iconClient, 1, TimeUnit.MINUTES);
+    poller.addListener(new BlockPoller.Listener() {
+      @Override
+      public void onNewBlock(Block block) {
+        delivered.add(block.getHeight().longValue());
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void skippedBlocks_deliveredInOrder() {
+    poller.poll();
+    lastHeight.set(13);
+    poller.poll();
+    poller.poll();
+
+    assertEquals(Arrays.asList(10L, 11L, 12L, 13L), delivered);
+    assertEquals(13, poller.getHeight());
+  }
+
+  @Test
+  public void farBehind_catchesUpFromBoundedHeight() {
+    poller.poll();
+    lastHeight.set(10 + BlockPoller.MAX_CATCH_UP_BLOCKS + 5);
+    poller.poll();
+
+    assertEquals(BlockPoller.MAX_CATCH_UP_BLOCKS + 2, delivered.size());
+    assertEquals(Long.valueOf(lastHeight.get() - BlockPoller.MAX_CATCH_UP_BLOCKS),
+        delivered.get(1));
+  }
+
+  @Test
+  public void failedCatchUp_retriedOnNextPoll() {
+    poller.poll();
+    lastHeight.set(12);
+    node.fail("icx_getBlockByHeight");
+    poller.poll();
+    assertEquals(Arrays.asList(10L), delivered);
+
+    node.respond("icx_getBlockByHeight", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        return new JSONObject().put("height", Long.decode(params.getString("height")));
+      }
+    });
+    poller.poll();
+    assertEquals(Arrays.asList(10L, 11L, 12L), delivered);
+  }
+}
@@ -0,0 +1,188 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link DeadlinePropagator}.
+ */
+@RunWith(JUnit4.class)
+public class DeadlinePropagatorTest {
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private MockIconNode node;
+  private MockIconNode other;
+  private IconClient iconClient;
+
+  @Before
+  public void setUp() throws Exception {
+    node = newNode();
+    other = newNode();
+  }
+
+  @After
+  public void tearDown() {
+    if (iconClient != null) {
+      iconClient.shutdown();
+    }
+    node.stop();
+    other.stop();
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void cancelledContext_abortsCallInFlight() throws Exception {
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    Context.CancellableContext context = Context.current().withCancellation();
+    ListenableFuture<Block> block = context.call(new Callable<ListenableFuture<Block>>() {
+      @Override
+      public ListenableFuture<Block> call() {
+        return iconClient.executeAsync(iconClient.getIconService().getLastBlock());
+      }
+    });
+    Thread.sleep(100);
+
+    long start = System.nanoTime();
+    context.cancel(null);
+    try {
+      block.get(5, TimeUnit.SECONDS);
+      fail("Expected the upstream call to be cancelled");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IOException);
+    }
+
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1, iconClient.getAbortedCallCount());
+  }
+
+  @Test
+  public void cancelledCaller_leavesCoalescedLookupRunning() throws Exception {
+    node.setLatency(300, TimeUnit.MILLISECONDS);
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    final BalanceBatcher batcher = new BalanceBatcher(iconClient, 0, TimeUnit.MILLISECONDS, 1);
+    final Address address = new Address(CommonData.ADDRESS_1);
+    Callable<ListenableFuture<BigInteger>> lookup = new Callable<ListenableFuture<BigInteger>>() {
+      @Override
+      public ListenableFuture<BigInteger> call() {
+        return batcher.getBalance(address);
+      }
+    };
+    // With no window the lookup is sent on the first caller's thread, under its context.
+    Context.CancellableContext first = Context.current().withCancellation();
+    first.call(lookup);
+    ListenableFuture<BigInteger> second = Context.current().withCancellation().call(lookup);
+    Thread.sleep(100);
+
+    first.cancel(null);
+
+    assertEquals(BigInteger.TEN.pow(20), second.get(5, TimeUnit.SECONDS));
+    assertEquals(1, batcher.getCoalescedCount());
+    assertEquals(0, iconClient.getAbortedCallCount());
+  }
+
+  @Test
+  public void cancelledContext_skipsCall() throws Exception {
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    Context.CancellableContext context = Context.current().withCancellation();
+    context.cancel(null);
+
+    Context previous = context.attach();
+    try {
+      iconClient.getIconService().getLastBlock().execute();
+      fail("Expected the upstream call to be skipped");
+    } catch (IOException expected) {
+      // Cancelled before it was sent.
+    } finally {
+      context.detach(previous);
+    }
+
+    assertEquals(0, node.getHttpRequestCount());
+    assertEquals(1, iconClient.getSkippedCallCount());
+  }
+
+  @Test
+  public void deadline_boundsRoutedAttempts() throws Exception {
+    iconClient = IconClient.newBuilder()
+        .router(UpstreamRouter.newBuilder(Arrays.asList(node.getEndpoint(), other.getEndpoint()))
+            .initialHedgeDelay(20, TimeUnit.MILLISECONDS)
+            .build())
+        .build().start();
+    Context.CancellableContext context =
+        Context.current().withDeadlineAfter(200, TimeUnit.MILLISECONDS, scheduler);
+
+    long start = System.nanoTime();
+    Context previous = context.attach();
+    try {
+      iconClient.executeAsync(iconClient.getIconService().getLastBlock()).get(5, TimeUnit.SECONDS);
+      fail("Expected the upstream call to time out");
+    } catch (ExecutionException expected) {
+      // Both attempts were cut short at the deadline.
+    } finally {
+      context.detach(previous);
+    }
+
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1, iconClient.getDeadlineBoundedCallCount());
+    assertEquals(1, iconClient.getRouter().getHedgeCount());
+  }
+
+  @Test
+  public void sendIcx_deadlineExceededWithoutWaitingForNode() throws Exception {
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName)
+        .addService(GreeterImpl.newBuilder(iconClient).build()).build().start());
+    GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).build()));
+
+    try {
+      stub.withDeadlineAfter(200, TimeUnit.MILLISECONDS).sendICX(SendIcxRequest.getDefaultInstance());
+      fail("Expected DEADLINE_EXCEEDED");
+    } catch (StatusRuntimeException expected) {
+      assertEquals(Status.Code.DEADLINE_EXCEEDED, expected.getStatus().getCode());
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    while (iconClient.getAbortedCallCount() == 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, iconClient.getAbortedCallCount());
+    assertEquals(0, iconClient.getInFlightCount());
+  }
+
+  private static MockIconNode newNode() throws Exception {
+    return new MockIconNode(1, TimeUnit.SECONDS).start(0)
+        .respond("icx_getLastBlock", new JSONObject().put("height", 1))
+        .respond("icx_call", "0x1")
+        .setLatency(3000, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,121 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link DidIndex}.
+ */
+@RunWith(JUnit4.class)
+public class DidIndexTest {
+  private static final String PUBLIC_KEY = "04" + repeat("ab", 64);
+  private static final String ADDRESS = "hx" + repeat("12", 20);
+  private static final String TX_HASH = "0x" + repeat("cd", 32);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private File file;
+  private DidIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(folder.getRoot(), "did-index");
+    index = DidIndex.open(file, 16, 1 << 12);
+  }
+
+  @After
+  public void tearDown() {
+    index.close();
+  }
+
+  @Test
+  public void walletThenDid_mergedAndKeptAcrossReopen() throws Exception {
+    assertTrue(index.record(PUBLIC_KEY, PUBLIC_KEY, ADDRESS, ""));
+    assertTrue(index.record(PUBLIC_KEY, PUBLIC_KEY, "", TX_HASH));
+    index.close();
+
+    index = DidIndex.open(file, 1, 1);
+    LookupDIDReply entry = index.lookup("0x" + PUBLIC_KEY.toUpperCase());
+    assertEquals(PUBLIC_KEY, entry.getPublickey());
+    assertEquals(PUBLIC_KEY, entry.getDid());
+    assertEquals(ADDRESS, entry.getAddress());
+    assertEquals(TX_HASH, entry.getTxhash());
+    assertEquals(1, index.size());
+    assertNull(index.lookup("04" + repeat("ef", 64)));
+  }
+
+  @Test
+  public void otherValues_keptAsText() throws Exception {
+    assertTrue(index.record(PUBLIC_KEY, "did:icon:01:1234", "not an address", ""));
+
+    LookupDIDReply entry = index.lookup(PUBLIC_KEY);
+    assertEquals("did:icon:01:1234", entry.getDid());
+    assertEquals("not an address", entry.getAddress());
+    assertEquals("", entry.getTxhash());
+  }
+
+  @Test
+  public void full_dropsNewEntries() throws Exception {
+    index.close();
+    index = DidIndex.open(new File(folder.getRoot(), "small"), 1, 60);
+
+    assertTrue(index.record(PUBLIC_KEY, PUBLIC_KEY, ADDRESS, ""));
+    // No room left for the entry with its transaction hash.
+    assertFalse(index.record(PUBLIC_KEY, PUBLIC_KEY, "", TX_HASH));
+    assertEquals(ADDRESS, index.lookup(PUBLIC_KEY).getAddress());
+    assertEquals("", index.lookup(PUBLIC_KEY).getTxhash());
+  }
+
+  @Test
+  public void lookupDid_findsCreatedWallet() throws Exception {
+    IconClient iconClient = IconClient.newBuilder().build();
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).didIndex(index).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName)
+        .directExecutor().addService(greeter).build().start());
+    GreeterGrpc.GreeterBlockingStub stub = GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+
+    CreateKeyWalletReply wallet = stub.createKeyWallet(CreateKeyWalletRequest.getDefaultInstance());
+    LookupDIDReply found =
+        stub.lookupDID(LookupDIDRequest.newBuilder().setPublickey(wallet.getPublickey()).build());
+
+    assertEquals(wallet.getDid(), found.getDid());
+    assertEquals(wallet.getAddress(), found.getAddress());
+    try {
+      stub.lookupDID(LookupDIDRequest.newBuilder().setPublickey(PUBLIC_KEY).build());
+      fail("Expected NOT_FOUND");
+    } catch (StatusRuntimeException expected) {
+      assertEquals(Status.Code.NOT_FOUND, expected.getStatus().getCode());
+    }
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      result.append(s);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,144 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import foundation.icon.icx.KeyWallet;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link DidJobQueue}.
+ */
+@RunWith(JUnit4.class)
+public class DidJobQueueTest {
+  private static final String TX_HASH =
+      "0x2600770376fbf291d3d445054d45ed15280dd33c2038931aace3f7ea2ab59dbc";
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final ConcurrentLinkedQueue<JSONObject> sent = new ConcurrentLinkedQueue<JSONObject>();
+  private MockIconNode node;
+  private IconClient iconClient;
+  private DidPipeline pipeline;
+  private DidJobQueue queue;
+  private File journal;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_sendTransaction", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        sent.add(params);
+        return TX_HASH;
+      }
+    });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    pipeline = DidPipeline.newBuilder(iconClient, new SignerPool(Arrays.asList(KeyWallet.create()))).build();
+    journal = new File(folder.getRoot(), "did-journal");
+  }
+
+  @After
+  public void tearDown() {
+    if (queue != null) {
+      queue.shutdown();
+    }
+    pipeline.shutdown();
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void job_answeredOnceJournaledThenSubmitted() throws Exception {
+    pipeline.start();
+    queue = newQueue().start();
+
+    DIDJob job = queue.submit("", "publickey").get(5, TimeUnit.SECONDS);
+
+    assertEquals(1, job.getJobId());
+    DIDJob finished = awaitFinished(job.getJobId());
+    assertEquals(DIDJob.State.SUBMITTED, finished.getState());
+    assertEquals(TX_HASH, finished.getTxhash());
+    assertEquals(1, sent.size());
+    assertNull(queue.get(2));
+  }
+
+  @Test
+  public void sameKey_returnsSameJob() throws Exception {
+    pipeline.start();
+    queue = newQueue().start();
+
+    long first = queue.submit("key", "publickey").get(5, TimeUnit.SECONDS).getJobId();
+    long second = queue.submit("key", "publickey").get(5, TimeUnit.SECONDS).getJobId();
+    awaitFinished(first);
+    long third = queue.submit("key", "publickey").get(5, TimeUnit.SECONDS).getJobId();
+
+    assertEquals(first, second);
+    assertEquals(first, third);
+    assertEquals(1, sent.size());
+    assertEquals(1, queue.getSubmittedCount());
+    assertEquals(2, queue.getDeduplicatedCount());
+  }
+
+  @Test
+  public void restart_replaysUnfinishedJobs() throws Exception {
+    // The pipeline refuses everything until it is started, so nothing is sent yet.
+    queue = newQueue().start();
+    long first = queue.submit("a", "publickey-a").get(5, TimeUnit.SECONDS).getJobId();
+    long second = queue.submit("b", "publickey-b").get(5, TimeUnit.SECONDS).getJobId();
+    queue.shutdown();
+    assertEquals(0, sent.size());
+
+    pipeline.start();
+    queue = newQueue().start();
+
+    assertEquals(2, queue.getReplayedCount());
+    assertEquals(DIDJob.State.SUBMITTED, awaitFinished(first).getState());
+    assertEquals(DIDJob.State.SUBMITTED, awaitFinished(second).getState());
+    assertEquals(2, sent.size());
+    // Keys and ids survive the restart.
+    assertEquals(second, queue.submit("b", "publickey-b").get(5, TimeUnit.SECONDS).getJobId());
+    assertEquals(second + 1, queue.submit("c", "publickey-c").get(5, TimeUnit.SECONDS).getJobId());
+  }
+
+  @Test
+  public void restart_keepsFinishedJobs() throws Exception {
+    pipeline.start();
+    queue = newQueue().start();
+    long id = queue.submit("key", "publickey").get(5, TimeUnit.SECONDS).getJobId();
+    awaitFinished(id);
+    queue.shutdown();
+
+    queue = newQueue().start();
+
+    assertEquals(0, queue.getReplayedCount());
+    assertEquals(TX_HASH, queue.get(id).getTxhash());
+    Thread.sleep(100);
+    assertEquals(1, sent.size());
+  }
+
+  private DidJobQueue newQueue() {
+    return new DidJobQueue(pipeline, journal, 1 << 16, 4, 100);
+  }
+
+  private DIDJob awaitFinished(long id) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    DIDJob job = queue.get(id);
+    while (job.getState() == DIDJob.State.QUEUED && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+      job = queue.get(id);
+    }
+    return job;
+  }
+}
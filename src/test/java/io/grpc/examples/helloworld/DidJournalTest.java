@@ -0,0 +1,101 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link DidJournal}.
+ */
+@RunWith(JUnit4.class)
+public class DidJournalTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<String> visited = new ArrayList<String>();
+  private final DidJournal.Visitor visitor = new DidJournal.Visitor() {
+    @Override
+    public void visit(byte[] record) {
+      visited.add(new String(record, StandardCharsets.UTF_8));
+    }
+  };
+
+  @Test
+  public void records_surviveReopenAndShareFlushes() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    DidJournal journal = DidJournal.open(file, 1 << 16, visitor);
+    List<ListenableFuture<Void>> flushed = new ArrayList<ListenableFuture<Void>>();
+    for (int i = 0; i < 100; i++) {
+      flushed.add(journal.append(record(i)));
+    }
+    Futures.allAsList(flushed).get(5, TimeUnit.SECONDS);
+    assertTrue(journal.getFlushCount() < 100);
+    journal.close();
+
+    DidJournal.open(file, 1, visitor).close();
+    assertEquals(100, visited.size());
+    assertEquals("record 99", visited.get(99));
+  }
+
+  @Test
+  public void damagedRecord_endsJournal() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    DidJournal journal = DidJournal.open(file, 1 << 10, null);
+    journal.append(record(1));
+    long end = 16 + 8 + record(1).length;
+    journal.append(record(2));
+    journal.append(record(3)).get(5, TimeUnit.SECONDS);
+    journal.close();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      // Flip a payload byte of the second record.
+      raf.seek(end + 8);
+      raf.write('X');
+    }
+
+    journal = DidJournal.open(file, 1 << 10, visitor);
+    assertEquals(Arrays.asList("record 1"), visited);
+    // New records overwrite the damaged one.
+    journal.append(record(4)).get(5, TimeUnit.SECONDS);
+    journal.close();
+    visited.clear();
+    DidJournal.open(file, 1 << 10, visitor).close();
+    assertEquals(Arrays.asList("record 1", "record 4"), visited);
+  }
+
+  @Test
+  public void rewrite_makesRoom() throws Exception {
+    File file = new File(folder.getRoot(), "journal");
+    DidJournal journal = DidJournal.open(file, 16 + 3 * (8 + record(1).length), null);
+    journal.append(record(1));
+    journal.append(record(2));
+    journal.append(record(3));
+    assertFalse(journal.hasRoom(record(4).length));
+
+    journal.rewrite(Arrays.asList(record(3)));
+    assertTrue(journal.hasRoom(record(4).length));
+    journal.append(record(4)).get(5, TimeUnit.SECONDS);
+    journal.close();
+
+    DidJournal.open(file, 1, visitor).close();
+    assertEquals(Arrays.asList("record 3", "record 4"), visited);
+  }
+
+  private static byte[] record(int n) {
+    return ("record " + n).getBytes(StandardCharsets.UTF_8);
+  }
+}
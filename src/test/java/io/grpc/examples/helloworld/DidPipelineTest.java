@@ -0,0 +1,199 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link DidPipeline}.
+ */
+@RunWith(JUnit4.class)
+public class DidPipelineTest {
+  private static final String TX_HASH =
+      "0x2600770376fbf291d3d445054d45ed15280dd33c2038931aace3f7ea2ab59dbc";
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private final ConcurrentLinkedQueue<JSONObject> sent = new ConcurrentLinkedQueue<JSONObject>();
+  private MockIconNode node;
+  private IconClient iconClient;
+  private DidPipeline pipeline;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_sendTransaction", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        sent.add(params);
+        return TX_HASH;
+      }
+    });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+  }
+
+  @After
+  public void tearDown() {
+    if (pipeline != null) {
+      pipeline.shutdown();
+    }
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void transactions_signedInTurnWithDistinctNonces() throws Exception {
+    KeyWallet first = KeyWallet.create();
+    KeyWallet second = KeyWallet.create();
+    pipeline = DidPipeline.newBuilder(iconClient, new SignerPool(Arrays.asList(first, second)))
+        .signThreads(3)
+        .build()
+        .start();
+
+    List<ListenableFuture<Bytes>> hashes = new ArrayList<ListenableFuture<Bytes>>();
+    for (int i = 0; i < 10; i++) {
+      hashes.add(pipeline.submit("publickey-" + i));
+    }
+
+    for (Bytes hash : Futures.allAsList(hashes).get(5, TimeUnit.SECONDS)) {
+      assertEquals(TX_HASH, hash.toString());
+    }
+    assertEquals(10, sent.size());
+    Set<String> senders = new HashSet<String>();
+    Set<String> nonces = new HashSet<String>();
+    for (JSONObject tx : sent) {
+      senders.add(tx.getString("from"));
+      nonces.add(tx.getString("from") + "/" + tx.getString("nonce"));
+      assertTrue(tx.has("signature"));
+      assertEquals("create_did_from_pubkey", tx.getJSONObject("data").getString("method"));
+    }
+    assertEquals(new HashSet<String>(Arrays.asList(first.getAddress().toString(),
+        second.getAddress().toString())), senders);
+    assertEquals(10, nonces.size());
+    assertTrue(pipeline.getUpstreamCallCount() <= 10);
+  }
+
+  @Test
+  public void notStarted_rejects() throws Exception {
+    pipeline = DidPipeline.newBuilder(iconClient, HelloWorldServer.defaultSigners()).build();
+
+    try {
+      pipeline.submit("publickey").get();
+      fail("Expected the submission to be rejected");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof RejectedExecutionException);
+    }
+  }
+
+  @Test
+  public void upstreamError_failsSubmission() throws Exception {
+    node.fail("icx_sendTransaction");
+    pipeline = DidPipeline.newBuilder(iconClient, HelloWorldServer.defaultSigners()).build().start();
+
+    try {
+      pipeline.submit("publickey").get(5, TimeUnit.SECONDS);
+      fail("Expected the submission to fail");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void createDids_batchesKeysAndSummarizesInOrder() throws Exception {
+    node.setLatency(50, TimeUnit.MILLISECONDS);
+    pipeline = DidPipeline.newBuilder(iconClient, HelloWorldServer.defaultSigners())
+        .maxBatchSize(20)
+        .build()
+        .start();
+
+    CreateDIDsReply summary = createDids(200);
+
+    assertEquals(200, summary.getSubmitted());
+    assertEquals(0, summary.getFailed());
+    assertEquals(200, summary.getDidCount());
+    for (CreateDIDReply reply : summary.getDidList()) {
+      assertEquals(TX_HASH, reply.getTxhash());
+    }
+    assertEquals(200, sent.size());
+    // Keys are read and sent in groups of one batch each.
+    assertEquals(10, pipeline.getUpstreamCallCount());
+  }
+
+  @Test
+  public void createDids_reportsRefusedKeys() throws Exception {
+    pipeline = DidPipeline.newBuilder(iconClient, HelloWorldServer.defaultSigners()).build();
+
+    CreateDIDsReply summary = createDids(3);
+
+    assertEquals(0, summary.getSubmitted());
+    assertEquals(3, summary.getFailed());
+    assertEquals("DID pipeline not running", summary.getDid(2).getMessage());
+  }
+
+  private CreateDIDsReply createDids(int count) throws Exception {
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).didPipeline(pipeline).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    GreeterGrpc.GreeterStub stub = GreeterGrpc.newStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+
+    final AtomicReference<CreateDIDsReply> summary = new AtomicReference<CreateDIDsReply>();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+    StreamObserver<CreateDIDRequest> requests = stub.createDIDs(new StreamObserver<CreateDIDsReply>() {
+      @Override
+      public void onNext(CreateDIDsReply reply) {
+        summary.set(reply);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        error.set(t);
+        done.countDown();
+      }
+
+      @Override
+      public void onCompleted() {
+        done.countDown();
+      }
+    });
+    for (int i = 0; i < count; i++) {
+      requests.onNext(CreateDIDRequest.newBuilder().setPublickey("publickey-" + i).build());
+    }
+    requests.onCompleted();
+
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertEquals(null, error.get());
+    return summary.get();
+  }
+}
@@ -0,0 +1,224 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.RpcArray;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Status;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link EventScanner}.
+ */
+@RunWith(JUnit4.class)
+public class EventScannerTest {
+  private static final String SCORE = CommonData.DID_SCORE_ADDRESS;
+  private static final String OTHER_SCORE = CommonData.TOKEN_ADDRESS;
+  private static final String CREATED = "DIDCreated(str,Address)";
+  private static final String TRANSFER = "Transfer(Address,Address,int,bytes)";
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  /** Results the node knows, by hash. */
+  private final ConcurrentMap<String, JSONObject> results = new ConcurrentHashMap<String, JSONObject>();
+  private MockIconNode node;
+  private IconClient iconClient;
+  private EventScanner scanner;
+  private GreeterGrpc.GreeterStub stub;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_getTransactionResult", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        return results.get(params.getString("txHash"));
+      }
+    });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    scanner = new EventScanner(iconClient, 2).start();
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).eventScanner(scanner).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    stub = GreeterGrpc.newStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  @After
+  public void tearDown() {
+    scanner.shutdown();
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void blooms_skipBlocksAndResultsThatCannotMatch() throws Exception {
+    Recorder created = watch(WatchEventsRequest.newBuilder().addSignature(CREATED).build());
+    Recorder everything = watch(WatchEventsRequest.newBuilder().setScore(SCORE).build());
+    awaitStreams(2);
+    result(1, event(SCORE, CREATED, "did:icon:01:1"), event(SCORE, TRANSFER, "hx01"));
+    result(2, event(OTHER_SCORE, TRANSFER, "hx02"));
+
+    // Only the other SCORE is in the block bloom: nothing is fetched.
+    scanner.scan(block(10, bloom(event(OTHER_SCORE, TRANSFER)), 1, 2));
+    assertEquals(0, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(1, scanner.getSkippedCount());
+
+    // Both results are fetched in one batch, but only the first is decoded.
+    scanner.scan(block(11, bloom(event(SCORE, CREATED), event(OTHER_SCORE, TRANSFER)), 1, 2));
+    assertEquals(2, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(1, node.getHttpRequestCount());
+    assertEquals(1, scanner.getDecodedCount());
+
+    assertEquals(1, created.events.size());
+    EventNotification event = created.events.get(0);
+    assertEquals(SCORE, event.getScore());
+    assertEquals(CREATED, event.getSignature());
+    assertEquals(Arrays.asList("did:icon:01:1"), event.getIndexedList());
+    assertEquals(Arrays.asList("0x1"), event.getDataList());
+    assertEquals(hash(1), event.getTxhash());
+    assertEquals(11, event.getBlockHeight());
+    assertEquals(2, everything.events.size());
+    assertEquals(TRANSFER, everything.events.get(1).getSignature());
+    assertEquals(3, scanner.getDeliveredCount());
+  }
+
+  @Test
+  public void blockWithoutBloom_readsTransactionsSentToScore() throws Exception {
+    Recorder recorder = watch(WatchEventsRequest.getDefaultInstance());
+    awaitStreams(1);
+    result(1, event(SCORE, CREATED, "did:icon:01:1"));
+    result(2, event(OTHER_SCORE, TRANSFER, "hx02"));
+
+    scanner.scan(block(10, null, 1, 2));
+
+    assertEquals(1, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(1, recorder.events.size());
+    assertEquals(hash(1), recorder.events.get(0).getTxhash());
+  }
+
+  @Test
+  public void tooManyStreams_refused() throws Exception {
+    watch(WatchEventsRequest.getDefaultInstance());
+    watch(WatchEventsRequest.getDefaultInstance());
+    awaitStreams(2);
+
+    Recorder third = watch(WatchEventsRequest.getDefaultInstance());
+    assertEquals(Status.Code.RESOURCE_EXHAUSTED, Status.fromThrowable(third.error).getCode());
+    Recorder malformed = watch(WatchEventsRequest.newBuilder().setScore("cx12").build());
+    assertEquals(Status.Code.INVALID_ARGUMENT, Status.fromThrowable(malformed.error).getCode());
+  }
+
+  private Recorder watch(WatchEventsRequest request) {
+    Recorder recorder = new Recorder();
+    stub.watchEvents(request, recorder);
+    return recorder;
+  }
+
+  private void awaitStreams(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (scanner.getStreamCount() < count) {
+      if (System.nanoTime() > deadline) {
+        fail("Streams not open");
+      }
+      Thread.sleep(5);
+    }
+  }
+
+  private void result(int id, JSONObject... events) {
+    results.put(hash(id), new JSONObject()
+        .put("status", "0x1")
+        .put("txHash", hash(id))
+        .put("blockHeight", "0xa")
+        .put("logsBloom", bloom(events))
+        .put("eventLogs", new JSONArray(Arrays.asList(events))));
+  }
+
+  private static JSONObject event(String score, String signature, String... indexed) {
+    JSONArray items = new JSONArray().put(signature);
+    for (String item : indexed) {
+      items.put(item);
+    }
+    return new JSONObject()
+        .put("scoreAddress", score)
+        .put("indexed", items)
+        .put("data", new JSONArray().put("0x1"));
+  }
+
+  /** The bloom of {@code events}, holding their SCOREs and signatures. */
+  private static String bloom(JSONObject... events) {
+    byte[] bloom = new byte[LogsBloom.BYTES];
+    for (JSONObject event : events) {
+      LogsBloom.add(bloom, LogsBloom.scoreBits(event.getString("scoreAddress")));
+      LogsBloom.add(bloom, LogsBloom.signatureBits(event.getJSONArray("indexed").getString(0)));
+    }
+    return LogsBloom.toHex(bloom);
+  }
+
+  /** A block whose transaction 1 is sent to the DID SCORE and the others to the other SCORE. */
+  private static Block block(long height, String bloom, int... ids) {
+    RpcArray.Builder transactions = new RpcArray.Builder();
+    for (int id : ids) {
+      transactions.add(new RpcObject.Builder()
+          .put("version", new RpcValue(BigInteger.valueOf(3)))
+          .put("txHash", new RpcValue(hash(id)))
+          .put("from", new RpcValue(CommonData.ADDRESS_1))
+          .put("to", new RpcValue(id == 1 ? SCORE : OTHER_SCORE))
+          .build());
+    }
+    RpcObject.Builder block = new RpcObject.Builder()
+        .put("height", new RpcValue(BigInteger.valueOf(height)))
+        .put("confirmed_transaction_list", transactions.build());
+    if (bloom != null) {
+      block.put("logsBloom", new RpcValue(bloom));
+    }
+    return Converters.BLOCK.convertTo(block.build());
+  }
+
+  private static String hash(int id) {
+    return String.format("0x%064x", id);
+  }
+
+  private static final class Recorder implements StreamObserver<EventNotification> {
+    final List<EventNotification> events = new CopyOnWriteArrayList<EventNotification>();
+    volatile Throwable error;
+
+    @Override
+    public void onNext(EventNotification event) {
+      events.add(event);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link GreeterLoadGenerator}.
+ */
+@RunWith(JUnit4.class)
+public class GreeterLoadGeneratorTest {
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private ManagedChannel channel;
+
+  @Before
+  public void setUp() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(new FakeGreeter()).build().start());
+    channel = grpcCleanup.register(InProcessChannelBuilder.forName(serverName).build());
+  }
+
+  @Test
+  public void openLoop_issuesAtTargetRateAndCountsErrorsByStatus() throws Exception {
+    ObjectNode report = GreeterLoadGenerator.newBuilder(channel)
+        .mix("say-hello:1,check-balance:1")
+        .openLoop(true)
+        .qps(200)
+        .warmup(200, TimeUnit.MILLISECONDS)
+        .duration(1, TimeUnit.SECONDS)
+        .build()
+        .run();
+
+    // 200 calls due after the warm-up, give or take the one on the boundary.
+    assertEquals(200, report.get("calls").asLong(), 1);
+    assertEquals(0, report.get("shed").asLong());
+    JsonNode hello = report.get("scenarios").get("say-hello");
+    JsonNode balance = report.get("scenarios").get("check-balance");
+    assertEquals(0, hello.get("errors").asLong());
+    assertEquals(balance.get("count").asLong(), balance.get("errors").asLong());
+    assertEquals(balance.get("count").asLong(),
+        balance.get("errorsByStatus").get("UNAVAILABLE").asLong());
+    assertEquals(report.get("errors").asLong(), balance.get("errors").asLong());
+    assertTrue(hello.get("latencyMs").get("p50").asDouble() > 0);
+  }
+
+  @Test
+  public void closedLoop_reportsOnboardingStepsSeparately() throws Exception {
+    ObjectNode report = GreeterLoadGenerator.newBuilder(channel)
+        .mix("onboarding")
+        .concurrency(4)
+        .warmup(0, TimeUnit.SECONDS)
+        .duration(300, TimeUnit.MILLISECONDS)
+        .build()
+        .run();
+
+    JsonNode scenarios = report.get("scenarios");
+    long workflows = scenarios.get("onboarding").get("count").asLong();
+    assertTrue(workflows > 0);
+    assertEquals(0, report.get("errors").asLong());
+    assertEquals(workflows, scenarios.get("onboarding/create-did").get("count").asLong());
+    assertEquals(workflows, scenarios.get("onboarding/say-hello").get("count").asLong());
+    assertTrue(report.get("achievedQps").asDouble() > 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void openLoop_needsRate() {
+    GreeterLoadGenerator.newBuilder(channel).openLoop(true).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mix_rejectsUnknownScenario() {
+    GreeterLoadGenerator.newBuilder(channel).mix("say-goodbye:1");
+  }
+
+  /** Replies at once to every step of the onboarding, and fails CheckBalance. */
+  private static class FakeGreeter extends GreeterGrpc.GreeterImplBase {
+    @Override
+    public void sayHello(HelloRequest req, StreamObserver<HelloReply> responseObserver) {
+      reply(responseObserver, HelloReply.newBuilder().setMessage("Hello " + req.getName()).build());
+    }
+
+    @Override
+    public void createKeyWallet(CreateKeyWalletRequest req,
+        StreamObserver<CreateKeyWalletReply> responseObserver) {
+      reply(responseObserver, CreateKeyWalletReply.newBuilder().setPublickey("publickey").build());
+    }
+
+    @Override
+    public void createKeystoreFile(CreateKeystoreFileRequest req,
+        StreamObserver<CreateKeystoreFileReply> responseObserver) {
+      reply(responseObserver, CreateKeystoreFileReply.getDefaultInstance());
+    }
+
+    @Override
+    public void checkBalance(CheckBalanceRequest req,
+        StreamObserver<CheckBalanceReply> responseObserver) {
+      if (req.getAddress().isEmpty()) {
+        // From an onboarding workflow.
+        reply(responseObserver, CheckBalanceReply.getDefaultInstance());
+        return;
+      }
+      responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+    }
+
+    @Override
+    public void sendICX(SendIcxRequest req, StreamObserver<SendIcxReply> responseObserver) {
+      reply(responseObserver, SendIcxReply.getDefaultInstance());
+    }
+
+    @Override
+    public void createDID(CreateDIDRequest req, StreamObserver<CreateDIDReply> responseObserver) {
+      reply(responseObserver, CreateDIDReply.getDefaultInstance());
+    }
+
+    private static <T> void reply(StreamObserver<T> responseObserver, T reply) {
+      responseObserver.onNext(reply);
+      responseObserver.onCompleted();
+    }
+  }
+}
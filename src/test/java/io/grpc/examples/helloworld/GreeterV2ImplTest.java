@@ -0,0 +1,177 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.examples.helloworld.v2.CheckBalanceRequest;
+import io.grpc.examples.helloworld.v2.CheckBalancesReply;
+import io.grpc.examples.helloworld.v2.CheckBalancesRequest;
+import io.grpc.examples.helloworld.v2.CreateDIDReply;
+import io.grpc.examples.helloworld.v2.CreateDIDRequest;
+import io.grpc.examples.helloworld.v2.CreateKeyWalletReply;
+import io.grpc.examples.helloworld.v2.CreateKeyWalletRequest;
+import io.grpc.examples.helloworld.v2.CreateKeystoreFileRequest;
+import io.grpc.examples.helloworld.v2.GreeterV2Grpc;
+import io.grpc.examples.helloworld.v2.LookupDIDReply;
+import io.grpc.examples.helloworld.v2.LookupDIDRequest;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.io.File;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link GreeterV2Impl}.
+ */
+@RunWith(JUnit4.class)
+public class GreeterV2ImplTest {
+  private static final String TX_HASH =
+      "0x2600770376fbf291d3d445054d45ed15280dd33c2038931aace3f7ea2ab59dbc";
+  private static final String RICH = "hx" + String.format("%040x", 42);
+  private static final BigInteger RICH_BALANCE = BigInteger.ONE.shiftLeft(200);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private MockIconNode node;
+  private IconClient iconClient;
+  private DidPipeline pipeline;
+  private DidIndex index;
+  private GreeterGrpc.GreeterBlockingStub v1;
+  private GreeterV2Grpc.GreeterV2BlockingStub v2;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0)
+        .respond("icx_sendTransaction", TX_HASH)
+        .respond("icx_getBalance", new MockIconNode.Responder() {
+          @Override
+          public Object respond(JSONObject params) {
+            return params.getString("address").equals(RICH) ? "0x" + RICH_BALANCE.toString(16) : "0x0";
+          }
+        });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    pipeline = DidPipeline.newBuilder(iconClient, HelloWorldServer.defaultSigners()).build().start();
+    index = DidIndex.open(new File(folder.getRoot(), "did-index"), 16, 1 << 12);
+    BalanceCache cache = new BalanceCache(
+        new BalanceBatcher(iconClient, 0, TimeUnit.MILLISECONDS, 1), 0, 1, TimeUnit.MILLISECONDS);
+    KeyWalletGenerator generator = new KeyWalletGenerator(1);
+    KeystoreEngine keystoreEngine = new KeystoreEngine(1, 0);
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient)
+        .balanceCache(cache)
+        .didPipeline(pipeline)
+        .didIndex(index)
+        .keyWalletGenerator(generator)
+        .keystoreEngine(keystoreEngine)
+        .build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter)
+        .addService(new GreeterV2Impl(cache, pipeline, index, generator, keystoreEngine, false))
+        .build().start());
+    ManagedChannel channel =
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build());
+    v1 = GreeterGrpc.newBlockingStub(channel);
+    v2 = GreeterV2Grpc.newBlockingStub(channel);
+  }
+
+  @After
+  public void tearDown() {
+    pipeline.shutdown();
+    index.close();
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void walletAndDid_sharedWithV1() throws Exception {
+    CreateKeyWalletReply wallet = v2.createKeyWallet(CreateKeyWalletRequest.getDefaultInstance());
+    assertEquals(BinaryCodec.PRIVATE_KEY_BYTES, wallet.getPrivateKey().size());
+    assertEquals(BinaryCodec.PUBLIC_KEY_BYTES, wallet.getPublicKey().size());
+    assertEquals(0, wallet.getAddress().byteAt(0));
+    String address = BinaryCodec.address(wallet.getAddress().toByteArray());
+
+    CreateDIDReply did = v2.createDID(CreateDIDRequest.newBuilder().setPublicKey(wallet.getPublicKey()).build());
+    assertArrayEquals(BinaryCodec.hex(TX_HASH), did.getTxhash().toByteArray());
+
+    LookupDIDReply entry = v2.lookupDID(LookupDIDRequest.newBuilder().setPublicKey(wallet.getPublicKey()).build());
+    assertEquals(wallet.getPublicKey(), entry.getPublicKey());
+    assertEquals(wallet.getAddress(), entry.getAddress());
+    assertEquals(did.getTxhash(), entry.getTxhash());
+    assertTrue(entry.getDidIsPublicKey());
+    assertEquals("", entry.getDid());
+
+    String publicKey = BinaryCodec.hex(wallet.getPublicKey().toByteArray());
+    io.grpc.examples.helloworld.LookupDIDReply v1Entry =
+        v1.lookupDID(io.grpc.examples.helloworld.LookupDIDRequest.newBuilder().setPublickey(publicKey).build());
+    assertEquals(publicKey, v1Entry.getDid());
+    assertEquals(address, v1Entry.getAddress());
+    assertEquals(TX_HASH, v1Entry.getTxhash());
+  }
+
+  @Test
+  public void balances_minimalBigEndian() throws Exception {
+    CheckBalancesReply reply = v2.checkBalances(CheckBalancesRequest.newBuilder()
+        .addAddress(address(RICH))
+        .addAddress(address(CommonData.ADDRESS_1))
+        .build());
+
+    assertEquals(2, reply.getBalanceCount());
+    assertEquals(26, reply.getBalance(0).size());
+    assertEquals(RICH_BALANCE, new BigInteger(1, reply.getBalance(0).toByteArray()));
+    assertArrayEquals(new byte[] {0}, reply.getBalance(1).toByteArray());
+    assertEquals(reply.getBalance(0),
+        v2.checkBalance(CheckBalanceRequest.newBuilder().setAddress(address(RICH)).build()).getBalance());
+  }
+
+  @Test
+  public void malformedBytes_invalidArgument() throws Exception {
+    try {
+      v2.checkBalance(CheckBalanceRequest.newBuilder().setAddress(ByteString.copyFrom(new byte[20])).build());
+      fail("Expected a 20-byte address to be refused");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+    }
+    try {
+      v2.createDID(CreateDIDRequest.newBuilder().setPublicKey(ByteString.copyFrom(new byte[65])).build());
+      fail("Expected a prefixed public key to be refused");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+    }
+    try {
+      v2.createKeystoreFile(CreateKeystoreFileRequest.newBuilder()
+          .setPrivateKey(ByteString.copyFrom(new byte[31])).setPassword("password").build());
+      fail("Expected a short private key to be refused");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, e.getStatus().getCode());
+    }
+    try {
+      v2.lookupDID(LookupDIDRequest.newBuilder().setPublicKey(ByteString.copyFrom(new byte[64])).build());
+      fail("Expected an unknown key not to be found");
+    } catch (StatusRuntimeException e) {
+      assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+    }
+  }
+
+  private static ByteString address(String address) {
+    return ByteString.copyFrom(BinaryCodec.address(address));
+  }
+}
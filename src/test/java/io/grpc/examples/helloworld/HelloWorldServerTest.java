@@ -17,11 +17,20 @@
 package io.grpc.examples.helloworld;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.testing.GrpcCleanupRule;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -53,9 +62,12 @@ public class HelloWorldServerTest {
     // Generate a unique in-process server name.
     String serverName = InProcessServerBuilder.generateName();
 
+    // SayHello never reaches the ICON node, so the client is left unstarted.
+    GreeterImpl greeter = GreeterImpl.newBuilder(IconClient.newBuilder().build()).build();
+
     // Create a server, add service, start, and register for automatic graceful shutdown.
     grpcCleanup.register(InProcessServerBuilder
-        .forName(serverName).directExecutor().addService(new GreeterImpl()).build().start());
+        .forName(serverName).directExecutor().addService(greeter).build().start());
 
     GreeterGrpc.GreeterBlockingStub blockingStub = GreeterGrpc.newBlockingStub(
         // Create a client channel and register for automatic graceful shutdown.
@@ -67,4 +79,125 @@ public class HelloWorldServerTest {
 
     assertEquals("Hello test name", reply.getMessage());
   }
+
+  /**
+   * In non-blocking mode the balance is fetched through the asynchronous ICON path and the reply
+   * is sent from its callback.
+   */
+  @Test
+  public void greeterImpl_nonBlockingCheckBalance() throws Exception {
+    MockIconNode node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_getBalance", "0x2a");
+    IconClient iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+    BalanceCache cache = new BalanceCache(
+        new BalanceBatcher(iconClient, 0, TimeUnit.MILLISECONDS, 1), 100, 1, TimeUnit.MINUTES);
+    try {
+      String serverName = InProcessServerBuilder.generateName();
+      GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).balanceCache(cache).nonBlocking(true).build();
+      grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+          .addService(greeter).build().start());
+      GreeterGrpc.GreeterBlockingStub blockingStub = GreeterGrpc.newBlockingStub(
+          grpcCleanup.register(InProcessChannelBuilder.forName(serverName).build()));
+
+      CheckBalanceReply reply = blockingStub.checkBalance(
+          CheckBalanceRequest.newBuilder().setAddress(CommonData.ADDRESS_1).build());
+
+      assertEquals("42", reply.getBalance());
+      assertEquals(0, iconClient.getInFlightCount());
+
+      // A second lookup within the same block is served from the cache.
+      reply = blockingStub.checkBalance(
+          CheckBalanceRequest.newBuilder().setAddress(CommonData.ADDRESS_1).build());
+      assertEquals("42", reply.getBalance());
+      assertEquals(1, node.getCallCount("icx_getBalance"));
+    } finally {
+      iconClient.shutdown();
+      node.stop();
+    }
+  }
+
+  /**
+   * Non-blocking calls beyond the client's {@code maxRequests} wait for a dispatcher slot instead
+   * of failing upstream and being answered with an empty balance.
+   */
+  @Test
+  public void greeterImpl_nonBlockingCheckBalance_moreCallsThanMaxRequests() throws Exception {
+    final int maxRequests = 4;
+    final int calls = 50 * maxRequests;
+    MockIconNode node = new MockIconNode(1, TimeUnit.SECONDS).start(0)
+        .setLatency(5, TimeUnit.MILLISECONDS)
+        .respond("icx_getBalance", new MockIconNode.Responder() {
+          @Override
+          public Object respond(JSONObject params) {
+            return "0x" + params.getString("address").substring(2);
+          }
+        });
+    IconClient iconClient =
+        IconClient.newBuilder().endpoint(node.getEndpoint()).maxRequests(maxRequests).build().start();
+    BalanceCache cache = new BalanceCache(
+        new BalanceBatcher(iconClient, 0, TimeUnit.MILLISECONDS, 1), 2 * calls, 1, TimeUnit.MINUTES);
+    try {
+      String serverName = InProcessServerBuilder.generateName();
+      GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).balanceCache(cache).nonBlocking(true).build();
+      grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+          .addService(greeter).build().start());
+      GreeterGrpc.GreeterFutureStub stub = GreeterGrpc.newFutureStub(
+          grpcCleanup.register(InProcessChannelBuilder.forName(serverName).build()));
+
+      List<ListenableFuture<CheckBalanceReply>> replies = new ArrayList<ListenableFuture<CheckBalanceReply>>();
+      for (int i = 1; i <= calls; i++) {
+        replies.add(stub.checkBalance(
+            CheckBalanceRequest.newBuilder().setAddress("hx" + String.format("%040x", i)).build()));
+      }
+
+      List<CheckBalanceReply> balances = Futures.allAsList(replies).get(30, TimeUnit.SECONDS);
+      for (int i = 1; i <= calls; i++) {
+        assertEquals(Integer.toString(i), balances.get(i - 1).getBalance());
+      }
+      assertEquals(calls, node.getCallCount("icx_getBalance"));
+    } finally {
+      iconClient.shutdown();
+      node.stop();
+    }
+  }
+
+  @Test
+  public void greeterImpl_checkBalances_malformedAddress() throws Exception {
+    // The address is refused before any lookup, so the client is left unstarted.
+    IconClient iconClient = IconClient.newBuilder().build();
+    String serverName = InProcessServerBuilder.generateName();
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).nonBlocking(true).build();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    GreeterGrpc.GreeterBlockingStub blockingStub = GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+
+    try {
+      blockingStub.checkBalances(CheckBalancesRequest.newBuilder()
+          .addAddress(CommonData.ADDRESS_1).addAddress("hx12").build());
+      fail("Expected INVALID_ARGUMENT");
+    } catch (StatusRuntimeException expected) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, expected.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void greeterImpl_checkBalance_malformedAddress() throws Exception {
+    // The address is refused before any lookup, so the client is left unstarted.
+    IconClient iconClient = IconClient.newBuilder().build();
+    for (boolean nonBlocking : new boolean[] {false, true}) {
+      String serverName = InProcessServerBuilder.generateName();
+      GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).nonBlocking(nonBlocking).build();
+      grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+          .addService(greeter).build().start());
+      GreeterGrpc.GreeterBlockingStub blockingStub = GreeterGrpc.newBlockingStub(
+          grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+
+      try {
+        blockingStub.checkBalance(CheckBalanceRequest.newBuilder().setAddress("hx12").build());
+        fail("Expected INVALID_ARGUMENT");
+      } catch (StatusRuntimeException expected) {
+        assertEquals(Status.Code.INVALID_ARGUMENT, expected.getStatus().getCode());
+      }
+    }
+  }
 }
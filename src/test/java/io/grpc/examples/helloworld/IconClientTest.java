@@ -0,0 +1,53 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.data.Address;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link IconClient}.
+ */
+@RunWith(JUnit4.class)
+public class IconClientTest {
+  private static final int MAX_REQUESTS = 4;
+  private static final int CALLS = 50 * MAX_REQUESTS;
+
+  private MockIconNode node;
+  private IconClient iconClient;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).setLatency(5, TimeUnit.MILLISECONDS);
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).maxRequests(MAX_REQUESTS).build().start();
+  }
+
+  @After
+  public void tearDown() {
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void executeAsync_manyMoreCallsThanMaxRequests_allSucceed() throws Exception {
+    Address address = new Address(CommonData.ADDRESS_1);
+    List<ListenableFuture<BigInteger>> balances = new ArrayList<ListenableFuture<BigInteger>>();
+    for (int i = 0; i < CALLS; i++) {
+      balances.add(iconClient.executeAsync(iconClient.getIconService().getBalance(address)));
+    }
+
+    List<BigInteger> results = Futures.allAsList(balances).get(30, TimeUnit.SECONDS);
+    assertEquals(CALLS, results.size());
+    assertEquals(CALLS, node.getCallCount("icx_getBalance"));
+  }
+}
@@ -0,0 +1,98 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link KeyWalletGenerator}.
+ */
+@RunWith(JUnit4.class)
+public class KeyWalletGeneratorTest {
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private KeyWalletGenerator generator;
+
+  @Before
+  public void setUp() {
+    generator = new KeyWalletGenerator(3).start();
+  }
+
+  @After
+  public void tearDown() {
+    generator.shutdown();
+  }
+
+  @Test
+  public void generate_createsDistinctValidWallets() throws Exception {
+    List<KeyWallet> wallets = generator.generate(250).get(30, TimeUnit.SECONDS);
+
+    assertEquals(250, wallets.size());
+    Set<String> addresses = new HashSet<String>();
+    for (KeyWallet wallet : wallets) {
+      addresses.add(wallet.getAddress().toString());
+    }
+    assertEquals(250, addresses.size());
+    KeyWallet first = wallets.get(0);
+    assertEquals(first.getAddress(), KeyWallet.load(first.getPrivateKey()).getAddress());
+  }
+
+  @Test
+  public void createKeyWallets_streamsChunks() throws Exception {
+    Iterator<CreateKeyWalletsReply> replies = newStub().createKeyWallets(
+        CreateKeyWalletsRequest.newBuilder().setCount(250).build());
+
+    Set<String> addresses = new HashSet<String>();
+    int chunks = 0;
+    while (replies.hasNext()) {
+      for (CreateKeyWalletReply wallet : replies.next().getWalletList()) {
+        assertEquals(wallet.getAddress(),
+            KeyWallet.load(new Bytes(wallet.getPrivatekey())).getAddress().toString());
+        addresses.add(wallet.getAddress());
+      }
+      chunks++;
+    }
+    assertEquals(250, addresses.size());
+    assertEquals(3, chunks);
+  }
+
+  @Test
+  public void createKeyWallets_rejectsZeroCount() throws Exception {
+    try {
+      newStub().createKeyWallets(CreateKeyWalletsRequest.getDefaultInstance()).hasNext();
+      fail("Expected INVALID_ARGUMENT");
+    } catch (StatusRuntimeException expected) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, expected.getStatus().getCode());
+    }
+  }
+
+  private GreeterGrpc.GreeterBlockingStub newStub() throws Exception {
+    IconClient iconClient = IconClient.newBuilder().build();
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).keyWalletGenerator(generator).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    return GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+}
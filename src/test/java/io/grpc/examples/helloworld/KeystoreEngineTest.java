@@ -0,0 +1,147 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.crypto.Keystore;
+import foundation.icon.icx.crypto.KeystoreFile;
+import foundation.icon.icx.data.Bytes;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link KeystoreEngine}.
+ */
+@RunWith(JUnit4.class)
+public class KeystoreEngineTest {
+  private static final ObjectMapper MAPPER =
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private KeystoreEngine engine;
+
+  @After
+  public void tearDown() {
+    engine.shutdown();
+  }
+
+  @Test
+  public void encrypt_producesKeystoreForPassword() throws Exception {
+    engine = new KeystoreEngine(2, 4).start();
+    KeyWallet wallet = KeyWallet.create();
+
+    String keystore = engine.encrypt(wallet.getPrivateKey(), CommonData.PASSWORD).get();
+
+    assertSameKey(wallet.getPrivateKey(), decrypt(keystore, CommonData.PASSWORD));
+    assertEquals(1, engine.getCompletedCount());
+  }
+
+  @Test
+  public void fullQueue_rejectsAtOnce() throws Exception {
+    engine = new KeystoreEngine(1, 1).start();
+    Bytes privateKey = KeyWallet.create().getPrivateKey();
+
+    ListenableFuture<String> running = engine.encrypt(privateKey, CommonData.PASSWORD);
+    ListenableFuture<String> queued = engine.encrypt(privateKey, CommonData.PASSWORD);
+    ListenableFuture<String> refused = engine.encrypt(privateKey, CommonData.PASSWORD);
+
+    assertTrue(refused.isDone());
+    try {
+      refused.get();
+      fail("Expected the third keystore to be refused");
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof RejectedExecutionException);
+    }
+    running.get();
+    queued.get();
+    assertEquals(1, engine.getRejectedCount());
+  }
+
+  @Test
+  public void createKeystoreFiles_repliesInRequestOrder() throws Exception {
+    engine = new KeystoreEngine(2, 8).start();
+    List<KeyWallet> wallets = new ArrayList<KeyWallet>();
+    for (int i = 0; i < 5; i++) {
+      wallets.add(KeyWallet.create());
+    }
+    final List<String> keystores = new ArrayList<String>();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    StreamObserver<CreateKeystoreFileRequest> requests = newStub().createKeystoreFiles(
+        new StreamObserver<CreateKeystoreFileReply>() {
+          @Override
+          public void onNext(CreateKeystoreFileReply reply) {
+            keystores.add(reply.getKeystorefile());
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            error.set(t);
+            done.countDown();
+          }
+
+          @Override
+          public void onCompleted() {
+            done.countDown();
+          }
+        });
+    for (int i = 0; i < wallets.size(); i++) {
+      requests.onNext(CreateKeystoreFileRequest.newBuilder()
+          .setPrivatekey(wallets.get(i).getPrivateKey().toHexString(false))
+          .setPassword("password-" + i)
+          .build());
+    }
+    requests.onCompleted();
+
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertNull(error.get());
+    assertEquals(wallets.size(), keystores.size());
+    for (int i = 0; i < wallets.size(); i++) {
+      assertSameKey(wallets.get(i).getPrivateKey(), decrypt(keystores.get(i), "password-" + i));
+    }
+  }
+
+  private GreeterGrpc.GreeterStub newStub() throws Exception {
+    IconClient iconClient = IconClient.newBuilder().build();
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).keystoreEngine(engine).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    return GreeterGrpc.newStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  /** KeyWallet.create() may keep a leading sign byte, so keys are compared as numbers. */
+  private static void assertSameKey(Bytes expected, Bytes actual) {
+    assertEquals(new BigInteger(1, expected.toByteArray()), new BigInteger(1, actual.toByteArray()));
+  }
+
+  private static Bytes decrypt(String keystore, String password) throws Exception {
+    return Keystore.decrypt(password, MAPPER.readValue(keystore, KeystoreFile.class));
+  }
+}
@@ -0,0 +1,60 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest {
+  @Test
+  public void percentiles_withinOnePercent() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    // 1 ms to 10 s.
+    for (long millis = 1; millis <= 10000; millis++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    assertEquals(10000, histogram.getCount());
+    assertEquals(5000, histogram.getValueAtPercentile(50), 50);
+    assertEquals(9900, histogram.getValueAtPercentile(99), 99);
+    assertEquals(9990, histogram.getValueAtPercentile(99.9), 99.9);
+    assertEquals(10000, histogram.getValueAtPercentile(100), 0);
+    assertEquals(5000.5, histogram.getMeanMillis(), 1e-9);
+    assertEquals(10, histogram.getMax(TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void buckets_coverEveryValueInOrder() {
+    for (long value : new long[] {0, 1, 255, 256, 257, 1000, 123456789L, Long.MAX_VALUE}) {
+      int index = LatencyHistogram.index(value);
+      assertTrue(value + " above its bucket", value <= LatencyHistogram.highestValue(index));
+      if (index > 0) {
+        assertTrue(value + " below its bucket", value > LatencyHistogram.highestValue(index - 1));
+      }
+    }
+  }
+
+  @Test
+  public void add_mergesCountsAndMax() {
+    LatencyHistogram fast = new LatencyHistogram();
+    LatencyHistogram slow = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      fast.record(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    slow.record(TimeUnit.MILLISECONDS.toNanos(500));
+
+    fast.add(slow);
+
+    assertEquals(100, fast.getCount());
+    assertEquals(1, fast.getValueAtPercentile(99), 0.01);
+    assertEquals(500, fast.getValueAtPercentile(99.9), 5);
+    assertEquals(0, new LatencyHistogram().getValueAtPercentile(50), 0);
+  }
+}
@@ -0,0 +1,94 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link MappedResultStore}.
+ */
+@RunWith(JUnit4.class)
+public class MappedResultStoreTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void values_surviveReopen() throws Exception {
+    File file = new File(folder.getRoot(), "results");
+    MappedResultStore store = MappedResultStore.open(file, 1000, 1 << 20);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(store.put(key(i), value(i)));
+    }
+    // Values are never replaced.
+    assertTrue(store.put(key(1), value(2)));
+    store.close();
+
+    store = MappedResultStore.open(file, 1, 1);
+    assertEquals(1000, store.size());
+    for (int i = 0; i < 1000; i++) {
+      assertArrayEquals(value(i), store.get(key(i)));
+    }
+    assertNull(store.get(key(1000)));
+    store.close();
+  }
+
+  @Test
+  public void full_dropsNewValues() throws Exception {
+    MappedResultStore store = MappedResultStore.open(new File(folder.getRoot(), "results"), 4, 20);
+
+    assertTrue(store.put(key(1), value(1)));
+    assertFalse(store.put(key(2), new byte[13]));
+    assertTrue(store.put(key(3), value(3)));
+    assertEquals(2, store.size());
+    assertNull(store.get(key(2)));
+    store.close();
+  }
+
+  @Test
+  public void replace_survivesReopen() throws Exception {
+    File file = new File(folder.getRoot(), "results");
+    MappedResultStore store = MappedResultStore.open(file, 4, 1 << 10);
+    assertTrue(store.replace(key(1), value(1)));
+    assertTrue(store.put(key(2), value(2)));
+    assertTrue(store.replace(key(2), value(20)));
+    store.close();
+
+    store = MappedResultStore.open(file, 4, 1 << 10);
+    assertEquals(2, store.size());
+    assertArrayEquals(value(1), store.get(key(1)));
+    assertArrayEquals(value(20), store.get(key(2)));
+    store.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void otherFile_rejected() throws Exception {
+    File file = folder.newFile();
+    Files.write(file.toPath(), "not a result store".getBytes(StandardCharsets.UTF_8));
+
+    MappedResultStore.open(file, 4, 12);
+  }
+
+  private static byte[] key(int n) {
+    byte[] key = new byte[MappedResultStore.KEY_BYTES];
+    // Keys share their first bytes so that they collide in the table.
+    key[30] = (byte) (n >>> 8);
+    key[31] = (byte) n;
+    return key;
+  }
+
+  private static byte[] value(int n) {
+    return ("result " + n).getBytes(StandardCharsets.UTF_8);
+  }
+}
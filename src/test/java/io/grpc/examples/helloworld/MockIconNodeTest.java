@@ -0,0 +1,87 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Bytes;
+import foundation.icon.icx.data.TransactionResult;
+import foundation.icon.icx.transport.jsonrpc.RpcError;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link MockIconNode}.
+ */
+@RunWith(JUnit4.class)
+public class MockIconNodeTest {
+  private MockIconNode node;
+  private IconClient iconClient;
+
+  @After
+  public void tearDown() {
+    if (iconClient != null) {
+      iconClient.shutdown();
+    }
+    node.stop();
+  }
+
+  @Test
+  public void getBalance_returnsConfiguredBalance() throws Exception {
+    start(1, TimeUnit.MINUTES);
+    node.setBalance(CommonData.ADDRESS_1, BigInteger.valueOf(42));
+
+    assertEquals(BigInteger.valueOf(42), iconClient.getIconService()
+        .getBalance(new Address(CommonData.ADDRESS_1)).execute());
+    assertEquals(1, node.getCallCount());
+  }
+
+  @Test
+  public void sentTransaction_succeedsOnceNextBlockExists() throws Exception {
+    start(200, TimeUnit.MILLISECONDS);
+    RpcObject params = new RpcObject.Builder().put("signature", new RpcValue("c2lnbmF0dXJl")).build();
+
+    RpcItem hash = iconClient.executeBatchAsync(Collections.singletonList(
+        iconClient.newRequest("icx_sendTransaction", params))).get(0).get(5, TimeUnit.SECONDS);
+    Bytes txHash = hash.asBytes();
+    try {
+      iconClient.getIconService().getTransactionResult(txHash).execute();
+      fail("Expected the transaction to be pending");
+    } catch (RpcError expected) {
+      assertEquals(-32602, expected.getCode());
+    }
+    Thread.sleep(500);
+
+    TransactionResult result = iconClient.getIconService().getTransactionResult(txHash).execute();
+    assertEquals(BigInteger.ONE, result.getStatus());
+    assertEquals(1, iconClient.getIconService().getBlock(result.getBlockHeight()).execute()
+        .getTransactions().size());
+  }
+
+  @Test
+  public void errorRate_failsCalls() throws Exception {
+    start(1, TimeUnit.MINUTES);
+    node.setErrorRate(1);
+
+    try {
+      iconClient.getIconService().getLastBlock().execute();
+      fail("Expected an injected error");
+    } catch (RpcError expected) {
+      assertEquals(-32000, expected.getCode());
+    }
+    assertEquals(1, node.getErrorCount());
+  }
+
+  private void start(long blockInterval, TimeUnit unit) throws Exception {
+    node = new MockIconNode(blockInterval, unit).start(0);
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+  }
+}
@@ -0,0 +1,167 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Status;
+import io.grpc.examples.helloworld.OnboardingWorkflow.Result;
+import io.grpc.examples.helloworld.OnboardingWorkflow.Step;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link OnboardingWorkflow}.
+ */
+@RunWith(JUnit4.class)
+public class OnboardingWorkflowTest {
+  /** How long each step after CreateKeyWallet takes on the fake server. */
+  private static final long STEP_MILLIS = 200;
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+  private volatile boolean walletFails;
+  private volatile long didMillis = STEP_MILLIS;
+  private OnboardingWorkflow.Builder workflow;
+
+  @Before
+  public void setUp() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(new SlowGreeter()).build().start());
+    workflow = OnboardingWorkflow.newBuilder(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  public void independentSteps_runConcurrently() throws Exception {
+    Result result = workflow.build().run("world").get(5, TimeUnit.SECONDS);
+
+    assertTrue(result.getFailures().toString(), result.isSuccessful());
+    assertEquals("Hello world", result.getReply(Step.SAY_HELLO, HelloReply.class).getMessage());
+    assertEquals("publickey", result.getReply(Step.CREATE_DID, CreateDIDReply.class).getTxhash());
+    // Four steps of 200 ms after the wallet, in parallel rather than one after another.
+    assertTrue(result.getElapsed(TimeUnit.MILLISECONDS) < 3 * STEP_MILLIS);
+    assertTrue(result.getStepElapsed(Step.SEND_ICX, TimeUnit.MILLISECONDS) >= STEP_MILLIS);
+  }
+
+  @Test
+  public void manyWorkflows_shareOneChannel() throws Exception {
+    OnboardingWorkflow onboarding = workflow.build();
+    List<ListenableFuture<Result>> runs = new ArrayList<ListenableFuture<Result>>();
+    long start = System.nanoTime();
+    for (int i = 0; i < 50; i++) {
+      runs.add(onboarding.run("user-" + i));
+    }
+
+    for (Result result : Futures.allAsList(runs).get(5, TimeUnit.SECONDS)) {
+      assertTrue(result.isSuccessful());
+    }
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(3 * STEP_MILLIS));
+  }
+
+  @Test
+  public void slowStep_failsAloneAtItsDeadline() throws Exception {
+    didMillis = 2000;
+
+    Result result = workflow.deadline(Step.CREATE_DID, 100, TimeUnit.MILLISECONDS).build().run("world")
+        .get(5, TimeUnit.SECONDS);
+
+    assertEquals(Status.Code.DEADLINE_EXCEEDED, result.getFailure(Step.CREATE_DID).getCode());
+    assertNull(result.getReply(Step.CREATE_DID, CreateDIDReply.class));
+    assertEquals(1, result.getFailures().size());
+    assertTrue(result.getElapsed(TimeUnit.MILLISECONDS) < 3 * STEP_MILLIS);
+  }
+
+  @Test
+  public void walletFailure_failsDependentSteps() throws Exception {
+    walletFails = true;
+
+    Result result = workflow.build().run("world").get(5, TimeUnit.SECONDS);
+
+    assertNull(result.getFailure(Step.SAY_HELLO));
+    assertEquals(Status.Code.UNAVAILABLE, result.getFailure(Step.CREATE_KEY_WALLET).getCode());
+    for (Step step : new Step[] {Step.CREATE_KEYSTORE_FILE, Step.CHECK_BALANCE, Step.SEND_ICX,
+        Step.CREATE_DID}) {
+      assertEquals(Status.Code.UNAVAILABLE, result.getFailure(step).getCode());
+      // Never started.
+      assertEquals(-1, result.getStepElapsed(step, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  /** Replies at once to SayHello and CreateKeyWallet, and after a delay to the other steps. */
+  private class SlowGreeter extends GreeterGrpc.GreeterImplBase {
+    @Override
+    public void sayHello(HelloRequest req, StreamObserver<HelloReply> responseObserver) {
+      reply(responseObserver, HelloReply.newBuilder().setMessage("Hello " + req.getName()).build(), 0);
+    }
+
+    @Override
+    public void createKeyWallet(CreateKeyWalletRequest req,
+        StreamObserver<CreateKeyWalletReply> responseObserver) {
+      if (walletFails) {
+        responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+        return;
+      }
+      reply(responseObserver, CreateKeyWalletReply.newBuilder()
+          .setPrivatekey("privatekey").setPublickey("publickey").setAddress("address").build(), 0);
+    }
+
+    @Override
+    public void createKeystoreFile(CreateKeystoreFileRequest req,
+        StreamObserver<CreateKeystoreFileReply> responseObserver) {
+      reply(responseObserver, CreateKeystoreFileReply.getDefaultInstance(), STEP_MILLIS);
+    }
+
+    @Override
+    public void checkBalance(CheckBalanceRequest req, StreamObserver<CheckBalanceReply> responseObserver) {
+      reply(responseObserver, CheckBalanceReply.getDefaultInstance(), STEP_MILLIS);
+    }
+
+    @Override
+    public void sendICX(SendIcxRequest req, StreamObserver<SendIcxReply> responseObserver) {
+      reply(responseObserver, SendIcxReply.getDefaultInstance(), STEP_MILLIS);
+    }
+
+    @Override
+    public void createDID(CreateDIDRequest req, StreamObserver<CreateDIDReply> responseObserver) {
+      reply(responseObserver, CreateDIDReply.newBuilder().setTxhash(req.getPublickey()).build(), didMillis);
+    }
+
+    private <T> void reply(final StreamObserver<T> responseObserver, final T reply, long delayMillis) {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            responseObserver.onNext(reply);
+            responseObserver.onCompleted();
+          } catch (IllegalStateException e) {
+            // Cancelled at its deadline.
+          }
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+}
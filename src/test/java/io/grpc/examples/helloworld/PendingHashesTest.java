@@ -0,0 +1,91 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link PendingHashes}.
+ */
+@RunWith(JUnit4.class)
+public class PendingHashesTest {
+  @Test
+  public void addContainsRemove() {
+    PendingHashes hashes = new PendingHashes(4);
+
+    assertTrue(hashes.add(hash(1), 100));
+    assertFalse(hashes.add(hash(1), 200));
+    assertTrue(hashes.contains(hash(1)));
+    assertFalse(hashes.contains(hash(2)));
+    assertEquals(1, hashes.size());
+
+    assertTrue(hashes.remove(hash(1)));
+    assertFalse(hashes.remove(hash(1)));
+    assertFalse(hashes.contains(hash(1)));
+    assertEquals(0, hashes.size());
+  }
+
+  @Test
+  public void manyHashes_surviveGrowthAndRemovals() {
+    PendingHashes hashes = new PendingHashes(16);
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue(hashes.add(hash(i), 100));
+    }
+    for (int i = 0; i < 10_000; i += 2) {
+      assertTrue(hashes.remove(hash(i)));
+    }
+    // Re-adding after removals reuses tombstones instead of growing forever.
+    for (int i = 10_000; i < 15_000; i++) {
+      assertTrue(hashes.add(hash(i), 100));
+    }
+
+    assertEquals(10_000, hashes.size());
+    for (int i = 0; i < 15_000; i++) {
+      assertEquals("hash " + i, i >= 10_000 || i % 2 == 1, hashes.contains(hash(i)));
+    }
+  }
+
+  @Test
+  public void sweep_resumesWhereItStoppedAndRemovesExpired() {
+    PendingHashes hashes = new PendingHashes(16);
+    for (int i = 0; i < 10; i++) {
+      hashes.add(hash(i), i < 3 ? 50 : 150);
+    }
+    List<byte[]> due = new ArrayList<byte[]>();
+    List<byte[]> expired = new ArrayList<byte[]>();
+
+    hashes.sweep(4, 100, due, expired);
+    hashes.sweep(6, 100, due, expired);
+
+    assertEquals(3, expired.size());
+    assertEquals(7, due.size());
+    assertEquals(7, hashes.size());
+    Set<Integer> seen = new HashSet<Integer>();
+    for (byte[] hash : expired) {
+      assertFalse(hashes.contains(hash));
+      seen.add(ByteBuffer.wrap(hash).getInt(28));
+    }
+    for (byte[] hash : due) {
+      assertTrue(hashes.contains(hash));
+      seen.add(ByteBuffer.wrap(hash).getInt(28));
+    }
+    assertEquals(10, seen.size());
+  }
+
+  /** A hash whose first and last bytes vary with {@code n}, like a real one. */
+  private static byte[] hash(int n) {
+    return ByteBuffer.allocate(PendingHashes.HASH_SIZE)
+        .putInt(0, n * 0x9E3779B9)
+        .putInt(28, n)
+        .array();
+  }
+}
@@ -0,0 +1,183 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Bytes;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.RpcArray;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.testing.GrpcCleanupRule;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link ReceiptTracker}.
+ */
+@RunWith(JUnit4.class)
+public class ReceiptTrackerTest {
+  private static final Bytes TX_1 = hash(1);
+  private static final Bytes TX_2 = hash(2);
+  private static final Bytes TX_3 = hash(3);
+
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  /** Results the node knows, by hash; other hashes are answered with an error. */
+  private final ConcurrentMap<String, JSONObject> results = new ConcurrentHashMap<String, JSONObject>();
+  private MockIconNode node;
+  private IconClient iconClient;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0).respond("icx_getTransactionResult", new MockIconNode.Responder() {
+      @Override
+      public Object respond(JSONObject params) {
+        return results.get(params.getString("txHash"));
+      }
+    });
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).build().start();
+  }
+
+  @After
+  public void tearDown() {
+    iconClient.shutdown();
+    node.stop();
+  }
+
+  @Test
+  public void tick_looksUpHashesInBlockFirstInOneBatch() throws Exception {
+    ReceiptTracker tracker = new ReceiptTracker(iconClient, 1, TimeUnit.MINUTES, 2, 1, TimeUnit.MINUTES);
+    for (int i = 10; i < 20; i++) {
+      tracker.track(hash(i));
+    }
+    ListenableFuture<TransactionStatus> first = tracker.watch(TX_1);
+    ListenableFuture<TransactionStatus> second = tracker.watch(TX_2);
+    results.put(TX_1.toString(), result(TX_1, 1, 12));
+    results.put(TX_2.toString(), result(TX_2, 0, 12).put("failure",
+        new JSONObject().put("code", "0x7d64").put("message", "Out of step")));
+
+    tracker.onNewBlock(block(12, TX_3, TX_2, TX_1));
+    tracker.tick();
+
+    assertEquals(TransactionStatus.Status.SUCCESS, first.get(5, TimeUnit.SECONDS).getStatus());
+    TransactionStatus failed = second.get(5, TimeUnit.SECONDS);
+    assertEquals(TransactionStatus.Status.FAILURE, failed.getStatus());
+    assertEquals("Out of step", failed.getFailure());
+    assertEquals(12, failed.getBlockHeight());
+    assertEquals(2, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(1, node.getHttpRequestCount());
+    assertEquals(10, tracker.getPendingCount());
+    // A finished hash is answered without another lookup.
+    assertEquals(TransactionStatus.Status.SUCCESS, tracker.watch(TX_1).get().getStatus());
+  }
+
+  @Test
+  public void timedOutHash_reportedExpiredWithoutLookup() throws Exception {
+    ReceiptTracker tracker = new ReceiptTracker(iconClient, 1, TimeUnit.MINUTES, 10, 1, TimeUnit.MILLISECONDS);
+    tracker.track(TX_1);
+    Thread.sleep(5);
+
+    tracker.tick();
+
+    TransactionStatus status = tracker.watch(TX_1).get(5, TimeUnit.SECONDS);
+    assertEquals(TransactionStatus.Status.EXPIRED, status.getStatus());
+    assertEquals(0, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(0, tracker.getPendingCount());
+    assertEquals(1, tracker.getExpiredCount());
+  }
+
+  @Test
+  public void watchTransactions_streamsEachStatusOnce() throws Exception {
+    ReceiptTracker tracker = new ReceiptTracker(iconClient, 1, TimeUnit.MINUTES, 10, 1, TimeUnit.MINUTES);
+    results.put(TX_1.toString(), result(TX_1, 1, 12));
+    results.put(TX_2.toString(), result(TX_2, 0, 13));
+
+    Iterator<TransactionStatus> statuses = newStub(tracker).watchTransactions(
+        WatchTransactionsRequest.newBuilder()
+            .addTxhash(TX_1.toString())
+            .addTxhash(TX_2.toString())
+            .addTxhash(TX_1.toString())
+            .build());
+    tracker.tick();
+
+    Map<String, TransactionStatus> received = new HashMap<String, TransactionStatus>();
+    while (statuses.hasNext()) {
+      TransactionStatus status = statuses.next();
+      assertNull(received.put(status.getTxhash(), status));
+    }
+    assertEquals(2, received.size());
+    assertEquals(TransactionStatus.Status.SUCCESS, received.get(TX_1.toString()).getStatus());
+    assertEquals(12, received.get(TX_1.toString()).getBlockHeight());
+    assertEquals(TransactionStatus.Status.FAILURE, received.get(TX_2.toString()).getStatus());
+    assertEquals(1, node.getHttpRequestCount());
+  }
+
+  @Test
+  public void watchTransactions_rejectsMalformedHash() throws Exception {
+    ReceiptTracker tracker = new ReceiptTracker(iconClient, 1, TimeUnit.MINUTES, 10, 1, TimeUnit.MINUTES);
+    try {
+      newStub(tracker).watchTransactions(
+          WatchTransactionsRequest.newBuilder().addTxhash("0x1234").build()).hasNext();
+      fail("Expected INVALID_ARGUMENT");
+    } catch (StatusRuntimeException expected) {
+      assertEquals(Status.Code.INVALID_ARGUMENT, expected.getStatus().getCode());
+    }
+    assertEquals(0, tracker.getPendingCount());
+  }
+
+  private GreeterGrpc.GreeterBlockingStub newStub(ReceiptTracker tracker) throws Exception {
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).receiptTracker(tracker).build();
+    String serverName = InProcessServerBuilder.generateName();
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName).directExecutor()
+        .addService(greeter).build().start());
+    return GreeterGrpc.newBlockingStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+  }
+
+  private static Bytes hash(int n) {
+    return new Bytes(String.format("0x%064x", n));
+  }
+
+  private static JSONObject result(Bytes hash, int status, long height) {
+    return new JSONObject()
+        .put("txHash", hash.toString())
+        .put("status", "0x" + Integer.toHexString(status))
+        .put("blockHeight", "0x" + Long.toHexString(height));
+  }
+
+  private static Block block(long height, Bytes... hashes) {
+    RpcArray.Builder transactions = new RpcArray.Builder();
+    for (Bytes hash : hashes) {
+      transactions.add(new RpcObject.Builder()
+          .put("version", new RpcValue(BigInteger.valueOf(3)))
+          .put("txHash", new RpcValue(hash))
+          .build());
+    }
+    return Converters.BLOCK.convertTo(new RpcObject.Builder()
+        .put("height", new RpcValue(BigInteger.valueOf(height)))
+        .put("confirmed_transaction_list", transactions.build())
+        .build());
+  }
+}
@@ -0,0 +1,181 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.Call;
+import foundation.icon.icx.data.Address;
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Bytes;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.RpcArray;
+import foundation.icon.icx.transport.jsonrpc.RpcError;
+import foundation.icon.icx.transport.jsonrpc.RpcItem;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import java.io.File;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link ResultCache}.
+ */
+@RunWith(JUnit4.class)
+public class ResultCacheTest {
+  private static final Bytes TX_1 = hash(1);
+  private static final Bytes TX_2 = hash(2);
+  private static final Address SCORE = new Address(CommonData.DID_SCORE_ADDRESS);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  /** Results the node knows, by hash; other hashes are answered with an error. */
+  private final ConcurrentMap<String, JSONObject> results = new ConcurrentHashMap<String, JSONObject>();
+  private MockIconNode node;
+  private IconClient iconClient;
+  private ResultCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    node = new MockIconNode(1, TimeUnit.SECONDS).start(0)
+        .respond("icx_call", "0x1")
+        .respond("icx_getTransactionResult", new MockIconNode.Responder() {
+          @Override
+          public Object respond(JSONObject params) {
+            return results.get(params.getString("txHash"));
+          }
+        });
+  }
+
+  @After
+  public void tearDown() {
+    if (iconClient != null) {
+      iconClient.shutdown();
+    }
+    if (cache != null) {
+      cache.shutdown();
+    }
+    node.stop();
+  }
+
+  @Test
+  public void transactionResult_cachedOnceInBlock() throws Exception {
+    start(ResultCache.newBuilder());
+    try {
+      iconClient.getIconService().getTransactionResult(TX_1).execute();
+      fail("Expected the transaction to be pending");
+    } catch (RpcError expected) {
+      // Not in a block yet.
+    }
+    results.put(TX_1.toString(), result(TX_1, 12));
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(BigInteger.valueOf(12),
+          iconClient.getIconService().getTransactionResult(TX_1).execute().getBlockHeight());
+    }
+
+    assertEquals(2, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(2, cache.getResultHitCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void scoreCall_cachedUntilNextBlock() throws Exception {
+    start(ResultCache.newBuilder());
+    call("get_did");
+    call("get_did");
+    // Nothing is cached before the height is known.
+    assertEquals(2, node.getCallCount("icx_call"));
+
+    cache.onNewBlock(block(5));
+    call("get_did");
+    call("get_did");
+    call("other");
+    assertEquals(4, node.getCallCount("icx_call"));
+    assertEquals(1, cache.getCallHitCount());
+
+    cache.onNewBlock(block(6));
+    call("get_did");
+    assertEquals(5, node.getCallCount("icx_call"));
+  }
+
+  @Test
+  public void batch_forwardsOnlyMisses() throws Exception {
+    start(ResultCache.newBuilder());
+    results.put(TX_1.toString(), result(TX_1, 12));
+    results.put(TX_2.toString(), result(TX_2, 13));
+    iconClient.getIconService().getTransactionResult(TX_1).execute();
+
+    List<ListenableFuture<RpcItem>> answers =
+        iconClient.executeBatchAsync(Arrays.asList(lookup(TX_1), lookup(TX_2)));
+
+    assertEquals(TX_1.toString(),
+        answers.get(0).get(5, TimeUnit.SECONDS).asObject().getItem("txHash").asString());
+    assertEquals(TX_2.toString(),
+        answers.get(1).get(5, TimeUnit.SECONDS).asObject().getItem("txHash").asString());
+    assertEquals(2, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(2, node.getHttpRequestCount());
+  }
+
+  @Test
+  public void file_keepsResultsAcrossRestart() throws Exception {
+    File file = new File(folder.getRoot(), "results");
+    start(ResultCache.newBuilder().file(file, 16, 1 << 16));
+    results.put(TX_1.toString(), result(TX_1, 12));
+    iconClient.getIconService().getTransactionResult(TX_1).execute();
+    iconClient.shutdown();
+    cache.shutdown();
+
+    start(ResultCache.newBuilder().file(file, 16, 1 << 16));
+    assertEquals(BigInteger.valueOf(12),
+        iconClient.getIconService().getTransactionResult(TX_1).execute().getBlockHeight());
+
+    assertEquals(1, node.getCallCount("icx_getTransactionResult"));
+    assertEquals(1, cache.getDiskHitCount());
+  }
+
+  private void start(ResultCache.Builder builder) throws Exception {
+    cache = builder.build();
+    iconClient = IconClient.newBuilder().endpoint(node.getEndpoint()).resultCache(cache).build().start();
+  }
+
+  private RpcItem call(String method) throws Exception {
+    return iconClient.getIconService().call(new Call.Builder().to(SCORE).method(method).build()).execute();
+  }
+
+  private foundation.icon.icx.transport.jsonrpc.Request lookup(Bytes hash) {
+    return iconClient.newRequest("icx_getTransactionResult",
+        new RpcObject.Builder().put("txHash", new RpcValue(hash)).build());
+  }
+
+  private static Bytes hash(int n) {
+    return new Bytes(String.format("0x%064x", n));
+  }
+
+  private static JSONObject result(Bytes hash, long height) {
+    return new JSONObject()
+        .put("txHash", hash.toString())
+        .put("status", "0x1")
+        .put("blockHeight", "0x" + Long.toHexString(height));
+  }
+
+  private static Block block(long height) {
+    return Converters.BLOCK.convertTo(new RpcObject.Builder()
+        .put("height", new RpcValue(BigInteger.valueOf(height)))
+        .put("confirmed_transaction_list", new RpcArray.Builder().build())
+        .build());
+  }
+}
@@ -0,0 +1,59 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.SignedTransaction;
+import foundation.icon.icx.Transaction;
+import foundation.icon.icx.TransactionBuilder;
+import foundation.icon.icx.data.Address;
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link Secp256k1Signer}.
+ */
+@RunWith(JUnit4.class)
+public class Secp256k1SignerTest {
+  @Test
+  public void sign_matchesKeyWallet() throws Exception {
+    Random random = new Random(1);
+    for (int i = 0; i < 200; i++) {
+      KeyWallet wallet = KeyWallet.create();
+      Secp256k1Signer signer = Secp256k1Signer.load(wallet.getPrivateKey());
+      byte[] hash = new byte[32];
+      random.nextBytes(hash);
+
+      assertArrayEquals("key " + i, wallet.sign(hash), signer.sign(hash));
+      assertEquals(wallet.getAddress(), signer.getAddress());
+      assertEquals(wallet.getPublicKey(), signer.getPublicKey());
+    }
+  }
+
+  @Test
+  public void signedTransaction_matchesKeyWallet() throws Exception {
+    KeyWallet wallet = KeyWallet.create();
+    Transaction transaction = TransactionBuilder.newBuilder()
+        .nid(BigInteger.ONE)
+        .from(wallet.getAddress())
+        .to(new Address(CommonData.DID_SCORE_ADDRESS))
+        .stepLimit(BigInteger.TEN)
+        .timestamp(BigInteger.valueOf(1234))
+        .nonce(BigInteger.ONE)
+        .call("create_did_from_pubkey")
+        .build();
+
+    assertEquals(new SignedTransaction(transaction, wallet).getProperties().toString(),
+        new SignedTransaction(transaction, Secp256k1Signer.load(wallet.getPrivateKey()))
+            .getProperties().toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void load_rejectsZeroKey() {
+    Secp256k1Signer.load(String.format("%064x", 0));
+  }
+}
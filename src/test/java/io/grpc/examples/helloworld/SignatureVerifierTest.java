@@ -0,0 +1,158 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.io.BaseEncoding;
+import foundation.icon.icx.KeyWallet;
+import io.grpc.examples.helloworld.HelloWorldServer.GreeterImpl;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.grpc.testing.GrpcCleanupRule;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.bouncycastle.crypto.digests.SHA3Digest;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link SignatureVerifier}.
+ */
+@RunWith(JUnit4.class)
+public class SignatureVerifierTest {
+  @Rule
+  public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
+
+  private final SignatureVerifier verifier = new SignatureVerifier(2, 64, 16).start();
+
+  @After
+  public void tearDown() {
+    verifier.shutdown();
+  }
+
+  @Test
+  public void verifyNow_checksSignaturesOfCreatedWallets() throws Exception {
+    KeyWallet wallet = KeyWallet.create();
+    KeyWallet other = KeyWallet.create();
+    String message = "0x" + BaseEncoding.base16().lowerCase().encode("proof".getBytes("UTF-8"));
+
+    VerifySignatureReply valid = verifier.verifyNow(request(wallet, message, sign(wallet, message)));
+    assertTrue(valid.getValid());
+    assertEquals("", valid.getError());
+    assertFalse(verifier.verifyNow(request(other, message, sign(wallet, message))).getValid());
+    assertFalse(verifier.verifyNow(request(wallet, "00", sign(wallet, message))).getValid());
+    // The same key compressed.
+    String compressed = BaseEncoding.base16().lowerCase().encode(
+        Secp256k1Signer.decodePublicKey(wallet.getPublicKey().toByteArray()).getEncoded(true));
+    assertTrue(verifier.verifyNow(request(wallet, message, sign(wallet, message)).toBuilder()
+        .setPublickey(compressed).build()).getValid());
+    assertEquals(4, verifier.getVerifiedCount());
+    assertEquals(2, verifier.getInvalidCount());
+  }
+
+  @Test
+  public void verifyNow_reportsMalformedRequests() throws Exception {
+    KeyWallet wallet = KeyWallet.create();
+    String signature = sign(wallet, "01");
+
+    assertTrue(verifier.verifyNow(request(wallet, "01", signature).toBuilder()
+        .setPublickey("04" + repeat("00", 64)).build()).getError().startsWith("Invalid public key"));
+    assertTrue(verifier.verifyNow(request(wallet, "xyz", signature))
+        .getError().startsWith("Message is not hex"));
+    assertTrue(verifier.verifyNow(request(wallet, "01", "not base64!"))
+        .getError().startsWith("Signature is not base64"));
+    assertEquals(0, verifier.getVerifiedCount());
+  }
+
+  @Test
+  public void verifySignatures_repliesInRequestOrder() throws Exception {
+    List<KeyWallet> wallets = new ArrayList<KeyWallet>();
+    for (int i = 0; i < 3; i++) {
+      wallets.add(KeyWallet.create());
+    }
+    final List<VerifySignatureReply> replies = new ArrayList<VerifySignatureReply>();
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    StreamObserver<VerifySignatureRequest> requests = newStub().verifySignatures(
+        new StreamObserver<VerifySignatureReply>() {
+          @Override
+          public void onNext(VerifySignatureReply reply) {
+            replies.add(reply);
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            error.set(t);
+            done.countDown();
+          }
+
+          @Override
+          public void onCompleted() {
+            done.countDown();
+          }
+        });
+    int count = 200;
+    for (int i = 0; i < count; i++) {
+      KeyWallet wallet = wallets.get(i % wallets.size());
+      String message = String.format("%08x", i);
+      // Every third signature is over another message.
+      requests.onNext(request(wallet, message, sign(wallet, i % 3 == 0 ? "ff" : message)));
+    }
+    requests.onCompleted();
+
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertNull(error.get());
+    assertEquals(count, replies.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals("signature " + i, i % 3 != 0, replies.get(i).getValid());
+    }
+  }
+
+  private GreeterGrpc.GreeterStub newStub() throws Exception {
+    IconClient iconClient = IconClient.newBuilder().build();
+    GreeterImpl greeter = GreeterImpl.newBuilder(iconClient).signatureVerifier(verifier).build();
+    String serverName = InProcessServerBuilder.generateName();
+    // Not direct: verdicts are sent from the verifier's workers while the client is still sending.
+    grpcCleanup.register(InProcessServerBuilder.forName(serverName)
+        .addService(greeter).build().start());
+    return GreeterGrpc.newStub(
+        grpcCleanup.register(InProcessChannelBuilder.forName(serverName).build()));
+  }
+
+  private static VerifySignatureRequest request(KeyWallet wallet, String message, String signature) {
+    return VerifySignatureRequest.newBuilder()
+        .setPublickey(wallet.getPublicKey().toHexString(false))
+        .setMessage(message)
+        .setSignature(signature)
+        .build();
+  }
+
+  /** Signs the SHA3-256 hash of the hex {@code message}, as transactions are signed. */
+  private static String sign(KeyWallet wallet, String message) {
+    String hex = message.startsWith("0x") ? message.substring(2) : message;
+    byte[] bytes = BaseEncoding.base16().lowerCase().decode(hex);
+    SHA3Digest digest = new SHA3Digest(256);
+    digest.update(bytes, 0, bytes.length);
+    byte[] hash = new byte[32];
+    digest.doFinal(hash, 0);
+    return BaseEncoding.base64().encode(wallet.sign(hash));
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      result.append(s);
+    }
+    return result.toString();
+  }
+}
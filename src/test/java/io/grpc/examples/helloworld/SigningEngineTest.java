@@ -0,0 +1,97 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import foundation.icon.icx.KeyWallet;
+import foundation.icon.icx.SignedTransaction;
+import foundation.icon.icx.Transaction;
+import foundation.icon.icx.TransactionBuilder;
+import foundation.icon.icx.Wallet;
+import foundation.icon.icx.data.Address;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link SigningEngine}.
+ */
+@RunWith(JUnit4.class)
+public class SigningEngineTest {
+  private final SigningEngine engine = new SigningEngine(3).start();
+
+  @After
+  public void tearDown() {
+    engine.shutdown();
+  }
+
+  @Test
+  public void signAll_keepsOrderAndIsolatesFailures() throws Exception {
+    KeyWallet wallet = KeyWallet.create();
+    Wallet signer = Secp256k1Signer.load(wallet.getPrivateKey());
+    Wallet broken = new Wallet() {
+      @Override
+      public Address getAddress() {
+        return signer().getAddress();
+      }
+
+      @Override
+      public byte[] sign(byte[] hash) {
+        throw new IllegalStateException("broken");
+      }
+    };
+    List<Transaction> transactions = new ArrayList<Transaction>();
+    List<Wallet> signers = new ArrayList<Wallet>();
+    for (int i = 0; i < 10; i++) {
+      transactions.add(transaction(wallet.getAddress(), i));
+      signers.add(i == 4 ? broken : signer);
+    }
+
+    List<ListenableFuture<SignedTransaction>> signed = engine.signAll(transactions, signers);
+
+    assertEquals(10, signed.size());
+    for (int i = 0; i < 10; i++) {
+      if (i == 4) {
+        try {
+          signed.get(i).get();
+          fail("Expected the broken signer to fail");
+        } catch (ExecutionException expected) {
+          assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+        continue;
+      }
+      assertEquals(new SignedTransaction(transactions.get(i), wallet).getProperties().toString(),
+          signed.get(i).get().getProperties().toString());
+    }
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void signAll_rejectedAfterShutdown() {
+    engine.shutdown();
+    engine.signAll(new ArrayList<Transaction>(), new ArrayList<Wallet>());
+  }
+
+  private static Wallet signer() {
+    return Secp256k1Signer.load(CommonData.DID_SIGNER_PRIVATE_KEY);
+  }
+
+  private static Transaction transaction(Address from, int nonce) {
+    return TransactionBuilder.newBuilder()
+        .nid(BigInteger.ONE)
+        .from(from)
+        .to(new Address(CommonData.DID_SCORE_ADDRESS))
+        .stepLimit(BigInteger.TEN)
+        .timestamp(BigInteger.valueOf(1234))
+        .nonce(BigInteger.valueOf(nonce))
+        .call("create_did_from_pubkey")
+        .build();
+  }
+}
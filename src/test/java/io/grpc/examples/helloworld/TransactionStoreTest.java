@@ -0,0 +1,150 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import foundation.icon.icx.data.Block;
+import foundation.icon.icx.data.Converters;
+import foundation.icon.icx.transport.jsonrpc.RpcArray;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import java.io.File;
+import java.math.BigInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link TransactionStore}.
+ */
+@RunWith(JUnit4.class)
+public class TransactionStoreTest {
+  private static final String ALICE = "hx" + repeat("a1", 20);
+  private static final String BOB = "hx" + repeat("b2", 20);
+  private static final String SCORE = "cx" + repeat("c3", 20);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+  private TransactionStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    file = new File(folder.getRoot(), "tx-store");
+    store = TransactionStore.open(file, 64, 16);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+  }
+
+  @Test
+  public void pages_newestFirstAndKeptAcrossReopen() throws Exception {
+    assertTrue(store.append(block(10, tx(1, ALICE, BOB, 5), tx(2, BOB, SCORE, 0))));
+    assertTrue(store.append(block(11, tx(3, SCORE, ALICE, 7), tx(4, ALICE, ALICE, 1))));
+    store.close();
+
+    store = TransactionStore.open(file, 1, 1);
+    GetTransactionsReply first = store.read(ALICE.toUpperCase(), "", 2);
+    assertEquals(11, first.getIndexedHeight());
+    assertEquals(2, first.getTransactionsCount());
+    TransactionRecord self = first.getTransactions(0);
+    assertEquals(hash(4), self.getTxhash());
+    assertEquals(ALICE, self.getFrom());
+    assertEquals(ALICE, self.getTo());
+    assertEquals(hash(3), first.getTransactions(1).getTxhash());
+    assertEquals(SCORE, first.getTransactions(1).getFrom());
+    assertEquals("0x7", first.getTransactions(1).getValue());
+    assertEquals(11, first.getTransactions(1).getBlockHeight());
+
+    GetTransactionsReply second = store.read(ALICE, first.getNextCursor(), 2);
+    assertEquals(1, second.getTransactionsCount());
+    assertEquals(hash(1), second.getTransactions(0).getTxhash());
+    assertEquals(10, second.getTransactions(0).getBlockHeight());
+    assertEquals("", second.getNextCursor());
+
+    assertEquals(2, store.read(BOB, "", 0).getTransactionsCount());
+    assertEquals(0, store.read("hx" + repeat("00", 20), "", 0).getTransactionsCount());
+    assertEquals(3, store.getAddressCount());
+    assertEquals(4, store.getTransactionCount());
+    assertEquals(10, store.getFirstHeight());
+  }
+
+  @Test
+  public void cursorOfOtherAddress_rejected() throws Exception {
+    assertTrue(store.append(block(1, tx(1, ALICE, SCORE, 0), tx(2, BOB, SCORE, 0))));
+    String cursor = store.read(SCORE, "", 1).getNextCursor();
+
+    try {
+      store.read(BOB, cursor, 1);
+      fail("Expected the cursor to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    try {
+      store.read("not an address", "", 1);
+      fail("Expected the address to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void full_dropsWholeBlock() throws Exception {
+    store.close();
+    store = TransactionStore.open(new File(folder.getRoot(), "small"), 2, 4);
+
+    assertTrue(store.append(block(1, tx(1, ALICE, BOB, 0))));
+    assertFalse(store.append(block(2, tx(2, ALICE, BOB, 0), tx(3, BOB, ALICE, 0))));
+    assertEquals(1, store.getHeight());
+    assertEquals(1, store.read(ALICE, "", 0).getTransactionsCount());
+    try {
+      store.append(block(3, tx(4, ALICE, BOB, 0)));
+      fail("Expected a gap to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+  }
+
+  private static Block block(long height, RpcObject... transactions) {
+    RpcArray.Builder list = new RpcArray.Builder();
+    for (RpcObject transaction : transactions) {
+      list.add(transaction);
+    }
+    return Converters.BLOCK.convertTo(new RpcObject.Builder()
+        .put("height", new RpcValue(BigInteger.valueOf(height)))
+        .put("time_stamp", new RpcValue(BigInteger.valueOf(height * 2_000_000)))
+        .put("confirmed_transaction_list", list.build())
+        .build());
+  }
+
+  private static RpcObject tx(int id, String from, String to, long value) {
+    return new RpcObject.Builder()
+        .put("version", new RpcValue(BigInteger.valueOf(3)))
+        .put("txHash", new RpcValue(hash(id)))
+        .put("from", new RpcValue(from))
+        .put("to", new RpcValue(to))
+        .put("value", new RpcValue(BigInteger.valueOf(value)))
+        .build();
+  }
+
+  private static String hash(int id) {
+    return String.format("0x%064x", id);
+  }
+
+  private static String repeat(String s, int times) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,194 @@
+package io.grpc.examples.helloworld;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Ticker;
+import foundation.icon.icx.transport.jsonrpc.RpcObject;
+import foundation.icon.icx.transport.jsonrpc.RpcValue;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link UpstreamRouter}.
+ */
+@RunWith(JUnit4.class)
+public class UpstreamRouterTest {
+  private MockIconNode first;
+  private MockIconNode second;
+  private IconClient iconClient;
+
+  @Before
+  public void setUp() throws Exception {
+    first = newNode();
+    second = newNode();
+  }
+
+  @After
+  public void tearDown() {
+    if (iconClient != null) {
+      iconClient.shutdown();
+    }
+    first.stop();
+    second.stop();
+  }
+
+  @Test
+  public void slowEndpoint_losesTraffic() throws Exception {
+    first.setLatency(30, TimeUnit.MILLISECONDS);
+    UpstreamRouter router = start(newRouter().hedgePercentile(0));
+
+    for (int i = 0; i < 30; i++) {
+      iconClient.getIconService().getLastBlock().execute();
+    }
+
+    assertEquals(30, router.getCallCount());
+    assertTrue(router.toString(), first.getHttpRequestCount() <= 5);
+    assertEquals(30, first.getHttpRequestCount() + second.getHttpRequestCount());
+  }
+
+  @Test
+  public void slowReadOnlyCall_hedgedToOtherEndpoint() throws Exception {
+    first.setLatency(2000, TimeUnit.MILLISECONDS);
+    UpstreamRouter router = start(newRouter().initialHedgeDelay(20, TimeUnit.MILLISECONDS));
+
+    long start = System.nanoTime();
+    // Nothing is known about either endpoint yet, so the first one is tried first.
+    iconClient.getIconService().getLastBlock().execute();
+
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+    assertEquals(1, router.getHedgeCount());
+    assertEquals(Arrays.asList(0L, 1L), router.getAnsweredCounts());
+    assertEquals(1, first.getHttpRequestCount());
+  }
+
+  @Test
+  public void transaction_neverHedged() throws Exception {
+    first.setLatency(300, TimeUnit.MILLISECONDS);
+    UpstreamRouter router = start(newRouter().initialHedgeDelay(20, TimeUnit.MILLISECONDS));
+    RpcObject params = new RpcObject.Builder().put("signature", new RpcValue("c2lnbmF0dXJl")).build();
+
+    iconClient.executeBatchAsync(Collections.singletonList(
+        iconClient.newRequest("icx_sendTransaction", params))).get(0).get(5, TimeUnit.SECONDS);
+
+    assertEquals(0, router.getHedgeCount());
+    assertEquals(1, first.getCallCount("icx_sendTransaction"));
+    assertEquals(0, second.getHttpRequestCount());
+  }
+
+  @Test
+  public void failingEndpoint_opensCircuitUntilTrialSucceeds() throws Exception {
+    FakeTicker ticker = new FakeTicker();
+    first.setHttpStatus(503);
+    // The ticker never moves between calls, so every latency is zero and the first endpoint
+    // always wins the tie while its circuit is closed.
+    UpstreamRouter router = start(newRouter()
+        .hedgePercentile(0)
+        .failureThreshold(2)
+        .openDuration(1, TimeUnit.MINUTES)
+        .ticker(ticker));
+
+    for (int i = 0; i < 5; i++) {
+      iconClient.getIconService().getLastBlock().execute();
+    }
+    assertEquals(2, first.getHttpRequestCount());
+    assertEquals(2, router.getFailoverCount());
+    assertEquals(1, router.getOpenCircuitCount());
+
+    first.setHttpStatus(200);
+    ticker.advance(1, TimeUnit.MINUTES);
+    iconClient.getIconService().getLastBlock().execute();
+
+    assertEquals(3, first.getHttpRequestCount());
+    assertEquals(0, router.getOpenCircuitCount());
+    assertEquals(Arrays.asList(1L, 5L), router.getAnsweredCounts());
+  }
+
+  @Test
+  public void locallyRejectedAttempts_leaveCircuitClosed() throws Exception {
+    UpstreamRouter router = newRouter().failureThreshold(1).build();
+    ExecutorService rejecting = Executors.newSingleThreadExecutor();
+    rejecting.shutdown();
+    OkHttpClient attempts = new OkHttpClient.Builder().dispatcher(new Dispatcher(rejecting)).build();
+    OkHttpClient client = new OkHttpClient.Builder().addInterceptor(router.newInterceptor(attempts)).build();
+    Request request = new Request.Builder()
+        .url(first.getEndpoint())
+        .post(RequestBody.create(MediaType.parse("application/json"),
+            "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"icx_getLastBlock\"}"))
+        .build();
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        client.newCall(request).execute().close();
+        fail("Expected the attempts to be rejected");
+      } catch (IOException expected) {
+        // Expected.
+      }
+    }
+
+    assertEquals(0, router.getOpenCircuitCount());
+    assertEquals(0, first.getHttpRequestCount() + second.getHttpRequestCount());
+  }
+
+  @Test
+  public void isReadOnly_onlyForQueries() {
+    assertTrue(UpstreamRouter.isReadOnly(bytes("{\"method\":\"icx_getBalance\"}")));
+    assertTrue(UpstreamRouter.isReadOnly(
+        bytes("[{\"method\":\"icx_call\"},{\"method\":\"icx_getTransactionResult\"}]")));
+    assertFalse(UpstreamRouter.isReadOnly(
+        bytes("[{\"method\":\"icx_call\"},{\"method\":\"icx_sendTransaction\"}]")));
+    assertFalse(UpstreamRouter.isReadOnly(bytes("not json")));
+  }
+
+  private UpstreamRouter.Builder newRouter() {
+    return UpstreamRouter.newBuilder(Arrays.asList(first.getEndpoint(), second.getEndpoint()));
+  }
+
+  private UpstreamRouter start(UpstreamRouter.Builder builder) {
+    UpstreamRouter router = builder.build();
+    iconClient = IconClient.newBuilder().router(router).build().start();
+    return router;
+  }
+
+  private static MockIconNode newNode() throws Exception {
+    return new MockIconNode(1, TimeUnit.SECONDS).start(0)
+        .respond("icx_getLastBlock", new JSONObject().put("height", 1))
+        .respond("icx_sendTransaction", "0x" + String.format("%064x", 1));
+  }
+
+  private static byte[] bytes(String json) {
+    return json.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static final class FakeTicker extends Ticker {
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+
+    void advance(long duration, TimeUnit unit) {
+      nanos.addAndGet(unit.toNanos(duration));
+    }
+  }
+}
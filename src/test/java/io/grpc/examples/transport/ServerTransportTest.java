@@ -0,0 +1,123 @@
+package io.grpc.examples.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.examples.helloworld.GreeterGrpc;
+import io.grpc.examples.helloworld.HelloReply;
+import io.grpc.examples.helloworld.HelloRequest;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.epoll.Epoll;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link ServerTransport}.
+ */
+@RunWith(JUnit4.class)
+public class ServerTransportTest {
+  private Server server;
+
+  @After
+  public void tearDown() throws Exception {
+    if (server != null) {
+      server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void reusePortAcceptors_shareOnePort() throws Exception {
+    assumeTrue(Epoll.isAvailable());
+    ServerTransport transport = ServerTransport.parse("epoll,acceptors=3,workers=2");
+    assertEquals("epoll acceptors=3 boss=3 workers=2", transport.toString());
+
+    // Without SO_REUSEPORT the second acceptor would fail to bind.
+    int port = freePort();
+    server = transport.forPort(port).addService(new Greeter()).build().start();
+    assertEquals(port, server.getPort());
+    for (int i = 0; i < 10; i++) {
+      assertEquals("Hello " + i, sayHello(port, "" + i));
+    }
+
+    server.shutdown();
+    assertTrue(server.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(server.isTerminated());
+  }
+
+  @Test
+  public void nio_servesOnEphemeralPort() throws Exception {
+    ServerTransport transport = ServerTransport.newBuilder()
+        .type(ServerTransport.Type.NIO)
+        .workerThreads(1)
+        .build();
+    assertFalse(transport.isEpoll());
+
+    server = transport.forPort(0).addService(new Greeter()).build().start();
+    assertEquals("Hello nio", sayHello(server.getPort(), "nio"));
+  }
+
+  @Test
+  public void invalidTransports_refused() {
+    try {
+      ServerTransport.parse("nio,acceptors=2");
+      fail("Expected NIO acceptors sharing a port to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    try {
+      ServerTransport.parse("quic");
+      fail("Expected an unknown transport to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    try {
+      ServerTransport.parse("auto,workers=0");
+      fail("Expected an empty worker group to be refused");
+    } catch (IllegalArgumentException expected) {
+      // Expected.
+    }
+    ServerTransport transport = ServerTransport.parse("auto,acceptors=2");
+    if (transport.getAcceptors() > 1) {
+      try {
+        transport.forPort(0);
+        fail("Expected acceptors on an ephemeral port to be refused");
+      } catch (IllegalArgumentException expected) {
+        // Expected.
+      }
+    }
+  }
+
+  private static int freePort() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static String sayHello(int port, String name) throws Exception {
+    ManagedChannel channel = ManagedChannelBuilder.forAddress("127.0.0.1", port).usePlaintext().build();
+    try {
+      return GreeterGrpc.newBlockingStub(channel).withDeadlineAfter(5, TimeUnit.SECONDS)
+          .sayHello(HelloRequest.newBuilder().setName(name).build()).getMessage();
+    } finally {
+      channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  private static final class Greeter extends GreeterGrpc.GreeterImplBase {
+    @Override
+    public void sayHello(HelloRequest request, StreamObserver<HelloReply> responseObserver) {
+      responseObserver.onNext(HelloReply.newBuilder().setMessage("Hello " + request.getName()).build());
+      responseObserver.onCompleted();
+    }
+  }
+}